@@ -0,0 +1,141 @@
+package org.kandroid.app.hangulkeyboard;
+
+import android.view.KeyEvent;
+import android.view.inputmethod.InputConnection;
+
+/**
+ * A short list of editor operations produced by an {@link InputEngine}.
+ *
+ * Operations are packed ints (op << 24 | argument) with their text in one
+ * shared buffer, so recording a key's edits allocates nothing.  apply()
+ * sends them to the editor inside one batch edit.
+ */
+public class EditOps {
+
+    static final int OP_COMMIT = 1;   // commit the next n chars of text
+    static final int OP_COMPOSE = 2;  // set the composing text to the next n chars
+    static final int OP_FINISH = 3;   // keep the composing text as it is
+    static final int OP_DELETE = 4;   // delete n chars before the cursor
+    static final int OP_KEY = 5;      // key down and up for key code n
+
+    private int[] mOps = new int[8];
+    private int mCount;
+    private final StringBuilder mText = new StringBuilder(16);
+
+    /** Commits text; an empty text drops the composing text. */
+    public void commit(CharSequence text) {
+        add(OP_COMMIT, text.length());
+        mText.append(text);
+    }
+
+    public void commit(char c) {
+        add(OP_COMMIT, 1);
+        mText.append(c);
+    }
+
+    public void compose(CharSequence text) {
+        add(OP_COMPOSE, text.length());
+        mText.append(text);
+    }
+
+    public void compose(char c) {
+        add(OP_COMPOSE, 1);
+        mText.append(c);
+    }
+
+    public void finish() {
+        add(OP_FINISH, 0);
+    }
+
+    public void delete(int count) {
+        add(OP_DELETE, count);
+    }
+
+    public void key(int keyCode) {
+        add(OP_KEY, keyCode);
+    }
+
+    /**
+     * Types a character the way a plain key would: enter and digits as
+     * key events, anything else as text.
+     */
+    public void type(int code) {
+        if (code == '\n') {
+            key(KeyEvent.KEYCODE_ENTER);
+        }
+        else if (code >= '0' && code <= '9') {
+            key(code - '0' + KeyEvent.KEYCODE_0);
+        }
+        else {
+            commit((char) code);
+        }
+    }
+
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    public void clear() {
+        mCount = 0;
+        mText.setLength(0);
+    }
+
+    /**
+     * Applies and clears the operations.  composing is used as the text
+     * buffer and is left holding the editor's composing text.
+     */
+    public void apply(InputConnection ic, StringBuilder composing) {
+        if (ic == null) {
+            clear();
+            return;
+        }
+        boolean batch = mCount > 1;
+        if (batch) {
+            ic.beginBatchEdit();
+        }
+        int pos = 0;
+        for (int i = 0; i < mCount; i++) {
+            int op = mOps[i] >>> 24;
+            int arg = mOps[i] & 0xffffff;
+            switch (op) {
+            case OP_COMMIT:
+                composing.setLength(0);
+                composing.append(mText, pos, pos + arg);
+                pos += arg;
+                ic.commitText(composing, 1);
+                composing.setLength(0);
+                break;
+            case OP_COMPOSE:
+                composing.setLength(0);
+                composing.append(mText, pos, pos + arg);
+                pos += arg;
+                ic.setComposingText(composing, 1);
+                break;
+            case OP_FINISH:
+                composing.setLength(0);
+                ic.finishComposingText();
+                break;
+            case OP_DELETE:
+                ic.deleteSurroundingText(arg, 0);
+                break;
+            case OP_KEY:
+                ic.sendKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, arg));
+                ic.sendKeyEvent(new KeyEvent(KeyEvent.ACTION_UP, arg));
+                break;
+            }
+        }
+        if (batch) {
+            ic.endBatchEdit();
+        }
+        clear();
+    }
+
+    private void add(int op, int arg) {
+        if (mCount == mOps.length) {
+            int[] ops = new int[mCount * 2];
+            System.arraycopy(mOps, 0, ops, 0, mCount);
+            mOps = ops;
+        }
+        mOps[mCount++] = op << 24 | arg;
+    }
+}
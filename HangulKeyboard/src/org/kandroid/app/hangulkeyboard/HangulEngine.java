@@ -0,0 +1,69 @@
+package org.kandroid.app.hangulkeyboard;
+
+/**
+ * 2-beolsik on-screen typing on top of {@link HangulAutomata}.  Upper case
+ * key codes type the shifted jamo.
+ */
+public class HangulEngine implements InputEngine {
+
+    private final HangulAutomata mAutomata = new HangulAutomata();
+
+    public boolean onKey(int code, long eventTime, EditOps ops) {
+        int jamo = HangulAutomata.toJamo(code, false);
+        if (jamo < 0) {
+            return false;
+        }
+        apply(mAutomata.process(jamo), ops);
+        return true;
+    }
+
+    public boolean delete(EditOps ops) {
+        int action = mAutomata.delete();
+        if (action == HangulAutomata.ACTION_NONE) {
+            return false;
+        }
+        apply(action, ops);
+        return true;
+    }
+
+    public boolean canResume() {
+        return true;
+    }
+
+    public boolean resume(char c) {
+        return mAutomata.resume(c);
+    }
+
+    public void separate(int code, EditOps ops) {
+        if (!mAutomata.isEmpty()) {
+            ops.finish();
+            mAutomata.reset();
+        }
+        ops.type(code);
+    }
+
+    public boolean isEmpty() {
+        return mAutomata.isEmpty();
+    }
+
+    public void reset() {
+        mAutomata.reset();
+    }
+
+    private void apply(int action, EditOps ops) {
+        switch (action) {
+        case HangulAutomata.ACTION_START:
+        case HangulAutomata.ACTION_UPDATE:
+            ops.compose(mAutomata.getComposing());
+            break;
+        case HangulAutomata.ACTION_COMMIT:
+            ops.commit(mAutomata.getCommitted());
+            ops.compose(mAutomata.getComposing());
+            break;
+        case HangulAutomata.ACTION_CLEAR:
+            ops.commit("");
+            mAutomata.reset();
+            break;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.kandroid.app.hangulkeyboard;
+
+/**
+ * Precomputed compose/decompose tables for the 11,172 Hangul syllables.
+ *
+ * Jamo use the keyboard's indices (0..29 consonants, 30..50 vowels, the
+ * compatibility jamo is 0x3131 + idx).  Key sequences are packed into an int
+ * as up to five 6 bit groups holding key + 1, first key in the low bits, so
+ * a zero group ends the sequence.  The two big tables are only built the
+ * first time they are used.
+ */
+public class HangulSyllables {
+
+    public static final int SYLLABLE_BASE = 0xAC00;
+    public static final int SYLLABLE_COUNT = 11172;
+    public static final int JAMO_BASE = 0x3131;
+    public static final int JAMO_COUNT = 51;
+
+    // jamo -> Unicode initial index, -1 if the jamo can't start a syllable
+    static final byte[] CHO_INDEX =
+    {0,1,-1,2,-1,-1,3,4,5,-1,-1,-1,-1,-1,-1,-1,6,7,8,-1,9,10,11,12,13,14,15,16,17,18};
+    // jamo -> Unicode final index, 0 if the jamo can't end a syllable
+    static final byte[] JONG_INDEX =
+    {1,2,3,4,5,6,7,0,8,9,10,11,12,13,14,15,16,17,0,18,19,20,21,22,0,23,24,25,26,27};
+
+    // jamo that are typed as two keys: jamo, first, second
+    static final byte[] SPLIT = {
+        2, 0,20,   4, 3,23,   5, 3,29,   9, 8, 0,  10, 8,16,  11, 8,17,
+       12, 8,20,  13, 8,27,  14, 8,28,  15, 8,29,  19,17,20,
+       39,38,30,  40,38,31,  41,38,50,  44,43,34,  45,43,35,  46,43,50,
+       49,48,50
+    };
+
+    /** jamo -> packed key sequence */
+    static final int[] JAMO_KEYS = new int[JAMO_COUNT];
+
+    static {
+        for (int jamo = 0; jamo < JAMO_COUNT; jamo++) {
+            JAMO_KEYS[jamo] = jamo + 1;
+        }
+        for (int i = 0; i < SPLIT.length; i += 3) {
+            JAMO_KEYS[SPLIT[i]] = (SPLIT[i + 1] + 1) | (SPLIT[i + 2] + 1) << 6;
+        }
+    }
+
+    private static class Tables {
+        /** ((cho * 21 + jung - 30) * 31 + jong + 1) -> syllable, 0 if invalid */
+        static final char[] COMPOSE = new char[30 * 21 * 31];
+        /** (syllable - 0xAC00) -> packed key sequence */
+        static final int[] DECOMPOSE = new int[SYLLABLE_COUNT];
+
+        static {
+            byte[] choJamo = new byte[19];
+            byte[] jongJamo = new byte[28];
+            for (int jamo = 0; jamo < 30; jamo++) {
+                if (CHO_INDEX[jamo] >= 0) {
+                    choJamo[CHO_INDEX[jamo]] = (byte) jamo;
+                }
+                jongJamo[JONG_INDEX[jamo]] = (byte) jamo;
+            }
+            for (int cho = 0; cho < 30; cho++) {
+                if (CHO_INDEX[cho] < 0) {
+                    continue;
+                }
+                for (int jung = 0; jung < 21; jung++) {
+                    int base = (cho * 21 + jung) * 31;
+                    char syllable = (char) (SYLLABLE_BASE + (CHO_INDEX[cho] * 21 + jung) * 28);
+                    COMPOSE[base] = syllable;
+                    for (int jong = 0; jong < 30; jong++) {
+                        if (JONG_INDEX[jong] != 0) {
+                            COMPOSE[base + jong + 1] = (char) (syllable + JONG_INDEX[jong]);
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < SYLLABLE_COUNT; i++) {
+                int keys = JAMO_KEYS[choJamo[i / (21 * 28)]];
+                int shift = 6;
+                int vowel = JAMO_KEYS[30 + (i / 28) % 21];
+                keys |= vowel << shift;
+                shift += vowel < 64 ? 6 : 12;
+                if (i % 28 != 0) {
+                    keys |= JAMO_KEYS[jongJamo[i % 28]] << shift;
+                }
+                DECOMPOSE[i] = keys;
+            }
+        }
+    }
+
+    /**
+     * Returns the syllable for the given initial, vowel and final jamo
+     * (final -1 for none), or 0 if they don't form one.
+     */
+    public static char compose(int cho, int jung, int jong) {
+        return Tables.COMPOSE[(cho * 21 + jung - 30) * 31 + jong + 1];
+    }
+
+    /**
+     * Returns the packed key sequence that types the given syllable or
+     * compatibility jamo, or 0 if it is not Hangul.
+     */
+    public static int decompose(char c) {
+        int index = c - SYLLABLE_BASE;
+        if (index >= 0 && index < SYLLABLE_COUNT) {
+            return Tables.DECOMPOSE[index];
+        }
+        index = c - JAMO_BASE;
+        if (index >= 0 && index < JAMO_COUNT) {
+            return JAMO_KEYS[index];
+        }
+        return 0;
+    }
+
+    public static int keyCount(int keys) {
+        int count = 0;
+        while (keys != 0) {
+            keys >>>= 6;
+            count++;
+        }
+        return count;
+    }
+
+    public static int keyAt(int keys, int index) {
+        return ((keys >>> (index * 6)) & 0x3f) - 1;
+    }
+
+    /** Whether the consonant can be used as a final. */
+    public static boolean isFinal(int jamo) {
+        return jamo < 30 && JONG_INDEX[jamo] != 0;
+    }
+}
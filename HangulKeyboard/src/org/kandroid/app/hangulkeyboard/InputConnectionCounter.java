@@ -0,0 +1,143 @@
+package org.kandroid.app.hangulkeyboard;
+
+import android.view.KeyEvent;
+import android.view.inputmethod.CompletionInfo;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputConnectionWrapper;
+
+/**
+ * Counts the calls that go out to the editor.
+ *
+ * Every call is a binder transaction.  An edit made outside a batch is also
+ * a separate editor update (span/layout work and an onUpdateSelection call
+ * back to us); edits inside a batch are applied together when the outermost
+ * batch ends.  Both numbers are kept so the effect of batching can be seen.
+ */
+public class InputConnectionCounter extends InputConnectionWrapper {
+
+    private int mCalls;
+    private int mUpdates;
+    private int mBatchDepth;
+
+    public InputConnectionCounter() {
+        super(null, true);
+    }
+
+    /** Points the counter at the current editor's connection. */
+    public InputConnection wrap(InputConnection target) {
+        if (target == null) {
+            return null;
+        }
+        setTarget(target);
+        return this;
+    }
+
+    public int getCallCount() {
+        return mCalls;
+    }
+
+    public int getUpdateCount() {
+        return mUpdates;
+    }
+
+    public void reset() {
+        mCalls = 0;
+        mUpdates = 0;
+        mBatchDepth = 0;
+    }
+
+    private void edit() {
+        mCalls++;
+        if (mBatchDepth == 0) {
+            mUpdates++;
+        }
+    }
+
+    @Override
+    public boolean beginBatchEdit() {
+        mCalls++;
+        mBatchDepth++;
+        return super.beginBatchEdit();
+    }
+
+    @Override
+    public boolean endBatchEdit() {
+        mCalls++;
+        if (mBatchDepth > 0 && --mBatchDepth == 0) {
+            mUpdates++;
+        }
+        return super.endBatchEdit();
+    }
+
+    @Override
+    public boolean setComposingText(CharSequence text, int newCursorPosition) {
+        edit();
+        return super.setComposingText(text, newCursorPosition);
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        edit();
+        return super.finishComposingText();
+    }
+
+    @Override
+    public boolean commitText(CharSequence text, int newCursorPosition) {
+        edit();
+        return super.commitText(text, newCursorPosition);
+    }
+
+    @Override
+    public boolean commitCompletion(CompletionInfo text) {
+        edit();
+        return super.commitCompletion(text);
+    }
+
+    @Override
+    public boolean deleteSurroundingText(int leftLength, int rightLength) {
+        edit();
+        return super.deleteSurroundingText(leftLength, rightLength);
+    }
+
+    @Override
+    public boolean setSelection(int start, int end) {
+        edit();
+        return super.setSelection(start, end);
+    }
+
+    @Override
+    public boolean sendKeyEvent(KeyEvent event) {
+        edit();
+        return super.sendKeyEvent(event);
+    }
+
+    @Override
+    public CharSequence getTextBeforeCursor(int n, int flags) {
+        mCalls++;
+        return super.getTextBeforeCursor(n, flags);
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor(int n, int flags) {
+        mCalls++;
+        return super.getTextAfterCursor(n, flags);
+    }
+
+    @Override
+    public CharSequence getSelectedText(int flags) {
+        mCalls++;
+        return super.getSelectedText(flags);
+    }
+
+    @Override
+    public int getCursorCapsMode(int reqModes) {
+        mCalls++;
+        return super.getCursorCapsMode(reqModes);
+    }
+
+    @Override
+    public boolean clearMetaKeyStates(int states) {
+        mCalls++;
+        return super.clearMetaKeyStates(states);
+    }
+}
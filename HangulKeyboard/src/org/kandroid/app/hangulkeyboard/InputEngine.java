@@ -0,0 +1,44 @@
+package org.kandroid.app.hangulkeyboard;
+
+/**
+ * One layout's way of turning keys into text: Latin, 2-beolsik or Sejong.
+ *
+ * Engines never touch the editor.  They describe what should happen as
+ * {@link EditOps}, which SoftKeyboard applies to the InputConnection in a
+ * single batch, so every layout shares one path to the editor.
+ */
+public interface InputEngine {
+
+    /**
+     * Feeds a character key.  eventTime is the key's uptime in ms.  Returns
+     * false if the key means nothing to the engine; the caller then sends
+     * it with {@link #separate(int, EditOps)}.
+     */
+    boolean onKey(int code, long eventTime, EditOps ops);
+
+    /**
+     * Takes back the last key of the composing text.  Returns false if
+     * nothing is being composed.
+     */
+    boolean delete(EditOps ops);
+
+    /** Whether the engine can {@link #resume(char)} finished text. */
+    boolean canResume();
+
+    /**
+     * Starts composing c, the character before the cursor, again so that
+     * delete() can take it apart.  Returns false if the engine can't.
+     */
+    boolean resume(char c);
+
+    /**
+     * Ends composition for a separator (space, punctuation, or a key the
+     * engine doesn't take) and sends the separator if it should be typed.
+     */
+    void separate(int code, EditOps ops);
+
+    boolean isEmpty();
+
+    /** Forgets the composing text; the editor keeps whatever it shows. */
+    void reset();
+}
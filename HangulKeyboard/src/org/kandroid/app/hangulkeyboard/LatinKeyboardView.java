@@ -29,6 +29,8 @@ public class LatinKeyboardView extends KeyboardView {
 
     static final int KEYCODE_OPTIONS = -100;
 
+    private long mLastDownTime;
+
     public LatinKeyboardView(Context context, AttributeSet attrs) {
         super(context, attrs);
     }
@@ -56,9 +58,17 @@ public class LatinKeyboardView extends KeyboardView {
 		}
 		return true;
 */		
+		if (me.getAction() == MotionEvent.ACTION_DOWN) {
+			mLastDownTime = me.getEventTime();
+		}
 		return super.onTouchEvent(me);
 	}
 
+	/** Event time (uptime ms) of the last touch down, the key being sent. */
+	public long getLastDownTime() {
+		return mLastDownTime;
+	}
+
 
 	
 	@Override
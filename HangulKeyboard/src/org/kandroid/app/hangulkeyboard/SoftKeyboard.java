@@ -25,6 +25,9 @@ import android.inputmethodservice.InputMethodService;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.KeyboardView;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.text.method.MetaKeyKeyListener;
 import android.util.Log;
 import android.view.KeyCharacterMap;
@@ -66,6 +69,7 @@ public class SoftKeyboard extends InputMethodService
     private CompletionInfo[] mCompletions;
     
     private StringBuilder mComposing = new StringBuilder();
+    private InputConnectionCounter mConnectionCounter = new InputConnectionCounter();
     private boolean mPredictionOn;
     private boolean mCompletionOn;
     private int mLastDisplayWidth;
@@ -113,6 +117,8 @@ public class SoftKeyboard extends InputMethodService
         mHangulKeyboard = new HangulKeyboard(this, R.xml.hangul);        
         mHangulShiftedKeyboard = new HangulKeyboard(this, R.xml.hangul_shift);
         mSejongKeyboard = new SejongKeyboard(this, R.xml.sejong);
+        mSejongEngine.getAutomata().setCycleTimeout(
+                getResources().getInteger(R.integer.sejong_cycle_timeout));
     }
     
     /**
@@ -139,6 +145,14 @@ public class SoftKeyboard extends InputMethodService
         mCandidateView.setService(this);
         return mCandidateView;
     }
+
+    /**
+     * All editor calls go through the counter so we can see how many
+     * round-trips a field cost; the numbers are logged in onFinishInput.
+     */
+    @Override public InputConnection getCurrentInputConnection() {
+        return mConnectionCounter.wrap(super.getCurrentInputConnection());
+    }
 	
     /**
      * This is the main point where we do our initialization of the input method
@@ -148,11 +162,11 @@ public class SoftKeyboard extends InputMethodService
      */
     @Override public void onStartInput(EditorInfo attribute, boolean restarting) {
         super.onStartInput(attribute, restarting);
+        mConnectionCounter.reset();
 /*        
         Log.i("Hangul", "onStartInput");
 */
-        clearHangul();
-        clearSejong();
+        resetEngines();
         previousCurPos = -1;        
         
         // Reset our state.  We want to do this even if restarting, because
@@ -237,7 +251,7 @@ public class SoftKeyboard extends InputMethodService
         // Update the label on the enter key, depending on what the application
         // says it will do.
         mCurKeyboard.setImeOptions(getResources(), attribute.imeOptions);
-        
+        mLatinEngine.setPrediction(mPredictionOn);
     }
 
     /**
@@ -246,6 +260,8 @@ public class SoftKeyboard extends InputMethodService
      */
     @Override public void onFinishInput() {
         super.onFinishInput();
+        Log.v("kbd", "editor calls " + mConnectionCounter.getCallCount()
+                + " updates " + mConnectionCounter.getUpdateCount());
         
         // Clear current composing text and candidates.
         mComposing.setLength(0);
@@ -293,33 +309,16 @@ public class SoftKeyboard extends InputMethodService
         
         // If the current selection in the text view changes, we should
         // clear whatever candidate text we have.
-        Keyboard current = mInputView.getKeyboard();
-        if (current == mSejongKeyboard) {
-        	
-        }
-        else if (current != mHangulKeyboard && current != mHangulShiftedKeyboard) {        	
-	        if (mComposing.length() > 0 && (newSelStart != candidatesEnd
-	                || newSelEnd != candidatesEnd)) {
-	            mComposing.setLength(0);
-	            updateCandidates();
-	            InputConnection ic = getCurrentInputConnection();
-	            if (ic != null) {
-	                ic.finishComposingText();
-	            }
-	        }
+        if (mComposing.length() > 0 && (newSelStart != candidatesEnd
+                || newSelEnd != candidatesEnd)) {
+            mComposing.setLength(0);
+            updateCandidates();
+            resetEngines();
+            InputConnection ic = getCurrentInputConnection();
+            if (ic != null) {
+                ic.finishComposingText();
+            }
         }
-        else {
-        	if (mComposing.length() > 0 && (newSelStart != candidatesEnd
-	                || newSelEnd != candidatesEnd)) {
-	            mComposing.setLength(0);
-//	            updateCandidates();
-	            clearHangul();
-	            InputConnection ic = getCurrentInputConnection();
-	            if (ic != null) {
-	                ic.finishComposingText();
-	            }        		
-        	}
-        }        
     }
 
     /**
@@ -479,6 +478,7 @@ public class SoftKeyboard extends InputMethodService
             mComposing.setLength(0);
             updateCandidates();
         }
+        resetEngines();
     }
 
     /**
@@ -518,24 +518,6 @@ public class SoftKeyboard extends InputMethodService
                 new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
     }
     
-    /**
-     * Helper to send a character to the editor as raw key events.
-     */
-    private void sendKey(int keyCode) {
-        switch (keyCode) {
-            case '\n':
-                keyDownUp(KeyEvent.KEYCODE_ENTER);
-                break;
-            default:
-                if (keyCode >= '0' && keyCode <= '9') {
-                    keyDownUp(keyCode - '0' + KeyEvent.KEYCODE_0);
-                } else {
-                    getCurrentInputConnection().commitText(String.valueOf((char) keyCode), 1);
-                }
-                break;
-        }
-    }
-
     // Implementation of KeyboardViewListener
 
     public void onKey(int primaryCode, int[] keyCodes) {
@@ -543,46 +525,20 @@ public class SoftKeyboard extends InputMethodService
     	
         if (isWordSeparator(primaryCode)) {
             // Handle separator
-            Keyboard current = mInputView.getKeyboard();
-
-            if (mComposing.length() > 0) {
-                commitTyped(getCurrentInputConnection());
-            }
-
-        	if (current == mHangulKeyboard || current == mHangulShiftedKeyboard ) {
-                clearHangul();
-                sendKey(primaryCode);
-            }
-            else if (current == mSejongKeyboard) {
-            	switch(ko_state_idx) {        	
-            	case KO_S_1110:            		
-        	        if (mComposing.length() > 0) {
-        	            mComposing.setLength(0);
-        	        	getCurrentInputConnection().finishComposingText();	        	
-        	        }			
-                	clearSejong();            	
-            		break;
-            	default :
-                	clearSejong();            	
-            		sendKey(primaryCode);
-            		break;
-            	}
-            }
-            else {
-            	sendKey(primaryCode);
+            InputEngine engine = currentEngine();
+            engine.separate(primaryCode, mEdits);
+            applyEdits();
+            if (engine == mLatinEngine) {
+                updateCandidates();
             }
             updateShiftKeyState(getCurrentInputEditorInfo());
         } else if (primaryCode == Keyboard.KEYCODE_DELETE) {
-            Keyboard current = mInputView.getKeyboard();
-            if (current == mHangulKeyboard || current == mHangulShiftedKeyboard ) {
-                hangulSendKey(-2,HCURSOR_NONE);
-            }
-            else if (current == mSejongKeyboard) {
-            	sendSejongKey((char)0,HCURSOR_DELETE);
-            }
-            else {
-                handleBackspace();            	
+            InputEngine engine = currentEngine();
+            handleDelete(engine);
+            if (engine == mLatinEngine) {
+                updateCandidates();
             }
+            updateShiftKeyState(getCurrentInputEditorInfo());
         } else if (primaryCode == Keyboard.KEYCODE_SHIFT) {
             handleShift();
         } else if (primaryCode == Keyboard.KEYCODE_CANCEL) {
@@ -606,27 +562,16 @@ public class SoftKeyboard extends InputMethodService
             }
             // Hangul Start Code
             else if (current == mQwertyKeyboard) {
-                if (mComposing.length() > 0) {
-                    commitTyped(getCurrentInputConnection());
-                }
-                clearHangul();
+                commitTyped(getCurrentInputConnection());
                 current = mHangulKeyboard;
             }            
             // Hangul End Code
             else if (current == mHangulKeyboard) {
-            	if (mComposing.length() > 0) {
-                  	getCurrentInputConnection().commitText(mComposing, mComposing.length());
-    	            mComposing.setLength(0);
-            	}            			
-            	clearSejong();
+                commitTyped(getCurrentInputConnection());
             	current = mSejongKeyboard;
             }
             else {
-            	if (mComposing.length() > 0) {
-                  	getCurrentInputConnection().commitText(mComposing, mComposing.length());
-    	            mComposing.setLength(0);
-            	}            			
-            	clearHangul();            	
+                commitTyped(getCurrentInputConnection());
                 current = mSymbolsKeyboard;
             }
             mInputView.setKeyboard(current);
@@ -642,22 +587,7 @@ public class SoftKeyboard extends InputMethodService
             }
         } 
         else {
-        	/* original code 
             handleCharacter(primaryCode, keyCodes);
-            */
-        	
-        	// Hangul Start Code
-        	Keyboard current = mInputView.getKeyboard();
-            if (current == mHangulKeyboard || current == mHangulShiftedKeyboard) {
-                handleHangul(primaryCode, keyCodes);
-            }
-            else if (current == mSejongKeyboard) {
-            	handleSejong(primaryCode, keyCodes);
-            }
-            else {
-                handleCharacter(primaryCode, keyCodes);
-            }        	
-            // Hangul End Code
         }
     }
 
@@ -702,22 +632,6 @@ public class SoftKeyboard extends InputMethodService
         }
     }
     
-    private void handleBackspace() {
-        final int length = mComposing.length();
-        if (length > 1) {
-            mComposing.delete(length - 1, length);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
-            updateCandidates();
-        } else if (length > 0) {
-            mComposing.setLength(0);
-            getCurrentInputConnection().commitText("", 0);
-            updateCandidates();
-        } else {
-            keyDownUp(KeyEvent.KEYCODE_DEL);
-        }
-        updateShiftKeyState(getCurrentInputEditorInfo());
-    }
-
     private void handleShift() {
         if (mInputView == null) {
             return;
@@ -757,124 +671,9 @@ public class SoftKeyboard extends InputMethodService
     }
 
 // Hangul Code Start
-    
-    private int isHangulKey(int stack_pos, int new_key) {
-    	/*    
-        MAP(0,20,1); // , 
-    	MAP(3,23,4); // ,
-    	MAP(3,29,5); // ,
-    	MAP(8,0,9); // ,
-    	MAP(8,16,10); // ,
-    	MAP(8,17,11); // ,
-    	MAP(8,20,12); // ,
-    	MAP(8,27,13); // ,
-    	MAP(8,28,14); // ,
-    	MAP(8,29,15); // ,
-    	MAP(17,20,19); // ,			
-    */	    	
-        if (stack_pos != 2) {
-            switch (mHangulKeyStack[stack_pos]) {
-            case 0:
-                if (new_key == 20) return 2;
-                break;
-            case 3:
-                if (new_key == 23) return 4;
-                else if(new_key == 29) return 5;
-                break;
-            case 8:
-                if (new_key == 0)return 9;
-                else if (new_key == 16) return 10;
-                else if (new_key == 17) return 11;
-                else if (new_key == 20) return 12;
-                else if (new_key == 27) return 13;
-                else if (new_key == 28) return 14;
-                else if (new_key == 29) return 15;
-                break;
-           case 17:
-                if (new_key == 20) return 19;
-                break;
-           }
-        }
-        else {
-        	/*        	 
-     		38, 30, 39 //   
-    		38, 31, 40 //   
-    		38, 50, 41 //  
-    		43, 34, 44 //   
-    		43, 35, 45 //   
-    		43, 50, 46 //   
-    		48, 50, 49 //   
-*/        	
-           switch (mHangulKeyStack[stack_pos]) {
-           case 38:
-               if (new_key == 30) return 39;
-               else if (new_key == 31) return 40;
-               else if (new_key == 50) return 41;
-               break;
-           case 43:
-               if (new_key == 34) return 44;
-               else if (new_key == 35) return 45;
-               else if (new_key == 50) return 46;
-               break;
-           case 48:
-               if (new_key == 50) return 49;
-               break;
-           }
-       }
-       return 0;
-    }
 
-    private static char HCURSOR_NONE = 0;
-    private static char HCURSOR_NEW = 1;
-    private static char HCURSOR_ADD = 2;
-    private static char HCURSOR_UPDATE = 3;
-    private static char HCURSOR_APPEND = 4;
-    private static char HCURSOR_UPDATE_LAST = 5;
-    private static char HCURSOR_DELETE_LAST = 6;
-    private static char HCURSOR_DELETE = 7;
-    
-    
-    private static int mHCursorState = HCURSOR_NONE;
-    private static char h_char[] = new char[1];    
     private int previousCurPos = -2;
-    private int previousHangulCurPos = -1;
     private int mHangulShiftState = 0;
-    private int mHangulState = 0;
-    private static int mHangulKeyStack[] = {0,0,0,0,0,0}; // ,,,,,
-    private static int mHangulJamoStack[] = {0,0,0};
-    final static int H_STATE_0 = 0;
-    final static int H_STATE_1 = 1;
-    final static int H_STATE_2 = 2;
-    final static int H_STATE_3 = 3;
-    final static int H_STATE_4 = 4;
-    final static int H_STATE_5 = 5;
-    final static int H_STATE_6 = 6;
-    final static char[] h_chosung_idx =  
-    {0,1, 9,2,12,18,3, 4,5, 0, 6,7, 9,16,17,18,6, 7, 8, 9,9,10,11,12,13,14,15,16,17,18};
-/*
-    {0, 1, 9, 2,12,18, 3,4, 5, 0, 6, 7, 9,16,17, 18,6, 7, 8, 9, 9,10,11, 12, 13,14,15,16,17,18};
-//   ,,,,,,,,,,,,,,, ,,,,,,,, , ,,, ,,
-//   ,,   ,      ,,,                     ,,,   ,,, , ,,, ,,	
-*/    
-    final static char[] h_jongsung_idx = 
-    {0, 1, 2, 3,4,5, 6, 7, 0,8, 9,10,11,12,13,14,15,16,17,0 ,18,19,20,21,22,0 ,23,24,25,26,27};
-/*
-    {0, 1, 2, 3, 4, 5, 6, 7, 0,8, 9,10,11, 12,13, 14,15,16, 17,0,18, 19,20,21,22, 0 ,23,24,25,26,27};
-//   x, ,,,,,,,,,,,, ,, ,,, ,,, ,, o,, ,, ,,,,
-	//  x                                                                                   	
-
-	//	,,,	,,,	,,,,,,,,,,,,,,
-*/
-    
-    final static int[] e2h_map = 
-    {16,47,25,22,6, 8,29,38,32,34,30,50,48,43,31,35,17,0, 3,20,36,28,23,27,42,26,
-     16,47,25,22,7, 8,29,38,32,34,30,50,48,43,33,37,18,1, 3,21,36,28,24,27,42,26};
-  /*
-//	 , ,, ,,,,, ,, ,,,, ,, ,,,,,, ,,, ,
-	{16,47,25, 22,6, 8,29,38, 32,34, 30,50,48,43,31,35, 17,0, 3, 20,36,28, 23,27,42,26,
-//	 , ,, ,,,,, ,, ,,,, ,, ,,,,,, ,,, 
-	 16,47,25, 22,7, 8,29,38, 32,34, 30,50,48,43,33,37, 18,1, 3, 21,36,28, 24,27,42,26}; 
-   */ 
 /*
 	final static char[] h_key_type =
 //		0						     1							  2	
@@ -889,1221 +688,97 @@ public class SoftKeyboard extends InputMethodService
 	0x314F, 
 */    
 
-    
-    private void clearHangul() {
-        mHCursorState = HCURSOR_NONE;
-        mHangulState = 0;
-        previousHangulCurPos = -1;
-        mHangulKeyStack[0] = 0; 
-        mHangulKeyStack[1] = 0;
-        mHangulKeyStack[2] = 0;
-        mHangulKeyStack[3] = 0;
-        mHangulKeyStack[4] = 0;
-        mHangulKeyStack[5] = 0;
-        mHangulJamoStack[0] = 0;
-        mHangulJamoStack[1] = 0;
-        mHangulJamoStack[2] = 0;
-        return;
-    }
-    
-    private void hangulSendKey(int newHangulChar, int hCursor) {
-
-		if (hCursor == HCURSOR_NEW) {
-			 Log.i("Hangul", "HCURSOR_NEW");
-			
-			mComposing.append((char)newHangulChar);
-			getCurrentInputConnection().setComposingText(mComposing, 1);
-			mHCursorState = HCURSOR_NEW;
-		}
-		else if (hCursor == HCURSOR_ADD) {
-			mHCursorState = HCURSOR_ADD;
-			 Log.i("Hangul", "HCURSOR_ADD");
-	        if (mComposing.length() > 0) {
-	            mComposing.setLength(0);
-	        	getCurrentInputConnection().finishComposingText();	        	
-	        }			
-	        
-	        mComposing.append((char)newHangulChar);
-			getCurrentInputConnection().setComposingText(mComposing, 1);
-		}
-		else if (hCursor == HCURSOR_UPDATE) {
-			 Log.i("Hangul", "HCURSOR_UPDATE");
-			mComposing.setCharAt(0, (char)newHangulChar);
-			getCurrentInputConnection().setComposingText(mComposing, 1);
-			mHCursorState = HCURSOR_UPDATE;
-		}
-		else if (hCursor == HCURSOR_APPEND) {
-			 Log.i("Hangul", "HCURSOR_APPEND");			
-			mComposing.append((char)newHangulChar);
-			getCurrentInputConnection().setComposingText(mComposing, 1);
-			mHCursorState = HCURSOR_APPEND;
-		}
-		else if (hCursor == HCURSOR_NONE) {
-			if (newHangulChar == -1) {
-				Log.i("Hangul", "HCURSOR_NONE [DEL -1]");
-				keyDownUp(KeyEvent.KEYCODE_DEL);
-				clearHangul();				
-			}
-			else if (newHangulChar == -2) {
-		        int hangulKeyIdx;
-		        int cho_idx,jung_idx,jong_idx;
-
-				 Log.i("Hangul", "HCURSOR_NONE [DEL -2]");
-		        
-				switch(mHangulState) {
-				case H_STATE_0:
-					keyDownUp(KeyEvent.KEYCODE_DEL);
-		            break;
-				case H_STATE_1: // ʼ
-//					keyDownUp(KeyEvent.KEYCODE_DEL);
-		            mComposing.setLength(0);
-		            getCurrentInputConnection().commitText("", 0);
-					clearHangul();
-					mHangulState = H_STATE_0;
-					break;
-				case H_STATE_2: // ʼ()
-	                newHangulChar = 0x3131 + mHangulKeyStack[0];
-	                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	                mHangulKeyStack[1] = 0;
-	                mHangulJamoStack[0] = mHangulKeyStack[0];
-	                mHangulState = H_STATE_1; // goto ʼ		
-	                break;
-				case H_STATE_3: // ߼(ܸ,)
-					if (mHangulKeyStack[3] == 0) {
-//						keyDownUp(KeyEvent.KEYCODE_DEL);
-			            mComposing.setLength(0);
-			            getCurrentInputConnection().commitText("", 0);
-						clearHangul();	
-						mHangulState = H_STATE_0;
-					}
-					else {
-						mHangulKeyStack[3] = 0;
-		                newHangulChar = 0x314F + (mHangulKeyStack[2] - 30);
-		                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-		                mHangulJamoStack[1] = mHangulKeyStack[2];
-		                mHangulState = H_STATE_3; // goto ߼												
-					}
-					break;
-				case H_STATE_4: // ʼ,߼(ܸ,)
-					if (mHangulKeyStack[3] == 0) {
-						mHangulKeyStack[2] = 0;
-						mHangulJamoStack[1] = 0;
-		                newHangulChar = 0x3131 + mHangulJamoStack[0];
-		                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-		                mHangulState = H_STATE_1; // goto ʼ						
-					}
-					else {
-						mHangulJamoStack[1]= mHangulKeyStack[2];
-						mHangulKeyStack[3] = 0;
-		                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-		                jung_idx = mHangulJamoStack[1] - 30;
-		                jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
-		                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-		                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-					}
-					break;
-				case H_STATE_5:	// ʼ,߼,
-					mHangulJamoStack[2] = 0;
-					mHangulKeyStack[4] = 0;
-	                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                jung_idx = mHangulJamoStack[1] - 30;
-	                jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
-	                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	                mHangulState = H_STATE_4;
-					break;
-				case H_STATE_6:		
-                    mHangulKeyStack[5] = 0;
-                    mHangulJamoStack[2] = mHangulKeyStack[4];
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                    mHangulState = H_STATE_5;
-					break;
-				}
-			}
-			else if (newHangulChar == -3) {
-				 Log.i("Hangul", "HCURSOR_NONE [DEL -3]");				
-		        final int length = mComposing.length();
-		        if (length > 1) {
-		            mComposing.delete(length - 1, length);				
-		        }
-			}
-			
-		}    	
-    }   
-
-    private int prevJaumKeyCode = 0;
-    
-        
-	final private char ko_first_state[] = {
-			1,3,4,6,7,8,10,12,13,	// 0
-			16,3,4,6,7,8,10,12,13,	// 1
-			1,3,4,6,7,8,10,12,13,	// 2 
-			1,3,4,6,7,8,10,12,13,	// 3
-			1,3,17,6,7,8,10,12,13,	// 4
-			1,3,4,6,7,8,10,12,13,	// 5
-			1,3,4,6,7,8,10,12,13,	// 6
-			1,3,4,6,7,8,10,12,13,	// 7
-			1,3,4,6,7,18,10,12,13,	// 8
-			1,3,4,6,7,8,10,12,13,	// 9
-			1,3,4,6,7,8,11,12,13,	// 10
-			1,3,4,6,7,8,10,12,13,	// 11
-			1,3,4,6,7,8,10,19,13,	// 12
-			1,3,4,6,7,8,10,12,15,	// 13
-			1,3,4,6,7,8,10,12,13,	// 14
-			1,3,4,6,7,8,10,12,14,	// 15
-			2,3,4,6,7,8,10,12,13,	// 16
-			1,3,5,6,7,8,10,12,13,	// 17
-			1,3,4,6,7,9,10,12,13,	// 18
-			1,3,4,6,7,8,10,12,13,	// 19
-		};	
-	
-	final private char ko_middle_state[] = {
-//		 	0			   1			     2		   	3			    4			    5		    	6			    7				
-			23,1,21,	7,2,11,		9,1,15,		4,5,0, 		0,0,0, 		6,3,0, 		0,0,0,		8,0,0,
-//		 	8			    9		     	10		   	11			  12		   	13			  14		   	15
-			0,0,0,		10,0,0,		0,0,0,		14,0,0,		13,0,0,		0,0,0,		0,12,0,		0,0,0,
-//			16			  17			  18			  19			  20			  21			  22		  	23
-			19,20,0,	18,0,0,		0,0,0,		0,0,0,		17,16,0,	22,16,0,	0,0,0,		0,3,0
-		};	
-	
-	final private char ko_last_state[] = {
-			1,4,7,8,16,17,19,21,22,	// 0
-			24,0,0,0,0,0,3,0,0,		// 1
-			1,0,0,0,0,0,0,0,0,		// 2	
-			0,0,0,0,0,0,31,0,0,		// 3
-			0,0,0,0,0,0,0,32,5,		// 4
-			0,0,0,0,0,0,0,0,33,		// 5
-			0,0,0,0,0,0,0,0,0,		// 6
-			0,0,25,0,0,0,0,0,0,		// 7
-			9,0,44,0,0,11,12,43,0,		// 8
-			36,0,0,0,0,0,0,0,0,		// 9
-			0,0,0,0,0,0,0,0,0,		// 10
-			0,0,0,0,0,14,0,0,0,		// 11
-			0,0,0,0,0,0,39,0,0,		// 12
-			0,0,45,0,0,0,0,0,0,		// 13
-			0,0,0,0,0,38,0,0,0,		// 14
-			0,0,0,0,0,0,0,43,0,		// 15
-			0,0,0,0,0,0,0,0,0,		// 16
-			0,0,0,0,0,26,18,0,0,		// 17
-			0,0,0,0,0,0,41,0,0,		// 18
-			0,0,0,0,0,0,20,0,0,		// 19
-			0,0,0,0,0,0,19,0,0,		// 20
-			0,0,0,0,0,0,0,0,0,		// 21
-			0,0,0,0,0,0,0,0,23,		// 22
-			0,0,0,0,0,0,0,0,42,		// 23
-			2,0,0,0,0,0,0,0,0,		// 24
-			0,0,28,0,0,0,0,0,0,		// 25
-			0,0,0,0,0,29,0,0,0,		// 26
-			0,0,0,0,0,0,0,0,0,		// 27
-			0,0,7,0,0,0,0,0,0,		// 28
-			0,0,0,0,0,17,0,0,0,		// 29
-			0,0,0,0,0,0,0,0,0,		// 30
-			0,0,0,0,0,0,3,0,0,		// 31
-			0,0,0,0,0,0,0,35,0,		// 32
-			0,0,0,0,0,0,0,0,34,		// 33
-			0,0,0,0,0,0,0,0,5,		// 34
-			0,0,0,0,0,0,0,32,0,		// 35
-			37,0,0,0,0,0,0,0,0,		// 36
-			9,0,0,0,0,0,0,0,0,		// 37
-			0,0,0,0,0,11,0,0,0,		// 38
-			0,0,0,0,0,0,12,0,0,		// 39
-			0,0,0,0,0,0,0,0,0,		// 40
-			0,0,0,0,0,0,18,0,0,		// 41
-			0,0,0,0,0,0,0,0,22,		// 42
-			0,0,0,0,0,0,0,15,0,		// 43
-			0,0,13,0,0,0,0,0,0,		// 44
-			0,0,44,0,0,0,0,0,0,		// 45
-		};	
-
-	final private char ko_jong_m_split[] = {
-			0,1, 0,2, 1,10, 0,3, 4,13,
-			4,19, 0,4, 0,6, 8,1, 8,7,
-			8,8, 8,10, 8,17, 8,18, 8,19,
-			0,7,0,8,17,10,0,10,0,11,
-			0,12,0,13,0,15,0,16,0,17,
-			0,18,0,19
-		};
-	
-	final private char ko_jong_l_split[] = {
-			0,5,0,9,
-			1,19,1,11,
-			4,12,4,15,4,14,4,19,
-			8,16,8,2,8,9,8,11,
-			17,19,17,11,
-			0,14,
-			8,12,8,4,8,5
-		};
-	
-	final private char jongsung_28idx[] = {
-			0, 0, 1, 1, 4, 4, 4, 8, 8, 8, 8, 17, 17, 0, 8, 8, 8 
-		};	
-	
-	final static char KO_S_0000 = 0;
-	final static char KO_S_0100 = 1;
-	final static char KO_S_1000 = 2;
-	final static char KO_S_1100 = 3;
-	final static char KO_S_1110 = 4;
-	final static char KO_S_1111 = 5;
-
-    private void clearSejong() {
-    	ko_state_idx = KO_S_0000;
-    	ko_state_first_idx = 0;
-    	ko_state_middle_idx = 0;
-    	ko_state_last_idx = 0;
-    	ko_state_next_idx = 0;
-    	prev_key = -1;
-        return;
-    }
-    
-    private int prev_key = -1;
-	private char ko_state_idx = KO_S_0000;
-	private char ko_state_first_idx; 
-	private char ko_state_middle_idx;
-	private char ko_state_last_idx;
-	private char ko_state_next_idx;
-
-	
-    final private int key_idx[] =   
-    	  {0, 1, 2, 3, 4, 5, 6, 7, 8,0,1,2,};
-    	// ,,,,,,, ,,,,,
-    
+    private final EditOps mEdits = new EditOps();
+    private final LatinEngine mLatinEngine = new LatinEngine();
+    private final HangulEngine mHangulEngine = new HangulEngine();
+    private final SejongEngine mSejongEngine = new SejongEngine();
+    private Handler mHandler = new Handler();
 
-    final private char chosung_code[] = {
-    		0, 1, 3, 6, 7, 8, 16, 17, 18, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29
-    	};
-    final private char jongsung_code[] = {
-    		0,1,2,3,4,5,6,  // 
-    		8,9,10,11,12,13,14,15,16,17, // 
-    		19,20,21,22,23, // 
-    		25,26,27,28,29
-    };
-    
-    final private char jungsung_stack[] = {
-    	// 1  2 3  4  5  6  7 8  9  10 11 12 13 14 15 16 17 18 19 20 21 22 23	
-    	// . .. ,,,,,,,,,,, ,,,,,,,,, 
-    	   0,0, 0, 0, 0, 0, 0, 0,0, 0, 0, 11,11,11, 0, 0,16,16,16,0, 0, 21, 0 	
+    /** Closes the Sejong consonant cycle once its timeout runs out. */
+    private Runnable mSejongCycleTimeout = new Runnable() {
+        public void run() {
+            mSejongEngine.getAutomata().endCycle();
+        }
     };
-    
-    private void sendSejongKey(char newHangulChar, char hCursor) {
-
-    	Log.i("Hangul", "newHangulChar[" + Integer.toString(newHangulChar) + "]");
-    	
-		if (hCursor == HCURSOR_NEW) {
-			 Log.i("Hangul", "HCURSOR_NEW");
-			
-			mComposing.append(newHangulChar);
-			getCurrentInputConnection().setComposingText(mComposing, 1);
-			mHCursorState = HCURSOR_NEW;
-		}
-		else if (hCursor == HCURSOR_ADD) {
-			mHCursorState = HCURSOR_ADD;
-			 Log.i("Hangul", "HCURSOR_ADD");
-	        if (mComposing.length() > 0) {
-	            mComposing.setLength(0);
-	        	getCurrentInputConnection().finishComposingText();	        	
-	        }			
-	        
-	        mComposing.append(newHangulChar);
-			getCurrentInputConnection().setComposingText(mComposing, 1);
-		}
-		else if (hCursor == HCURSOR_UPDATE) {
-			 Log.i("Hangul", "HCURSOR_UPDATE");
-			mComposing.setCharAt(0, newHangulChar);
-			getCurrentInputConnection().setComposingText(mComposing, 1);
-			mHCursorState = HCURSOR_UPDATE;
-		}
-		else if (hCursor == HCURSOR_APPEND) {
-			 Log.i("Hangul", "HCURSOR_APPEND");			
-			mComposing.append(newHangulChar);
-			getCurrentInputConnection().setComposingText(mComposing, 1);
-			mHCursorState = HCURSOR_APPEND;
-		}
-		else if (hCursor == HCURSOR_UPDATE_LAST) {
-			 Log.i("Hangul", "HCURSOR_UPDATE_LAST");
-				mComposing.setCharAt(1, newHangulChar);
-				getCurrentInputConnection().setComposingText(mComposing, 1);
-				mHCursorState = HCURSOR_UPDATE_LAST;	
-		}
-		else if (hCursor == HCURSOR_DELETE_LAST) {
-			 Log.i("Hangul", "HCURSOR_DELETE_LAST");				
-		     final int length = mComposing.length();
-		     if (length > 1) {
-		    	 Log.i("Hangul", "Delete start :" + Integer.toString(length));
-	            mComposing.delete(length - 1, length);	
-	            getCurrentInputConnection().setComposingText(mComposing, 1);
-			}			
-		}
-		else if (hCursor == HCURSOR_DELETE) {
-			char hChar;
-	        char cho_idx, jung_idx, jong_idx;
-        	switch(ko_state_idx) {        	
-        	case KO_S_0000: 
-        	case KO_S_0100:
-        	case KO_S_1000:
-				keyDownUp(KeyEvent.KEYCODE_DEL);
-				clearHangul();        		
-        		break;
-        	case KO_S_1100:
-        		ko_state_middle_idx = jungsung_stack[ko_state_middle_idx - 1];
-        		if (ko_state_middle_idx > 0) {
-    				cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-                	jung_idx = (char)(ko_state_middle_idx - 3);
-                	hChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28)));
-                    sendSejongKey(hChar, HCURSOR_UPDATE);        			
-        		}
-        		else {
-                    newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-                    sendSejongKey(newHangulChar, HCURSOR_UPDATE);				
-    				ko_state_idx = KO_S_1000;        		        			
-        		}
-        		break;
-        	case KO_S_1110:
-				cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-            	jung_idx = (char)(ko_state_middle_idx - 3);
-            	hChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28)));
-                sendSejongKey(hChar, HCURSOR_UPDATE);
-                ko_state_last_idx = 0;
-				ko_state_idx = KO_S_1110;        		        		                
-        		break;
-        	case KO_S_1111:
-				ko_state_last_idx = jongsung_28idx[ko_state_last_idx - 28];
-				sendSejongKey((char)0,HCURSOR_DELETE_LAST);
-				ko_state_next_idx = 0;
-				ko_state_idx = KO_S_1110;        		        		
-        		break;
-        	}			
-		}
-		 
-    }   
-    
-    private char getJungsungCode(char jungsung_idx)
-    {
-    	Log.i("Hangul", "getJungsungCode[" + Integer.toString(jungsung_idx) + "]");
-    	
-    	switch(jungsung_idx) {
-    	case 1:
-    		return 0xB7; // .
-    		// return 0x318D; .
-    	case 2:
-    		return 0x3A; // :
-    		// return 0x2025; // .. 
-    	default :
-    		return  (char)(0x314F + jungsung_idx - 3);
-    	}
-    }
-    
-	private void handleSejong(int primaryCode, int[] keyCodes) {
 
-		char new_last_idx;
-        int base_idx;
-        char new_state_idx;
-        int idx;
-        char newHangulChar;
-        char cho_idx, jung_idx, jong_idx;
-        int key = primaryCode;
-        
-        base_idx = primaryCode - 0x41;
-		idx = key_idx[base_idx];
-
-		Log.i("Hangul", "state[" + Integer.toString(ko_state_idx) + "]" + "["
-				+ Integer.toString(ko_state_first_idx) + ","
-				+ Integer.toString(ko_state_middle_idx) + ","
-				+ Integer.toString(ko_state_last_idx) + ","
-				+ Integer.toString(ko_state_next_idx) + "]" 
-				);
-		Log.i("Hangul", "base_idx,idx[" + Integer.toString(base_idx) +
-									":" + Integer.toString(idx) + "]");
-        if (base_idx < 9) {
-        	switch(ko_state_idx) {        	
-        	case KO_S_0000: // clear
-				ko_state_first_idx = ko_first_state[ko_state_first_idx * 9 + idx];
-//				sendSejongKey((char)(0x3131 + chosung_code[ko_state_first_idx - 1]),HCURSOR_ADD);
-                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-                sendSejongKey(newHangulChar, HCURSOR_NEW);				
-				ko_state_idx = KO_S_1000;        		
-        		break;
-        	case KO_S_0100: // ߼
-				ko_state_first_idx = ko_first_state[ko_state_first_idx * 9 + idx];
-				ko_state_middle_idx = 0;
-//				sendSejongKey((char)(0x3131 + chosung_code[ko_state_first_idx - 1]),HCURSOR_ADD);
-                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-                sendSejongKey(newHangulChar, HCURSOR_NEW);				
-				ko_state_idx = KO_S_1000;     		
-        		break;
-        	case KO_S_1000: // ʼ
-				if (key == prev_key) {
-					new_state_idx = ko_first_state[ko_state_first_idx * 9 + idx];
-					if (new_state_idx == ko_state_first_idx) {
-		                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-		                sendSejongKey(newHangulChar, HCURSOR_ADD);				
-//						sendSejongKey((char)(0x3131 + chosung_code[ko_state_first_idx - 1]),HCURSOR_ADD);						
-					}
-					else {
-						ko_state_first_idx = new_state_idx;
-		                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-		                sendSejongKey(newHangulChar, HCURSOR_UPDATE);				
-//						sendSejongKey((char)(0x3131 + chosung_code[ko_state_first_idx - 1]),HCURSOR_UPDATE);
-					}
-				}
-				else {
-					// cursor_pos++;
-					// cursor_len = 0;
-					ko_state_first_idx = ko_first_state[idx];
-//					sendSejongKey((char)(0x3131 + chosung_code[ko_state_first_idx - 1]),HCURSOR_ADD);
-	                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-	                sendSejongKey(newHangulChar, HCURSOR_ADD);				
-				}
-        		break;
-        	case KO_S_1100: // ʼ,߼
-				ko_state_last_idx = ko_last_state[ko_state_last_idx * 9 + idx];
-				Log.i("Hangul","ko_state_last_idx[" + Integer.toString(ko_state_last_idx) + "]");
-//				sendSejongKey((char)(0x3131 + jongsung_code[ko_state_last_idx - 1]) ,HCURSOR_ADD);
-				if (ko_state_middle_idx > 2) {
-	                cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-	                jung_idx = (char)(ko_state_middle_idx - 3);
-	                jong_idx = h_jongsung_idx[jongsung_code[ko_state_last_idx - 1]+1];
-	                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx));
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE);
-					ko_state_idx = KO_S_1110;        		
-				}
-				else {
-					Log.i("Hangul", "Not Combination...");
-					// must be implemented.
-				}
-        		break;
-        	case KO_S_1110:
-				new_last_idx = ko_last_state[ko_state_last_idx * 9 + idx];
-				
-				if(new_last_idx >= 28) {
-					ko_state_last_idx = new_last_idx;
-					ko_state_next_idx 
-						= ko_jong_l_split[(new_last_idx - 28) * 2 + 1];
-
-//					sendSejongKey((char)(0x3131 + chosung_code[ko_state_next_idx - 1]),HCURSOR_ADD);
-
-					cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-	                jung_idx = (char)(ko_state_middle_idx - 3);
-	                char split_last_idx = jongsung_28idx[ko_state_last_idx - 28];
-	                Log.i("Hangul", "split_last_idx[" + Integer.toString(split_last_idx) + "]");
-	                if (split_last_idx > 0) {
-//	 	               Log.i("Hangul", "jongsung_code[" + Integer.toString(jongsung_code[split_last_idx-1]) + "]");
-//	    	            Log.i("Hangul", "jong_idx[" + Integer.toString(h_jongsung_idx[jongsung_code[split_last_idx - 1]+1]) + "]");
-		                jong_idx = h_jongsung_idx[jongsung_code[split_last_idx - 1]+1];
-		                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx));
-	                }
-	                else {
-	                	newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28)));
-	                }
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE);
-
-					newHangulChar = (char)(0x3131 + chosung_code[ko_state_next_idx - 1]);
-	                sendSejongKey(newHangulChar, HCURSOR_APPEND);
-	                									
-					ko_state_idx = KO_S_1111;
-				}
-				else if (new_last_idx == 0) {
-
-					// cursor_pos++;
-					// cursor_len = 0;
-
-					ko_state_first_idx = 0;
-					ko_state_middle_idx = 0;
-					ko_state_last_idx = 0;
-
-					idx = key_idx[base_idx];
-					ko_state_first_idx = ko_first_state[ko_state_first_idx * 9 + idx];
-//					sendSejongKey((char)(0x3131 + chosung_code[ko_state_first_idx - 1]),HCURSOR_ADD);
-	                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-	                sendSejongKey(newHangulChar, HCURSOR_ADD);									
-					ko_state_idx = KO_S_1000;
-				}
-				else {
-					ko_state_last_idx = new_last_idx;					
-//					sendSejongKey((char)(0x3131 + jongsung_code[ko_state_last_idx - 1]) ,HCURSOR_UPDATE);
-	                cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-	                jung_idx = (char)(ko_state_middle_idx - 3);
-	                jong_idx = h_jongsung_idx[jongsung_code[ko_state_last_idx - 1]+1];
-	                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx));
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE);
-				}
-        		
-        		break;
-        	case KO_S_1111:
-				new_last_idx = ko_last_state[ko_state_last_idx * 9 + idx];
-				
-				if(new_last_idx >= 28) {
-					ko_state_next_idx 
-						= ko_jong_l_split[(new_last_idx - 28) * 2 + 1];
-//					sendSejongKey((char)(0x3131 + chosung_code[ko_state_next_idx - 1]),HCURSOR_UPDATE);
-					ko_state_last_idx = new_last_idx;
-
-					cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-	                jung_idx = (char)(ko_state_middle_idx - 3);
-	                char split_last_idx = jongsung_28idx[ko_state_last_idx - 28];
-	                jong_idx = h_jongsung_idx[jongsung_code[split_last_idx - 1]+1];
-	                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx));
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE);
-
-					newHangulChar = (char)(0x3131 + chosung_code[ko_state_next_idx - 1]);
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE_LAST);
-					
-					ko_state_idx = KO_S_1111;
-				}
-				else {
-					if (prev_key == key) {
-						ko_state_last_idx = new_last_idx;
-						// delete last cursor
-//						sendSejongKey((char)(0x3131 + jongsung_code[ko_state_last_idx - 1]) ,HCURSOR_UPDATE);
-						ko_state_next_idx = 0;
-
-						cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-		                jung_idx = (char)(ko_state_middle_idx - 3);
-		                jong_idx = h_jongsung_idx[jongsung_code[ko_state_last_idx - 1]+1];
-		                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx));
-		                sendSejongKey(newHangulChar, HCURSOR_UPDATE);
-						
-		                sendSejongKey((char)0,HCURSOR_DELETE_LAST);
-						ko_state_idx = KO_S_1110;
-					}
-					else { 
-						clearSejong();
-						ko_state_first_idx = ko_first_state[ko_state_first_idx * 9 + idx];
-//						sendSejongKey((char)(0x3131 + chosung_code[ko_state_first_idx - 1]),HCURSOR_ADD);
-		                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-		                sendSejongKey(newHangulChar, HCURSOR_ADD);										
-						ko_state_idx = KO_S_1000;
-					}
-				}        		
-        		break;
-        	
-        	}
+    /** The engine for the keyboard on screen. */
+    private InputEngine currentEngine() {
+        Keyboard current = mInputView.getKeyboard();
+        if (current == mHangulKeyboard || current == mHangulShiftedKeyboard) {
+            return mHangulEngine;
         }
-        else {        	
-			switch(ko_state_idx) {
-        	
-        	case KO_S_0000:
-        		/*
-				if (ko_middle_state[ko_state_middle_idx * 3 + idx] == 0) {
-					ko_state_middle_idx = 0;
-				}
-				*/
-				ko_state_middle_idx = ko_middle_state[ko_state_middle_idx * 3 + idx];
-//				sendSejongKey(getJungsungCode(ko_state_middle_idx),HCURSOR_ADD);
-                newHangulChar = getJungsungCode(ko_state_middle_idx);
-                sendSejongKey(newHangulChar, HCURSOR_NEW);				
-				ko_state_idx = KO_S_0100;        		
-        		break;
-        	case KO_S_0100:
-				if (ko_middle_state[ko_state_middle_idx * 3 + idx] == 0) {
-					// cursor_pos++;
-					// cursor_len = 0;
-					ko_state_middle_idx = 0;
-					ko_state_middle_idx = ko_middle_state[ko_state_middle_idx * 3 + idx];
-//					sendSejongKey(getJungsungCode(ko_state_middle_idx),HCURSOR_ADD);
-	                newHangulChar = getJungsungCode(ko_state_middle_idx);					
-	                sendSejongKey(newHangulChar, HCURSOR_ADD);				
-				}
-				else {
-					ko_state_middle_idx = ko_middle_state[ko_state_middle_idx * 3 + idx];
-//					sendSejongKey(getJungsungCode(ko_state_middle_idx),HCURSOR_UPDATE);
-	                newHangulChar = getJungsungCode(ko_state_middle_idx);					
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE);				
-				}        		
-        		break;
-        	case KO_S_1000:
-        		/*
-				if (ko_middle_state[ko_state_middle_idx * 3 + idx] == 0) {
-					ko_state_middle_idx = 0;
-				}
-				*/
-				ko_state_middle_idx = ko_middle_state[ko_state_middle_idx * 3 + idx];
-//				sendSejongKey(getJungsungCode(ko_state_middle_idx),HCURSOR_ADD);
-				
-				if (ko_state_middle_idx > 2) {
-					cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-                	jung_idx = (char)(ko_state_middle_idx - 3);
-//                	jong_idx = jongsung_code[ko_state_last_idx - 1];
-	                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28)));
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE);				
-                }
-                else {
-                    newHangulChar = getJungsungCode(ko_state_middle_idx);
-                    sendSejongKey(newHangulChar, HCURSOR_APPEND);				
-					// must be implemented.                	
-                }
-				ko_state_idx = KO_S_1100;
-        		break;
-        	case KO_S_1100:
-				if (ko_middle_state[ko_state_middle_idx * 3 + idx] == 0) {
-					// cursor_pos++;
-					// cursor_len = 0;
-					ko_state_first_idx = 0;
-					ko_state_middle_idx = 0;
-					ko_state_middle_idx = ko_middle_state[ko_state_middle_idx * 3 + idx];
-//					sendSejongKey(getJungsungCode(ko_state_middle_idx),HCURSOR_ADD);
-	                newHangulChar = getJungsungCode(ko_state_middle_idx);					
-	                sendSejongKey(newHangulChar, HCURSOR_ADD);				
-					ko_state_idx = KO_S_0100;
-				}
-				else {
-					ko_state_middle_idx = ko_middle_state[ko_state_middle_idx * 3 + idx];
-					if (ko_state_middle_idx > 2) {
-	//					sendSejongKey(getJungsungCode(ko_state_middle_idx),HCURSOR_UPDATE);
-		                cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-		                jung_idx = (char)(ko_state_middle_idx - 3);
-	//	                jong_idx = jongsung_code[ko_state_last_idx - 1];
-		                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28)));
-		                sendSejongKey(newHangulChar, HCURSOR_UPDATE);
-		                sendSejongKey((char)0,HCURSOR_DELETE_LAST);
-					}
-					else {
-	                    newHangulChar = getJungsungCode(ko_state_middle_idx);
-	                    sendSejongKey(newHangulChar, HCURSOR_UPDATE_LAST);										
-					}
-				}
-        		
-        		break;
-        	case KO_S_1110:
-				if (ko_jong_m_split[(ko_state_last_idx - 1) * 2] > 0) {
-					// update jongsong 
-//					sendSejongKey((char)(0x3131 + ko_jong_m_split[(ko_state_last_idx - 1) * 2]) ,HCURSOR_UPDATE);
-					cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-	                jung_idx = (char)(ko_state_middle_idx - 3);
-	                jong_idx = h_jongsung_idx[jongsung_code[ko_jong_m_split[(ko_state_last_idx - 1) * 2]]];
-	                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx));
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE);
-
-
-					// xc_input_automata_push(1,	ko_state_first_idx - 1, 
-					//						ko_state_middle_idx - 1,
-					//						ko_jong_m_split[(ko_state_last_idx - 1) * 2],-1);
-
-				}
-				else {
-					// xc_input_automata_push(1,ko_state_first_idx - 1, 
-					//						ko_state_middle_idx - 1,-1,-1);
-					/// delete jongsong
-					cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-	                jung_idx = (char)(ko_state_middle_idx - 3);
-	                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28)));
-	                sendSejongKey(newHangulChar, HCURSOR_UPDATE);
-				}
-
-				// cursor_pos++;
-				// cursor_len = 0;
-
-				ko_state_first_idx 
-					= ko_jong_m_split[(ko_state_last_idx - 1) * 2 + 1];
-				ko_state_middle_idx = 0;
-				ko_state_middle_idx = ko_middle_state[ko_state_middle_idx * 3 + idx];			
-                
-                if (ko_state_middle_idx > 2) {
-    				cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-                    jung_idx = (char)(ko_state_middle_idx - 3);
-//                  jong_idx = jongsung_code[ko_state_last_idx - 1];
-	                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28)));
-	                sendSejongKey(newHangulChar, HCURSOR_ADD);				
-					ko_state_idx = KO_S_1100;
-                }
-                else {
-	                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-	                sendSejongKey(newHangulChar, HCURSOR_ADD);				                	
-                    newHangulChar = getJungsungCode(ko_state_middle_idx);
-                    sendSejongKey(newHangulChar, HCURSOR_APPEND);				
-					// must be implemented.                	
-                }
-
-				ko_state_last_idx = 0;
-				ko_state_idx = KO_S_1100;        		
-        		break;
-        	case KO_S_1111:
-				if (ko_state_last_idx >= 28) {
-					ko_state_last_idx = jongsung_28idx[ko_state_last_idx - 28];
-				}
-				// xc_input_automata_push(1, 	ko_state_first_idx - 1, 
-				//						ko_state_middle_idx - 1,
-				//						ko_state_last_idx,-1);
-				// cursor_pos++;
-				// cursor_len = 0;
-
-				ko_state_first_idx = ko_state_next_idx;								
-				ko_state_middle_idx = 0;
-				ko_state_middle_idx = ko_middle_state[ko_state_middle_idx * 3 + idx];
-				
-				sendSejongKey((char)0,HCURSOR_DELETE_LAST);
-				
-                if (ko_state_middle_idx > 2) {
-    				cho_idx = h_chosung_idx[chosung_code[ko_state_first_idx - 1]];
-                    jung_idx = (char)(ko_state_middle_idx - 3);
-//                  jong_idx = jongsung_code[ko_state_last_idx - 1];
-	                newHangulChar = (char)(0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28)));
-	                sendSejongKey(newHangulChar, HCURSOR_ADD);				
-					ko_state_idx = KO_S_1100;
-                }
-                else {
-	                newHangulChar = (char)(0x3131 + chosung_code[ko_state_first_idx - 1]);
-	                sendSejongKey(newHangulChar, HCURSOR_ADD);				                	
-                    newHangulChar = getJungsungCode(ko_state_middle_idx);
-                    sendSejongKey(newHangulChar, HCURSOR_APPEND);				
-                }
-
-                ko_state_last_idx = 0;
-				ko_state_next_idx = 0;
-				ko_state_idx = KO_S_1100;        		
-        		break;
-        	
-        	}        	
+        if (current == mSejongKeyboard) {
+            return mSejongEngine;
         }
-        
-//        sendSeongKey();
-        
-        prev_key = key;
+        return mLatinEngine;
     }
-    
 
-    private void handleHangul(int primaryCode, int[] keyCodes) {
-
-        int hangulKeyIdx = -1;
-        int newHangulChar;
-        int cho_idx,jung_idx,jong_idx;
-        int hangulChar = 0;
-/*        
-        if (mHangulCursorMoved == 1) {
-        	clearHangul();
-        	Log.i("Hangul", "clear Hangul at handleHangul by mHangulCursorMoved");
-        	mHangulCursorMoved = 0;
-        }
-*/        
-       	// Log.i("Hangul", "PrimaryCode[" + Integer.toString(primaryCode)+"]"); 
+    private void resetEngines() {
+        mHandler.removeCallbacks(mSejongCycleTimeout);
+        mLatinEngine.reset();
+        mHangulEngine.reset();
+        mSejongEngine.reset();
+    }
 
-        if (primaryCode >= 0x61 && primaryCode <= 0x7A) {
-    //            Log.i("SoftKey", "handleHangul - hancode");
+    /** Sends what the engine recorded to the editor in one batch. */
+    private void applyEdits() {
+        mEdits.apply(getCurrentInputConnection(), mComposing);
+    }
 
-            if (mHangulShiftState == 0) {
-            	hangulKeyIdx = e2h_map[primaryCode - 0x61];
-            }
-            else {
-            	hangulKeyIdx = e2h_map[primaryCode - 0x61 + 26];   
-//                Keyboard currentKeyboard = mInputView.getKeyboard();
-            	mHangulShiftedKeyboard.setShifted(false);
-                mInputView.setKeyboard(mHangulKeyboard);
-                mHangulKeyboard.setShifted(false);
-                mHangulShiftState = 0;                           	
+    private void handleCharacter(int primaryCode, int[] keyCodes) {
+        InputEngine engine = currentEngine();
+        if (engine == mHangulEngine) {
+            if (mHangulShiftState != 0) {
+                primaryCode = Character.toUpperCase(primaryCode);
+                if (primaryCode >= 'A' && primaryCode <= 'Z') {
+                    mHangulShiftedKeyboard.setShifted(false);
+                    mInputView.setKeyboard(mHangulKeyboard);
+                    mHangulKeyboard.setShifted(false);
+                    mHangulShiftState = 0;
+                }
             }
-            hangulChar = 1;
         }
-        else if (primaryCode >= 0x41 && primaryCode <= 0x5A) {
-        	hangulKeyIdx = e2h_map[primaryCode - 0x41 + 26];   
-        	hangulChar = 1;
+        else if (engine == mLatinEngine && isInputViewShown() && mInputView.isShifted()) {
+            primaryCode = Character.toUpperCase(primaryCode);
         }
-        /*
-        else  if (primaryCode >= 0x3131 && primaryCode <= 0x3163) {
-        	hangulKeyIdx = primaryCode - 0x3131;
-        	hangulChar = 1;
+        long eventTime = SystemClock.uptimeMillis();
+        if (mInputView instanceof LatinKeyboardView) {
+            eventTime = ((LatinKeyboardView) mInputView).getLastDownTime();
         }
-        */
-        else {
-        	hangulChar = 0;
+        if (engine == mSejongEngine) {
+            mHandler.removeCallbacks(mSejongCycleTimeout);
+            mHandler.postAtTime(mSejongCycleTimeout,
+                    eventTime + mSejongEngine.getAutomata().getCycleTimeout());
         }
-        
-        
-        if (hangulChar == 1) {
-        	
-	        switch(mHangulState) {
-	
-	        case H_STATE_0: // Hangul Clear State
-	            // Log.i("SoftKey", "HAN_STATE 0");
-	            if (hangulKeyIdx < 30) { // if 
-	                newHangulChar = 0x3131 + hangulKeyIdx;
-	                hangulSendKey(newHangulChar, HCURSOR_NEW);
-	                mHangulKeyStack[0] = hangulKeyIdx; 
-	                mHangulJamoStack[0] = hangulKeyIdx;
-	                mHangulState = H_STATE_1; // goto ʼ
-	            }
-	            else { // if 
-	                newHangulChar = 0x314F + (hangulKeyIdx - 30);
-	                hangulSendKey(newHangulChar, HCURSOR_NEW);
-	                mHangulKeyStack[2] = hangulKeyIdx;
-	                mHangulJamoStack[1] = hangulKeyIdx;
-	                mHangulState = H_STATE_3; // goto ߼
-	            }
-	            break;
-	
-	        case H_STATE_1: // ʼ
-	            // Log.i("SoftKey", "HAN_STATE 1");
-	            if (hangulKeyIdx < 30) { // if 
-	                int newHangulKeyIdx = isHangulKey(0,hangulKeyIdx);
-	                if (newHangulKeyIdx > 0) { // if 
-	                    newHangulChar = 0x3131 + newHangulKeyIdx;
-	                    mHangulKeyStack[1] = hangulKeyIdx;
-	                    mHangulJamoStack[0] = newHangulKeyIdx;
-//	                    hangulSendKey(-1);
-	                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	                    mHangulState = H_STATE_2; // goto ʼ()
-	                }
-	                else { // if 
-	                	
-	                	// cursor error trick start
-		                newHangulChar = 0x3131 + mHangulJamoStack[0];
-	                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-	                    // trick end
-	                	
-	                    newHangulChar = 0x3131 + hangulKeyIdx;
-	                    hangulSendKey(newHangulChar, HCURSOR_ADD);
-	                    mHangulKeyStack[0] = hangulKeyIdx;
-	                    mHangulJamoStack[0] = hangulKeyIdx;
-	                    mHangulState = H_STATE_1; // goto ʼ
-	                }
-	            }
-	            else { // if 
-	                mHangulKeyStack[2] = hangulKeyIdx;
-	                mHangulJamoStack[1] = hangulKeyIdx;
-//	                hangulSendKey(-1);
-	                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                jung_idx = mHangulJamoStack[1] - 30;
-	                jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
-	                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	                mHangulState = H_STATE_4; // goto ʼ,߼
-	            }
-	            break;
-	
-	        case H_STATE_2: // ʼ()
-	            // Log.i("SoftKey", "HAN_STATE 2");
-	            if (hangulKeyIdx < 30) { // if 
-	            	
-                	// cursor error trick start
-	                newHangulChar = 0x3131 + mHangulJamoStack[0];
-                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                    // trick end
-	            	
-	            	
-	                mHangulKeyStack[0] = hangulKeyIdx;
-	                mHangulJamoStack[0] = hangulKeyIdx;
-	                mHangulJamoStack[1] = 0;
-	                newHangulChar = 0x3131 + hangulKeyIdx;
-	                hangulSendKey(newHangulChar, HCURSOR_ADD);
-	                mHangulState = H_STATE_1; // goto ʼ
-	            }
-	            else { // if 
-	                newHangulChar = 0x3131 + mHangulKeyStack[0];
-	                mHangulKeyStack[0] = mHangulKeyStack[1];
-	                mHangulJamoStack[0] = mHangulKeyStack[0];
-	                mHangulKeyStack[1] = 0;
-//	                hangulSendKey(-1);
-	                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	
-	                mHangulKeyStack[2] = hangulKeyIdx;
-	                mHangulJamoStack[1] = mHangulKeyStack[2];
-	                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                jung_idx = mHangulJamoStack[1] - 30;
-	                jong_idx = 0;
-	
-	                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                hangulSendKey(newHangulChar, HCURSOR_ADD);
-	                mHangulState = H_STATE_4; // goto ʼ,߼
-	            }
-	            break;
-	            
-	        case H_STATE_3: // ߼(ܸ,)
-	            // Log.i("SoftKey", "HAN_STATE 3");
-	            if (hangulKeyIdx < 30) { // 
-	            	
-                	// cursor error trick start
-	                newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
-	                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                    // trick end
-	            	
-	                newHangulChar = 0x3131 + hangulKeyIdx;
-	                hangulSendKey(newHangulChar, HCURSOR_ADD);
-	                mHangulKeyStack[0] = hangulKeyIdx;
-	                mHangulJamoStack[0] = hangulKeyIdx;
-	                mHangulJamoStack[1] = 0;
-	                mHangulState = H_STATE_1; // goto ʼ
-	            }
-	            else { // 
-	            	if (mHangulKeyStack[3] == 0) {	            		
-		                int newHangulKeyIdx = isHangulKey(2,hangulKeyIdx);
-		                if (newHangulKeyIdx > 0) { // 
-	//	                	hangulSendKey(-1);
-		                    newHangulChar = 0x314F + (newHangulKeyIdx - 30);
-		                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-		                    mHangulKeyStack[3] = hangulKeyIdx;
-		                    mHangulJamoStack[1] = newHangulKeyIdx;
-		                }
-		                else { // 
-		                	
-		                	// cursor error trick start
-		                    newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
-		                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-		                    // trick end
-							
-		                    newHangulChar = 0x314F + (hangulKeyIdx - 30);
-		                    hangulSendKey(newHangulChar,HCURSOR_ADD);
-		                    mHangulKeyStack[2] = hangulKeyIdx;
-		                    mHangulJamoStack[1] = hangulKeyIdx;
-		                }
-	            	}
-	            	else {
-	            		
-	                	// cursor error trick start
-	                    newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
-	                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	                    // trick end
-						
-	                    newHangulChar = 0x314F + (hangulKeyIdx - 30);
-	                    hangulSendKey(newHangulChar,HCURSOR_ADD);
-	                    mHangulKeyStack[2] = hangulKeyIdx;
-	                    mHangulJamoStack[1] = hangulKeyIdx;	            	
-	                    mHangulKeyStack[3] = 0;
-	            	}
-	                mHangulState = H_STATE_3;
-	            }
-	            break;
-	        case H_STATE_4: // ʼ,߼(ܸ,)
-	           // Log.i("SoftKey", "HAN_STATE 4");
-	            if (hangulKeyIdx < 30) { // if 
-	                mHangulKeyStack[4] = hangulKeyIdx;
-	                mHangulJamoStack[2] = hangulKeyIdx;
-//	                hangulSendKey(-1);
-	                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                jung_idx = mHangulJamoStack[1] - 30;
-	                jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];
-	                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	                if (jong_idx == 0) { // if  is not valid ex,  + 
-	                    mHangulKeyStack[0] = hangulKeyIdx;
-	                    mHangulKeyStack[1] = 0;
-	                    mHangulKeyStack[2] = 0;
-	                    mHangulKeyStack[3] = 0;
-	                    mHangulKeyStack[4] = 0;
-	                    mHangulJamoStack[0] = hangulKeyIdx;
-	                    mHangulJamoStack[1] = 0;
-	                    mHangulJamoStack[2] = 0;
-	                    newHangulChar = 0x3131 + hangulKeyIdx;
-	                    hangulSendKey(newHangulChar,HCURSOR_ADD);		                
-		                mHangulState = H_STATE_1; // goto ʼ
-	                }
-	                else {
-	                	mHangulState = H_STATE_5; // goto ʼ,߼,
-	                }
-	            }
-	            else { // if 
-	            	if (mHangulKeyStack[3] == 0) {
-		                int newHangulKeyIdx = isHangulKey(2,hangulKeyIdx);
-		                if (newHangulKeyIdx > 0) { // if 
-	//	                	hangulSendKey(-1);
-	//	                    mHangulKeyStack[2] = newHangulKeyIdx;
-		                    mHangulKeyStack[3] = hangulKeyIdx;
-		                    mHangulJamoStack[1] = newHangulKeyIdx;
-		                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-		                    jung_idx = mHangulJamoStack[1] - 30;
-		                    jong_idx = 0;
-		                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-		                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-		                    mHangulState = H_STATE_4; // goto ʼ,߼
-		                }
-		                else { // if invalid 
-		                	
-		                	// cursor error trick start
-			                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-			                jung_idx = mHangulJamoStack[1] - 30;
-			                jong_idx = 0;		
-			                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-		                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-		                    // trick end
-		                	
-		                    newHangulChar = 0x314F + (hangulKeyIdx - 30);
-		                    hangulSendKey(newHangulChar,HCURSOR_ADD);
-		                    mHangulKeyStack[0] = 0;
-		                    mHangulKeyStack[1] = 0;
-		                    mHangulJamoStack[0] = 0;
-		                    mHangulKeyStack[2] = hangulKeyIdx;
-		                    mHangulJamoStack[1] = hangulKeyIdx;
-		                    mHangulState = H_STATE_3; // goto ߼
-		                }
-	            	}
-	            	else {
-	            		
-	                	// cursor error trick start
-		                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-		                jung_idx = mHangulJamoStack[1] - 30;
-		                jong_idx = 0;		
-		                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-	                    // trick end
-	                	
-	            		
-	                    newHangulChar = 0x314F + (hangulKeyIdx - 30);
-	                    hangulSendKey(newHangulChar,HCURSOR_ADD);
-	                    mHangulKeyStack[0] = 0;
-	                    mHangulKeyStack[1] = 0;
-	                    mHangulJamoStack[0] = 0;
-	                    mHangulKeyStack[2] = hangulKeyIdx;
-	                    mHangulJamoStack[1] = hangulKeyIdx;
-	                    mHangulKeyStack[3] = 0;
-	                    mHangulState = H_STATE_3; // goto ߼
-	            		
-	            	}
-	            }
-	            break;
-	        case H_STATE_5: // ʼ,߼,
-	            // Log.i("SoftKey", "HAN_STATE 5");
-	            if (hangulKeyIdx < 30) { // if 
-	                int newHangulKeyIdx = isHangulKey(4,hangulKeyIdx);
-	                if (newHangulKeyIdx > 0) { // if  == 
-//	                	hangulSendKey(-1);
-	                    mHangulKeyStack[5] = hangulKeyIdx;
-	                    mHangulJamoStack[2] = newHangulKeyIdx;
-	
-	                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                    jung_idx = mHangulJamoStack[1] - 30;
-	                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-	                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-	                    mHangulState = H_STATE_6; // goto  ʼ,߼,()
-	                }
-	                else { // if  != 
-	                	
-	                	// cursor error trick start
-	                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                    jung_idx = mHangulJamoStack[1] - 30;
-	                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-	                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-	                    // trick end
-	                    
-	                	
-	                    mHangulKeyStack[0] = hangulKeyIdx;
-	                    mHangulKeyStack[1] = 0;
-	                    mHangulKeyStack[2] = 0;
-	                    mHangulKeyStack[3] = 0;
-	                    mHangulKeyStack[4] = 0;
-	                    mHangulJamoStack[0] = hangulKeyIdx;
-	                    mHangulJamoStack[1] = 0;
-	                    mHangulJamoStack[2] = 0;
-	                    newHangulChar = 0x3131 + hangulKeyIdx;
-	                    hangulSendKey(newHangulChar,HCURSOR_ADD);
-	                    mHangulState = H_STATE_1; // goto ʼ
-	                }
-	            }
-	            else { // if 
-//	            	hangulSendKey(-1);
-	
-	                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                jung_idx = mHangulJamoStack[1] - 30;
-	                jong_idx = 0;
-	                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	
-	                mHangulKeyStack[0] = mHangulKeyStack[4];
-	                mHangulKeyStack[1] = 0;
-	                mHangulKeyStack[2] = hangulKeyIdx;
-	                mHangulKeyStack[3] = 0;
-	                mHangulKeyStack[4] = 0;
-	                mHangulJamoStack[0] = mHangulKeyStack[0];
-	                mHangulJamoStack[1] = mHangulKeyStack[2];
-	                mHangulJamoStack[2] = 0;
-	
-	                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                jung_idx = mHangulJamoStack[1] - 30;
-	                jong_idx = 0;
-	                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                hangulSendKey(newHangulChar, HCURSOR_ADD);
-	
-	                // Log.i("SoftKey", "--- Goto HAN_STATE 4");
-	                mHangulState = H_STATE_4; // goto ʼ,߼
-	            }
-	            break;
-	        case H_STATE_6: // ʼ,߼,()
-	            // Log.i("SoftKey", "HAN_STATE 6");
-	            if (hangulKeyIdx < 30) { // if 
-	            	
-                	// cursor error trick start
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                    // trick end
-	            	
-	            	
-	                mHangulKeyStack[0] = hangulKeyIdx;                
-	                mHangulKeyStack[1] = 0;
-	                mHangulKeyStack[2] = 0;
-	                mHangulKeyStack[3] = 0;
-	                mHangulKeyStack[4] = 0;
-	                mHangulJamoStack[0] = hangulKeyIdx;
-	                mHangulJamoStack[1] = 0;
-	                mHangulJamoStack[2] = 0;
-	
-	                newHangulChar = 0x3131 + hangulKeyIdx;
-	                hangulSendKey(newHangulChar,HCURSOR_ADD);
-	
-	                mHangulState = H_STATE_1; // goto ʼ
-	            }
-	            else { // if 
-//	            	hangulSendKey(-1);
-	                mHangulJamoStack[2] = mHangulKeyStack[4];
-	
-	                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                jung_idx = mHangulJamoStack[1] - 30;
-	                jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-	                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-	
-	                mHangulKeyStack[0] = mHangulKeyStack[5];
-	                mHangulKeyStack[1] = 0;
-	                mHangulKeyStack[2] = hangulKeyIdx;
-	                mHangulKeyStack[3] = 0;
-	                mHangulKeyStack[4] = 0;
-	                mHangulKeyStack[5] = 0;
-	                mHangulJamoStack[0] = mHangulKeyStack[0];
-	                mHangulJamoStack[1] = mHangulKeyStack[2];
-	                mHangulJamoStack[2] = 0;
-	
-	                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-	                jung_idx = mHangulJamoStack[1] - 30;
-	                jong_idx = 0;
-	                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-	                hangulSendKey(newHangulChar,HCURSOR_ADD);
-	
-	                mHangulState = H_STATE_4; // goto ʼ,߼
-	            }
-	            break;
-	        } 
+        if (!engine.onKey(primaryCode, eventTime, mEdits)) {
+            engine.separate(primaryCode, mEdits);
         }
-        else {
-            // Log.i("Hangul", "handleHangul - No hancode");
-            clearHangul();
-            sendKey(primaryCode);
+        applyEdits();
+        if (engine == mLatinEngine) {
+            updateShiftKeyState(getCurrentInputEditorInfo());
+            updateCandidates();
         }
+    }
 
-    }  
-// Hangul Code End    
-        
-    private void handleCharacter(int primaryCode, int[] keyCodes) {
-        if (isInputViewShown()) {
-            if (mInputView.isShifted()) {
-                primaryCode = Character.toUpperCase(primaryCode);
+    /**
+     * Backspace for every layout: the engine takes back a key, or picks the
+     * character before the cursor up again, or the editor deletes.
+     */
+    private void handleDelete(InputEngine engine) {
+        if (!engine.delete(mEdits)) {
+            InputConnection ic = getCurrentInputConnection();
+            CharSequence before = engine.canResume() ? ic.getTextBeforeCursor(1, 0) : null;
+            if (before != null && before.length() > 0
+                    && TextUtils.isEmpty(ic.getSelectedText(0))
+                    && engine.resume(before.charAt(0))) {
+                mEdits.delete(1);
+                engine.delete(mEdits);
+            }
+            else {
+                mEdits.key(KeyEvent.KEYCODE_DEL);
             }
         }
-        if (isAlphabet(primaryCode) && mPredictionOn) {
-            mComposing.append((char) primaryCode);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
-            updateShiftKeyState(getCurrentInputEditorInfo());
-            updateCandidates();
-        } else {
-        	sendKeyChar((char)primaryCode);
-        	/*
-            getCurrentInputConnection().commitText(
-                    String.valueOf((char) primaryCode), 1);
-            */
-        }
+        applyEdits();
     }
 
     private void handleClose() {
@@ -2159,7 +834,7 @@ public class SoftKeyboard extends InputMethodService
     }
     
     public void swipeLeft() {
-        handleBackspace();
+        onKey(Keyboard.KEYCODE_DELETE, null);
     }
 
     public void swipeDown() {
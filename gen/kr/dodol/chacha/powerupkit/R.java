@@ -35,15 +35,35 @@ public final class R {
         public static final int sym_keyboard_space=0x7f02000a;
     }
     public static final class id {
+        public static final int abbreviation=0x7f080024;
+        public static final int abbreviation_list=0x7f080023;
+        public static final int auto_mode_button=0x7f080015;
+        public static final int auto_mode_description=0x7f080014;
+        public static final int button_abbreviation=0x7f080022;
         public static final int button_mapping=0x7f08000c;
+        public static final int coalesce_button=0x7f080013;
+        public static final int coalesce_description=0x7f080012;
         public static final int delete_button=0x7f08000b;
+        public static final int expansion=0x7f080025;
         public static final int from=0x7f080007;
+        public static final int hangul_layout_2beolsik=0x7f08001d;
+        public static final int hangul_layout_390=0x7f08001e;
+        public static final int hangul_layout_description=0x7f08001b;
+        public static final int hangul_layout_group=0x7f08001c;
+        public static final int hangul_layout_romaja=0x7f08001f;
+        public static final int hangul_rules_description=0x7f080016;
+        public static final int hangul_rules_group=0x7f080017;
+        public static final int hangul_rules_repeat=0x7f080019;
+        public static final int hangul_rules_ssangsiot=0x7f08001a;
+        public static final int hangul_rules_standard=0x7f080018;
         public static final int keyboard=0x7f08000e;
         public static final int keyboard_input_method=0x7f080004;
         public static final int keyboard_setting=0x7f080003;
         public static final int keyboard_setting_description=0x7f080002;
         public static final int keyboard_toast_button=0x7f080006;
         public static final int keyboard_toast_description=0x7f080005;
+        public static final int latency_reset=0x7f080021;
+        public static final int latency_stats=0x7f080020;
         public static final int list=0x7f08000d;
         public static final int locale_setting=0x7f080001;
         public static final int locale_setting_description=0x7f080000;
@@ -54,9 +74,13 @@ public final class R {
         public static final int title=0x7f08000a;
         public static final int to=0x7f080008;
     }
+    public static final class integer {
+        public static final int sejong_cycle_timeout=0x7f0a0000;
+    }
     public static final class layout {
         public static final int application_boxed=0x7f030000;
         public static final int chacha_setting_activity=0x7f030001;
+        public static final int dialog_add_abbreviation=0x7f030008;
         public static final int dialog_add_new_function=0x7f030002;
         public static final int function_key_item=0x7f030003;
         public static final int function_key_list_activity=0x7f030004;
@@ -64,6 +88,9 @@ public final class R {
         public static final int input=0x7f030006;
         public static final int main_activity=0x7f030007;
     }
+    public static final class raw {
+        public static final int mode_model=0x7f090000;
+    }
     public static final class string {
         /**  Title for Latin keyboard  
          */
@@ -78,8 +105,12 @@ public final class R {
         public static final int word_separators=0x7f070001;
     }
     public static final class xml {
+        public static final int hangul=0x7f040004;
+        public static final int hangul_shift=0x7f040005;
+        public static final int layout_template=0x7f040007;
         public static final int method=0x7f040000;
         public static final int qwerty=0x7f040001;
+        public static final int sejong=0x7f040006;
         public static final int symbols=0x7f040002;
         public static final int symbols_shift=0x7f040003;
     }
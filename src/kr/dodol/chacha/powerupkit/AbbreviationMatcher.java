@@ -0,0 +1,272 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick automaton that finds abbreviations in the text as it is
+ * typed, one character at a time.
+ *
+ * An abbreviation only counts as a whole word, so each one is entered as
+ * boundary, its characters, boundary, where every word separator (and the
+ * start of the text) is the boundary.  A match is therefore reported on
+ * the separator that ends it.  Characters are first mapped to a small
+ * alphabet: one symbol per character used in some abbreviation, one for
+ * the separators and one for everything else.  The goto and failure links
+ * are folded into a full transition table over that alphabet, so a step
+ * is a hash probe and an array read however many abbreviations there
+ * are.
+ *
+ * Two-set Hangul composes some jamo pairs into one character: typed
+ * without a vowel, giyeok then siot comes out as the single cluster
+ * U+3133.  So that an abbreviation matches however its jamo were
+ * composed, these clusters are split into their two jamo, in the
+ * abbreviations and in the typed text alike.
+ *
+ * The automaton is immutable and safe to hand to another thread; the
+ * caller keeps the state, starting from {@link #start()}.
+ */
+public class AbbreviationMatcher {
+
+    static final int BOUNDARY = 0;
+    static final int OTHER = 1;
+
+    /** Compatibility jamo made of two others, and those two in order. */
+    static final String CLUSTERS =
+            "\u3133\u3135\u3136\u313a\u313b\u313c\u313d\u313e\u313f\u3140\u3144"
+            + "\u3158\u3159\u315a\u315d\u315e\u315f\u3162";
+    static final String CLUSTER_PARTS =
+            "\u3131\u3145\u3134\u3148\u3134\u314e\u3139\u3131\u3139\u3141\u3139\u3142"
+            + "\u3139\u3145\u3139\u314c\u3139\u314d\u3139\u314e\u3142\u3145"
+            + "\u3157\u314f\u3157\u3150\u3157\u3163\u315c\u3153\u315c\u3154\u315c\u3163"
+            + "\u3161\u3163";
+    private static final char FIRST_CLUSTER = '\u3133';
+    private static final char LAST_CLUSTER = '\u3162';
+
+    private final String[] mAbbreviations;
+    private final String[] mExpansions;
+    /** the abbreviations with their clusters split */
+    private final String[] mKeys;
+
+    /** char + 1 -> symbol, open addressing; 0 is empty */
+    private final int[] mCharKeys;
+    private final int[] mCharSymbols;
+    private final int mSymbolCount;
+
+    /** state * mSymbolCount + symbol -> state */
+    private final int[] mNext;
+    /** state -> index of the abbreviation matched there, -1 if none */
+    private final int[] mMatch;
+    private final int mStart;
+
+    /**
+     * Abbreviations that are empty or contain a separator can never match
+     * and are left out.
+     */
+    public AbbreviationMatcher(String[] abbreviations, String[] expansions, String separators) {
+        mAbbreviations = abbreviations;
+        mExpansions = expansions;
+        mKeys = new String[abbreviations.length];
+        for (int i = 0; i < abbreviations.length; i++) {
+            mKeys[i] = splitClusters(abbreviations[i]);
+        }
+
+        // the alphabet
+        int chars = separators.length();
+        int maxStates = 2;
+        for (int i = 0; i < mKeys.length; i++) {
+            chars += mKeys[i].length();
+            maxStates += mKeys[i].length() + 2;
+        }
+        int size = Integer.highestOneBit(Math.max(chars, 1) * 2 - 1) * 2;
+        mCharKeys = new int[size];
+        mCharSymbols = new int[size];
+        for (int i = 0; i < separators.length(); i++) {
+            putSymbol(separators.charAt(i), BOUNDARY);
+        }
+        int symbols = 2;
+        boolean[] usable = new boolean[mKeys.length];
+        for (int i = 0; i < mKeys.length; i++) {
+            String abbreviation = mKeys[i];
+            usable[i] = abbreviation.length() > 0;
+            for (int j = 0; j < abbreviation.length() && usable[i]; j++) {
+                usable[i] = symbolOf(abbreviation.charAt(j)) != BOUNDARY;
+            }
+            for (int j = 0; j < abbreviation.length() && usable[i]; j++) {
+                if (symbolOf(abbreviation.charAt(j)) == OTHER) {
+                    putSymbol(abbreviation.charAt(j), symbols++);
+                }
+            }
+        }
+        mSymbolCount = symbols;
+
+        // the trie; -1 marks a missing edge until the links fill it in
+        int[] next = new int[maxStates * symbols];
+        Arrays.fill(next, -1);
+        int[] match = new int[maxStates];
+        Arrays.fill(match, -1);
+        int states = 1;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (!usable[i]) {
+                continue;
+            }
+            String abbreviation = mKeys[i];
+            int state = 0;
+            for (int j = -1; j <= abbreviation.length(); j++) {
+                int symbol = j < 0 || j == abbreviation.length()
+                        ? BOUNDARY : symbolOf(abbreviation.charAt(j));
+                int index = state * symbols + symbol;
+                if (next[index] < 0) {
+                    next[index] = states++;
+                }
+                state = next[index];
+            }
+            match[state] = i;
+        }
+
+        // failure links, breadth first, folded into the table as we go
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int s = 0; s < symbols; s++) {
+            int child = next[s];
+            if (child < 0) {
+                next[s] = 0;
+            }
+            else {
+                fail[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            if (match[state] < 0) {
+                match[state] = match[fail[state]];
+            }
+            for (int s = 0; s < symbols; s++) {
+                int index = state * symbols + s;
+                int child = next[index];
+                int fallback = next[fail[state] * symbols + s];
+                if (child < 0) {
+                    next[index] = fallback;
+                }
+                else {
+                    fail[child] = fallback;
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        int[] table = new int[states * symbols];
+        System.arraycopy(next, 0, table, 0, table.length);
+        mNext = table;
+        int[] matches = new int[states];
+        System.arraycopy(match, 0, matches, 0, states);
+        mMatch = matches;
+        mStart = mNext[BOUNDARY];
+    }
+
+    private void putSymbol(char c, int symbol) {
+        int mask = mCharKeys.length - 1;
+        int slot = (c * 0x9E3779B1 >>> 16) & mask;
+        while (mCharKeys[slot] != 0 && mCharKeys[slot] != c + 1) {
+            slot = (slot + 1) & mask;
+        }
+        mCharKeys[slot] = c + 1;
+        mCharSymbols[slot] = symbol;
+    }
+
+    private int symbolOf(char c) {
+        int mask = mCharKeys.length - 1;
+        int slot = (c * 0x9E3779B1 >>> 16) & mask;
+        while (mCharKeys[slot] != 0) {
+            if (mCharKeys[slot] == c + 1) {
+                return mCharSymbols[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return OTHER;
+    }
+
+    /** The state at the start of the text or after a separator. */
+    public int start() {
+        return mStart;
+    }
+
+    public int next(int state, char c) {
+        int cluster = clusterIndex(c);
+        if (cluster >= 0) {
+            state = mNext[state * mSymbolCount + symbolOf(CLUSTER_PARTS.charAt(cluster * 2))];
+            c = CLUSTER_PARTS.charAt(cluster * 2 + 1);
+        }
+        return mNext[state * mSymbolCount + symbolOf(c)];
+    }
+
+    /** Index of the abbreviation that ends in this state, or -1. */
+    public int getMatch(int state) {
+        return mMatch[state];
+    }
+
+    public boolean isSeparator(char c) {
+        return symbolOf(c) == BOUNDARY;
+    }
+
+    public String getAbbreviation(int index) {
+        return mAbbreviations[index];
+    }
+
+    /**
+     * Where the abbreviation starts in text if it ends at end as a whole
+     * word, -1 if it isn't there.  Clusters in the text count as their two
+     * jamo, so the span can be shorter than the abbreviation.
+     */
+    public int findBefore(int index, CharSequence text, int end) {
+        String key = mKeys[index];
+        int i = key.length();
+        int pos = end;
+        while (i > 0 && pos > 0) {
+            char c = text.charAt(--pos);
+            int cluster = clusterIndex(c);
+            if (cluster < 0) {
+                if (key.charAt(--i) != c) {
+                    return -1;
+                }
+            }
+            else if (i < 2 || key.charAt(--i) != CLUSTER_PARTS.charAt(cluster * 2 + 1)
+                    || key.charAt(--i) != CLUSTER_PARTS.charAt(cluster * 2)) {
+                return -1;
+            }
+        }
+        if (i > 0 || (pos > 0 && !isSeparator(text.charAt(pos - 1)))) {
+            return -1;
+        }
+        return pos;
+    }
+
+    public String getExpansion(int index) {
+        return mExpansions[index];
+    }
+
+    private static int clusterIndex(char c) {
+        return c >= FIRST_CLUSTER && c <= LAST_CLUSTER ? CLUSTERS.indexOf(c) : -1;
+    }
+
+    /** The text with each cluster replaced by its two jamo. */
+    static String splitClusters(String s) {
+        StringBuilder split = null;
+        for (int i = 0; i < s.length(); i++) {
+            int cluster = clusterIndex(s.charAt(i));
+            if (cluster >= 0 && split == null) {
+                split = new StringBuilder(s.length() + 4);
+                split.append(s, 0, i);
+            }
+            if (cluster >= 0) {
+                split.append(CLUSTER_PARTS, cluster * 2, cluster * 2 + 2);
+            }
+            else if (split != null) {
+                split.append(s.charAt(i));
+            }
+        }
+        return split == null ? s : split.toString();
+    }
+}
@@ -0,0 +1,217 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+
+/**
+ * The user's abbreviations and what they expand to.
+ *
+ * The list is edited on the main thread; after every change it is saved
+ * and compiled into a new {@link AbbreviationMatcher} on a background
+ * thread.  The keyboard picks the matcher up from {@link #getMatcher()},
+ * which is null until the first one is built.  The file is read and
+ * written through {@link DataFile}.
+ *
+ * File: MAGIC, entry count, then per entry the abbreviation and the
+ * expansion, each as a UTF-8 byte count and the bytes.
+ */
+public class AbbreviationStore {
+
+    static final int MAGIC = 0x41425201;
+    static final String FILE_NAME = "abbreviations";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** One thread, so builds and writes finish in the order they were made. */
+    private static final ExecutorService sWorker = Executors.newSingleThreadExecutor();
+
+    private static AbbreviationStore sInstance;
+
+    private final File mFile;
+    private final String mSeparators;
+    private String[] mAbbreviations = new String[0];
+    private String[] mExpansions = new String[0];
+    private volatile AbbreviationMatcher mMatcher;
+
+    public static synchronized AbbreviationStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AbbreviationStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private AbbreviationStore(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+        mSeparators = context.getResources().getString(R.string.word_separators);
+        read();
+        compile();
+    }
+
+    /** The current matcher, or null while the first one is being built. */
+    public AbbreviationMatcher getMatcher() {
+        return mMatcher;
+    }
+
+    public int size() {
+        return mAbbreviations.length;
+    }
+
+    public String getAbbreviation(int index) {
+        return mAbbreviations[index];
+    }
+
+    public String getExpansion(int index) {
+        return mExpansions[index];
+    }
+
+    /** Whether the abbreviation can match at all: no separators in it. */
+    public boolean isValid(String abbreviation) {
+        if (abbreviation.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < abbreviation.length(); i++) {
+            if (mSeparators.indexOf(abbreviation.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Adds the abbreviation, or changes its expansion if it is there. */
+    public void put(String abbreviation, String expansion) {
+        int index = indexOf(abbreviation);
+        if (index < 0) {
+            index = mAbbreviations.length;
+            String[] abbreviations = new String[index + 1];
+            String[] expansions = new String[index + 1];
+            System.arraycopy(mAbbreviations, 0, abbreviations, 0, index);
+            System.arraycopy(mExpansions, 0, expansions, 0, index);
+            abbreviations[index] = abbreviation;
+            mAbbreviations = abbreviations;
+            mExpansions = expansions;
+        }
+        else {
+            mExpansions = mExpansions.clone();
+        }
+        mExpansions[index] = expansion;
+        save();
+        compile();
+    }
+
+    public void remove(String abbreviation) {
+        int index = indexOf(abbreviation);
+        if (index < 0) {
+            return;
+        }
+        int count = mAbbreviations.length - 1;
+        String[] abbreviations = new String[count];
+        String[] expansions = new String[count];
+        System.arraycopy(mAbbreviations, 0, abbreviations, 0, index);
+        System.arraycopy(mExpansions, 0, expansions, 0, index);
+        System.arraycopy(mAbbreviations, index + 1, abbreviations, index, count - index);
+        System.arraycopy(mExpansions, index + 1, expansions, index, count - index);
+        mAbbreviations = abbreviations;
+        mExpansions = expansions;
+        save();
+        compile();
+    }
+
+    /** Clusters count as their jamo, as they do when matching. */
+    private int indexOf(String abbreviation) {
+        String key = AbbreviationMatcher.splitClusters(abbreviation);
+        for (int i = 0; i < mAbbreviations.length; i++) {
+            if (AbbreviationMatcher.splitClusters(mAbbreviations[i]).equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Builds a matcher for the list as it is now, off the main thread. */
+    private void compile() {
+        final String[] abbreviations = mAbbreviations;
+        final String[] expansions = mExpansions;
+        sWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                mMatcher = new AbbreviationMatcher(abbreviations, expansions, mSeparators);
+            }
+        });
+    }
+
+    private void save() {
+        final String[] abbreviations = mAbbreviations;
+        final String[] expansions = mExpansions;
+        sWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(mFile, abbreviations, expansions);
+            }
+        });
+    }
+
+    private void read() {
+        byte[] data = DataFile.read(mFile);
+        if (data == null) {
+            return;
+        }
+        int length = data.length;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                return;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || count > (length - buffer.position()) / 8) {
+                return;
+            }
+            String[] abbreviations = new String[count];
+            String[] expansions = new String[count];
+            for (int i = 0; i < count; i++) {
+                abbreviations[i] = getString(buffer, data);
+                expansions[i] = getString(buffer, data);
+            }
+            mAbbreviations = abbreviations;
+            mExpansions = expansions;
+        }
+        catch (BufferUnderflowException e) {
+            // cut short; start empty
+        }
+    }
+
+    private static String getString(ByteBuffer buffer, byte[] data) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String s = new String(data, buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    static boolean write(File file, final String[] abbreviations, final String[] expansions) {
+        return DataFile.write(file, new DataFile.Content() {
+            @Override
+            public void writeTo(DataOutputStream data) throws IOException {
+                data.writeInt(MAGIC);
+                data.writeInt(abbreviations.length);
+                for (int i = 0; i < abbreviations.length; i++) {
+                    byte[] abbreviation = abbreviations[i].getBytes(UTF_8);
+                    byte[] expansion = expansions[i].getBytes(UTF_8);
+                    data.writeInt(abbreviation.length);
+                    data.write(abbreviation);
+                    data.writeInt(expansion.length);
+                    data.write(expansion);
+                }
+            }
+        }, true);
+    }
+}
@@ -18,6 +18,7 @@ import android.view.inputmethod.InputMethodInfo;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.CompoundButton;
 import android.widget.CompoundButton.OnCheckedChangeListener;
+import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ToggleButton;
@@ -51,6 +52,56 @@ public class ChaChaSetting extends Activity
 				edit.commit();
 			}
 		});
+        ((ToggleButton) findViewById(R.id.coalesce_button)).setOnCheckedChangeListener(new OnCheckedChangeListener() {
+			
+			@Override
+			public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+				Editor edit = Cons.getSharedPreference(ChaChaSetting.this).edit();
+				edit.putBoolean("coalesce_composing", isChecked);
+				edit.commit();
+			}
+		});
+        ((ToggleButton) findViewById(R.id.auto_mode_button)).setOnCheckedChangeListener(new OnCheckedChangeListener() {
+			
+			@Override
+			public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+				Editor edit = Cons.getSharedPreference(ChaChaSetting.this).edit();
+				edit.putBoolean("auto_mode_correct", isChecked);
+				edit.commit();
+			}
+		});
+        ((RadioGroup) findViewById(R.id.hangul_rules_group)).setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
+			
+			@Override
+			public void onCheckedChanged(RadioGroup group, int checkedId) {
+				int rules = HangulAutomata.RULES_STANDARD;
+				if (checkedId == R.id.hangul_rules_repeat) {
+					rules = HangulAutomata.RULES_DOUBLE_BY_REPEAT;
+				}
+				else if (checkedId == R.id.hangul_rules_ssangsiot) {
+					rules = HangulAutomata.RULES_SSANGSIOT_FINAL;
+				}
+				Editor edit = Cons.getSharedPreference(ChaChaSetting.this).edit();
+				edit.putInt("hangul_rules", rules);
+				edit.commit();
+			}
+		});
+        ((RadioGroup) findViewById(R.id.hangul_layout_group)).setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
+			
+			@Override
+			public void onCheckedChanged(RadioGroup group, int checkedId) {
+				int layout = KeyJamoTable.LAYOUT_2BEOLSIK;
+				if (checkedId == R.id.hangul_layout_390) {
+					layout = KeyJamoTable.LAYOUT_390;
+				}
+				else if (checkedId == R.id.hangul_layout_romaja) {
+					layout = KeyJamoTable.LAYOUT_ROMAJA;
+				}
+				Editor edit = Cons.getSharedPreference(ChaChaSetting.this).edit();
+				edit.putInt("hangul_layout", layout);
+				edit.commit();
+			}
+		});
         findViewById( R.id.locale_setting ).setOnClickListener( new OnClickListener()
             {
                 
@@ -74,6 +125,14 @@ public class ChaChaSetting extends Activity
                     }
                 }
         });
+        findViewById(R.id.latency_reset).setOnClickListener(new OnClickListener() {
+			
+			@Override
+			public void onClick(View v) {
+				LatencyRecorder.getInstance().reset();
+				((TextView) findViewById(R.id.latency_stats)).setText(LatencyRecorder.getInstance().getSummary());
+			}
+		});
         findViewById(R.id.keyboard_input_method).setOnClickListener(new OnClickListener() {
 			
 			@Override
@@ -90,6 +149,29 @@ public class ChaChaSetting extends Activity
     {
         super.onResume();
         ((ToggleButton) findViewById(R.id.keyboard_toast_button)).setChecked(Cons.getSharedPreference(ChaChaSetting.this).getBoolean("keyboard_toast", false));
+        ((ToggleButton) findViewById(R.id.coalesce_button)).setChecked(Cons.getSharedPreference(ChaChaSetting.this).getBoolean("coalesce_composing", false));
+        ((ToggleButton) findViewById(R.id.auto_mode_button)).setChecked(Cons.getSharedPreference(ChaChaSetting.this).getBoolean("auto_mode_correct", false));
+        switch (Cons.getSharedPreference(ChaChaSetting.this).getInt("hangul_rules", HangulAutomata.RULES_STANDARD)) {
+        case HangulAutomata.RULES_DOUBLE_BY_REPEAT:
+            ((RadioGroup) findViewById(R.id.hangul_rules_group)).check(R.id.hangul_rules_repeat);
+            break;
+        case HangulAutomata.RULES_SSANGSIOT_FINAL:
+            ((RadioGroup) findViewById(R.id.hangul_rules_group)).check(R.id.hangul_rules_ssangsiot);
+            break;
+        default:
+            ((RadioGroup) findViewById(R.id.hangul_rules_group)).check(R.id.hangul_rules_standard);
+        }
+        switch (Cons.getSharedPreference(ChaChaSetting.this).getInt("hangul_layout", KeyJamoTable.LAYOUT_2BEOLSIK)) {
+        case KeyJamoTable.LAYOUT_390:
+            ((RadioGroup) findViewById(R.id.hangul_layout_group)).check(R.id.hangul_layout_390);
+            break;
+        case KeyJamoTable.LAYOUT_ROMAJA:
+            ((RadioGroup) findViewById(R.id.hangul_layout_group)).check(R.id.hangul_layout_romaja);
+            break;
+        default:
+            ((RadioGroup) findViewById(R.id.hangul_layout_group)).check(R.id.hangul_layout_2beolsik);
+        }
+        ((TextView) findViewById(R.id.latency_stats)).setText(LatencyRecorder.getInstance().getSummary());
         
         if(Locale.KOREAN.equals( getResources().getConfiguration().locale)) {
             findViewById( R.id.locale_setting ).setEnabled( false );    
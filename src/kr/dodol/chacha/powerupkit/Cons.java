@@ -4,55 +4,36 @@ import java.util.ArrayList;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.SharedPreferences.Editor;
 import android.util.Log;
 
 public class Cons
 {
     
     public static void setFnKey(Context context, int keyCode, String symbol) {
-        SharedPreferences pref = getSharedPreference( context );
-        Editor edit = pref.edit();
-        edit.putString( getFnKeyStringFromKeyCode( keyCode ), symbol);
-        
-        String listString = pref.getString( getFnKeyListString(), "" );
-        if(!listString.contains( keyCode + "," )) {
-            listString += keyCode + ",";
-            edit.putString( getFnKeyListString(), listString );
-        }
-        
-        edit.commit();
+        FnKeyStore.getInstance( context ).put( keyCode, symbol );
     }
     
     public static void removeFnKey(Context context, int keyCode) {
-        SharedPreferences pref = getSharedPreference( context );
-        Editor edit = pref.edit();
-        edit.remove( getFnKeyStringFromKeyCode( keyCode ) );
-        
-        String listString = pref.getString( getFnKeyListString(), "" );
-        listString = listString.replace( keyCode + ",", "" );
-        edit.putString( getFnKeyListString(), listString );
-        edit.commit();
-        
+        FnKeyStore.getInstance( context ).remove( keyCode );
     }
     
-    public static String[] getFnKeyList(Context context) {
-        SharedPreferences pref = getSharedPreference( context );
-        String listString = pref.getString( getFnKeyListString(), "" );
-        String[] array = listString.split( "," );
-        return array;
+    /**
+     * Mapped key codes in the order they were added.  The array is shared;
+     * don't change it.
+     */
+    public static int[] getFnKeyCodes(Context context) {
+        return FnKeyStore.getInstance( context ).getKeyCodes();
     }
     
+    /** The text mapped to keyCode, "" if none.  No preference lookup. */
     public static String getFnKey(Context context, int keyCode) {
-        SharedPreferences pref = getSharedPreference( context );
-        return  pref.getString( getFnKeyStringFromKeyCode( keyCode ), "" );
+        String symbol = FnKeyStore.getInstance( context ).get( keyCode );
+        return symbol == null ? "" : symbol;
     }
 
-    private static String getFnKeyStringFromKeyCode(int keyCode) {
-        return "fn_key_" + keyCode;
-    }
-    private static String getFnKeyListString() {
-        return "fn_key_list";
+    /** The mapping for keyCode as a compiled macro, null if none. */
+    public static FnMacro getFnMacro(Context context, int keyCode) {
+        return FnKeyStore.getInstance( context ).getMacro( keyCode );
     }
 
     public static SharedPreferences getSharedPreference(Context context) {
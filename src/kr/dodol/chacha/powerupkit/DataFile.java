@@ -0,0 +1,122 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.util.Log;
+
+/**
+ * Reads and writes the keyboard's small binary files in one go.
+ *
+ * A write goes to a temp file next to the real one, which is then renamed
+ * over it, so a crash never leaves half a file and a reader sees either
+ * the old contents or the new.  Where the file system won't rename over
+ * an existing file, the old file is first renamed aside to a backup, and
+ * read() falls back to that backup if a crash came between the renames.
+ */
+public class DataFile {
+
+    private static final String TAG = "DataFile";
+
+    /** Writes the contents of a file. */
+    public interface Content {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    /** The whole file, or null if it is missing, empty or can't be read. */
+    public static byte[] read(File file) {
+        if (!file.exists()) {
+            // a write was cut off between moving the old file aside and
+            // moving the new one in
+            file = getBackup(file);
+        }
+        int length = (int) file.length();
+        if (length == 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            new DataInputStream(in).readFully(data);
+            return data;
+        }
+        catch (IOException e) {
+            return null;
+        }
+        finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Writes the file through a temp file.  With sync the data is on disk
+     * before the rename, for files that can't be made again.  Returns
+     * false, with the old contents still there for read(), if it didn't
+     * work.
+     */
+    public static boolean write(File file, Content content, boolean sync) {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            content.writeTo(data);
+            data.flush();
+            if (sync) {
+                out.getFD().sync();
+            }
+        }
+        catch (IOException e) {
+            Log.e(TAG, "can't write " + temp, e);
+            close(out);
+            temp.delete();
+            return false;
+        }
+        close(out);
+        if (temp.renameTo(file)) {
+            return true;
+        }
+        // some file systems won't rename over an existing file: move the
+        // old one aside, and back if the new one can't take its place
+        File backup = getBackup(file);
+        backup.delete();
+        if (file.exists() && !file.renameTo(backup)) {
+            Log.e(TAG, "can't rename " + file + " to " + backup);
+            temp.delete();
+            return false;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "can't rename " + temp + " to " + file);
+            temp.delete();
+            if (backup.exists() && !backup.renameTo(file)) {
+                Log.e(TAG, "can't restore " + file + " from " + backup);
+            }
+            return false;
+        }
+        backup.delete();
+        return true;
+    }
+
+    private static File getBackup(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+
+    private static void close(Closeable stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.Editor;
+
+/**
+ * The Fn-key mappings, kept in memory as a table indexed by key code and
+ * saved to a small binary file.
+ *
+ * The file is read in one go when the store is first used.  A change
+ * goes into the table right away, and a copy is written out on a
+ * background thread through {@link DataFile}, so a crash never leaves
+ * half a file.  The mappings used to be "fn_key_<code>" preferences plus
+ * a comma separated "fn_key_list"; those are moved into the file the
+ * first time and removed.
+ *
+ * File: MAGIC, entry count, then per entry the key code, offset and
+ * length of its UTF-8 text in the data that follows, in the order the
+ * keys were added.
+ */
+public class FnKeyStore {
+
+    static final int MAGIC = 0x464b4d01;
+    static final String FILE_NAME = "fn_keys";
+
+    static final int TABLE_SIZE = 256;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** One thread, so the writes land in the order they were made. */
+    private static final ExecutorService sWriter = Executors.newSingleThreadExecutor();
+
+    private static FnKeyStore sInstance;
+
+    private final File mFile;
+    /** key code -> text, null if not mapped */
+    private String[] mTexts = new String[TABLE_SIZE];
+    /** mapped key codes in the order they were added */
+    private int[] mCodes = new int[0];
+    /** key code -> compiled mapping, made on first use */
+    private FnMacro[] mMacros = new FnMacro[TABLE_SIZE];
+
+    public static synchronized FnKeyStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FnKeyStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private FnKeyStore(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+        if (!read(mFile, this)) {
+            mTexts = new String[TABLE_SIZE];
+            mCodes = new int[0];
+            mMacros = new FnMacro[TABLE_SIZE];
+            migrate(Cons.getSharedPreference(context));
+        }
+    }
+
+    /** The text mapped to keyCode, null if none. */
+    public String get(int keyCode) {
+        return keyCode >= 0 && keyCode < mTexts.length ? mTexts[keyCode] : null;
+    }
+
+    /** The mapping for keyCode compiled into a macro, null if none. */
+    public FnMacro getMacro(int keyCode) {
+        String text = get(keyCode);
+        if (text == null) {
+            return null;
+        }
+        if (mMacros[keyCode] == null) {
+            mMacros[keyCode] = FnMacro.compile(text);
+        }
+        return mMacros[keyCode];
+    }
+
+    /** Mapped key codes in the order they were added; don't change it. */
+    public int[] getKeyCodes() {
+        return mCodes;
+    }
+
+    public void put(int keyCode, String text) {
+        if (keyCode < 0) {
+            return;
+        }
+        set(keyCode, text);
+        save();
+    }
+
+    public void remove(int keyCode) {
+        if (get(keyCode) == null) {
+            return;
+        }
+        mTexts[keyCode] = null;
+        mMacros[keyCode] = null;
+        int[] codes = new int[mCodes.length - 1];
+        int count = 0;
+        for (int i = 0; i < mCodes.length; i++) {
+            if (mCodes[i] != keyCode) {
+                codes[count++] = mCodes[i];
+            }
+        }
+        mCodes = codes;
+        save();
+    }
+
+    private void set(int keyCode, String text) {
+        if (keyCode >= mTexts.length) {
+            String[] texts = new String[keyCode + 1];
+            System.arraycopy(mTexts, 0, texts, 0, mTexts.length);
+            mTexts = texts;
+            FnMacro[] macros = new FnMacro[keyCode + 1];
+            System.arraycopy(mMacros, 0, macros, 0, mMacros.length);
+            mMacros = macros;
+        }
+        if (mTexts[keyCode] == null) {
+            int[] codes = new int[mCodes.length + 1];
+            System.arraycopy(mCodes, 0, codes, 0, mCodes.length);
+            codes[mCodes.length] = keyCode;
+            mCodes = codes;
+        }
+        mTexts[keyCode] = text;
+        mMacros[keyCode] = null;
+    }
+
+    private void save() {
+        final File file = mFile;
+        final int[] codes = mCodes;
+        final String[] texts = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            texts[i] = mTexts[codes[i]];
+        }
+        sWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(file, codes, texts);
+            }
+        });
+    }
+
+    /** Moves the mappings out of the old preferences. */
+    private void migrate(final SharedPreferences pref) {
+        String[] list = pref.getString("fn_key_list", "").split(",");
+        for (int i = 0; i < list.length; i++) {
+            int keyCode;
+            try {
+                keyCode = Integer.parseInt(list[i]);
+            }
+            catch (NumberFormatException e) {
+                // "" when the list is empty
+                continue;
+            }
+            String text = pref.getString("fn_key_" + keyCode, null);
+            if (keyCode >= 0 && text != null) {
+                set(keyCode, text);
+            }
+        }
+        save();
+        final String[] keys = list;
+        sWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mFile.exists()) {
+                    // keep them for the next try
+                    return;
+                }
+                Editor edit = pref.edit();
+                edit.remove("fn_key_list");
+                for (int i = 0; i < keys.length; i++) {
+                    edit.remove("fn_key_" + keys[i]);
+                }
+                edit.commit();
+            }
+        });
+    }
+
+    /** Fills the store from the file; false if there's no usable file. */
+    static boolean read(File file, FnKeyStore store) {
+        byte[] data = DataFile.read(file);
+        if (data == null) {
+            return false;
+        }
+        int length = data.length;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                return false;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || count > (length - buffer.position()) / 12) {
+                return false;
+            }
+            int base = buffer.position() + count * 12;
+            for (int i = 0; i < count; i++) {
+                int keyCode = buffer.getInt();
+                int offset = buffer.getInt();
+                int textLength = buffer.getInt();
+                if (keyCode < 0 || offset < 0 || textLength < 0 || base + offset + textLength > length) {
+                    return false;
+                }
+                store.set(keyCode, new String(data, base + offset, textLength, UTF_8));
+            }
+            return true;
+        }
+        catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    static boolean write(File file, final int[] codes, String[] texts) {
+        final byte[][] encoded = new byte[codes.length][];
+        for (int i = 0; i < codes.length; i++) {
+            encoded[i] = texts[i].getBytes(UTF_8);
+        }
+        return DataFile.write(file, new DataFile.Content() {
+            @Override
+            public void writeTo(DataOutputStream data) throws IOException {
+                data.writeInt(MAGIC);
+                data.writeInt(codes.length);
+                int offset = 0;
+                for (int i = 0; i < codes.length; i++) {
+                    data.writeInt(codes[i]);
+                    data.writeInt(offset);
+                    data.writeInt(encoded[i].length);
+                    offset += encoded[i].length;
+                }
+                for (int i = 0; i < codes.length; i++) {
+                    data.write(encoded[i]);
+                }
+            }
+        }, true);
+    }
+}
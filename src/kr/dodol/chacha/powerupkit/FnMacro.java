@@ -0,0 +1,185 @@
+package kr.dodol.chacha.powerupkit;
+
+import android.view.KeyEvent;
+
+/**
+ * An Fn-key mapping compiled into a list of edit operations.
+ *
+ * A mapping is text with commands in braces:
+ *
+ *   {ENTER} {DEL} {TAB}           the key
+ *   {LEFT} {RIGHT} {UP} {DOWN}    move the cursor
+ *   {HANGUL} {ENGLISH}            switch the input mode
+ *   {REPEAT n}                    run the whole macro n times
+ *
+ * A key or move takes a count, as in {DEL 3}.  "{{" is a brace, and
+ * anything in braces that isn't a command stays as typed, so a mapping
+ * made before macros existed means what it did.  Text between commands
+ * becomes a single commit.
+ *
+ * Ops are kept as (op, arg, count) triples in one int array: for OP_TEXT
+ * the arg indexes getText(), for OP_KEY it is the key code, for OP_MODE
+ * it is 1 for Hangul and 0 for English.
+ */
+public class FnMacro {
+
+    public static final int OP_TEXT = 0;
+    public static final int OP_KEY = 1;
+    public static final int OP_MODE = 2;
+
+    static final int MAX_COUNT = 99;
+
+    static final String[] KEY_NAMES = { "ENTER", "DEL", "TAB", "LEFT", "RIGHT", "UP", "DOWN" };
+    static final int[] KEY_CODES = {
+        KeyEvent.KEYCODE_ENTER, KeyEvent.KEYCODE_DEL, KeyEvent.KEYCODE_TAB,
+        KeyEvent.KEYCODE_DPAD_LEFT, KeyEvent.KEYCODE_DPAD_RIGHT,
+        KeyEvent.KEYCODE_DPAD_UP, KeyEvent.KEYCODE_DPAD_DOWN
+    };
+
+    private final int[] mOps;
+    private final String[] mTexts;
+    private final int mRepeat;
+
+    private FnMacro(int[] ops, String[] texts, int repeat) {
+        mOps = ops;
+        mTexts = texts;
+        mRepeat = repeat;
+    }
+
+    /** Number of ops. */
+    public int size() {
+        return mOps.length / 3;
+    }
+
+    public int getOp(int i) {
+        return mOps[i * 3];
+    }
+
+    public int getArg(int i) {
+        return mOps[i * 3 + 1];
+    }
+
+    public int getCount(int i) {
+        return mOps[i * 3 + 2];
+    }
+
+    public String getText(int arg) {
+        return mTexts[arg];
+    }
+
+    public int getRepeat() {
+        return mRepeat;
+    }
+
+    public static FnMacro compile(String mapping) {
+        Compiler out = new Compiler();
+        StringBuilder text = new StringBuilder();
+        int length = mapping.length();
+        int i = 0;
+        while (i < length) {
+            char c = mapping.charAt(i);
+            if (c != '{') {
+                text.append(c);
+                i++;
+                continue;
+            }
+            if (i + 1 < length && mapping.charAt(i + 1) == '{') {
+                text.append('{');
+                i += 2;
+                continue;
+            }
+            int close = mapping.indexOf('}', i);
+            int op = -1;
+            int arg = 0;
+            int count = 1;
+            if (close > i) {
+                String command = mapping.substring(i + 1, close).trim();
+                int space = command.indexOf(' ');
+                String name = space < 0 ? command : command.substring(0, space);
+                if (space >= 0) {
+                    count = parseCount(command.substring(space + 1).trim());
+                }
+                if ("REPEAT".equals(name) && space >= 0 && count > 0) {
+                    out.repeat = count;
+                    i = close + 1;
+                    continue;
+                }
+                if (("HANGUL".equals(name) || "ENGLISH".equals(name)) && space < 0) {
+                    op = OP_MODE;
+                    arg = "HANGUL".equals(name) ? 1 : 0;
+                }
+                for (int k = 0; k < KEY_NAMES.length && count > 0; k++) {
+                    if (KEY_NAMES[k].equals(name)) {
+                        op = OP_KEY;
+                        arg = KEY_CODES[k];
+                    }
+                }
+            }
+            if (op < 0) {
+                // not a command; keep the brace as text
+                text.append(c);
+                i++;
+                continue;
+            }
+            out.addText(text);
+            out.add(op, arg, count);
+            i = close + 1;
+        }
+        out.addText(text);
+        return out.build();
+    }
+
+    /** Collects the ops while a mapping is compiled. */
+    private static class Compiler {
+        int[] ops = new int[12];
+        int length;
+        String[] texts = new String[4];
+        int textCount;
+        int repeat = 1;
+
+        void add(int op, int arg, int count) {
+            if (length == ops.length) {
+                int[] grown = new int[ops.length * 2];
+                System.arraycopy(ops, 0, grown, 0, length);
+                ops = grown;
+            }
+            ops[length++] = op;
+            ops[length++] = arg;
+            ops[length++] = count;
+        }
+
+        /** Adds the text as one op, if there is any, and clears it. */
+        void addText(StringBuilder text) {
+            if (text.length() == 0) {
+                return;
+            }
+            if (textCount == texts.length) {
+                String[] grown = new String[texts.length * 2];
+                System.arraycopy(texts, 0, grown, 0, textCount);
+                texts = grown;
+            }
+            add(OP_TEXT, textCount, 1);
+            texts[textCount++] = text.toString();
+            text.setLength(0);
+        }
+
+        FnMacro build() {
+            int[] compiledOps = new int[length];
+            System.arraycopy(ops, 0, compiledOps, 0, length);
+            String[] compiledTexts = new String[textCount];
+            System.arraycopy(texts, 0, compiledTexts, 0, textCount);
+            return new FnMacro(compiledOps, compiledTexts, repeat);
+        }
+    }
+
+    /** 1 to MAX_COUNT, or -1 if it isn't a count. */
+    private static int parseCount(String s) {
+        try {
+            int count = Integer.parseInt(s);
+            return count >= 1 && count <= MAX_COUNT ? count : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
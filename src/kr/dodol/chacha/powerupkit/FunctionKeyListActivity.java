@@ -19,12 +19,15 @@ import android.widget.LinearLayout;
 import android.widget.LinearLayout.LayoutParams;
 import android.widget.ListView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 public class FunctionKeyListActivity extends Activity
 {
     
     ListView mList;
     
+    ListView mAbbreviationList;
+    
     int from;
     
     @Override
@@ -33,6 +36,38 @@ public class FunctionKeyListActivity extends Activity
         super.onCreate( savedInstanceState );
         setContentView( R.layout.function_key_list_activity);
         mList = ( ListView )findViewById( R.id.list );
+        mAbbreviationList = ( ListView )findViewById( R.id.abbreviation_list );
+        findViewById( R.id.button_abbreviation ).setOnClickListener( new OnClickListener()
+        {
+            
+            @Override
+            public void onClick( View v )
+            {
+                AlertDialog.Builder builder = new AlertDialog.Builder( FunctionKeyListActivity.this );
+                final LinearLayout ll = ( LinearLayout )LayoutInflater.from( FunctionKeyListActivity.this ).inflate( R.layout.dialog_add_abbreviation, null );
+                builder.setView( ll );
+                builder.setPositiveButton( "Ȯ", new DialogInterface.OnClickListener()
+                {
+                    
+                    @Override
+                    public void onClick( DialogInterface dialog, int which )
+                    {
+                        String abbreviation = ((EditText)ll.findViewById( R.id.abbreviation )).getText().toString().trim();
+                        String expansion = ((EditText)ll.findViewById( R.id.expansion )).getText().toString();
+                        AbbreviationStore store = AbbreviationStore.getInstance( FunctionKeyListActivity.this );
+                        if(!store.isValid( abbreviation )) {
+                            Toast.makeText( FunctionKeyListActivity.this, " ⳪ ȣ   ϴ.", Toast.LENGTH_SHORT ).show();
+                            return;
+                        }
+                        store.put( abbreviation, expansion );
+                        updateAbbreviationList();
+                    }
+                });
+                builder.setNegativeButton( "", null );
+                builder.setTitle("  ߰");
+                builder.show();
+            }
+        });
         findViewById( R.id.button_mapping ).setOnClickListener( new OnClickListener()
         {
             
@@ -132,12 +167,64 @@ public class FunctionKeyListActivity extends Activity
     {
         super.onResume();
         updateList();
+        updateAbbreviationList();
+    }
+    
+    private void updateAbbreviationList()
+    {
+        final AbbreviationStore store = AbbreviationStore.getInstance( this );
+        
+        mAbbreviationList.setAdapter( new BaseAdapter()
+        {
+            
+            @Override
+            public View getView( int position, View convertView, ViewGroup parent )
+            {
+                if(convertView == null) {
+                    convertView = LayoutInflater.from(FunctionKeyListActivity.this).inflate(R.layout.function_key_item, null);
+                }
+                final String abbreviation = store.getAbbreviation( position );
+                
+                TextView tv = (TextView) convertView.findViewById(R.id.title);
+                tv.setText(abbreviation + "  " + store.getExpansion( position ));
+                
+                Button button = (Button) convertView.findViewById(R.id.delete_button);
+                button.setOnClickListener(new OnClickListener() {
+                    
+                    @Override
+                    public void onClick(View arg0) {
+                        store.remove( abbreviation );
+                        updateAbbreviationList();
+                    }
+                });
+                
+                return convertView;
+            }
+            
+            @Override
+            public long getItemId( int position )
+            {
+                return position;
+            }
+            
+            @Override
+            public Object getItem( int position )
+            {
+                return store.getAbbreviation( position );
+            }
+            
+            @Override
+            public int getCount()
+            {
+                return store.size();
+            }
+        });
     }
     
     private void updateList()
     {
 
-        final String[] keyList = Cons.getFnKeyList(this);
+        final int[] keyList = Cons.getFnKeyCodes(this);
 
         mList.setAdapter( new BaseAdapter()
         {
@@ -149,8 +236,8 @@ public class FunctionKeyListActivity extends Activity
             		convertView = LayoutInflater.from(FunctionKeyListActivity.this).inflate(R.layout.function_key_item, null);
             	}
             	
-                String keyEvent = Cons.getFnKey( FunctionKeyListActivity.this, Integer.valueOf( keyList[position] ));
-                String character = (new Character((char)(Integer.valueOf(keyList[position]) + 68)).toString() + " = " + keyEvent );
+                String keyEvent = Cons.getFnKey( FunctionKeyListActivity.this, keyList[position] );
+                String character = (new Character((char)(keyList[position] + 68)).toString() + " = " + keyEvent );
                 
                 TextView tv = (TextView) convertView.findViewById(R.id.title);
                 tv.setText("FN + " + character );
@@ -160,7 +247,7 @@ public class FunctionKeyListActivity extends Activity
 					
 					@Override
 					public void onClick(View arg0) {
-						Cons.removeFnKey(FunctionKeyListActivity.this, Integer.valueOf(keyList[position]));
+						Cons.removeFnKey(FunctionKeyListActivity.this, keyList[position]);
 						updateList();
 					}
 				});
@@ -0,0 +1,473 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * Table driven 2-beolsik composition engine.
+ *
+ * Jamo are indexed the same way as the rest of the keyboard: consonants are
+ * 0..29 (0x3131 + idx), vowels are 30..50 (0x314F + idx - 30).  Every
+ * keystroke is classified against the jamo it could combine with and then
+ * looked up in a (state x class) transition table, so {@link #process(int)}
+ * does no allocation and no per-state branching.  The caller applies the
+ * returned action code to the editor.
+ */
+public class HangulAutomata {
+
+    /** Nothing to do (delete on an empty engine: let the editor delete). */
+    public static final int ACTION_NONE = 0;
+    /** Start a new composing character, see {@link #getComposing()}. */
+    public static final int ACTION_START = 1;
+    /** Replace the composing character. */
+    public static final int ACTION_UPDATE = 2;
+    /** Commit {@link #getCommitted()} and start composing {@link #getComposing()}. */
+    public static final int ACTION_COMMIT = 3;
+    /** Drop the composing character. */
+    public static final int ACTION_CLEAR = 4;
+
+    // states, same numbering as the old H_STATE_0..6
+    static final int S_EMPTY = 0;
+    static final int S_CHO = 1;      // initial
+    static final int S_CHO2 = 2;     // double initial
+    static final int S_JUNG = 3;     // vowel only
+    static final int S_SYLLABLE = 4; // initial, vowel
+    static final int S_JONG = 5;     // initial, vowel, final
+    static final int S_JONG2 = 6;    // initial, vowel, double final
+
+    /** Combination rules: standard clusters and compound vowels only. */
+    public static final int RULES_STANDARD = 0;
+    /** Also a repeated giyeok, digeut, bieup, siot or jieut doubles it. */
+    public static final int RULES_DOUBLE_BY_REPEAT = 1;
+    /** Also a repeated siot makes ssangsiot, but only as a final. */
+    public static final int RULES_SSANGSIOT_FINAL = 2;
+    static final int RULES_COUNT = 3;
+
+    // input classes
+    static final int C_CONS = 0;           // consonant, valid as final
+    static final int C_CONS_NO_JONG = 1;   // ssangdigeut, ssangbieup, ssangjieut
+    static final int C_CONS_JOIN = 2;      // consonant joining the pending one
+    static final int C_VOWEL = 3;
+    static final int C_VOWEL_JOIN = 4;     // vowel joining the pending one
+    static final int C_CONS_DOUBLE = 5;    // doubles the pending one, initial or final
+    static final int C_CONS_DOUBLE_CHO = 6; // doubles the pending one, initial only
+    static final int C_CONS_JOIN_JONG = 7; // joins the pending one, final only
+    static final int CLASS_COUNT = 8;
+
+    // register operations
+    static final int OP_NEW_CHO = 0;
+    static final int OP_JOIN_CHO = 1;
+    static final int OP_NEW_JUNG = 2;
+    static final int OP_JOIN_JUNG = 3;
+    static final int OP_SET_JUNG = 4;
+    static final int OP_SPLIT_CHO = 5;
+    static final int OP_SET_JONG = 6;
+    static final int OP_JOIN_JONG = 7;
+    static final int OP_MOVE_JONG = 8;
+    static final int OP_SPLIT_JONG = 9;
+    static final int OP_DOUBLE_CHO = 10;
+
+    static final int JAMO_COUNT = 51;
+    static final int NONE = JAMO_COUNT;
+
+    static final byte[] KEY_MAP =
+    {16,47,25,22,6, 8,29,38,32,34,30,50,48,43,31,35,17,0, 3,20,36,28,23,27,42,26,
+     16,47,25,22,7, 8,29,38,32,34,30,50,48,43,33,37,18,1, 3,21,36,28,24,27,42,26};
+
+    // first, second, joined
+    static final byte[] JOIN_PAIRS = {
+        0,20, 2,   3,23, 4,   3,29, 5,   8, 0, 9,   8,16,10,   8,17,11,
+        8,20,12,   8,27,13,   8,28,14,   8,29,15,  17,20,19,
+       38,30,39,  38,31,40,  38,50,41,  43,34,44,  43,35,45,  43,50,46,
+       48,50,49
+    };
+
+    // key, doubled
+    static final byte[] DOUBLE_PAIRS = {0, 1,   6, 7,   17,18,   20,21,   23,24};
+
+    /** rules -> (pending * 51 + jamo) -> joined << 3 | class */
+    static final char[][] CLASSES = new char[RULES_COUNT][];
+
+    /** (state * 8 + class) -> action << 8 | op << 4 | next state */
+    static final char[] TRANSITION = {
+        // S_EMPTY
+        t(ACTION_START, OP_NEW_CHO, S_CHO), t(ACTION_START, OP_NEW_CHO, S_CHO),
+        t(ACTION_START, OP_NEW_CHO, S_CHO),
+        t(ACTION_START, OP_NEW_JUNG, S_JUNG), t(ACTION_START, OP_NEW_JUNG, S_JUNG),
+        t(ACTION_START, OP_NEW_CHO, S_CHO), t(ACTION_START, OP_NEW_CHO, S_CHO),
+        t(ACTION_START, OP_NEW_CHO, S_CHO),
+        // S_CHO
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_UPDATE, OP_JOIN_CHO, S_CHO2),
+        t(ACTION_UPDATE, OP_SET_JUNG, S_SYLLABLE), t(ACTION_UPDATE, OP_SET_JUNG, S_SYLLABLE),
+        t(ACTION_UPDATE, OP_DOUBLE_CHO, S_CHO), t(ACTION_UPDATE, OP_DOUBLE_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        // S_CHO2
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_SPLIT_CHO, S_SYLLABLE), t(ACTION_COMMIT, OP_SPLIT_CHO, S_SYLLABLE),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        // S_JUNG
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_NEW_JUNG, S_JUNG), t(ACTION_UPDATE, OP_JOIN_JUNG, S_JUNG),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        // S_SYLLABLE
+        t(ACTION_UPDATE, OP_SET_JONG, S_JONG), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_UPDATE, OP_SET_JONG, S_JONG),
+        t(ACTION_COMMIT, OP_NEW_JUNG, S_JUNG), t(ACTION_UPDATE, OP_JOIN_JUNG, S_SYLLABLE),
+        t(ACTION_UPDATE, OP_SET_JONG, S_JONG), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_UPDATE, OP_SET_JONG, S_JONG),
+        // S_JONG
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_UPDATE, OP_JOIN_JONG, S_JONG2),
+        t(ACTION_COMMIT, OP_MOVE_JONG, S_SYLLABLE), t(ACTION_COMMIT, OP_MOVE_JONG, S_SYLLABLE),
+        t(ACTION_UPDATE, OP_JOIN_JONG, S_JONG2), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_UPDATE, OP_JOIN_JONG, S_JONG2),
+        // S_JONG2
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_SPLIT_JONG, S_SYLLABLE), t(ACTION_COMMIT, OP_SPLIT_JONG, S_SYLLABLE),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO), t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+        t(ACTION_COMMIT, OP_NEW_CHO, S_CHO),
+    };
+
+    static {
+        CLASSES[RULES_STANDARD] = buildClasses(RULES_STANDARD);
+    }
+
+    /** Builds the class table for one rule set. */
+    static char[] buildClasses(int rules) {
+        char[] classes = new char[(JAMO_COUNT + 1) * JAMO_COUNT];
+        for (int pending = 0; pending <= JAMO_COUNT; pending++) {
+            for (int jamo = 0; jamo < JAMO_COUNT; jamo++) {
+                int cls;
+                if (jamo < 30) {
+                    cls = HangulSyllables.isFinal(jamo) ? C_CONS : C_CONS_NO_JONG;
+                }
+                else {
+                    cls = C_VOWEL;
+                }
+                classes[pending * JAMO_COUNT + jamo] = (char) cls;
+            }
+        }
+        for (int i = 0; i < JOIN_PAIRS.length; i += 3) {
+            int first = JOIN_PAIRS[i];
+            int second = JOIN_PAIRS[i + 1];
+            int cls = second < 30 ? C_CONS_JOIN : C_VOWEL_JOIN;
+            classes[first * JAMO_COUNT + second] = (char) (JOIN_PAIRS[i + 2] << 3 | cls);
+        }
+        for (int i = 0; i < DOUBLE_PAIRS.length; i += 2) {
+            int key = DOUBLE_PAIRS[i];
+            int doubled = DOUBLE_PAIRS[i + 1];
+            int cls;
+            if (rules == RULES_DOUBLE_BY_REPEAT) {
+                cls = HangulSyllables.isFinal(doubled) ? C_CONS_DOUBLE : C_CONS_DOUBLE_CHO;
+            }
+            else if (rules == RULES_SSANGSIOT_FINAL && doubled == 21) {
+                cls = C_CONS_JOIN_JONG;
+            }
+            else {
+                continue;
+            }
+            classes[key * JAMO_COUNT + key] = (char) (doubled << 3 | cls);
+        }
+        return classes;
+    }
+
+    private static char[] getClasses(int rules) {
+        if (rules < 0 || rules >= RULES_COUNT) {
+            rules = RULES_STANDARD;
+        }
+        synchronized (CLASSES) {
+            if (CLASSES[rules] == null) {
+                CLASSES[rules] = buildClasses(rules);
+            }
+            return CLASSES[rules];
+        }
+    }
+
+    /** Snapshots kept per syllable; a syllable takes at most five keys. */
+    static final int HISTORY = 8;
+    static final int SNAPSHOT_SIZE = 12;
+
+    private static char t(int action, int op, int next) {
+        return (char) (action << 8 | op << 4 | next);
+    }
+
+    private char[] mClasses = CLASSES[RULES_STANDARD];
+    private int mState;
+    private int mPending = NONE;
+    private int mCho = -1, mCho1 = -1, mCho2 = -1;
+    private int mJung = -1, mJung1 = -1, mJung2 = -1;
+    private int mJong = -1, mJong1 = -1, mJong2 = -1;
+    private char mComposing;
+    private char mCommitted;
+
+    /**
+     * Ring of the engine state before each key of the composing syllable,
+     * so that delete() is a pop instead of a re-derivation.
+     */
+    private final int[] mHistory = new int[HISTORY * SNAPSHOT_SIZE];
+    /** Snapshots that can be restored, at most HISTORY. */
+    private int mDepth;
+    /** Slot the next snapshot goes into. */
+    private int mTop;
+
+    /**
+     * Selects which key pairs combine, one of the RULES_* sets, and drops
+     * whatever was being composed.
+     */
+    public void setRules(int rules) {
+        mClasses = getClasses(rules);
+        reset();
+    }
+
+    /**
+     * Maps a latin key code to a jamo index, or -1 if it is not a letter.
+     * Upper case letters always give the shifted jamo.
+     */
+    public static int toJamo(int code, boolean shifted) {
+        if (code >= 'a' && code <= 'z') {
+            return KEY_MAP[code - 'a' + (shifted ? 26 : 0)];
+        }
+        else if (code >= 'A' && code <= 'Z') {
+            return KEY_MAP[code - 'A' + 26];
+        }
+        return -1;
+    }
+
+    /**
+     * Feeds one jamo (0..50) and returns the action the editor should apply.
+     */
+    public int process(int jamo) {
+        int entry = mClasses[mPending * JAMO_COUNT + jamo];
+        int tr = TRANSITION[mState * CLASS_COUNT + (entry & 7)];
+        int action = tr >> 8;
+        int op = (tr >> 4) & 0xf;
+
+        if (action == ACTION_COMMIT) {
+            mCommitted = mComposing;
+            mDepth = 0;
+            saveEmpty();
+        }
+        else {
+            save();
+        }
+        switch (op) {
+        case OP_NEW_CHO:
+            mCho = mCho1 = jamo;
+            mCho2 = mJung = mJung1 = mJung2 = mJong = mJong1 = mJong2 = -1;
+            mPending = jamo;
+            break;
+        case OP_DOUBLE_CHO:
+            mCho2 = jamo;
+            mCho = mCho1 = entry >> 3;
+            mPending = NONE;
+            break;
+        case OP_JOIN_CHO:
+            mCho2 = jamo;
+            mCho = entry >> 3;
+            mPending = NONE;
+            break;
+        case OP_NEW_JUNG:
+            mCho = mCho1 = mCho2 = mJung2 = mJong = mJong1 = mJong2 = -1;
+            mJung = mJung1 = jamo;
+            mPending = jamo;
+            break;
+        case OP_JOIN_JUNG:
+            mJung2 = jamo;
+            mJung = entry >> 3;
+            mPending = NONE;
+            break;
+        case OP_SET_JUNG:
+            mJung = mJung1 = jamo;
+            mPending = jamo;
+            break;
+        case OP_SPLIT_CHO:
+            mCommitted = (char) (0x3131 + mCho1);
+            mCho = mCho1 = mCho2;
+            mCho2 = -1;
+            mJung = mJung1 = jamo;
+            mPending = jamo;
+            break;
+        case OP_SET_JONG:
+            mJong = mJong1 = jamo;
+            mPending = jamo;
+            break;
+        case OP_JOIN_JONG:
+            mJong2 = jamo;
+            mJong = entry >> 3;
+            mPending = NONE;
+            break;
+        case OP_MOVE_JONG:
+            mCommitted = HangulSyllables.compose(mCho, mJung, -1);
+            mCho = mCho1 = mJong1;
+            mCho2 = mJung2 = mJong = mJong1 = -1;
+            mJung = mJung1 = jamo;
+            mPending = jamo;
+            break;
+        case OP_SPLIT_JONG:
+            mCommitted = HangulSyllables.compose(mCho, mJung, mJong1);
+            mCho = mCho1 = mJong2;
+            mCho2 = mJung2 = mJong = mJong1 = mJong2 = -1;
+            mJung = mJung1 = jamo;
+            mPending = jamo;
+            break;
+        }
+        mState = tr & 0xf;
+        if (op == OP_SPLIT_CHO || op == OP_MOVE_JONG || op == OP_SPLIT_JONG) {
+            // the new syllable's initial was typed before the commit; record
+            // it so deleting the vowel leaves the consonant
+            int jung = mJung, jung1 = mJung1, pending = mPending;
+            mState = S_CHO;
+            mJung = mJung1 = -1;
+            mPending = mCho1;
+            mComposing = compose();
+            save();
+            mState = S_SYLLABLE;
+            mJung = jung;
+            mJung1 = jung1;
+            mPending = pending;
+        }
+        mComposing = compose();
+        return action;
+    }
+
+    /**
+     * Takes back the last keystroke of the composing character by restoring
+     * the state saved before it.
+     */
+    public int delete() {
+        if (mState == S_EMPTY) {
+            return ACTION_NONE;
+        }
+        if (mDepth == 0) {
+            reset();
+            return ACTION_CLEAR;
+        }
+        restore();
+        return mState == S_EMPTY ? ACTION_CLEAR : ACTION_UPDATE;
+    }
+
+    /**
+     * Drops the whole composing character.  Returns ACTION_CLEAR, or
+     * ACTION_NONE if nothing was being composed.
+     */
+    public int deleteSyllable() {
+        if (mState == S_EMPTY) {
+            return ACTION_NONE;
+        }
+        reset();
+        return ACTION_CLEAR;
+    }
+
+    /**
+     * Starts composing an existing syllable or jamo again, so that it can be
+     * edited key by key.  Returns false if the character is not Hangul.
+     */
+    public boolean resume(char c) {
+        int keys = HangulSyllables.decompose(c);
+        if (keys == 0) {
+            return false;
+        }
+        reset();
+        for (int i = 0; keys >>> (i * 6) != 0; i++) {
+            process(HangulSyllables.keyAt(keys, i));
+        }
+        return true;
+    }
+
+    public void reset() {
+        mState = S_EMPTY;
+        mPending = NONE;
+        mCho = mCho1 = mCho2 = -1;
+        mJung = mJung1 = mJung2 = -1;
+        mJong = mJong1 = mJong2 = -1;
+        mComposing = 0;
+        mDepth = 0;
+    }
+
+    public boolean isEmpty() {
+        return mState == S_EMPTY;
+    }
+
+    public char getComposing() {
+        return mComposing;
+    }
+
+    public char getCommitted() {
+        return mCommitted;
+    }
+
+    /**
+     * Claims the slot for a new snapshot and returns its offset.  When the
+     * ring is full the oldest snapshot is overwritten and can't be restored
+     * any more; delete() then clears the syllable instead.
+     */
+    private int push() {
+        int i = mTop * SNAPSHOT_SIZE;
+        mTop = (mTop + 1) % HISTORY;
+        if (mDepth < HISTORY) {
+            mDepth++;
+        }
+        return i;
+    }
+
+    /** Offset of the newest snapshot, which is dropped; mDepth must be > 0. */
+    private int pop() {
+        mTop = (mTop + HISTORY - 1) % HISTORY;
+        mDepth--;
+        return mTop * SNAPSHOT_SIZE;
+    }
+
+    private void save() {
+        int[] h = mHistory;
+        int i = push();
+        h[i] = mState;
+        h[i + 1] = mPending;
+        h[i + 2] = mCho;
+        h[i + 3] = mCho1;
+        h[i + 4] = mCho2;
+        h[i + 5] = mJung;
+        h[i + 6] = mJung1;
+        h[i + 7] = mJung2;
+        h[i + 8] = mJong;
+        h[i + 9] = mJong1;
+        h[i + 10] = mJong2;
+        h[i + 11] = mComposing;
+    }
+
+    private void saveEmpty() {
+        int i = push();
+        mHistory[i] = S_EMPTY;
+        mHistory[i + 1] = NONE;
+        for (int j = 2; j < SNAPSHOT_SIZE - 1; j++) {
+            mHistory[i + j] = -1;
+        }
+        mHistory[i + SNAPSHOT_SIZE - 1] = 0;
+    }
+
+    private void restore() {
+        int[] h = mHistory;
+        int i = pop();
+        mState = h[i];
+        mPending = h[i + 1];
+        mCho = h[i + 2];
+        mCho1 = h[i + 3];
+        mCho2 = h[i + 4];
+        mJung = h[i + 5];
+        mJung1 = h[i + 6];
+        mJung2 = h[i + 7];
+        mJong = h[i + 8];
+        mJong1 = h[i + 9];
+        mJong2 = h[i + 10];
+        mComposing = (char) h[i + 11];
+    }
+
+    private char compose() {
+        if (mJung < 0 || mCho < 0) {
+            return (char) (HangulSyllables.JAMO_BASE + (mJung < 0 ? mCho : mJung));
+        }
+        return HangulSyllables.compose(mCho, mJung, mJong);
+    }
+}
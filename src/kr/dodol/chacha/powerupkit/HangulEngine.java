@@ -0,0 +1,96 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * 2-beolsik or 390 typing on top of {@link HangulAutomata} or
+ * {@link SebeolsikAutomata}.  Keys are the jamo and key codes from
+ * {@link KeyJamoTable}; the 390 digits and symbols on shifted letters are
+ * committed as they are.
+ */
+public class HangulEngine implements InputEngine {
+
+    private final HangulAutomata mAutomata;
+
+    public HangulEngine(HangulAutomata automata) {
+        mAutomata = automata;
+    }
+
+    public void setRules(int rules) {
+        mAutomata.setRules(rules);
+    }
+
+    public boolean onKey(int code, long eventTime, EditOps ops) {
+        if (code < 0) {
+            return false;
+        }
+        if (SebeolsikAutomata.isSymbol(code)) {
+            finish(ops);
+            ops.commit(SebeolsikAutomata.getSymbol(code));
+            return true;
+        }
+        apply(mAutomata.process(code), ops);
+        return true;
+    }
+
+    public boolean delete(EditOps ops) {
+        int action = mAutomata.delete();
+        if (action == HangulAutomata.ACTION_NONE) {
+            return false;
+        }
+        apply(action, ops);
+        return true;
+    }
+
+    public boolean deleteSyllable(EditOps ops) {
+        int action = mAutomata.deleteSyllable();
+        if (action == HangulAutomata.ACTION_NONE) {
+            return false;
+        }
+        apply(action, ops);
+        return true;
+    }
+
+    public boolean canResume() {
+        return true;
+    }
+
+    public boolean resume(char c) {
+        return mAutomata.resume(c);
+    }
+
+    public void finish(EditOps ops) {
+        if (!mAutomata.isEmpty()) {
+            ops.finish();
+            mAutomata.reset();
+        }
+    }
+
+    public void separate(int code, EditOps ops) {
+        finish(ops);
+        ops.type(code);
+    }
+
+    public boolean isEmpty() {
+        return mAutomata.isEmpty();
+    }
+
+    public void reset() {
+        mAutomata.reset();
+    }
+
+    private void apply(int action, EditOps ops) {
+        switch (action) {
+        case HangulAutomata.ACTION_START:
+        case HangulAutomata.ACTION_UPDATE:
+            ops.compose(mAutomata.getComposing());
+            break;
+        case HangulAutomata.ACTION_COMMIT:
+            ops.commit(mAutomata.getCommitted());
+            ops.compose(mAutomata.getComposing());
+            break;
+        case HangulAutomata.ACTION_CLEAR:
+            ops.commit("");
+            mAutomata.reset();
+            break;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Converts whole 2-beolsik key strings to Hangul and back, e.g.
+ * "dkssudgktpdy" to "\uC548\uB155\uD558\uC138\uC694".
+ *
+ * Every call uses its own {@link HangulAutomata}, so the methods are
+ * reentrant and can run on any number of threads at once.  Large inputs can
+ * be split into chunks and converted in parallel.
+ */
+public class HangulTransliterator {
+
+    /** Below this many chars a parallel call just converts in place. */
+    static final int MIN_CHUNK = 16 * 1024;
+
+    private static final char[] JAMO_KEYS = new char[HangulSyllables.JAMO_COUNT];
+
+    static {
+        for (int i = 25; i >= 0; i--) {
+            JAMO_KEYS[HangulAutomata.KEY_MAP[i + 26]] = (char) ('A' + i);
+        }
+        for (int i = 25; i >= 0; i--) {
+            JAMO_KEYS[HangulAutomata.KEY_MAP[i]] = (char) ('a' + i);
+        }
+    }
+
+    public static String toHangul(CharSequence keys) {
+        StringBuilder out = new StringBuilder(keys.length());
+        toHangul(keys, 0, keys.length(), out);
+        return out.toString();
+    }
+
+    /**
+     * Appends the Hangul for keys[start, end) to out.  Letters are typed
+     * as 2-beolsik keys (upper case is shifted), everything else is copied
+     * and ends the syllable being composed.
+     */
+    public static void toHangul(CharSequence keys, int start, int end, StringBuilder out) {
+        HangulAutomata automata = new HangulAutomata();
+        for (int i = start; i < end; i++) {
+            char c = keys.charAt(i);
+            int jamo = HangulAutomata.toJamo(c, false);
+            if (jamo < 0) {
+                if (!automata.isEmpty()) {
+                    out.append(automata.getComposing());
+                    automata.reset();
+                }
+                out.append(c);
+            }
+            else if (automata.process(jamo) == HangulAutomata.ACTION_COMMIT) {
+                out.append(automata.getCommitted());
+            }
+        }
+        if (!automata.isEmpty()) {
+            out.append(automata.getComposing());
+        }
+    }
+
+    /**
+     * Converts a large key string on the given executor.  The input is cut
+     * into a few chunks per processor (at least MIN_CHUNK chars each), each
+     * cut moved to a point where no syllable can span it, and the chunks are
+     * joined in order.
+     */
+    public static String toHangul(final CharSequence keys, ExecutorService executor) {
+        final int length = keys.length();
+        if (executor == null || length < MIN_CHUNK * 2) {
+            return toHangul(keys);
+        }
+        int chunk = Math.max(MIN_CHUNK,
+                length / (Runtime.getRuntime().availableProcessors() * 4));
+        List<Future<String>> parts = new ArrayList<Future<String>>();
+        int start = 0;
+        while (start < length) {
+            final int from = start;
+            final int to = nextBoundary(keys, Math.min(length, start + chunk));
+            parts.add(executor.submit(new Callable<String>() {
+                public String call() {
+                    StringBuilder out = new StringBuilder(to - from);
+                    toHangul(keys, from, to, out);
+                    return out.toString();
+                }
+            }));
+            start = to;
+        }
+        StringBuilder out = new StringBuilder(length);
+        for (Future<String> part : parts) {
+            try {
+                out.append(part.get());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns the first index at or after pos where the input can be cut:
+     * after a non-letter, or before a consonant key followed by a vowel
+     * key, since that consonant always starts a new syllable.
+     */
+    static int nextBoundary(CharSequence keys, int pos) {
+        int length = keys.length();
+        for (; pos < length; pos++) {
+            int jamo = HangulAutomata.toJamo(keys.charAt(pos - 1), false);
+            if (jamo < 0) {
+                return pos;
+            }
+            jamo = HangulAutomata.toJamo(keys.charAt(pos), false);
+            if (jamo >= 0 && jamo < 30 && pos + 1 < length
+                    && HangulAutomata.toJamo(keys.charAt(pos + 1), false) >= 30) {
+                return pos;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Turns Hangul back into the 2-beolsik keys that type it; other
+     * characters are copied.
+     */
+    public static String toKeys(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length() * 3);
+        toKeys(text, 0, text.length(), out);
+        return out.toString();
+    }
+
+    public static void toKeys(CharSequence text, int start, int end, StringBuilder out) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            int keys = HangulSyllables.decompose(c);
+            if (keys == 0) {
+                out.append(c);
+                continue;
+            }
+            for (; keys != 0; keys >>>= 6) {
+                out.append(JAMO_KEYS[(keys & 0x3f) - 1]);
+            }
+        }
+    }
+
+    /** Whether the text contains any Hangul syllable or jamo. */
+    public static boolean containsHangul(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (HangulSyllables.decompose(text.charAt(i)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
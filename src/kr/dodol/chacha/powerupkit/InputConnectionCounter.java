@@ -0,0 +1,211 @@
+package kr.dodol.chacha.powerupkit;
+
+import android.view.KeyEvent;
+import android.view.inputmethod.CompletionInfo;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputConnectionWrapper;
+
+/**
+ * Counts the calls that go out to the editor.
+ *
+ * Every call is a binder transaction.  An edit made outside a batch is also
+ * a separate editor update (span/layout work and an onUpdateSelection call
+ * back to us); edits inside a batch are applied together when the outermost
+ * batch ends.  Both numbers are kept so the effect of batching can be seen.
+ *
+ * Since every edit passes through here, it is also where a
+ * {@link CommitListener} hears about the text that becomes final.
+ */
+public class InputConnectionCounter extends InputConnectionWrapper {
+
+    private int mCalls;
+    private int mUpdates;
+    private int mBatchDepth;
+    private LatencyRecorder mLatency;
+    private CommitListener mCommitListener;
+    /** The composing text last set, which finishComposingText() commits. */
+    private final StringBuilder mComposing = new StringBuilder();
+
+    /** Follows the text before the cursor as the keyboard edits it. */
+    public interface CommitListener {
+        /** The text was committed at the cursor. */
+        void onCommitted(CharSequence text);
+        /** The text before the cursor changed in some other way. */
+        void onEdited();
+    }
+
+    public InputConnectionCounter() {
+        super(null, true);
+    }
+
+    /** Points the counter at the current editor's connection. */
+    public InputConnection wrap(InputConnection target) {
+        if (target == null) {
+            return null;
+        }
+        setTarget(target);
+        return this;
+    }
+
+    /** Told about every text update, as the end of a key's latency. */
+    public void setLatencyRecorder(LatencyRecorder latency) {
+        mLatency = latency;
+    }
+
+    public void setCommitListener(CommitListener listener) {
+        mCommitListener = listener;
+    }
+
+    private void committed(CharSequence text) {
+        mComposing.setLength(0);
+        if (mCommitListener != null && text.length() > 0) {
+            mCommitListener.onCommitted(text);
+        }
+    }
+
+    private void edited() {
+        mComposing.setLength(0);
+        if (mCommitListener != null) {
+            mCommitListener.onEdited();
+        }
+    }
+
+    public int getCallCount() {
+        return mCalls;
+    }
+
+    public int getUpdateCount() {
+        return mUpdates;
+    }
+
+    public void reset() {
+        mCalls = 0;
+        mUpdates = 0;
+        mBatchDepth = 0;
+        mComposing.setLength(0);
+    }
+
+    private void edit() {
+        mCalls++;
+        if (mBatchDepth == 0) {
+            mUpdates++;
+        }
+    }
+
+    @Override
+    public boolean beginBatchEdit() {
+        mCalls++;
+        mBatchDepth++;
+        return super.beginBatchEdit();
+    }
+
+    @Override
+    public boolean endBatchEdit() {
+        mCalls++;
+        if (mBatchDepth > 0 && --mBatchDepth == 0) {
+            mUpdates++;
+        }
+        return super.endBatchEdit();
+    }
+
+    @Override
+    public boolean setComposingText(CharSequence text, int newCursorPosition) {
+        edit();
+        boolean result = super.setComposingText(text, newCursorPosition);
+        mComposing.setLength(0);
+        mComposing.append(text);
+        if (mLatency != null) {
+            mLatency.end();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        edit();
+        boolean result = super.finishComposingText();
+        if (mComposing.length() > 0) {
+            // committed() clears mComposing, so pass a copy
+            committed(mComposing.toString());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean commitText(CharSequence text, int newCursorPosition) {
+        edit();
+        boolean result = super.commitText(text, newCursorPosition);
+        committed(text);
+        if (mLatency != null) {
+            mLatency.end();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean commitCompletion(CompletionInfo text) {
+        edit();
+        boolean result = super.commitCompletion(text);
+        edited();
+        return result;
+    }
+
+    @Override
+    public boolean deleteSurroundingText(int leftLength, int rightLength) {
+        edit();
+        boolean result = super.deleteSurroundingText(leftLength, rightLength);
+        edited();
+        return result;
+    }
+
+    @Override
+    public boolean setSelection(int start, int end) {
+        edit();
+        boolean result = super.setSelection(start, end);
+        edited();
+        return result;
+    }
+
+    @Override
+    public boolean sendKeyEvent(KeyEvent event) {
+        edit();
+        boolean result = super.sendKeyEvent(event);
+        if (event.getAction() == KeyEvent.ACTION_DOWN) {
+            edited();
+            if (mLatency != null) {
+                mLatency.end();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public CharSequence getTextBeforeCursor(int n, int flags) {
+        mCalls++;
+        return super.getTextBeforeCursor(n, flags);
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor(int n, int flags) {
+        mCalls++;
+        return super.getTextAfterCursor(n, flags);
+    }
+
+    @Override
+    public CharSequence getSelectedText(int flags) {
+        mCalls++;
+        return super.getSelectedText(flags);
+    }
+
+    @Override
+    public int getCursorCapsMode(int reqModes) {
+        mCalls++;
+        return super.getCursorCapsMode(reqModes);
+    }
+
+    @Override
+    public boolean clearMetaKeyStates(int states) {
+        mCalls++;
+        return super.clearMetaKeyStates(states);
+    }
+}
@@ -0,0 +1,59 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * One layout's way of turning keys into text: Latin, 2-beolsik, 390,
+ * romaja or Sejong.
+ *
+ * Engines never touch the editor.  They describe what should happen as
+ * {@link EditOps}, which SoftKeyboard applies to the InputConnection in a
+ * single batch, so hard keys and every on-screen layout share one path to
+ * the editor.
+ */
+public interface InputEngine {
+
+    /**
+     * Feeds a key: a jamo or key code from {@link KeyJamoTable} for the
+     * Hangul layouts, the character for the others.  eventTime is the
+     * key's uptime in ms.  Returns false if the key means nothing to the
+     * engine.
+     */
+    boolean onKey(int code, long eventTime, EditOps ops);
+
+    /**
+     * Takes back the last key of the composing text.  Returns false if
+     * nothing is being composed.
+     */
+    boolean delete(EditOps ops);
+
+    /**
+     * Shift+Del: drops the whole composing syllable.  Returns false if
+     * nothing is being composed.
+     */
+    boolean deleteSyllable(EditOps ops);
+
+    /** Whether the engine can {@link #resume(char)} finished text. */
+    boolean canResume();
+
+    /**
+     * Starts composing c, the character before the cursor, again so that
+     * delete() can take it apart.  Returns false if the engine can't.
+     */
+    boolean resume(char c);
+
+    /**
+     * Ends composition and leaves the text in the editor as it was typed.
+     * The engine is empty afterwards.
+     */
+    void finish(EditOps ops);
+
+    /**
+     * Ends composition for a separator (space, punctuation) and sends the
+     * separator if it should be typed.
+     */
+    void separate(int code, EditOps ops);
+
+    boolean isEmpty();
+
+    /** Forgets the composing text; the editor keeps whatever it shows. */
+    void reset();
+}
@@ -0,0 +1,113 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.res.Resources;
+
+/**
+ * Guesses whether the word being typed was meant as Hangul or as English.
+ *
+ * The model (res/raw/mode_model) is a 27 x 27 x 27 byte table of quantized
+ * log-odds, log P(key | two keys before) for Korean typed as 2-beolsik keys
+ * minus the same for English, in 1/8 nat steps.  Letters are case folded and
+ * index 26 marks a word boundary.  Each key is one table lookup, so scoring
+ * costs nothing noticeable per keystroke and never allocates.
+ *
+ * ModeModelBuilder in the test project builds the table from the corpora
+ * described in tests/mode_model/README.txt.
+ */
+public class InputModeDetector {
+
+    public static final int UNSURE = 0;
+    public static final int HANGUL = 1;
+    public static final int LATIN = 2;
+
+    static final int SYMBOLS = 27;
+    static final int BOUNDARY = 26;
+
+    /** Only the last WINDOW keys of a word are scored. */
+    static final int WINDOW = 16;
+    /** Words shorter than this are never judged. */
+    static final int MIN_KEYS = 3;
+    /** Score (in 1/8 nats) a word must pass to be judged either way. */
+    static final int THRESHOLD = 32;
+
+    private final byte[] mModel;
+    private final byte[] mRecent = new byte[WINDOW];
+    private int mPrev1 = BOUNDARY;
+    private int mPrev2 = BOUNDARY;
+    private int mScore;
+    private int mLength;
+
+    InputModeDetector(byte[] model) {
+        mModel = model;
+    }
+
+    /** Loads the model, or returns null if it can't be read. */
+    public static InputModeDetector load(Resources res) {
+        byte[] model = new byte[SYMBOLS * SYMBOLS * SYMBOLS];
+        InputStream in = res.openRawResource(R.raw.mode_model);
+        try {
+            new DataInputStream(in).readFully(model);
+            return new InputModeDetector(model);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        finally {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** Adds a letter key, 0 for 'a' up to 25 for 'z'. */
+    public void addKey(int letter) {
+        add(letter);
+        mLength++;
+    }
+
+    /**
+     * Ends the current word and returns what it looked like: HANGUL,
+     * LATIN, or UNSURE if it was too short or the model couldn't tell.
+     */
+    public int endWord() {
+        int verdict = UNSURE;
+        if (mLength >= MIN_KEYS) {
+            add(BOUNDARY);
+            if (mScore > THRESHOLD) {
+                verdict = HANGUL;
+            }
+            else if (mScore < -THRESHOLD) {
+                verdict = LATIN;
+            }
+        }
+        reset();
+        return verdict;
+    }
+
+    public void reset() {
+        mPrev1 = BOUNDARY;
+        mPrev2 = BOUNDARY;
+        mScore = 0;
+        mLength = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            mRecent[i] = 0;
+        }
+    }
+
+    private void add(int symbol) {
+        byte odds = mModel[(mPrev2 * SYMBOLS + mPrev1) * SYMBOLS + symbol];
+        int slot = mLength % WINDOW;
+        mScore += odds - mRecent[slot];
+        mRecent[slot] = odds;
+        mPrev2 = mPrev1;
+        mPrev1 = symbol;
+    }
+}
@@ -0,0 +1,145 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.util.List;
+
+import android.inputmethodservice.Keyboard;
+
+/**
+ * Uniform grid over a keyboard for finding the key under a touch without
+ * looking at every key.
+ *
+ * Each cell lists the keys whose hit area overlaps it, then the keys that
+ * are near enough to the cell to be proximity candidates.  Hit areas are
+ * the ones Key.isInside() tests: edge keys reach the side of the keyboard
+ * and {@link LatinKeyboard.LatinKey#getHitOffset()} is applied, so the
+ * lowered close key comes out the same.  Built once per layout.
+ */
+public class KeyGridIndex {
+
+    static final int GRID_WIDTH = 32;
+    static final int GRID_HEIGHT = 16;
+
+    private final Keyboard.Key[] mKeys;
+    private final int mCellWidth;
+    private final int mCellHeight;
+    /** cell -> hit keys, then near keys */
+    private final int[][] mCells;
+    /** cell -> how many of mCells[cell] are hit keys */
+    private final int[] mHitCounts;
+
+    /**
+     * @param proximity how far outside a key a touch can still be
+     *        corrected to it, in pixels
+     */
+    public KeyGridIndex(List<Keyboard.Key> keys, int width, int height, int proximity) {
+        mKeys = keys.toArray(new Keyboard.Key[keys.size()]);
+        mCellWidth = Math.max(1, (width + GRID_WIDTH - 1) / GRID_WIDTH);
+        mCellHeight = Math.max(1, (height + GRID_HEIGHT - 1) / GRID_HEIGHT);
+        mCells = new int[GRID_WIDTH * GRID_HEIGHT][];
+        mHitCounts = new int[GRID_WIDTH * GRID_HEIGHT];
+
+        int count = mKeys.length;
+        int[] left = new int[count];
+        int[] top = new int[count];
+        int[] right = new int[count];
+        int[] bottom = new int[count];
+        for (int i = 0; i < count; i++) {
+            Keyboard.Key key = mKeys[i];
+            int offset = getHitOffset(key);
+            left[i] = (key.edgeFlags & Keyboard.EDGE_LEFT) != 0 ? Integer.MIN_VALUE / 2 : key.x;
+            right[i] = (key.edgeFlags & Keyboard.EDGE_RIGHT) != 0 ? Integer.MAX_VALUE / 2 : key.x + key.width;
+            top[i] = (key.edgeFlags & Keyboard.EDGE_TOP) != 0 ? Integer.MIN_VALUE / 2 : key.y + offset;
+            bottom[i] = (key.edgeFlags & Keyboard.EDGE_BOTTOM) != 0 ? Integer.MAX_VALUE / 2 : key.y + key.height + offset;
+        }
+
+        int[] scratch = new int[count];
+        for (int row = 0; row < GRID_HEIGHT; row++) {
+            int y0 = row * mCellHeight;
+            int y1 = y0 + mCellHeight;
+            for (int col = 0; col < GRID_WIDTH; col++) {
+                int x0 = col * mCellWidth;
+                int x1 = x0 + mCellWidth;
+                int n = 0;
+                for (int i = 0; i < count; i++) {
+                    if (left[i] < x1 && right[i] > x0 && top[i] < y1 && bottom[i] > y0) {
+                        scratch[n++] = i;
+                    }
+                }
+                int hits = n;
+                for (int i = 0; i < count; i++) {
+                    if (left[i] < x1 + proximity && right[i] > x0 - proximity
+                            && top[i] < y1 + proximity && bottom[i] > y0 - proximity
+                            && !(left[i] < x1 && right[i] > x0 && top[i] < y1 && bottom[i] > y0)) {
+                        scratch[n++] = i;
+                    }
+                }
+                int cell = row * GRID_WIDTH + col;
+                mCells[cell] = new int[n];
+                System.arraycopy(scratch, 0, mCells[cell], 0, n);
+                mHitCounts[cell] = hits;
+            }
+        }
+    }
+
+    static int getHitOffset(Keyboard.Key key) {
+        return key instanceof LatinKeyboard.LatinKey
+                ? ((LatinKeyboard.LatinKey) key).getHitOffset() : 0;
+    }
+
+    private int cellAt(int x, int y) {
+        int col = x < 0 ? 0 : Math.min(x / mCellWidth, GRID_WIDTH - 1);
+        int row = y < 0 ? 0 : Math.min(y / mCellHeight, GRID_HEIGHT - 1);
+        return row * GRID_WIDTH + col;
+    }
+
+    /**
+     * Indices of the keys that could be meant by a touch at (x, y), the
+     * ones it may be inside first.  The array is shared; don't change it.
+     */
+    public int[] getNearestKeys(int x, int y) {
+        return mCells[cellAt(x, y)];
+    }
+
+    /** Index of the key the touch is inside, or -1. */
+    public int getKeyAt(int x, int y) {
+        int cell = cellAt(x, y);
+        int[] candidates = mCells[cell];
+        // the last key that contains it wins, as in KeyboardView
+        for (int i = mHitCounts[cell] - 1; i >= 0; i--) {
+            if (mKeys[candidates[i]].isInside(x, y)) {
+                return candidates[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the keys whose centers are nearest to (x, y), for correcting a
+     * touch.  Fills keys and their squared distances, nearest first, up to
+     * the length of the arrays and returns how many were found.
+     */
+    public int getNearestCenters(int x, int y, int[] keys, int[] distances) {
+        int[] candidates = mCells[cellAt(x, y)];
+        int found = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            Keyboard.Key key = mKeys[candidates[i]];
+            int dx = key.x + key.width / 2 - x;
+            int dy = key.y + key.height / 2 + getHitOffset(key) - y;
+            int distance = dx * dx + dy * dy;
+            // insertion into the short sorted list
+            int j = found < keys.length ? found++ : keys.length;
+            while (j > 0 && distances[j - 1] > distance) {
+                if (j < keys.length) {
+                    keys[j] = keys[j - 1];
+                    distances[j] = distances[j - 1];
+                }
+                j--;
+            }
+            if (j < keys.length) {
+                keys[j] = candidates[i];
+                distances[j] = distance;
+            }
+        }
+        return found;
+    }
+}
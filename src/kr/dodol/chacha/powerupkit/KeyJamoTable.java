@@ -0,0 +1,110 @@
+package kr.dodol.chacha.powerupkit;
+
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+
+/**
+ * keyCode x shift -> jamo lookup for one hardware keyboard and Hangul layout.
+ *
+ * Built once from the device's key character map, so whatever letter a
+ * physical key prints is what gets composed, and a key that prints no
+ * letter maps to {@link #NOT_HANGUL}.  A lookup is a single array read.
+ * For 2-beolsik the entries are jamo for {@link HangulAutomata}, for 390
+ * they are {@link SebeolsikAutomata} key codes.
+ */
+public class KeyJamoTable {
+
+    public static final int NOT_HANGUL = -1;
+
+    /** Values of the "hangul_layout" preference. */
+    public static final int LAYOUT_2BEOLSIK = 0;
+    public static final int LAYOUT_390 = 1;
+    /** Letters are passed on as 'a'..'z' for {@link RomajaAutomata}. */
+    public static final int LAYOUT_ROMAJA = 2;
+
+    private final int mDeviceId;
+    private final int mLayout;
+    /** (keyCode << 1 | shifted) -> jamo or NOT_HANGUL */
+    private final short[] mTable;
+
+    private KeyJamoTable(int deviceId, int layout, short[] table) {
+        mDeviceId = deviceId;
+        mLayout = layout;
+        mTable = table;
+    }
+
+    /**
+     * Maps a character printed on a latin key to what the layout types
+     * with it, or NOT_HANGUL.
+     */
+    public static int toJamo(int layout, int c) {
+        if (layout == LAYOUT_390) {
+            return SebeolsikAutomata.toKey(c);
+        }
+        if (layout == LAYOUT_ROMAJA) {
+            c = Character.toLowerCase((char) c);
+            return (c >= 'a' && c <= 'z') || c == RomajaAutomata.SEPARATOR ? c : NOT_HANGUL;
+        }
+        return HangulAutomata.toJamo(c, false);
+    }
+
+    public static KeyJamoTable build(int deviceId, int layout) {
+        int keyCount = KeyEvent.getMaxKeyCode() + 1;
+        short[] table = new short[keyCount * 2];
+        KeyCharacterMap map = null;
+        try {
+            map = KeyCharacterMap.load(deviceId);
+        }
+        catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        for (int keyCode = 0; keyCode < keyCount; keyCode++) {
+            int lower;
+            int upper;
+            if (map != null) {
+                lower = map.get(keyCode, 0);
+                upper = map.get(keyCode, KeyEvent.META_SHIFT_ON);
+            }
+            else if (keyCode >= KeyEvent.KEYCODE_A && keyCode <= KeyEvent.KEYCODE_Z) {
+                lower = 'a' + keyCode - KeyEvent.KEYCODE_A;
+                upper = 'A' + keyCode - KeyEvent.KEYCODE_A;
+            }
+            else {
+                lower = upper = 0;
+            }
+            if (layout == LAYOUT_390) {
+                table[keyCode << 1] = (short) SebeolsikAutomata.toKey(lower);
+                table[keyCode << 1 | 1] = (short) SebeolsikAutomata.toKey(upper);
+                continue;
+            }
+            if (layout == LAYOUT_ROMAJA) {
+                table[keyCode << 1] = (short) toJamo(layout, lower);
+                table[keyCode << 1 | 1] = (short) toJamo(layout, upper);
+                continue;
+            }
+            table[keyCode << 1] = (short) HangulAutomata.toJamo(lower, false);
+            // sticky shift reaches us without the meta bit, so the shifted
+            // column must not depend on the case the map returned
+            table[keyCode << 1 | 1] = (short) HangulAutomata.toJamo(
+                    Character.toLowerCase((char) upper), true);
+        }
+        return new KeyJamoTable(deviceId, layout, table);
+    }
+
+    public int getDeviceId() {
+        return mDeviceId;
+    }
+
+    public int getLayout() {
+        return mLayout;
+    }
+
+    /** Returns the jamo typed by keyCode, or NOT_HANGUL. */
+    public int get(int keyCode, boolean shifted) {
+        int index = keyCode << 1 | (shifted ? 1 : 0);
+        if (index < 0 || index >= mTable.length) {
+            return NOT_HANGUL;
+        }
+        return mTable[index];
+    }
+}
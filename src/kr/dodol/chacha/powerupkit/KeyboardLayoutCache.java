@@ -0,0 +1,176 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.inputmethodservice.Keyboard;
+import android.util.DisplayMetrics;
+
+/**
+ * Keeps the parsed key geometry of each layout in a small binary file, so
+ * the layout XML is only parsed once per screen size and not on every
+ * start or rotation.
+ *
+ * A file is made for each (layout, display width x height, density) and
+ * starts with a stamp of the installed apk, so an update that changes the
+ * layouts throws the old files away.  Loading reads the file in one go
+ * and fills an empty {@link LatinKeyboard} with the keys.
+ *
+ * File: MAGIC, apk stamp (long), width, height, key count, then per key
+ * the codes, geometry, flags, icon resource ids and strings (char count,
+ * -1 for null, then the chars).
+ */
+public class KeyboardLayoutCache {
+
+    static final int MAGIC = 0x4b4c4301;
+
+    static final int FLAG_STICKY = 1;
+    static final int FLAG_MODIFIER = 2;
+    static final int FLAG_REPEATABLE = 4;
+
+    /**
+     * Returns the keyboard for the layout, from the cache if there is a
+     * current file for this screen, otherwise parsed and cached.
+     */
+    public static LatinKeyboard load(Context context, int xmlLayoutResId) {
+        File file = getFile(context, xmlLayoutResId);
+        long stamp = getStamp(context);
+        LatinKeyboard keyboard = read(context, file, stamp);
+        if (keyboard == null) {
+            keyboard = new LatinKeyboard(context, xmlLayoutResId);
+            write(keyboard, file, stamp);
+        }
+        return keyboard;
+    }
+
+    private static File getFile(Context context, int xmlLayoutResId) {
+        DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        return new File(context.getCacheDir(), "layout-" + Integer.toHexString(xmlLayoutResId)
+                + "-" + dm.widthPixels + "x" + dm.heightPixels + "-" + dm.densityDpi);
+    }
+
+    /** Changes whenever the apk, and so the layouts, are replaced. */
+    private static long getStamp(Context context) {
+        return new File(context.getApplicationInfo().sourceDir).lastModified();
+    }
+
+    private static LatinKeyboard read(Context context, File file, long stamp) {
+        byte[] data = DataFile.read(file);
+        if (data == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getLong() != stamp) {
+                return null;
+            }
+            Resources res = context.getResources();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            LatinKeyboard keyboard = new LatinKeyboard(context, R.xml.layout_template, width, height);
+            Keyboard.Row row = new Keyboard.Row(keyboard);
+            for (int count = buffer.getInt(); count > 0; count--) {
+                LatinKeyboard.LatinKey key = new LatinKeyboard.LatinKey(row);
+                int[] codes = new int[buffer.getShort()];
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = buffer.getInt();
+                }
+                key.codes = codes;
+                key.x = buffer.getInt();
+                key.y = buffer.getInt();
+                key.width = buffer.getInt();
+                key.height = buffer.getInt();
+                key.gap = buffer.getInt();
+                key.edgeFlags = buffer.getInt();
+                int flags = buffer.get();
+                key.sticky = (flags & FLAG_STICKY) != 0;
+                key.modifier = (flags & FLAG_MODIFIER) != 0;
+                key.repeatable = (flags & FLAG_REPEATABLE) != 0;
+                key.iconResId = buffer.getInt();
+                key.iconPreviewResId = buffer.getInt();
+                key.popupResId = buffer.getInt();
+                if (key.iconResId != 0) {
+                    key.icon = res.getDrawable(key.iconResId);
+                }
+                if (key.iconPreviewResId != 0) {
+                    key.iconPreview = res.getDrawable(key.iconPreviewResId);
+                }
+                key.label = getString(buffer);
+                key.text = getString(buffer);
+                key.popupCharacters = getString(buffer);
+                keyboard.addKey(key);
+            }
+            return keyboard;
+        }
+        catch (BufferUnderflowException e) {
+            // cut short; parse the XML again
+            return null;
+        }
+    }
+
+    private static void write(final LatinKeyboard keyboard, File file, final long stamp) {
+        // a cache; if the write fails the XML is parsed again next time
+        DataFile.write(file, new DataFile.Content() {
+            @Override
+            public void writeTo(DataOutputStream data) throws IOException {
+                List<Keyboard.Key> keys = keyboard.getKeys();
+                data.writeInt(MAGIC);
+                data.writeLong(stamp);
+                data.writeInt(keyboard.getMinWidth());
+                data.writeInt(keyboard.getHeight());
+                data.writeInt(keys.size());
+                for (int k = 0; k < keys.size(); k++) {
+                    Keyboard.Key key = keys.get(k);
+                    data.writeShort(key.codes.length);
+                    for (int i = 0; i < key.codes.length; i++) {
+                        data.writeInt(key.codes[i]);
+                    }
+                    data.writeInt(key.x);
+                    data.writeInt(key.y);
+                    data.writeInt(key.width);
+                    data.writeInt(key.height);
+                    data.writeInt(key.gap);
+                    data.writeInt(key.edgeFlags);
+                    data.writeByte((key.sticky ? FLAG_STICKY : 0) | (key.modifier ? FLAG_MODIFIER : 0)
+                            | (key.repeatable ? FLAG_REPEATABLE : 0));
+                    LatinKeyboard.LatinKey latinKey = (LatinKeyboard.LatinKey) key;
+                    data.writeInt(latinKey.iconResId);
+                    data.writeInt(latinKey.iconPreviewResId);
+                    data.writeInt(key.popupResId);
+                    putString(data, key.label);
+                    putString(data, key.text);
+                    putString(data, key.popupCharacters);
+                }
+            }
+        }, false);
+    }
+
+    private static void putString(DataOutputStream data, CharSequence s) throws IOException {
+        if (s == null) {
+            data.writeShort(-1);
+            return;
+        }
+        data.writeShort(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            data.writeChar(s.charAt(i));
+        }
+    }
+
+    private static CharSequence getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,164 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.util.Arrays;
+
+/**
+ * Measures how long a key takes from the moment the keyboard gets it to
+ * the last commitText / setComposingText / key event it causes.
+ *
+ * {@link #begin(int)} stamps the key on entry; the InputConnectionCounter
+ * calls {@link #end()} on every commit, composing update or key event, and
+ * the keyboard calls {@link #finish()} when its key handler returns, so
+ * the last edit made while handling the key is what counts.  Edits made
+ * later, such as a coalesced composing flush, a timeout or an
+ * abbreviation expansion, belong to no key and are ignored.  A hard key
+ * the keyboard doesn't handle ends when it is passed on to the editor.
+ * Keys that never reach the editor aren't recorded.
+ *
+ * Times go into a log scale histogram per engine: four buckets per power
+ * of two microseconds, so a percentile is off by at most a quarter of its
+ * value.  Recording is two nanoTime() calls and an array increment.  One
+ * recorder is shared by the keyboard and the settings screen; both run
+ * on the main thread of the same process.
+ */
+public class LatencyRecorder {
+
+    public static final int LATIN = 0;
+    public static final int HANGUL = 1;
+    public static final int SEJONG = 2;
+    public static final int FN = 3;
+
+    static final String[] ENGINE_NAMES = { "Latin", "Hangul", "Sejong", "Fn" };
+
+    static final int SUB_BUCKETS = 4;
+    /** 2^27 us is over two minutes */
+    static final int BUCKETS = 27 * SUB_BUCKETS;
+
+    private static final LatencyRecorder sInstance = new LatencyRecorder();
+
+    private final int[][] mCounts = new int[ENGINE_NAMES.length][BUCKETS];
+    private final int[] mTotals = new int[ENGINE_NAMES.length];
+    private final long[] mMax = new long[ENGINE_NAMES.length];
+
+    private int mEngine;
+    private long mStart;
+    private long mEnd;
+
+    public static LatencyRecorder getInstance() {
+        return sInstance;
+    }
+
+    /** A key arrived; records the one before it, if it reached the editor. */
+    public void begin(int engine) {
+        finish();
+        mEngine = engine;
+        mStart = System.nanoTime();
+    }
+
+    /** Files the key under another engine once it's known where it went. */
+    public void setEngine(int engine) {
+        mEngine = engine;
+    }
+
+    /** The editor was sent text; counts only while a key is being handled. */
+    public void end() {
+        if (mStart != 0) {
+            mEnd = System.nanoTime();
+        }
+    }
+
+    /** The key handler returned: records the key if it reached the editor. */
+    public void finish() {
+        if (mStart != 0 && mEnd != 0) {
+            record(mEngine, (mEnd - mStart) / 1000);
+        }
+        mStart = 0;
+        mEnd = 0;
+    }
+
+    void record(int engine, long micros) {
+        mCounts[engine][bucketOf(micros)]++;
+        mTotals[engine]++;
+        if (micros > mMax[engine]) {
+            mMax[engine] = micros;
+        }
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            // exact below 4 us; buckets 4 to 7 stay empty
+            return micros < 0 ? 0 : (int) micros;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >> (exp - 2)) & (SUB_BUCKETS - 1);
+        return Math.min(exp * SUB_BUCKETS + sub, BUCKETS - 1);
+    }
+
+    /** Largest value that falls into the bucket, in microseconds. */
+    static long bucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS * 2) {
+            return bucket;
+        }
+        int exp = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - 2)) - 1;
+    }
+
+    public int getCount(int engine) {
+        return mTotals[engine];
+    }
+
+    public long getMax(int engine) {
+        return mMax[engine];
+    }
+
+    /** The percentile in microseconds (bucket bound, at most the max). */
+    public long getPercentile(int engine, int percent) {
+        int total = mTotals[engine];
+        if (total == 0) {
+            return 0;
+        }
+        int rank = (int) (((long) total * percent + 99) / 100);
+        int seen = 0;
+        int[] counts = mCounts[engine];
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketLimit(i), mMax[engine]);
+            }
+        }
+        return mMax[engine];
+    }
+
+    public void reset() {
+        for (int engine = 0; engine < ENGINE_NAMES.length; engine++) {
+            Arrays.fill(mCounts[engine], 0);
+            mTotals[engine] = 0;
+            mMax[engine] = 0;
+        }
+        mStart = 0;
+        mEnd = 0;
+    }
+
+    /** One line per engine: count, p50, p95, p99 and max in ms. */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (int engine = 0; engine < ENGINE_NAMES.length; engine++) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(ENGINE_NAMES[engine]).append(" n=").append(mTotals[engine]);
+            if (mTotals[engine] > 0) {
+                sb.append(" p50 ").append(millis(getPercentile(engine, 50)))
+                        .append(" p95 ").append(millis(getPercentile(engine, 95)))
+                        .append(" p99 ").append(millis(getPercentile(engine, 99)))
+                        .append(" max ").append(millis(mMax[engine]));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String millis(long micros) {
+        return (micros / 1000) + "." + (micros % 1000) / 100;
+    }
+}
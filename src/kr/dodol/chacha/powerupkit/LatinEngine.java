@@ -0,0 +1,79 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * Plain typing for the qwerty and symbol keyboards.  With prediction on,
+ * letters are held as composing text for the candidate view.
+ */
+public class LatinEngine implements InputEngine {
+
+    private final StringBuilder mComposing = new StringBuilder();
+    private boolean mPrediction;
+
+    public void setPrediction(boolean prediction) {
+        mPrediction = prediction;
+    }
+
+    public boolean onKey(int code, long eventTime, EditOps ops) {
+        if (mPrediction && Character.isLetter(code)) {
+            mComposing.append((char) code);
+            ops.compose(mComposing);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean delete(EditOps ops) {
+        int length = mComposing.length();
+        if (length == 0) {
+            return false;
+        }
+        mComposing.setLength(length - 1);
+        if (length > 1) {
+            ops.compose(mComposing);
+        }
+        else {
+            ops.commit("");
+        }
+        return true;
+    }
+
+    public boolean deleteSyllable(EditOps ops) {
+        if (mComposing.length() == 0) {
+            return false;
+        }
+        mComposing.setLength(0);
+        ops.commit("");
+        return true;
+    }
+
+    public boolean canResume() {
+        return false;
+    }
+
+    public boolean resume(char c) {
+        return false;
+    }
+
+    public void finish(EditOps ops) {
+        if (mComposing.length() > 0) {
+            ops.finish();
+            mComposing.setLength(0);
+        }
+    }
+
+    public void separate(int code, EditOps ops) {
+        if (mComposing.length() > 0) {
+            ops.commit(mComposing);
+            mComposing.setLength(0);
+        }
+        ops.type(code);
+    }
+
+    public boolean isEmpty() {
+        return mComposing.length() == 0;
+    }
+
+    public void reset() {
+        mComposing.setLength(0);
+    }
+}
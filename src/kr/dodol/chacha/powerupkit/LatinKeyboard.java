@@ -22,14 +22,40 @@ import android.content.res.XmlResourceParser;
 import android.inputmethodservice.Keyboard;
 import android.view.inputmethod.EditorInfo;
 
+import java.util.List;
+
 public class LatinKeyboard extends Keyboard {
 
+    static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
     private Key mEnterKey;
+
+    // only set for keyboards put together by KeyboardLayoutCache
+    private Key mShiftKey;
+    private int mShiftKeyIndex = -1;
+    private int mWidth;
+    private int mHeight;
+
+    private KeyGridIndex mGridIndex;
+
+    /** Bumped whenever a key's label or icon changes, for cached drawings. */
+    private int mRevision;
+    private int mImeOptions = -1;
     
     public LatinKeyboard(Context context, int xmlLayoutResId) {
         super(context, xmlLayoutResId);
     }
 
+    /**
+     * An empty keyboard of the given size, with the defaults of the template,
+     * for {@link #addKey(LatinKey)} to fill.
+     */
+    LatinKeyboard(Context context, int layoutTemplateResId, int width, int height) {
+        super(context, layoutTemplateResId);
+        mWidth = width;
+        mHeight = height;
+    }
+
     public LatinKeyboard(Context context, int layoutTemplateResId, 
             CharSequence characters, int columns, int horizontalPadding) {
         super(context, layoutTemplateResId, characters, columns, horizontalPadding);
@@ -44,15 +70,78 @@ public class LatinKeyboard extends Keyboard {
         }
         return key;
     }
+
+    void addKey(LatinKey key) {
+        List<Key> keys = getKeys();
+        if (key.codes[0] == 10) {
+            mEnterKey = key;
+        }
+        else if (key.codes[0] == KEYCODE_SHIFT) {
+            mShiftKey = key;
+            mShiftKeyIndex = keys.size();
+        }
+        if (key.modifier) {
+            getModifierKeys().add(key);
+        }
+        keys.add(key);
+        mGridIndex = null;
+    }
+
+    /**
+     * Looks the touch up in a {@link KeyGridIndex}, built the first time,
+     * instead of the framework's coarser neighbour table.
+     */
+    @Override
+    public int[] getNearestKeys(int x, int y) {
+        return getGridIndex().getNearestKeys(x, y);
+    }
+
+    int getRevision() {
+        return mRevision;
+    }
+
+    KeyGridIndex getGridIndex() {
+        if (mGridIndex == null) {
+            // the framework's correction distance, 1.4 key widths
+            mGridIndex = new KeyGridIndex(getKeys(), getMinWidth(), getHeight(),
+                    getKeyWidth() * 14 / 10);
+        }
+        return mGridIndex;
+    }
+
+    @Override
+    public int getMinWidth() {
+        return mWidth > 0 ? mWidth : super.getMinWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight > 0 ? mHeight : super.getHeight();
+    }
+
+    @Override
+    public boolean setShifted(boolean shiftState) {
+        if (mShiftKey != null) {
+            mShiftKey.on = shiftState;
+        }
+        return super.setShifted(shiftState);
+    }
+
+    @Override
+    public int getShiftKeyIndex() {
+        return mShiftKey != null ? mShiftKeyIndex : super.getShiftKeyIndex();
+    }
     
     /**
      * This looks at the ime options given by the current editor, to set the
      * appropriate label on the keyboard's enter key (if it has one).
      */
     void setImeOptions(Resources res, int options) {
-        if (mEnterKey == null) {
+        if (mEnterKey == null || options == mImeOptions) {
             return;
         }
+        mImeOptions = options;
+        mRevision++;
         
         switch (options&(EditorInfo.IME_MASK_ACTION|EditorInfo.IME_FLAG_NO_ENTER_ACTION)) {
             case EditorInfo.IME_ACTION_GO:
@@ -84,18 +173,36 @@ public class LatinKeyboard extends Keyboard {
     }
     
     static class LatinKey extends Keyboard.Key {
+
+        /** Drawables the key was given, kept so the layout can be cached. */
+        int iconResId;
+        int iconPreviewResId;
         
         public LatinKey(Resources res, Keyboard.Row parent, int x, int y, XmlResourceParser parser) {
             super(res, parent, x, y, parser);
+            iconResId = parser.getAttributeResourceValue(ANDROID_NS, "keyIcon", 0);
+            iconPreviewResId = parser.getAttributeResourceValue(ANDROID_NS, "iconPreview", 0);
+        }
+
+        public LatinKey(Keyboard.Row parent) {
+            super(parent);
         }
         
+        /**
+         * How far down the key's touch area is moved; we reduce the target
+         * area for the key that closes the keyboard.
+         */
+        int getHitOffset() {
+            return codes[0] == KEYCODE_CANCEL ? 10 : 0;
+        }
+
         /**
          * Overriding this method so that we can reduce the target area for the key that
          * closes the keyboard. 
          */
         @Override
         public boolean isInside(int x, int y) {
-            return super.isInside(x, codes[0] == KEYCODE_CANCEL ? y - 10 : y);
+            return super.isInside(x, y - getHitOffset());
         }
     }
 
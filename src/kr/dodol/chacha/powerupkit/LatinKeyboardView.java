@@ -16,22 +16,124 @@
 
 package kr.dodol.chacha.powerupkit;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.KeyboardView;
 import android.inputmethodservice.Keyboard.Key;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 
+/**
+ * Keyboard view that draws the key caps once into a bitmap per keyboard
+ * and shift state and afterwards only repaints the keys that change.
+ *
+ * KeyboardView redraws every key into its buffer whenever the shift
+ * state or keyboard changes and again on each press.  Here
+ * invalidateKey() and invalidateAllKeys() only mark areas dirty; onDraw()
+ * copies the cached layer and draws the pressed and sticky keys over it.
+ * Text baselines are measured once per text size.  Touch handling,
+ * previews and popups are still KeyboardView's.
+ */
 public class LatinKeyboardView extends KeyboardView {
 
     static final int KEYCODE_OPTIONS = -100;
 
+    /** How many keyboards keep their layers, two shift states each. */
+    static final int CACHED_KEYBOARDS = 2;
+
+    private static final int[] STATE_NORMAL = {};
+
+    private long mLastDownTime;
+
+    private Drawable mKeyBackground;
+    private int mKeyTextSize;
+    private int mLabelTextSize;
+    private int mShadowColor;
+    private float mShadowRadius;
+    /** From a key's vertical center to the baseline, for each text size. */
+    private float mKeyTextBaseline;
+    private float mLabelTextBaseline;
+    private final Paint mPaint = new Paint();
+    private final Rect mPadding = new Rect();
+    private final Rect mClip = new Rect();
+    /** Modifier state drawn in the top right corner, null for none. */
+    private String mIndicator;
+    private final Rect mIndicatorBounds = new Rect();
+
+    private final Map<Keyboard, Layer> mLayers = new LinkedHashMap<Keyboard, Layer>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Keyboard, Layer> eldest) {
+            if (size() > CACHED_KEYBOARDS) {
+                eldest.getValue().recycle();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /** The drawn key caps of one keyboard, unshifted and shifted. */
+    static class Layer {
+        final Bitmap[] bitmaps = new Bitmap[2];
+        final int revision;
+
+        Layer(int revision) {
+            this.revision = revision;
+        }
+
+        void recycle() {
+            for (int i = 0; i < bitmaps.length; i++) {
+                if (bitmaps[i] != null) {
+                    bitmaps[i].recycle();
+                    bitmaps[i] = null;
+                }
+            }
+        }
+    }
+
     public LatinKeyboardView(Context context, AttributeSet attrs) {
-        super(context, attrs);
+        this(context, attrs, android.R.attr.keyboardViewStyle);
     }
 
     public LatinKeyboardView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+        // the attributes KeyboardView draws with; it keeps its own private
+        int[] attrIds = {
+            android.R.attr.keyBackground, android.R.attr.keyTextSize,
+            android.R.attr.keyTextColor, android.R.attr.labelTextSize,
+            android.R.attr.shadowColor, android.R.attr.shadowRadius
+        };
+        Arrays.sort(attrIds);
+        TypedArray a = context.obtainStyledAttributes(attrs, attrIds, defStyle, 0);
+        mKeyBackground = a.getDrawable(Arrays.binarySearch(attrIds, android.R.attr.keyBackground));
+        mKeyTextSize = a.getDimensionPixelSize(Arrays.binarySearch(attrIds, android.R.attr.keyTextSize), 18);
+        mLabelTextSize = a.getDimensionPixelSize(Arrays.binarySearch(attrIds, android.R.attr.labelTextSize), 14);
+        mShadowColor = a.getColor(Arrays.binarySearch(attrIds, android.R.attr.shadowColor), 0);
+        mShadowRadius = a.getFloat(Arrays.binarySearch(attrIds, android.R.attr.shadowRadius), 0f);
+        mPaint.setColor(a.getColor(Arrays.binarySearch(attrIds, android.R.attr.keyTextColor), 0xFF000000));
+        a.recycle();
+
+        mPaint.setAntiAlias(true);
+        mPaint.setTextAlign(Paint.Align.CENTER);
+        mPaint.setTextSize(mKeyTextSize);
+        mKeyTextBaseline = (mPaint.getTextSize() - mPaint.descent()) / 2;
+        mPaint.setTextSize(mLabelTextSize);
+        mLabelTextBaseline = (mPaint.getTextSize() - mPaint.descent()) / 2;
+        if (mKeyBackground != null) {
+            mKeyBackground.getPadding(mPadding);
+        }
     }
 
     @Override
@@ -43,4 +145,192 @@ public class LatinKeyboardView extends KeyboardView {
             return super.onLongPress(key);
         }
     }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent me) {
+        if (me.getAction() == MotionEvent.ACTION_DOWN) {
+            mLastDownTime = me.getEventTime();
+        }
+        return super.onTouchEvent(me);
+    }
+
+    /** Event time (uptime ms) of the last touch down, the key being sent. */
+    public long getLastDownTime() {
+        return mLastDownTime;
+    }
+
+    /**
+     * Shows a modifier state in the top right corner over the keys, or
+     * hides it for null.  Only that corner is redrawn, and nothing is
+     * allocated, so it can follow every modifier change.
+     */
+    public void setIndicator(String label) {
+        if (label == mIndicator || (label != null && label.equals(mIndicator))) {
+            return;
+        }
+        invalidate(mIndicatorBounds);
+        mIndicator = label;
+        placeIndicator();
+        invalidate(mIndicatorBounds);
+    }
+
+    private void placeIndicator() {
+        if (mIndicator == null) {
+            mIndicatorBounds.setEmpty();
+            return;
+        }
+        mPaint.setTextSize(mLabelTextSize);
+        mPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        int margin = mLabelTextSize / 4;
+        int right = getWidth() - getPaddingRight();
+        int top = getPaddingTop();
+        mIndicatorBounds.set(right - (int) mPaint.measureText(mIndicator) - 2 * margin, top,
+                right, top + mLabelTextSize + 2 * margin);
+    }
+
+    @Override
+    public void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        placeIndicator();
+    }
+
+    @Override
+    public void invalidateAllKeys() {
+        // the layer for the new state is picked in onDraw
+        invalidate();
+    }
+
+    @Override
+    public void invalidateKey(int keyIndex) {
+        Keyboard keyboard = getKeyboard();
+        if (keyboard == null) {
+            return;
+        }
+        List<Key> keys = keyboard.getKeys();
+        if (keyIndex < 0 || keyIndex >= keys.size()) {
+            return;
+        }
+        Key key = keys.get(keyIndex);
+        int left = getPaddingLeft() + key.x;
+        int top = getPaddingTop() + key.y;
+        invalidate(left, top, left + key.width, top + key.height);
+    }
+
+    @Override
+    public void onDraw(Canvas canvas) {
+        Keyboard keyboard = getKeyboard();
+        if (keyboard == null) {
+            return;
+        }
+        boolean shifted = keyboard.isShifted();
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        Bitmap layer = getLayer(keyboard, shifted);
+        if (layer != null) {
+            canvas.drawBitmap(layer, left, top, null);
+        }
+        // pressed and sticky keys go over the layer, if they are in the dirty area
+        canvas.getClipBounds(mClip);
+        List<Key> keys = keyboard.getKeys();
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            if ((key.pressed || key.sticky) && mClip.intersects(left + key.x, top + key.y,
+                    left + key.x + key.width, top + key.y + key.height)) {
+                drawKey(canvas, key, key.getCurrentDrawableState(), left, top, shifted);
+            }
+        }
+        if (mIndicator != null && Rect.intersects(mClip, mIndicatorBounds)) {
+            mPaint.setTextSize(mLabelTextSize);
+            mPaint.setTypeface(Typeface.DEFAULT_BOLD);
+            mPaint.setShadowLayer(mShadowRadius, 0, 0, mShadowColor);
+            canvas.drawText(mIndicator, mIndicatorBounds.exactCenterX(),
+                    mIndicatorBounds.exactCenterY() + mLabelTextBaseline, mPaint);
+            mPaint.setShadowLayer(0, 0, 0, 0);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        for (Iterator<Layer> i = mLayers.values().iterator(); i.hasNext();) {
+            i.next().recycle();
+        }
+        mLayers.clear();
+    }
+
+    private Bitmap getLayer(Keyboard keyboard, boolean shifted) {
+        int width = keyboard.getMinWidth();
+        int height = keyboard.getHeight();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        int revision = keyboard instanceof LatinKeyboard ? ((LatinKeyboard) keyboard).getRevision() : 0;
+        Layer layer = mLayers.get(keyboard);
+        if (layer == null || layer.revision != revision) {
+            if (layer != null) {
+                layer.recycle();
+            }
+            layer = new Layer(revision);
+            mLayers.put(keyboard, layer);
+        }
+        int state = shifted ? 1 : 0;
+        if (layer.bitmaps[state] == null) {
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            List<Key> keys = keyboard.getKeys();
+            for (int i = 0; i < keys.size(); i++) {
+                Key key = keys.get(i);
+                if (!key.sticky) {
+                    drawKey(canvas, key, STATE_NORMAL, 0, 0, shifted);
+                }
+            }
+            layer.bitmaps[state] = bitmap;
+        }
+        return layer.bitmaps[state];
+    }
+
+    /** Draws a key cap the way KeyboardView does. */
+    private void drawKey(Canvas canvas, Key key, int[] state, int left, int top, boolean shifted) {
+        canvas.translate(left + key.x, top + key.y);
+        if (mKeyBackground != null) {
+            mKeyBackground.setState(state);
+            mKeyBackground.setBounds(0, 0, key.width, key.height);
+            mKeyBackground.draw(canvas);
+        }
+        Rect padding = mPadding;
+        CharSequence label = key.label;
+        if (label != null) {
+            String text = label.toString();
+            if (shifted && text.length() > 0 && text.length() < 3
+                    && Character.isLowerCase(text.charAt(0))) {
+                text = text.toUpperCase();
+            }
+            float baseline;
+            if (text.length() > 1 && key.codes.length < 2) {
+                mPaint.setTextSize(mLabelTextSize);
+                mPaint.setTypeface(Typeface.DEFAULT_BOLD);
+                baseline = mLabelTextBaseline;
+            }
+            else {
+                mPaint.setTextSize(mKeyTextSize);
+                mPaint.setTypeface(Typeface.DEFAULT);
+                baseline = mKeyTextBaseline;
+            }
+            mPaint.setShadowLayer(mShadowRadius, 0, 0, mShadowColor);
+            canvas.drawText(text,
+                    (key.width - padding.left - padding.right) / 2 + padding.left,
+                    (key.height - padding.top - padding.bottom) / 2 + baseline + padding.top,
+                    mPaint);
+            mPaint.setShadowLayer(0, 0, 0, 0);
+        }
+        else if (key.icon != null) {
+            int width = key.icon.getIntrinsicWidth();
+            int height = key.icon.getIntrinsicHeight();
+            int x = (key.width - padding.left - padding.right - width) / 2 + padding.left;
+            int y = (key.height - padding.top - padding.bottom - height) / 2 + padding.top;
+            key.icon.setBounds(x, y, x + width, y + height);
+            key.icon.draw(canvas);
+        }
+        canvas.translate(-left - key.x, -top - key.y);
+    }
 }
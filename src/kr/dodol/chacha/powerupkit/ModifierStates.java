@@ -0,0 +1,133 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * Sticky state of the hardware modifier keys.
+ *
+ * Tapping a modifier makes it one-shot (it applies to the next key),
+ * tapping it twice within DOUBLE_TAP_TIMEOUT locks it, and tapping again
+ * turns it off.  A modifier held down as a chord doesn't stick.  All of
+ * it is one table per modifier: TRANSITIONS[modifier][event][state + 1]
+ * is the next state.  Times are the key events' own (uptime) times, so
+ * a busy main thread doesn't turn a double tap into two single ones.
+ *
+ * Fn has a table but no key yet.
+ */
+public class ModifierStates {
+
+    public static final int SHIFT = 0;
+    public static final int ALT = 1;
+    public static final int FN = 2;
+    static final int MODIFIER_COUNT = 3;
+
+    /** Was used as a chord; the next release only clears it. */
+    public static final int USED = -1;
+    public static final int OFF = 0;
+    public static final int ONE_SHOT = 1;
+    public static final int LOCKED = 2;
+
+    /** The modifier was released with nothing else pressed. */
+    public static final int EVENT_TAP = 0;
+    /** The modifier was released after another key went down. */
+    public static final int EVENT_CHORD = 1;
+    /** The modifier was released soon after the last release. */
+    public static final int EVENT_DOUBLE_TAP = 2;
+    /** Another key was released. */
+    public static final int EVENT_OTHER_UP = 3;
+    /** A key took the one-shot modifier. */
+    public static final int EVENT_USE = 4;
+    /** A key was pressed with the modifier held down. */
+    public static final int EVENT_HOLD_USE = 5;
+    /** A key went to the editor without the modifier's meaning. */
+    public static final int EVENT_PASS = 6;
+
+    static final long DOUBLE_TAP_TIMEOUT = 800;
+
+    private static final int U = USED;
+    private static final int O = OFF;
+    private static final int S = ONE_SHOT;
+    private static final int L = LOCKED;
+
+    /** [modifier][event][state + 1] -> state; columns USED, OFF, ONE_SHOT, LOCKED */
+    static final int[][][] TRANSITIONS = {
+        { // shift
+            { O, S, O, O },     // tap
+            { O, S, O, O },     // chord
+            { O, S, L, O },     // double tap
+            { U, O, O, L },     // other key up
+            { U, O, O, L },     // use
+            { U, U, O, S },     // hold use (Shift+Space): steps down, a lock to one-shot
+            { U, O, O, L },     // pass
+        },
+        { // alt: a chord doesn't leave it one-shot, and a key pressed with it held spends it
+            { O, S, O, O },
+            { O, O, O, O },
+            { O, S, L, O },
+            { U, O, O, L },
+            { U, O, O, L },
+            { U, U, U, U },
+            { U, O, U, L },
+        },
+        { // fn, as alt
+            { O, S, O, O },
+            { O, O, O, O },
+            { O, S, L, O },
+            { U, O, O, L },
+            { U, O, O, L },
+            { U, U, U, U },
+            { U, O, U, L },
+        },
+    };
+
+    private final int[] mStates = new int[MODIFIER_COUNT];
+    /** event time of the last single tap, 0 if a double tap can't follow */
+    private final long[] mLastTapTimes = new long[MODIFIER_COUNT];
+
+    public int get(int modifier) {
+        return mStates[modifier];
+    }
+
+    /** One-shot or locked. */
+    public boolean isActive(int modifier) {
+        return mStates[modifier] > OFF;
+    }
+
+    public void apply(int modifier, int event) {
+        mStates[modifier] = TRANSITIONS[modifier][event][mStates[modifier] + 1];
+    }
+
+    public void clear(int modifier) {
+        mStates[modifier] = OFF;
+    }
+
+    /**
+     * The modifier key came up.  chord is whether another key went down
+     * while it was held.  Returns the event it counted as.
+     */
+    public int release(int modifier, long eventTime, boolean chord) {
+        int event;
+        long last = mLastTapTimes[modifier];
+        if (last != 0 && eventTime - last < DOUBLE_TAP_TIMEOUT) {
+            event = EVENT_DOUBLE_TAP;
+            mLastTapTimes[modifier] = 0;
+        }
+        else {
+            event = chord ? EVENT_CHORD : EVENT_TAP;
+            mLastTapTimes[modifier] = eventTime;
+        }
+        apply(modifier, event);
+        return event;
+    }
+
+    /** Another key came up: one-shots are spent and double taps broken. */
+    public void otherKeyUp(int modifier) {
+        apply(modifier, EVENT_OTHER_UP);
+        mLastTapTimes[modifier] = 0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < MODIFIER_COUNT; i++) {
+            mStates[i] = OFF;
+            mLastTapTimes[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * Phonetic Hangul input in the Revised Romanization: "annyeonghaseyo"
+ * comes out as the Hangul greeting.
+ *
+ * Letters are matched greedily against a trie of romanization segments
+ * (g, kk, ng, eo, yae, ...), each of which stands for one jamo.  A segment
+ * is only known to be complete when the next letter can't extend it, so
+ * the unresolved letters (at most three) stay in the composing text as
+ * typed.  Resolved jamo go through a {@link HangulAutomata}, with an ieung
+ * added in front of a vowel that has no consonant to sit on.  As in the
+ * romanization itself, "ng" before a vowel is read as a final ieung; an
+ * apostrophe ends the pending segment, so "chin'gu" splits after the n.
+ *
+ * Nothing is allocated per key: the trie is a pair of arrays and the
+ * pending letters live in a fixed buffer.
+ */
+public class RomajaAutomata {
+
+    static final int IEUNG = 22;
+
+    static final String[] SEGMENTS = {
+        "g", "kk", "n", "d", "tt", "r", "l", "m", "b", "pp", "s", "ss", "ng",
+        "j", "jj", "ch", "k", "t", "p", "h",
+        "a", "ae", "ya", "yae", "eo", "e", "yeo", "ye", "o", "wa", "wae", "oe",
+        "yo", "u", "wo", "we", "wi", "yu", "eu", "ui", "i"
+    };
+    static final byte[] SEGMENT_JAMO = {
+        0, 1, 3, 6, 7, 8, 8, 16, 17, 18, 20, 21, 22,
+        23, 24, 25, 26, 27, 28, 29,
+        30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41,
+        42, 43, 44, 45, 46, 47, 48, 49, 50
+    };
+
+    /** Longest segment; also the most letters ever pending. */
+    static final int MAX_SEGMENT = 3;
+
+    /** (node * 26 + letter) -> child node, 0 for none; node 0 is the root */
+    static final byte[] CHILD;
+    /** node -> jamo of the segment ending there, -1 if none */
+    static final byte[] JAMO;
+
+    static {
+        int nodes = 1;
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            nodes += SEGMENTS[i].length();
+        }
+        byte[] child = new byte[nodes * 26];
+        byte[] jamo = new byte[nodes];
+        jamo[0] = -1;
+        int count = 1;
+        for (int i = 0; i < SEGMENTS.length; i++) {
+            int node = 0;
+            String segment = SEGMENTS[i];
+            for (int j = 0; j < segment.length(); j++) {
+                int index = node * 26 + segment.charAt(j) - 'a';
+                if (child[index] == 0) {
+                    jamo[count] = -1;
+                    child[index] = (byte) count++;
+                }
+                node = child[index];
+            }
+            jamo[node] = SEGMENT_JAMO[i];
+        }
+        CHILD = child;
+        JAMO = jamo;
+    }
+
+    private final HangulAutomata mEngine = new HangulAutomata();
+
+    private final char[] mTail = new char[MAX_SEGMENT];
+    private final char[] mScratch = new char[MAX_SEGMENT];
+    private int mTailLength;
+    private int mNode;
+    /** Length and jamo of the longest segment in the tail, 0 if none. */
+    private int mAcceptLength;
+    private int mAcceptJamo;
+    /** Jamo the last final becomes if nothing moves it on, -1 if none. */
+    private int mSettleJamo = -1;
+
+    private final StringBuilder mComposing = new StringBuilder(MAX_SEGMENT + 1);
+    private final StringBuilder mCommitted = new StringBuilder(16);
+    private boolean mCommittedAny;
+
+    /** Typed between letters to end the segment before it. */
+    public static final char SEPARATOR = '\'';
+
+    /**
+     * Feeds one lower case letter or SEPARATOR and returns the action for
+     * the editor; ACTION_COMMIT if getCommitted() has text to commit first.
+     * Returns ACTION_NONE for anything else.
+     */
+    public int process(char c) {
+        if ((c < 'a' || c > 'z') && c != SEPARATOR) {
+            return HangulAutomata.ACTION_NONE;
+        }
+        mCommitted.setLength(0);
+        mCommittedAny = false;
+        if (c == SEPARATOR) {
+            while (mTailLength > 0) {
+                resolveHead();
+            }
+        }
+        else {
+            step(c);
+        }
+        compose();
+        return mCommittedAny ? HangulAutomata.ACTION_COMMIT : HangulAutomata.ACTION_UPDATE;
+    }
+
+    /**
+     * Resolves everything pending; getCommitted() then holds the whole
+     * text and the engine is empty.
+     */
+    public void finish() {
+        mCommitted.setLength(0);
+        while (mTailLength > 0) {
+            resolveHead();
+        }
+        settleFinal();
+        if (!mEngine.isEmpty()) {
+            mCommitted.append(mEngine.getComposing());
+        }
+        reset();
+    }
+
+    /**
+     * Takes back the last letter, or the last jamo once no letters are
+     * pending.  Returns ACTION_NONE if nothing is being composed.
+     */
+    public int delete() {
+        if (mTailLength > 0) {
+            int length = mTailLength - 1;
+            System.arraycopy(mTail, 0, mScratch, 0, length);
+            clearTail();
+            for (int i = 0; i < length; i++) {
+                step(mScratch[i]);
+            }
+        }
+        else if (mEngine.delete() == HangulAutomata.ACTION_NONE) {
+            return HangulAutomata.ACTION_NONE;
+        }
+        mSettleJamo = -1;
+        compose();
+        return mComposing.length() == 0 ? HangulAutomata.ACTION_CLEAR : HangulAutomata.ACTION_UPDATE;
+    }
+
+    public void reset() {
+        mEngine.reset();
+        clearTail();
+        mSettleJamo = -1;
+        mComposing.setLength(0);
+    }
+
+    public boolean isEmpty() {
+        return mTailLength == 0 && mEngine.isEmpty();
+    }
+
+    public CharSequence getComposing() {
+        return mComposing;
+    }
+
+    public CharSequence getCommitted() {
+        return mCommitted;
+    }
+
+    private void step(char c) {
+        while (true) {
+            int child = CHILD[mNode * 26 + c - 'a'];
+            if (child != 0) {
+                mNode = child;
+                mTail[mTailLength++] = c;
+                if (JAMO[child] >= 0) {
+                    mAcceptLength = mTailLength;
+                    mAcceptJamo = JAMO[child];
+                }
+                return;
+            }
+            if (mTailLength == 0) {
+                // starts no segment (f, q, v, x, z)
+                emitLiteral(c);
+                return;
+            }
+            resolveHead();
+        }
+    }
+
+    /**
+     * Emits the longest segment at the start of the tail (or its first
+     * letter as is, if none) and walks the rest again.
+     */
+    private void resolveHead() {
+        int used;
+        if (mAcceptLength > 0) {
+            used = mAcceptLength;
+            emitJamo(mAcceptJamo);
+        }
+        else {
+            used = 1;
+            emitLiteral(mTail[0]);
+        }
+        // at most two letters are left over; step() may come back here
+        int length = mTailLength - used;
+        char first = mTail[used % MAX_SEGMENT];
+        char second = mTail[(used + 1) % MAX_SEGMENT];
+        clearTail();
+        if (length > 0) {
+            step(first);
+        }
+        if (length > 1) {
+            step(second);
+        }
+    }
+
+    private void clearTail() {
+        mTailLength = 0;
+        mNode = 0;
+        mAcceptLength = 0;
+    }
+
+    private void emitJamo(int jamo) {
+        if (jamo >= 30) {
+            mSettleJamo = -1;
+            if (!onConsonant()) {
+                feed(IEUNG);
+            }
+            feed(jamo);
+            return;
+        }
+        settleFinal();
+        feed(jamo);
+        // k, t, p spell the finals giyeok, siot, bieup
+        mSettleJamo = -1;
+        if (jamo == 26 || jamo == 27 || jamo == 28) {
+            mSettleJamo = jamo == 26 ? 0 : jamo == 27 ? 20 : 17;
+        }
+    }
+
+    private void emitLiteral(char c) {
+        settleFinal();
+        if (!mEngine.isEmpty()) {
+            mCommitted.append(mEngine.getComposing());
+            mEngine.reset();
+        }
+        mCommitted.append(c);
+        mCommittedAny = true;
+    }
+
+    private void feed(int jamo) {
+        if (mEngine.process(jamo) == HangulAutomata.ACTION_COMMIT) {
+            mCommitted.append(mEngine.getCommitted());
+            mCommittedAny = true;
+        }
+    }
+
+    /**
+     * A k, t or p that stayed a final: swap it for the final it spells.
+     */
+    private void settleFinal() {
+        if (mSettleJamo < 0) {
+            return;
+        }
+        char c = mEngine.getComposing();
+        if (c >= HangulSyllables.SYLLABLE_BASE && (c - HangulSyllables.SYLLABLE_BASE) % 28 != 0) {
+            mEngine.delete();
+            feed(mSettleJamo);
+        }
+        mSettleJamo = -1;
+    }
+
+    /** Whether the engine ends on a consonant a vowel can take as initial. */
+    private boolean onConsonant() {
+        char c = mEngine.getComposing();
+        if (mEngine.isEmpty()) {
+            return false;
+        }
+        int keys = HangulSyllables.decompose(c);
+        int last = HangulSyllables.keyAt(keys, HangulSyllables.keyCount(keys) - 1);
+        if (c < HangulSyllables.SYLLABLE_BASE) {
+            return last < 30;
+        }
+        // a final ieung only ever comes from "ng"
+        return last < 30 && last != IEUNG;
+    }
+
+    private void compose() {
+        mComposing.setLength(0);
+        if (!mEngine.isEmpty()) {
+            mComposing.append(mEngine.getComposing());
+        }
+        mComposing.append(mTail, 0, mTailLength);
+    }
+}
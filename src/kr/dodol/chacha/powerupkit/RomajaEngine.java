@@ -0,0 +1,83 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * Phonetic typing on top of {@link RomajaAutomata}.  Letters that don't
+ * make a jamo yet are part of the composing text, so ending composition
+ * resolves them first.
+ */
+public class RomajaEngine implements InputEngine {
+
+    private final RomajaAutomata mAutomata = new RomajaAutomata();
+
+    public boolean onKey(int code, long eventTime, EditOps ops) {
+        int action = mAutomata.process((char) code);
+        if (action == HangulAutomata.ACTION_NONE) {
+            return false;
+        }
+        apply(action, ops);
+        return true;
+    }
+
+    public boolean delete(EditOps ops) {
+        int action = mAutomata.delete();
+        if (action == HangulAutomata.ACTION_NONE) {
+            return false;
+        }
+        apply(action, ops);
+        return true;
+    }
+
+    public boolean deleteSyllable(EditOps ops) {
+        if (mAutomata.isEmpty()) {
+            return false;
+        }
+        apply(HangulAutomata.ACTION_CLEAR, ops);
+        return true;
+    }
+
+    public boolean canResume() {
+        return false;
+    }
+
+    public boolean resume(char c) {
+        return false;
+    }
+
+    public void finish(EditOps ops) {
+        if (!mAutomata.isEmpty()) {
+            // pending letters still have to become jamo
+            mAutomata.finish();
+            ops.commit(mAutomata.getCommitted());
+        }
+    }
+
+    public void separate(int code, EditOps ops) {
+        finish(ops);
+        ops.type(code);
+    }
+
+    public boolean isEmpty() {
+        return mAutomata.isEmpty();
+    }
+
+    public void reset() {
+        mAutomata.reset();
+    }
+
+    private void apply(int action, EditOps ops) {
+        switch (action) {
+        case HangulAutomata.ACTION_START:
+        case HangulAutomata.ACTION_UPDATE:
+            ops.compose(mAutomata.getComposing());
+            break;
+        case HangulAutomata.ACTION_COMMIT:
+            ops.commit(mAutomata.getCommitted());
+            ops.compose(mAutomata.getComposing());
+            break;
+        case HangulAutomata.ACTION_CLEAR:
+            ops.commit("");
+            mAutomata.reset();
+            break;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * Table driven 3-beolsik (Sebeolsik 390) composition engine.
+ *
+ * 3-beolsik has separate keys for initials, vowels and finals, so the key
+ * alone says which slot of the syllable it fills and no key ever has to be
+ * moved to the next syllable.  A key is classified as (slot, joins with the
+ * last jamo or not) and looked up in a (state x class) table; the table
+ * gives the action and the next state, nothing looks ahead.  Keys are
+ * taken in order: an initial after a vowel starts a new syllable.
+ *
+ * Keys are {@link #toKey(int)} codes: the slot in the high byte and the
+ * jamo (or, for {@link #SYMBOL}, the character) in the low byte.
+ */
+public class SebeolsikAutomata extends HangulAutomata {
+
+    public static final int CHO = 0x100;
+    public static final int JUNG = 0x200;
+    public static final int JONG = 0x300;
+    /** A layout key that types a character instead of a jamo. */
+    public static final int SYMBOL = 0x400;
+
+    public static final int NOT_HANGUL = -1;
+
+    static final int S_EMPTY = 0;
+    static final int S_CHO = 1;        // initial
+    static final int S_JUNG = 2;       // vowel only
+    static final int S_SYLLABLE = 3;   // initial, vowel
+    static final int S_JONG = 4;       // initial, vowel, final
+    static final int S_JONG_ONLY = 5;  // final only
+
+    // class = (slot - 1) * 2 + joins with the pending jamo
+    static final int CLASS_COUNT = 6;
+
+    static final int NONE = -1;
+
+    // key, jamo
+    static final char[] CHO_KEYS = {
+        'k', 0,  'h', 3,  'u', 6,  'y', 8,  'i',16,  ';',17,  'n',20,
+        'j',22,  'l',23,  'o',25,  '0',26,  '\'',27, 'p',28,  'm',29
+    };
+    static final char[] JUNG_KEYS = {
+        'f',30,  'r',31,  '6',32,  't',34,  'c',35,  'e',36,  '7',37,
+        'v',38,  '/',38,  '4',42,  'b',43,  '9',43,  '5',47,  'g',48,
+        '8',49,  'd',50
+    };
+    static final char[] JONG_KEYS = {
+        'x', 0,  'F', 1,  'V', 2,  's', 3,  'S', 5,  'A', 6,  'w', 8,
+        'D', 9,  'C',10,  'T',12,  'R',15,  'z',16,  '3',17,  'X',19,
+        'q',20,  '2',21,  'a',22,  '!',23,  'Z',25,  'E',26,  'W',27,
+        'Q',28,  '1',29
+    };
+    // key, character typed instead
+    static final char[] SYMBOL_KEYS = {
+        'U','7',  'I','8',  'O','9',  'J','4',  'K','5',  'L','6',
+        'M','1',  '<','2',  '>','3',  'N','0',  'Y','<',  'P','>',
+        'B','!',  'G','/',  'H','\''
+    };
+
+    /** (character - 0x21) -> key code, NOT_HANGUL if the key is left as is */
+    static final short[] LAYOUT_390 = new short[0x7f - 0x21];
+
+    /** slot, first, second -> joined; (slot - 1) * 51 * 51 + first * 51 + second */
+    static final byte[] JOINS = new byte[3 * JAMO_COUNT * JAMO_COUNT];
+
+    static final char[] TRANSITION = {
+        // S_EMPTY
+        t(ACTION_START, S_CHO), t(ACTION_START, S_CHO),
+        t(ACTION_START, S_JUNG), t(ACTION_START, S_JUNG),
+        t(ACTION_START, S_JONG_ONLY), t(ACTION_START, S_JONG_ONLY),
+        // S_CHO
+        t(ACTION_COMMIT, S_CHO), t(ACTION_UPDATE, S_CHO),
+        t(ACTION_UPDATE, S_SYLLABLE), t(ACTION_UPDATE, S_SYLLABLE),
+        t(ACTION_COMMIT, S_JONG_ONLY), t(ACTION_COMMIT, S_JONG_ONLY),
+        // S_JUNG
+        t(ACTION_COMMIT, S_CHO), t(ACTION_COMMIT, S_CHO),
+        t(ACTION_COMMIT, S_JUNG), t(ACTION_UPDATE, S_JUNG),
+        t(ACTION_COMMIT, S_JONG_ONLY), t(ACTION_COMMIT, S_JONG_ONLY),
+        // S_SYLLABLE
+        t(ACTION_COMMIT, S_CHO), t(ACTION_COMMIT, S_CHO),
+        t(ACTION_COMMIT, S_JUNG), t(ACTION_UPDATE, S_SYLLABLE),
+        t(ACTION_UPDATE, S_JONG), t(ACTION_UPDATE, S_JONG),
+        // S_JONG
+        t(ACTION_COMMIT, S_CHO), t(ACTION_COMMIT, S_CHO),
+        t(ACTION_COMMIT, S_JUNG), t(ACTION_COMMIT, S_JUNG),
+        t(ACTION_COMMIT, S_JONG_ONLY), t(ACTION_UPDATE, S_JONG),
+        // S_JONG_ONLY
+        t(ACTION_COMMIT, S_CHO), t(ACTION_COMMIT, S_CHO),
+        t(ACTION_COMMIT, S_JUNG), t(ACTION_COMMIT, S_JUNG),
+        t(ACTION_COMMIT, S_JONG_ONLY), t(ACTION_UPDATE, S_JONG_ONLY),
+    };
+
+    static {
+        for (int i = 0; i < LAYOUT_390.length; i++) {
+            LAYOUT_390[i] = NOT_HANGUL;
+        }
+        fill(CHO_KEYS, CHO);
+        fill(JUNG_KEYS, JUNG);
+        fill(JONG_KEYS, JONG);
+        fill(SYMBOL_KEYS, SYMBOL);
+
+        for (int i = 0; i < JOINS.length; i++) {
+            JOINS[i] = -1;
+        }
+        for (int i = 0; i < DOUBLE_PAIRS.length; i += 2) {
+            join(CHO, DOUBLE_PAIRS[i], DOUBLE_PAIRS[i], DOUBLE_PAIRS[i + 1]);
+        }
+        for (int i = 0; i < HangulSyllables.SPLIT.length; i += 3) {
+            int jamo = HangulSyllables.SPLIT[i];
+            join(jamo < 30 ? JONG : JUNG, HangulSyllables.SPLIT[i + 1],
+                    HangulSyllables.SPLIT[i + 2], jamo);
+        }
+        // no key of its own on 390
+        join(JUNG, 32, 50, 33);  // ya + i = yae
+        join(JONG, 0, 0, 1);     // giyeok twice = ssanggiyeok
+        join(JONG, 20, 20, 21);  // siot twice = ssangsiot
+    }
+
+    private static void fill(char[] pairs, int slot) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            LAYOUT_390[pairs[i] - 0x21] = (short) (slot | pairs[i + 1]);
+        }
+    }
+
+    private static void join(int slot, int first, int second, int joined) {
+        JOINS[((slot >> 8) - 1) * JAMO_COUNT * JAMO_COUNT + first * JAMO_COUNT + second] =
+                (byte) joined;
+    }
+
+    private static char t(int action, int next) {
+        return (char) (action << 8 | next);
+    }
+
+    private int mState;
+    /** Key that placed the last jamo, NONE once it has been joined. */
+    private int mPending = NONE;
+    private int mCho = -1;
+    private int mJung = -1;
+    private int mJong = -1;
+    private char mComposing;
+    private char mCommitted;
+
+    private final int[] mHistory = new int[HISTORY * 6];
+    private int mDepth;
+
+    /**
+     * Maps a character printed on a latin key to its 390 key code, or
+     * NOT_HANGUL if the layout leaves the key as it is.
+     */
+    public static int toKey(int c) {
+        if (c < 0x21 || c >= 0x7f) {
+            return NOT_HANGUL;
+        }
+        return LAYOUT_390[c - 0x21];
+    }
+
+    /** Whether the key types a plain character, see {@link #getSymbol(int)}. */
+    public static boolean isSymbol(int key) {
+        return (key & 0xf00) == SYMBOL;
+    }
+
+    public static char getSymbol(int key) {
+        return (char) (key & 0xff);
+    }
+
+    /** 3-beolsik has one set of combinations; rules are ignored. */
+    @Override
+    public void setRules(int rules) {
+        reset();
+    }
+
+    /**
+     * Feeds one {@link #toKey(int)} code (not a symbol) and returns the
+     * action the editor should apply.
+     */
+    @Override
+    public int process(int key) {
+        int slot = key >> 8;
+        int jamo = key & 0xff;
+        int joined = -1;
+        if (mPending != NONE && (mPending >> 8) == slot) {
+            joined = JOINS[(slot - 1) * JAMO_COUNT * JAMO_COUNT
+                    + (mPending & 0xff) * JAMO_COUNT + jamo];
+        }
+        int tr = TRANSITION[mState * CLASS_COUNT + (slot - 1) * 2 + (joined >= 0 ? 1 : 0)];
+        int action = tr >> 8;
+
+        if (action == ACTION_COMMIT) {
+            mCommitted = mComposing;
+            mCho = mJung = mJong = -1;
+            mDepth = 0;
+            saveEmpty();
+            joined = -1;
+        }
+        else {
+            save();
+        }
+        int value = joined >= 0 ? joined : jamo;
+        if (slot == 1) {
+            mCho = value;
+        }
+        else if (slot == 2) {
+            mJung = value;
+        }
+        else {
+            mJong = value;
+        }
+        mPending = joined >= 0 ? NONE : key;
+        mState = tr & 0xf;
+        mComposing = compose();
+        return action;
+    }
+
+    @Override
+    public int delete() {
+        if (mState == S_EMPTY) {
+            return ACTION_NONE;
+        }
+        if (mDepth == 0) {
+            reset();
+            return ACTION_CLEAR;
+        }
+        restore();
+        return mState == S_EMPTY ? ACTION_CLEAR : ACTION_UPDATE;
+    }
+
+    @Override
+    public int deleteSyllable() {
+        if (mState == S_EMPTY) {
+            return ACTION_NONE;
+        }
+        reset();
+        return ACTION_CLEAR;
+    }
+
+    /**
+     * Starts composing an existing syllable or jamo again: a syllable's
+     * leading consonant as the initial, its vowels as the vowel and the rest
+     * as the final; a lone consonant as an initial if it can be one.
+     */
+    @Override
+    public boolean resume(char c) {
+        int keys = HangulSyllables.decompose(c);
+        if (keys == 0) {
+            return false;
+        }
+        reset();
+        boolean syllable = c >= HangulSyllables.SYLLABLE_BASE;
+        int slot = JONG;
+        if (syllable || (keys < 64 && HangulSyllables.CHO_INDEX[keys - 1] >= 0)) {
+            slot = CHO;
+        }
+        for (int i = 0; keys >>> (i * 6) != 0; i++) {
+            int jamo = HangulSyllables.keyAt(keys, i);
+            if (jamo >= 30) {
+                slot = JUNG;
+            }
+            else if (syllable && i > 0) {
+                slot = JONG;
+            }
+            process(slot | jamo);
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        mState = S_EMPTY;
+        mPending = NONE;
+        mCho = mJung = mJong = -1;
+        mComposing = 0;
+        mDepth = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return mState == S_EMPTY;
+    }
+
+    @Override
+    public char getComposing() {
+        return mComposing;
+    }
+
+    @Override
+    public char getCommitted() {
+        return mCommitted;
+    }
+
+    private void save() {
+        int[] h = mHistory;
+        int i = (mDepth++ % HISTORY) * 6;
+        h[i] = mState;
+        h[i + 1] = mPending;
+        h[i + 2] = mCho;
+        h[i + 3] = mJung;
+        h[i + 4] = mJong;
+        h[i + 5] = mComposing;
+        if (mDepth > HISTORY) {
+            mDepth = HISTORY;
+        }
+    }
+
+    private void saveEmpty() {
+        int[] h = mHistory;
+        int i = (mDepth++ % HISTORY) * 6;
+        h[i] = S_EMPTY;
+        h[i + 1] = NONE;
+        h[i + 2] = h[i + 3] = h[i + 4] = -1;
+        h[i + 5] = 0;
+    }
+
+    private void restore() {
+        int[] h = mHistory;
+        int i = (--mDepth % HISTORY) * 6;
+        mState = h[i];
+        mPending = h[i + 1];
+        mCho = h[i + 2];
+        mJung = h[i + 3];
+        mJong = h[i + 4];
+        mComposing = (char) h[i + 5];
+    }
+
+    private char compose() {
+        if (mCho >= 0 && mJung >= 0) {
+            return HangulSyllables.compose(mCho, mJung, mJong);
+        }
+        int jamo = mCho >= 0 ? mCho : mJung >= 0 ? mJung : mJong;
+        return (char) (HangulSyllables.JAMO_BASE + jamo);
+    }
+}
@@ -0,0 +1,435 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * Table driven Sejong (cheonjiin) composition engine.
+ *
+ * The keyboard has nine consonant keys, each cycling through its consonants
+ * when pressed again (giyeok, kieuk, ssanggiyeok and so on), and three vowel
+ * stroke keys: i, the dot and eu.  Vowels are read off a precomputed stroke
+ * graph, so every key is a couple of table lookups.  Actions are the same
+ * as {@link HangulAutomata}'s; the composing text can be two characters
+ * while a vowel is still unfinished (an initial followed by a dot).
+ *
+ * A consonant key only cycles when it is pressed again within the cycle
+ * timeout, measured on the event times the caller passes in, so two equal
+ * consonants can be typed by pausing instead of pressing a separator.
+ */
+public class SejongAutomata {
+
+    /** Key codes sent by res/xml/sejong.xml. */
+    public static final int KEY_FIRST_CONSONANT = 'A';
+    public static final int KEY_I = 'J';
+    public static final int KEY_DOT = 'K';
+    public static final int KEY_EU = 'L';
+
+    static final int CONSONANT_KEYS = 9;
+
+    /** Default window, in ms, for a repeated press to cycle the consonant. */
+    public static final int DEFAULT_CYCLE_TIMEOUT = 700;
+
+    static final int S_EMPTY = 0;
+    static final int S_CHO = 1;      // initial
+    static final int S_JUNG = 2;     // vowel strokes only
+    static final int S_SYLLABLE = 3; // initial, vowel strokes
+    static final int S_JONG = 4;     // initial, vowel, final
+    static final int S_JONG2 = 5;    // initial, vowel, two part final
+
+    // consonant key -> jamo cycle
+    static final byte[][] CYCLES = {
+        {0, 26, 1}, {3}, {6, 27, 7}, {8}, {16}, {17, 28, 18}, {20, 21}, {22, 29}, {23, 25, 24}
+    };
+
+    /**
+     * Vowel stroke graph, (stroke state * 3 + stroke) -> stroke state, 0 if
+     * the stroke can't extend the vowel.  Strokes are i, dot, eu; states are
+     * 1 dot, 2 two dots, 3 + n the n-th vowel (a .. i).
+     */
+    static final byte[] STROKES = {
+        23, 1,21,    7, 2,11,    9, 1,15,    4, 5, 0,    0, 0, 0,    6, 3, 0,
+         0, 0, 0,    8, 0, 0,    0, 0, 0,   10, 0, 0,    0, 0, 0,   14, 0, 0,
+        13, 0, 0,    0, 0, 0,    0,12, 0,    0, 0, 0,   19,20, 0,   18, 0, 0,
+         0, 0, 0,    0, 0, 0,   17,16, 0,   22,16, 0,    0, 0, 0,    0, 3, 0
+    };
+
+    /** Shown for unfinished vowels: one dot, two dots. */
+    static final char DOT = 0x00B7;
+    static final char TWO_DOTS = ':';
+
+    /** consonant jamo -> next jamo on the same key, -1 if it doesn't cycle */
+    static final byte[] NEXT = new byte[30];
+    /** jamo -> consonant key, -1 for non-consonants */
+    static final byte[] KEY_OF = new byte[30];
+    /** (first * 30 + second) -> two part final, -1 if they don't join */
+    static final byte[] JONG_JOIN = new byte[30 * 30];
+
+    static {
+        for (int i = 0; i < 30; i++) {
+            NEXT[i] = -1;
+            KEY_OF[i] = -1;
+        }
+        for (int key = 0; key < CYCLES.length; key++) {
+            byte[] cycle = CYCLES[key];
+            for (int i = 0; i < cycle.length; i++) {
+                KEY_OF[cycle[i]] = (byte) key;
+                if (cycle.length > 1) {
+                    NEXT[cycle[i]] = cycle[(i + 1) % cycle.length];
+                }
+            }
+        }
+        for (int i = 0; i < JONG_JOIN.length; i++) {
+            JONG_JOIN[i] = -1;
+        }
+        for (int i = 0; i < HangulSyllables.SPLIT.length; i += 3) {
+            if (HangulSyllables.SPLIT[i] < 30) {
+                JONG_JOIN[HangulSyllables.SPLIT[i + 1] * 30 + HangulSyllables.SPLIT[i + 2]] =
+                        HangulSyllables.SPLIT[i];
+            }
+        }
+    }
+
+    static final int HISTORY = 8;
+    static final int SNAPSHOT_SIZE = 6;
+
+    private int mState;
+    private int mCho = -1;
+    private int mStroke;
+    private int mJong = -1;
+    private int mJong2 = -1;
+    /** Consonant key pressed last, -1 after anything else. */
+    private int mLastKey = -1;
+    /** Event time of the last consonant key. */
+    private long mLastTime;
+    private int mCycleTimeout = DEFAULT_CYCLE_TIMEOUT;
+    private final StringBuilder mComposing = new StringBuilder(2);
+    private final StringBuilder mCommitted = new StringBuilder(2);
+
+    private final int[] mHistory = new int[HISTORY * SNAPSHOT_SIZE];
+    /** Snapshots that can be restored, at most HISTORY. */
+    private int mDepth;
+    /** Slot the next snapshot goes into. */
+    private int mTop;
+
+    /** Sets how long, in ms, a consonant key keeps cycling. */
+    public void setCycleTimeout(int timeout) {
+        mCycleTimeout = timeout;
+    }
+
+    public int getCycleTimeout() {
+        return mCycleTimeout;
+    }
+
+    /**
+     * Feeds one key code from the Sejong layout and returns the action the
+     * editor should apply, ACTION_NONE if the code is not a Sejong key.
+     * eventTime is the key's uptime in ms (MotionEvent/KeyEvent time base).
+     */
+    public int process(int code, long eventTime) {
+        int key = code - KEY_FIRST_CONSONANT;
+        if (key >= 0 && key < CONSONANT_KEYS) {
+            if (eventTime - mLastTime > mCycleTimeout) {
+                mLastKey = -1;
+            }
+            mLastTime = eventTime;
+            return consonant(key);
+        }
+        if (code >= KEY_I && code <= KEY_EU) {
+            return vowel(code - KEY_I);
+        }
+        return HangulAutomata.ACTION_NONE;
+    }
+
+    private int consonant(int key) {
+        int action;
+        if (key == mLastKey && NEXT[CYCLES[key][0]] >= 0) {
+            save();
+            action = cycle();
+        }
+        else {
+            int c = CYCLES[key][0];
+            switch (mState) {
+            case S_EMPTY:
+                save();
+                startCho(c);
+                action = HangulAutomata.ACTION_START;
+                break;
+            case S_SYLLABLE:
+                if (mStroke >= 3 && HangulSyllables.isFinal(c)) {
+                    save();
+                    mJong = c;
+                    mState = S_JONG;
+                    action = HangulAutomata.ACTION_UPDATE;
+                }
+                else {
+                    action = commitAndStartCho(c);
+                }
+                break;
+            case S_JONG:
+                if (JONG_JOIN[mJong * 30 + c] >= 0) {
+                    save();
+                    mJong2 = c;
+                    mState = S_JONG2;
+                    action = HangulAutomata.ACTION_UPDATE;
+                }
+                else {
+                    action = commitAndStartCho(c);
+                }
+                break;
+            default:
+                action = commitAndStartCho(c);
+                break;
+            }
+        }
+        mLastKey = key;
+        compose();
+        return action;
+    }
+
+    /** The same consonant key again: move to the next consonant in place. */
+    private int cycle() {
+        switch (mState) {
+        case S_CHO:
+            mCho = NEXT[mCho];
+            return HangulAutomata.ACTION_UPDATE;
+        case S_JONG:
+            int jong = NEXT[mJong];
+            if (HangulSyllables.isFinal(jong)) {
+                mJong = jong;
+                return HangulAutomata.ACTION_UPDATE;
+            }
+            mJong = -1;
+            mState = S_SYLLABLE;
+            return commitAndStartCho(jong);
+        case S_JONG2:
+            int second = NEXT[mJong2];
+            if (JONG_JOIN[mJong * 30 + second] >= 0) {
+                mJong2 = second;
+                return HangulAutomata.ACTION_UPDATE;
+            }
+            mJong2 = -1;
+            mState = S_JONG;
+            return commitAndStartCho(second);
+        }
+        return HangulAutomata.ACTION_NONE;
+    }
+
+    private int vowel(int stroke) {
+        int action;
+        int next = STROKES[mStroke * 3 + stroke];
+        switch (mState) {
+        case S_EMPTY:
+            save();
+            mStroke = STROKES[stroke];
+            mState = S_JUNG;
+            action = HangulAutomata.ACTION_START;
+            break;
+        case S_CHO:
+            save();
+            mStroke = STROKES[stroke];
+            mState = S_SYLLABLE;
+            action = HangulAutomata.ACTION_UPDATE;
+            break;
+        case S_JUNG:
+        case S_SYLLABLE:
+            if (next != 0) {
+                save();
+                mStroke = next;
+                action = HangulAutomata.ACTION_UPDATE;
+            }
+            else {
+                commit();
+                save();
+                mStroke = STROKES[stroke];
+                mState = S_JUNG;
+                action = HangulAutomata.ACTION_COMMIT;
+            }
+            break;
+        default:
+            // the last consonant becomes the next syllable's initial
+            int cho;
+            if (mState == S_JONG2) {
+                cho = mJong2;
+                mJong2 = -1;
+                mState = S_JONG;
+            }
+            else {
+                cho = mJong;
+                mJong = -1;
+                mState = S_SYLLABLE;
+            }
+            commit();
+            startCho(cho);
+            save();
+            mStroke = STROKES[stroke];
+            mState = S_SYLLABLE;
+            action = HangulAutomata.ACTION_COMMIT;
+            break;
+        }
+        mLastKey = -1;
+        compose();
+        return action;
+    }
+
+    private int commitAndStartCho(int c) {
+        commit();
+        save();
+        startCho(c);
+        return HangulAutomata.ACTION_COMMIT;
+    }
+
+    /** Moves the current character to mCommitted and empties the engine. */
+    private void commit() {
+        compose();
+        mCommitted.setLength(0);
+        mCommitted.append(mComposing);
+        mState = S_EMPTY;
+        mCho = mJong = mJong2 = -1;
+        mStroke = 0;
+        mDepth = 0;
+    }
+
+    private void startCho(int c) {
+        mCho = c;
+        mStroke = 0;
+        mJong = mJong2 = -1;
+        mState = S_CHO;
+    }
+
+    /**
+     * Takes back the last key of the composing character.  Returns
+     * ACTION_NONE if nothing is being composed.
+     */
+    public int delete() {
+        if (mState == S_EMPTY) {
+            return HangulAutomata.ACTION_NONE;
+        }
+        if (mDepth == 0) {
+            reset();
+            return HangulAutomata.ACTION_CLEAR;
+        }
+        restore();
+        compose();
+        return mState == S_EMPTY ? HangulAutomata.ACTION_CLEAR : HangulAutomata.ACTION_UPDATE;
+    }
+
+    /**
+     * Closes the running consonant cycle: the next press of the same key
+     * starts a new consonant.  Called when the cycle timeout expires.
+     * The syllable stays composing: any vowel can still take its final
+     * consonant as the next initial, so it isn't done yet.  Returns
+     * whether a cycle was open.
+     */
+    public boolean endCycle() {
+        if (mLastKey < 0) {
+            return false;
+        }
+        mLastKey = -1;
+        return true;
+    }
+
+    public void reset() {
+        mState = S_EMPTY;
+        mCho = mJong = mJong2 = -1;
+        mStroke = 0;
+        mLastKey = -1;
+        mDepth = 0;
+        mComposing.setLength(0);
+    }
+
+    public boolean isEmpty() {
+        return mState == S_EMPTY;
+    }
+
+    /** Whether the composing syllable has a final consonant. */
+    public boolean hasFinal() {
+        return mState == S_JONG || mState == S_JONG2;
+    }
+
+    public CharSequence getComposing() {
+        return mComposing;
+    }
+
+    public CharSequence getCommitted() {
+        return mCommitted;
+    }
+
+    private void compose() {
+        mComposing.setLength(0);
+        switch (mState) {
+        case S_CHO:
+            mComposing.append((char) (HangulSyllables.JAMO_BASE + mCho));
+            break;
+        case S_JUNG:
+            mComposing.append(strokeChar(mStroke));
+            break;
+        case S_SYLLABLE:
+            if (mStroke >= 3) {
+                mComposing.append(HangulSyllables.compose(mCho, 27 + mStroke, -1));
+            }
+            else {
+                mComposing.append((char) (HangulSyllables.JAMO_BASE + mCho));
+                mComposing.append(strokeChar(mStroke));
+            }
+            break;
+        case S_JONG:
+            mComposing.append(HangulSyllables.compose(mCho, 27 + mStroke, mJong));
+            break;
+        case S_JONG2:
+            mComposing.append(HangulSyllables.compose(mCho, 27 + mStroke,
+                    JONG_JOIN[mJong * 30 + mJong2]));
+            break;
+        }
+    }
+
+    private static char strokeChar(int stroke) {
+        if (stroke == 1) {
+            return DOT;
+        }
+        if (stroke == 2) {
+            return TWO_DOTS;
+        }
+        return (char) (HangulSyllables.JAMO_BASE + 27 + stroke);
+    }
+
+    /**
+     * Claims the slot for a new snapshot and returns its offset.  When the
+     * ring is full the oldest snapshot is overwritten and can't be restored
+     * any more; delete() then clears the syllable instead.
+     */
+    private int push() {
+        int i = mTop * SNAPSHOT_SIZE;
+        mTop = (mTop + 1) % HISTORY;
+        if (mDepth < HISTORY) {
+            mDepth++;
+        }
+        return i;
+    }
+
+    /** Offset of the newest snapshot, which is dropped; mDepth must be > 0. */
+    private int pop() {
+        mTop = (mTop + HISTORY - 1) % HISTORY;
+        mDepth--;
+        return mTop * SNAPSHOT_SIZE;
+    }
+
+    private void save() {
+        int[] h = mHistory;
+        int i = push();
+        h[i] = mState;
+        h[i + 1] = mCho;
+        h[i + 2] = mStroke;
+        h[i + 3] = mJong;
+        h[i + 4] = mJong2;
+        h[i + 5] = mLastKey;
+    }
+
+    private void restore() {
+        int[] h = mHistory;
+        int i = pop();
+        mState = h[i];
+        mCho = h[i + 1];
+        mStroke = h[i + 2];
+        mJong = h[i + 3];
+        mJong2 = h[i + 4];
+        mLastKey = h[i + 5];
+    }
+}
@@ -0,0 +1,89 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * Sejong (cheonjiin) typing on top of {@link SejongAutomata}.  A separator
+ * after a final consonant only closes the syllable, so that the next
+ * press of the same consonant key starts a new letter.
+ */
+public class SejongEngine implements InputEngine {
+
+    private final SejongAutomata mAutomata = new SejongAutomata();
+
+    public SejongAutomata getAutomata() {
+        return mAutomata;
+    }
+
+    public boolean onKey(int code, long eventTime, EditOps ops) {
+        int action = mAutomata.process(code, eventTime);
+        if (action == HangulAutomata.ACTION_NONE) {
+            return false;
+        }
+        apply(action, ops);
+        return true;
+    }
+
+    public boolean delete(EditOps ops) {
+        int action = mAutomata.delete();
+        if (action == HangulAutomata.ACTION_NONE) {
+            return false;
+        }
+        apply(action, ops);
+        return true;
+    }
+
+    public boolean deleteSyllable(EditOps ops) {
+        if (mAutomata.isEmpty()) {
+            return false;
+        }
+        apply(HangulAutomata.ACTION_CLEAR, ops);
+        return true;
+    }
+
+    public boolean canResume() {
+        return false;
+    }
+
+    public boolean resume(char c) {
+        return false;
+    }
+
+    public void finish(EditOps ops) {
+        if (!mAutomata.isEmpty()) {
+            ops.finish();
+            mAutomata.reset();
+        }
+    }
+
+    public void separate(int code, EditOps ops) {
+        boolean hasFinal = mAutomata.hasFinal();
+        finish(ops);
+        if (!hasFinal) {
+            ops.type(code);
+        }
+    }
+
+    public boolean isEmpty() {
+        return mAutomata.isEmpty();
+    }
+
+    public void reset() {
+        mAutomata.reset();
+    }
+
+    private void apply(int action, EditOps ops) {
+        switch (action) {
+        case HangulAutomata.ACTION_START:
+        case HangulAutomata.ACTION_UPDATE:
+            ops.compose(mAutomata.getComposing());
+            break;
+        case HangulAutomata.ACTION_COMMIT:
+            ops.commit(mAutomata.getCommitted());
+            ops.compose(mAutomata.getComposing());
+            break;
+        case HangulAutomata.ACTION_CLEAR:
+            ops.commit("");
+            mAutomata.reset();
+            break;
+        }
+    }
+}
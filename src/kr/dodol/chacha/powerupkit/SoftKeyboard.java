@@ -23,6 +23,8 @@ import android.content.Intent;
 import android.inputmethodservice.InputMethodService;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.KeyboardView;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.text.AlteredCharSequence;
 import android.text.TextUtils;
 import android.text.method.MetaKeyKeyListener;
@@ -32,8 +34,9 @@ import android.view.KeyEvent;
 import android.view.View;
 import android.view.inputmethod.CompletionInfo;
 import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
-import android.widget.Toast;
 
 /**
  * Example of writing an input method for a soft keyboard.  This code is
@@ -61,28 +64,71 @@ public class SoftKeyboard extends InputMethodService
     private CompletionInfo[] mCompletions;
     
     private StringBuilder mComposing = new StringBuilder();
+    private InputConnectionCounter mConnectionCounter = new InputConnectionCounter();
+    /** Key to editor times, shown in the settings. */
+    private LatencyRecorder mLatency = LatencyRecorder.getInstance();
+
+    /**
+     * Optional mode for fast hardware typing: composing text is only sent
+     * to the editor once per frame instead of on every key.  Anything that
+     * commits, moves the cursor or reads the editor flushes it first.
+     */
+    static final int COMPOSING_FRAME_DELAY = 16;
+    private boolean mCoalesceComposing;
+    private boolean mComposingDirty;
+    private long mComposingDirtyTime;
+    private Handler mHandler = new Handler();
+    private Runnable mFlushComposing = new Runnable() {
+        public void run() {
+            flushComposing();
+        }
+    };
+    private int mComposingRequests;
+    private int mComposingSent;
+    private long mComposingLagTotal;
+    private long mComposingLagMax;
+    private long mComposingFirstTime;
+    private long mComposingLastTime;
+
+    /** Optional wrong-mode detection for the hard keyboard, null when off. */
+    private InputModeDetector mModeDetector;
     private boolean mPredictionOn;
     private boolean mCompletionOn;
     private int mLastDisplayWidth;
     private boolean mCapsLock;
-    private long mLastShiftTime;
     private long mMetaState;
     
     private LatinKeyboard mSymbolsKeyboard;
     private LatinKeyboard mSymbolsShiftedKeyboard;
     private LatinKeyboard mQwertyKeyboard;
+    private LatinKeyboard mHangulKeyboard;
+    private LatinKeyboard mHangulShiftedKeyboard;
+    private LatinKeyboard mSejongKeyboard;
     
     private LatinKeyboard mCurKeyboard;
     
     private String mWordSeparators;
 
-    private boolean isHangulMode;
+    private AbbreviationStore mAbbreviationStore;
+    private AbbreviationMatcher mAbbreviationMatcher;
+    /** ABBREVIATION_TEXT_START, ABBREVIATION_UNKNOWN or a matcher state */
+    private int mAbbreviationState = ABBREVIATION_UNKNOWN;
+    private boolean mExpanding;
+    /** Off where expanding would get in the way: passwords, numbers. */
+    private boolean mAbbreviationsOn;
+    private static final int ABBREVIATION_TEXT_START = -1;
+    /** The root state: not at a word start, so nothing can match yet. */
+    private static final int ABBREVIATION_UNKNOWN = 0;
 
-	private int mToggleShift = 0;
+    private boolean isHangulMode;
 
-	private long mLastAltTime;
+    private final ModifierStates mModifiers = new ModifierStates();
+    /** The "keyboard_toast" setting, read when input starts. */
+    private boolean mShowModifierIndicator;
 
-	private int mToggleAlt;
+    /** [state + 1] -> indicator; nothing for USED and OFF */
+    static final String[] SHIFT_INDICATOR_LABELS = { null, null, "Ʈ", "Ʈ " };
+    static final String[] ALT_INDICATOR_LABELS = { null, null, "ȣ", "ȣ " };
     
     /**
      * Main initialization of the input method component.  Be sure to call
@@ -91,6 +137,10 @@ public class SoftKeyboard extends InputMethodService
     @Override public void onCreate() {
         super.onCreate();
         mWordSeparators = getResources().getString(R.string.word_separators);
+        mConnectionCounter.setLatencyRecorder(mLatency);
+        mAbbreviationStore = AbbreviationStore.getInstance(this);
+        mConnectionCounter.setCommitListener(mAbbreviationFeed);
+        mSejongEngine.getAutomata().setCycleTimeout(getResources().getInteger(R.integer.sejong_cycle_timeout));
         Log.v("kbd", " onCreate ");
     }
     
@@ -107,9 +157,49 @@ public class SoftKeyboard extends InputMethodService
             if (displayWidth == mLastDisplayWidth) return;
             mLastDisplayWidth = displayWidth;
         }
-        mQwertyKeyboard = new LatinKeyboard(this, R.xml.qwerty);
-        mSymbolsKeyboard = new LatinKeyboard(this, R.xml.symbols);
-        mSymbolsShiftedKeyboard = new LatinKeyboard(this, R.xml.symbols_shift);
+        mQwertyKeyboard = KeyboardLayoutCache.load(this, R.xml.qwerty);
+        // the rest are only built when first shown, see getSymbolsKeyboard();
+        // KeyboardLayoutCache only parses the XML once per screen size
+        mSymbolsKeyboard = null;
+        mSymbolsShiftedKeyboard = null;
+        mHangulKeyboard = null;
+        mHangulShiftedKeyboard = null;
+        mSejongKeyboard = null;
+    }
+
+    private LatinKeyboard getSymbolsKeyboard() {
+        if (mSymbolsKeyboard == null) {
+            mSymbolsKeyboard = KeyboardLayoutCache.load(this, R.xml.symbols);
+        }
+        return mSymbolsKeyboard;
+    }
+
+    private LatinKeyboard getSymbolsShiftedKeyboard() {
+        if (mSymbolsShiftedKeyboard == null) {
+            mSymbolsShiftedKeyboard = KeyboardLayoutCache.load(this, R.xml.symbols_shift);
+        }
+        return mSymbolsShiftedKeyboard;
+    }
+
+    private LatinKeyboard getHangulKeyboard() {
+        if (mHangulKeyboard == null) {
+            mHangulKeyboard = KeyboardLayoutCache.load(this, R.xml.hangul);
+        }
+        return mHangulKeyboard;
+    }
+
+    private LatinKeyboard getHangulShiftedKeyboard() {
+        if (mHangulShiftedKeyboard == null) {
+            mHangulShiftedKeyboard = KeyboardLayoutCache.load(this, R.xml.hangul_shift);
+        }
+        return mHangulShiftedKeyboard;
+    }
+
+    private LatinKeyboard getSejongKeyboard() {
+        if (mSejongKeyboard == null) {
+            mSejongKeyboard = KeyboardLayoutCache.load(this, R.xml.sejong);
+        }
+        return mSejongKeyboard;
     }
     
     /**
@@ -136,6 +226,14 @@ public class SoftKeyboard extends InputMethodService
         return mCandidateView;
     }
 
+    /**
+     * All editor calls go through the counter so we can see how many
+     * round-trips a field cost; the numbers are logged in onFinishInput.
+     */
+    @Override public InputConnection getCurrentInputConnection() {
+        return mConnectionCounter.wrap(super.getCurrentInputConnection());
+    }
+
     /**
      * This is the main point where we do our initialization of the input method
      * to begin operating on an application.  At this point we have been
@@ -144,13 +242,38 @@ public class SoftKeyboard extends InputMethodService
      */
     @Override public void onStartInput(EditorInfo attribute, boolean restarting) {
         super.onStartInput(attribute, restarting);
+        mConnectionCounter.reset();
+        mAbbreviationState = attribute.initialSelStart == 0
+                ? ABBREVIATION_TEXT_START : ABBREVIATION_UNKNOWN;
+        takeComposingUpdate();
+        mCoalesceComposing = Cons.getSharedPreference(this).getBoolean("coalesce_composing", false);
+        mComposingRequests = 0;
+        mComposingSent = 0;
+        mComposingLagTotal = 0;
+        mComposingLagMax = 0;
+        mShowModifierIndicator = Cons.getSharedPreference(this).getBoolean("keyboard_toast", false);
+        updateModifierIndicator();
+        setHangulLayout(Cons.getSharedPreference(this).getInt("hangul_layout", KeyJamoTable.LAYOUT_2BEOLSIK));
+        // the detector's model is of 2-beolsik key sequences
+        if (Cons.getSharedPreference(this).getBoolean("auto_mode_correct", false)
+                && mHangulLayout == KeyJamoTable.LAYOUT_2BEOLSIK) {
+            if (mModeDetector == null) {
+                mModeDetector = InputModeDetector.load(getResources());
+            }
+            else {
+                mModeDetector.reset();
+            }
+        }
+        else {
+            mModeDetector = null;
+        }
         
         updateStatusIcon();
         // Reset our state.  We want to do this even if restarting, because
         // the underlying state of the text editor could have changed in any way.
         mComposing.setLength(0);
         updateCandidates();
-        clearHangul();
+        resetEngines();
         
         if (!restarting) {
             // Clear shift states.
@@ -160,6 +283,7 @@ public class SoftKeyboard extends InputMethodService
         mPredictionOn = false;
         mCompletionOn = false;
         mCompletions = null;
+        mAbbreviationsOn = false;
         
         // We are now going to initialize our state based on the type of
         // text being edited.
@@ -168,13 +292,13 @@ public class SoftKeyboard extends InputMethodService
             case EditorInfo.TYPE_CLASS_DATETIME:
                 // Numbers and dates default to the symbols keyboard, with
                 // no extra features.
-                mCurKeyboard = mSymbolsKeyboard;
+                mCurKeyboard = getSymbolsKeyboard();
                 break;
                 
             case EditorInfo.TYPE_CLASS_PHONE:
                 // Phones will also default to the symbols keyboard, though
                 // often you will want to have a dedicated phone keyboard.
-                mCurKeyboard = mSymbolsKeyboard;
+                mCurKeyboard = getSymbolsKeyboard();
                 break;
                 
             case EditorInfo.TYPE_CLASS_TEXT:
@@ -195,6 +319,9 @@ public class SoftKeyboard extends InputMethodService
                     // when they are entering a password.
                     mPredictionOn = false;
                 }
+                else {
+                    mAbbreviationsOn = true;
+                }
                 
                 if (variation == EditorInfo.TYPE_TEXT_VARIATION_EMAIL_ADDRESS 
                         || variation == EditorInfo.TYPE_TEXT_VARIATION_URI
@@ -227,6 +354,8 @@ public class SoftKeyboard extends InputMethodService
                 updateShiftKeyState(attribute);
         }
         
+        mLatinEngine.setPrediction(mPredictionOn);
+        
         // Update the label on the enter key, depending on what the application
         // says it will do.
         mCurKeyboard.setImeOptions(getResources(), attribute.imeOptions);
@@ -238,6 +367,18 @@ public class SoftKeyboard extends InputMethodService
      */
     @Override public void onFinishInput() {
         super.onFinishInput();
+        mLatency.finish();
+        mAbbreviationState = ABBREVIATION_UNKNOWN;
+        takeComposingUpdate();
+        Log.v("kbd", "editor calls " + mConnectionCounter.getCallCount()
+                + " updates " + mConnectionCounter.getUpdateCount());
+        if (mComposingRequests > 0) {
+            long elapsed = Math.max(1, mComposingLastTime - mComposingFirstTime);
+            Log.v("kbd", "composing updates " + mComposingRequests + " sent " + mComposingSent
+                    + " (" + (mComposingRequests * 1000L / elapsed) + "/s typed)"
+                    + " lag avg " + (mComposingLagTotal / Math.max(1, mComposingSent))
+                    + "ms max " + mComposingLagMax + "ms");
+        }
         
         // Clear current composing text and candidates.
         mComposing.setLength(0);
@@ -275,9 +416,9 @@ public class SoftKeyboard extends InputMethodService
                 candidatesStart, candidatesEnd);
         
         //  忡 send   editText  ʱȭ  
-        if(((newSelStart == 0) && (newSelEnd == 0) && (candidatesStart == -1) && (candidatesEnd == -1)) 
-        		|| newSelStart < oldSelStart 
-        		|| newSelStart > oldSelStart + 1) {
+        // a composing text that hasn't gone out yet is unknown to the editor
+        if (!mComposingDirty && shouldEndEditing(mComposing.length(),
+                newSelStart, newSelEnd, candidatesStart, candidatesEnd)) {
         	endEditing();
         }
         // If the current selection in the text view changes, we should
@@ -317,14 +458,30 @@ public class SoftKeyboard extends InputMethodService
 //            }
 //        }        
     }
-    void endEditing() {
+    /**
+     * Whether a selection update means the user moved away from what we
+     * are composing: the field was cleared, or the cursor is no longer at
+     * the end of the composing text.  The old cursor position doesn't
+     * matter; romaja and Sejong composing text can get shorter (and the
+     * cursor go back) while the syllable is still being typed.
+     */
+    static boolean shouldEndEditing(int composingLength, int newSelStart, int newSelEnd,
+            int candidatesStart, int candidatesEnd) {
+        if (newSelStart == 0 && newSelEnd == 0 && candidatesStart == -1 && candidatesEnd == -1) {
+            return true;
+        }
+        return composingLength > 0
+                && (newSelStart != candidatesEnd || newSelEnd != candidatesEnd);
+    }
 
-      mComposing.setLength(0);
-      clearHangul();
-      InputConnection ic = getCurrentInputConnection();
-      if (ic != null) {
-          ic.finishComposingText();
-      }               
+    void endEditing() {
+      composingEngine(mLatinEngine).finish(mEdits);
+      resetEngines();
+      if (mEdits.isEmpty()) {
+          // the editor may still hold composing text we don't know of
+          mEdits.finish();
+      }
+      applyEdits();
     }
 
     /**
@@ -382,7 +539,8 @@ public class SoftKeyboard extends InputMethodService
 
             if (composed != 0) {
                 c = composed;
-                mComposing.setLength(mComposing.length()-1);
+                // goes out in the same batch as the composed letter
+                mLatinEngine.delete(mEdits);
             }
         }
         
@@ -398,8 +556,23 @@ public class SoftKeyboard extends InputMethodService
      */
     int mLastKeyDown;
     @Override public boolean onKeyDown(int keyCode, KeyEvent event) {
+        mLatency.begin(isHangulMode ? LatencyRecorder.HANGUL : LatencyRecorder.LATIN);
+        boolean handled = handleKeyDown(keyCode, event);
+        if (!handled) {
+            // the key goes on to the editor as it is
+            mLatency.end();
+        }
+        // edits made later, off this key, don't count
+        mLatency.finish();
+        return handled;
+    }
+
+    private boolean handleKeyDown(int keyCode, KeyEvent event) {
         Log.v("kbd", " onKeyDown " + keyCode);
         mLastKeyDown = keyCode;
+        if (mModeDetector != null) {
+            trackModeKey(keyCode, event);
+        }
         
         switch (keyCode) {
             case KeyEvent.KEYCODE_BACK:
@@ -419,18 +592,26 @@ public class SoftKeyboard extends InputMethodService
                 // Special handling of the delete key: if we currently are
                 // composing text for the user, we want to modify that instead
                 // of let the application to the delete itself.
+                mAbbreviationState = ABBREVIATION_UNKNOWN;
 
             	Log.v("kbd", "del");
             	
             	if((event.getMetaState() & KeyEvent.META_ALT_ON) != 0) {
                 	Log.v("kbd", "del alt");
-            		mToggleAlt = -1;
+            		mModifiers.apply(ModifierStates.ALT, ModifierStates.EVENT_HOLD_USE);
             		return super.onKeyDown(keyCode, event);
             	}
             	Log.v("kbd", "del 2");
+            	if(isHangulMode && (event.getMetaState() & KeyEvent.META_SHIFT_ON) != 0) {
+                	Log.v("kbd", "del hangul syllable");
+            		handleDeleteSyllable(composingEngine(mJamoEngine));
+            		InputConnection ic = getCurrentInputConnection();
+            		if (ic != null) ic.clearMetaKeyStates(KeyEvent.META_SHIFT_ON);
+            		return true;
+            	}
             	if(isHangulMode) {
                 	Log.v("kbd", "del hangul");
-            		hangulSendKey(-2, HCURSOR_NONE);
+            		handleDelete(composingEngine(mJamoEngine));
                     Log.v("kbd", "KeyEvent.KEYCODE_DEL");
             		return true;
             	}
@@ -444,6 +625,7 @@ public class SoftKeyboard extends InputMethodService
             case KeyEvent.KEYCODE_ENTER:
                 // Let the underlying text editor always handle these.
                 endEditing();
+                typedAbbreviationChar('\n');
                 return false;
             default:
                 // For all other keys, if we want to do transformations on
@@ -465,8 +647,8 @@ public class SoftKeyboard extends InputMethodService
                         ic.clearMetaKeyStates(KeyEvent.META_SHIFT_ON);
 
                         Log.v("kbd", " clearMetaKeyStates1");
-                        mToggleShift--;
-                        mToggleAlt = 0;
+                        mModifiers.apply(ModifierStates.SHIFT, ModifierStates.EVENT_HOLD_USE);
+                        mModifiers.clear(ModifierStates.ALT);
                         return true;
                     }
                     if(keyCode == KeyEvent.KEYCODE_ALT_LEFT) {
@@ -476,25 +658,28 @@ public class SoftKeyboard extends InputMethodService
                 	if(keyCode == KeyEvent.KEYCODE_SHIFT_LEFT ) {
                         return super.onKeyDown(keyCode, event);
                 	} 
-                    if ((event.getMetaState()&KeyEvent.META_ALT_LEFT_ON) != 0 || mToggleAlt > 0) {
+                    if ((event.getMetaState()&KeyEvent.META_ALT_LEFT_ON) != 0 || mModifiers.isActive(ModifierStates.ALT)) {
 
                         endEditing();
-                        String fnString = Cons.getFnKey( this, keyCode );
+                        mLatency.setEngine(LatencyRecorder.FN);
+                        FnMacro macro = Cons.getFnMacro( this, keyCode );
                         Log.v("kbd", "FN keyCode " + keyCode);
-                        if(!TextUtils.isEmpty( fnString )) {
+                        if(macro != null && macro.size() > 0) {
 
-                            mComposing.append(fnString);
-                            getCurrentInputConnection().setComposingText(mComposing, 1);
-                            if (mComposing.length() > 0) {
-                                mComposing.setLength(0);
-                                getCurrentInputConnection().finishComposingText();    
-                            }
-                            clearHangul();
+                            runMacro(macro);
+                            resetEngines();
                           InputConnection ic = getCurrentInputConnection();
                           if (ic != null) ic.clearMetaKeyStates(KeyEvent.META_ALT_ON);
                             return true;   
                         }
-                        if(mToggleAlt ==1 ) mToggleAlt = 0;
+                        if(keyCode == KeyEvent.KEYCODE_SPACE && reconvert()) {
+                            if (mModeDetector != null) mModeDetector.reset();
+                            InputConnection ic = getCurrentInputConnection();
+                            if (ic != null) ic.clearMetaKeyStates(KeyEvent.META_ALT_ON);
+                            mModifiers.apply(ModifierStates.ALT, ModifierStates.EVENT_USE);
+                            return true;
+                        }
+                        mModifiers.apply(ModifierStates.ALT, ModifierStates.EVENT_USE);
                     	return super.onKeyDown(keyCode, event);
                     }
                     if(keyCode == KeyEvent.KEYCODE_TAB) {
@@ -504,7 +689,8 @@ public class SoftKeyboard extends InputMethodService
                     if(keyCode == KeyEvent.KEYCODE_SPACE ) {
                         Log.v("kbd", "KeyEvent.KEYCODE_SPACE");
                         endEditing();
-                        clearHangul();
+                        correctInputMode();
+                        typedAbbreviationChar(' ');
                         return super.onKeyDown(keyCode, event);
                     }
 
@@ -517,36 +703,31 @@ public class SoftKeyboard extends InputMethodService
                     		keyCode == KeyEvent.KEYCODE_DPAD_RIGHT 
                     		) {
                         endEditing();
+                        mAbbreviationState = ABBREVIATION_UNKNOWN;
                         return super.onKeyDown(keyCode, event);
                     }
                     
-                    if(isHangulMode && (event.getMetaState() & KeyEvent.META_ALT_ON) == 0 && 
-                    		(keyCode >= KeyEvent.KEYCODE_A && keyCode <= KeyEvent.KEYCODE_Z)) {
-                        Log.v("kbd", "handleHangulkeyCode " + keyCode);
-                    	Log.v("kbd", "capsMode "+ getCurrentInputConnection().getCursorCapsMode(0));
-                    	
-                        mHangulShiftState = (event.getMetaState() & KeyEvent.META_SHIFT_ON);
-                        Log.v("kbd", "mHangulShiftState1 " + mHangulShiftState);
-                        if(mHangulShiftState == 0) {
-                        	if(mToggleShift > 0) mHangulShiftState =1; 
-                            Log.v("kbd", "mHangulShiftState2 " + mHangulShiftState);
+                    int jamo = KeyJamoTable.NOT_HANGUL;
+                    if(isHangulMode && (event.getMetaState() & KeyEvent.META_ALT_ON) == 0) {
+                        if(mKeyJamoTable == null || mKeyJamoTable.getDeviceId() != event.getDeviceId()) {
+                            mKeyJamoTable = KeyJamoTable.build(event.getDeviceId(), mHangulLayout);
                         }
+                        jamo = mKeyJamoTable.get(keyCode,
+                                (event.getMetaState() & KeyEvent.META_SHIFT_ON) != 0 || mModifiers.isActive(ModifierStates.SHIFT));
+                    }
+                    if(jamo != KeyJamoTable.NOT_HANGUL) {
+                        Log.v("kbd", "handleHangulkeyCode " + keyCode);
                         
-                        if(mCurKeyboard != mSymbolsKeyboard && handleHangul(keyCode + 68, null)) {
+                        if(mCurKeyboard != mSymbolsKeyboard) {
+                            handleJamo(jamo, event.getEventTime());
 
-                            if(mToggleShift == 1) {
-                            	mToggleShift = 0;
-                            }
+                            mModifiers.apply(ModifierStates.SHIFT, ModifierStates.EVENT_USE);
                            return true; 
                         }
                     } else {
                     	endEditing();
-                        if(mToggleShift == 1) {
-                        	mToggleShift = 0;
-                        }
-                        if(mToggleAlt == 1) {
-                    		mToggleAlt = -1;
-                        }
+                        mModifiers.apply(ModifierStates.SHIFT, ModifierStates.EVENT_USE);
+                        mModifiers.apply(ModifierStates.ALT, ModifierStates.EVENT_PASS);
                     }
 //                    if((event.getMetaState() & KeyEvent.META_ALT_ON) != 0) {
 //                        Log.v("kbd", " ALT");
@@ -585,6 +766,8 @@ public class SoftKeyboard extends InputMethodService
                         return true;
                     }
                     Log.v("kbd", "keycode " + keyCode);
+                    // goes to the editor as a key event, past the connection
+                    typedAbbreviationChar((char) event.getUnicodeChar(event.getMetaState()));
                 }
         }
         Log.v("kbd", "onkeydown");
@@ -598,7 +781,7 @@ public class SoftKeyboard extends InputMethodService
      */
     
     @Override public boolean onKeyUp(int keyCode, KeyEvent event) {
-        Log.v("kbd", "onKeyUp " + keyCode + " mToggleAlt " + mToggleAlt);
+        Log.v("kbd", "onKeyUp " + keyCode + " alt " + mModifiers.get(ModifierStates.ALT));
         // If we want to do transformations on text being entered with a hard
         // keyboard, we need to process the up events to update the meta key
         // state we are tracking.
@@ -610,20 +793,21 @@ public class SoftKeyboard extends InputMethodService
             }
         }
         if(keyCode == KeyEvent.KEYCODE_ALT_LEFT) {
-        	checkToggleAlt();
+            mModifiers.release(ModifierStates.ALT, event.getEventTime(),
+                    mLastKeyDown != KeyEvent.KEYCODE_ALT_LEFT);
         } else {
-        	if(mToggleAlt == 1) mToggleAlt= 0;
-        	mLastAltTime = 0;
-//        	Ʈ
+            mModifiers.otherKeyUp(ModifierStates.ALT);
         }
         
     	if(keyCode == KeyEvent.KEYCODE_SHIFT_LEFT ) {
-    		checkToggleCapsLock();
+            if (mModifiers.release(ModifierStates.SHIFT, event.getEventTime(), false)
+                    == ModifierStates.EVENT_DOUBLE_TAP) {
+                mCapsLock = !mCapsLock;
+            }
     	} else {
-        	if(mToggleShift == 1) mToggleShift= 0;
-    		mLastShiftTime = 0;
-    		// Ʈ 
+            mModifiers.otherKeyUp(ModifierStates.SHIFT);
     	}
+        updateModifierIndicator();
         
         return super.onKeyUp(keyCode, event);
     }
@@ -632,11 +816,13 @@ public class SoftKeyboard extends InputMethodService
      * Helper function to commit any text being composed in to the editor.
      */
     private void commitTyped(InputConnection inputConnection) {
+        takeComposingUpdate();
         if (mComposing.length() > 0) {
             inputConnection.commitText(mComposing, mComposing.length());
             mComposing.setLength(0);
             updateCandidates();
         }
+        resetEngines();
     }
 
     /**
@@ -656,56 +842,205 @@ public class SoftKeyboard extends InputMethodService
     }
     
     /**
-     * Helper to determine if a given character code is alphabetic.
+     * Feeds the abbreviation matcher the text the editor gets through the
+     * connection, and forgets the position when it's edited otherwise.
      */
-    private boolean isAlphabet(int code) {
-        if (Character.isLetter(code)) {
-            return true;
-        } else {
-            return false;
+    private final InputConnectionCounter.CommitListener mAbbreviationFeed =
+            new InputConnectionCounter.CommitListener() {
+        @Override
+        public void onCommitted(CharSequence text) {
+            if (mExpanding) {
+                return;
+            }
+            int match = -1;
+            for (int i = 0; i < text.length(); i++) {
+                match = stepAbbreviation(text.charAt(i));
+            }
+            if (match >= 0) {
+                expandAbbreviation(match, true);
+            }
+        }
+
+        @Override
+        public void onEdited() {
+            if (!mExpanding) {
+                mAbbreviationState = ABBREVIATION_UNKNOWN;
+            }
+        }
+    };
+
+    /**
+     * A character the editor gets as a key event rather than through the
+     * connection; an abbreviation it ends is expanded before it arrives.
+     */
+    private void typedAbbreviationChar(char c) {
+        if (c == 0) {
+            return;
+        }
+        int match = stepAbbreviation(c);
+        if (match >= 0) {
+            expandAbbreviation(match, false);
         }
     }
-    
+
+    /** Moves the matcher on by one character; returns what it completes, or -1. */
+    private int stepAbbreviation(char c) {
+        AbbreviationMatcher matcher = mAbbreviationStore.getMatcher();
+        if (matcher == null || !mAbbreviationsOn) {
+            return -1;
+        }
+        if (matcher != mAbbreviationMatcher) {
+            // rebuilt; keep only whether we were at a word start
+            boolean atStart = mAbbreviationState == ABBREVIATION_TEXT_START
+                    || (mAbbreviationMatcher != null && mAbbreviationState == mAbbreviationMatcher.start());
+            mAbbreviationMatcher = matcher;
+            mAbbreviationState = atStart ? ABBREVIATION_TEXT_START : ABBREVIATION_UNKNOWN;
+        }
+        int state = mAbbreviationState == ABBREVIATION_TEXT_START ? matcher.start() : mAbbreviationState;
+        mAbbreviationState = matcher.next(state, c);
+        return matcher.getMatch(mAbbreviationState);
+    }
+
     /**
-     * Helper to send a key down / key up pair to the current editor.
+     * Replaces the abbreviation before the cursor with its expansion, in
+     * one batch.  separatorSent is whether the separator that ended it is
+     * in the editor already.
      */
-    private void keyDownUp(int keyEventCode) {
-        Log.v("kbd", "keyDownUp");
-        getCurrentInputConnection().sendKeyEvent(
-                new KeyEvent(KeyEvent.ACTION_DOWN, keyEventCode));
-        getCurrentInputConnection().sendKeyEvent(
-                new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
+    private void expandAbbreviation(int match, boolean separatorSent) {
+        AbbreviationMatcher matcher = mAbbreviationMatcher;
+        int separator = separatorSent ? 1 : 0;
+        InputConnection ic = getCurrentInputConnection();
+        if (ic == null) {
+            return;
+        }
+        // the editor may have changed without us seeing it; only replace
+        // the abbreviation if it is really there as a word
+        CharSequence before = ic.getTextBeforeCursor(
+                matcher.getAbbreviation(match).length() * 2 + separator + 1, 0);
+        if (before == null || before.length() < separator) {
+            return;
+        }
+        int start = matcher.findBefore(match, before, before.length() - separator);
+        if (start < 0) {
+            return;
+        }
+        int length = before.length() - start;
+        String expansion = matcher.getExpansion(match);
+        mExpanding = true;
+        ic.beginBatchEdit();
+        ic.deleteSurroundingText(length, 0);
+        ic.commitText(separatorSent ? expansion + before.charAt(before.length() - 1) : expansion, 1);
+        ic.endBatchEdit();
+        mExpanding = false;
+        mAbbreviationState = matcher.start();
     }
-    
+
     /**
-     * Helper to send a character to the editor as raw key events.
+     * Runs an Fn-key macro inside one batch edit, so the editor applies
+     * and redraws it once instead of after every step.  Deletes and
+     * cursor moves are connection calls like the text, so they are
+     * applied in order with it; the cursor they start from is read once
+     * from the extracted text and then followed.  Other keys, and all
+     * keys if the editor has no extracted text, are sent as key events
+     * between batches.
      */
-    private void sendKey(int keyCode) {
-        switch (keyCode) {
-            case '\n':
-                keyDownUp(KeyEvent.KEYCODE_ENTER);
-                break;
-            default:
-                if (keyCode >= '0' && keyCode <= '9') {
-                    keyDownUp(keyCode - '0' + KeyEvent.KEYCODE_0);
-                } else {
-                    getCurrentInputConnection().commitText(String.valueOf((char) keyCode), 1);
+    private void runMacro(FnMacro macro) {
+        InputConnection ic = getCurrentInputConnection();
+        if (ic == null) {
+            return;
+        }
+        // selection and text length, -1 while unknown
+        int start = -1;
+        int end = -1;
+        int length = -1;
+        ic.beginBatchEdit();
+        for (int repeat = macro.getRepeat(); repeat > 0; repeat--) {
+            for (int i = 0; i < macro.size(); i++) {
+                int arg = macro.getArg(i);
+                int count = macro.getCount(i);
+                switch (macro.getOp(i)) {
+                    case FnMacro.OP_TEXT:
+                        CharSequence text = macro.getText(arg);
+                        ic.commitText(text, 1);
+                        if (start >= 0) {
+                            length += text.length() - (end - start);
+                            start = end = start + text.length();
+                        }
+                        break;
+                    case FnMacro.OP_KEY:
+                        boolean edit = arg == KeyEvent.KEYCODE_DEL
+                                || arg == KeyEvent.KEYCODE_DPAD_LEFT || arg == KeyEvent.KEYCODE_DPAD_RIGHT;
+                        if (edit && start < 0) {
+                            ExtractedText extracted = ic.getExtractedText(new ExtractedTextRequest(), 0);
+                            if (extracted != null && extracted.text != null && extracted.selectionStart >= 0) {
+                                start = extracted.startOffset
+                                        + Math.min(extracted.selectionStart, extracted.selectionEnd);
+                                end = extracted.startOffset
+                                        + Math.max(extracted.selectionStart, extracted.selectionEnd);
+                                length = extracted.startOffset + extracted.text.length();
+                            }
+                        }
+                        if (!edit || start < 0) {
+                            // the editor moves the cursor; let it have the edits so far first
+                            ic.endBatchEdit();
+                            for (int n = count; n > 0; n--) {
+                                ic.sendKeyEvent(new KeyEvent(KeyEvent.ACTION_DOWN, arg));
+                                ic.sendKeyEvent(new KeyEvent(KeyEvent.ACTION_UP, arg));
+                            }
+                            ic.beginBatchEdit();
+                            start = end = length = -1;
+                        }
+                        else if (arg == KeyEvent.KEYCODE_DEL) {
+                            if (end > start) {
+                                // the first DEL takes the selection
+                                ic.commitText("", 1);
+                                length -= end - start;
+                                end = start;
+                                count--;
+                            }
+                            count = Math.min(count, start);
+                            if (count > 0) {
+                                ic.deleteSurroundingText(count, 0);
+                                start = end = start - count;
+                                length -= count;
+                            }
+                        }
+                        else {
+                            start = arg == KeyEvent.KEYCODE_DPAD_LEFT
+                                    ? Math.max(start - count, 0) : Math.min(end + count, length);
+                            end = start;
+                            ic.setSelection(start, end);
+                        }
+                        break;
+                    case FnMacro.OP_MODE:
+                        boolean toHangul = arg != 0;
+                        if (isHangulMode != toHangul) {
+                            isHangulMode = toHangul;
+                            updateStatusIcon();
+                        }
+                        break;
                 }
-                break;
+            }
         }
+        ic.endBatchEdit();
     }
 
     // Implementation of KeyboardViewListener
 
     public void onKey(int primaryCode, int[] keyCodes) {
+        mLatency.begin(getKeyEngine());
+        handleKey(primaryCode, keyCodes);
+        mLatency.finish();
+    }
+
+    private void handleKey(int primaryCode, int[] keyCodes) {
         Log.v("kbd", " onKey ");
         
         if (isWordSeparator(primaryCode)) {
             // Handle separator
-            if (mComposing.length() > 0) {
-                commitTyped(getCurrentInputConnection());
-            }
-            sendKey(primaryCode);
+            composingEngine(currentEngine()).separate(primaryCode, mEdits);
+            applyEdits();
+            updateCandidates();
             updateShiftKeyState(getCurrentInputEditorInfo());
         } else if (primaryCode == Keyboard.KEYCODE_DELETE) {
             handleBackspace();
@@ -719,20 +1054,47 @@ public class SoftKeyboard extends InputMethodService
         } else if (primaryCode == Keyboard.KEYCODE_MODE_CHANGE
                 && mInputView != null) {
             Keyboard current = mInputView.getKeyboard();
+            if (current == mHangulKeyboard || current == mHangulShiftedKeyboard
+                    || current == mSejongKeyboard) {
+                endEditing();
+            }
             if (current == mSymbolsKeyboard || current == mSymbolsShiftedKeyboard) {
                 current = mQwertyKeyboard;
+            } else if (current == mQwertyKeyboard) {
+                commitTyped(getCurrentInputConnection());
+                current = getHangulKeyboard();
+            } else if (current == mHangulKeyboard || current == mHangulShiftedKeyboard) {
+                current = getSejongKeyboard();
             } else {
-                current = mSymbolsKeyboard;
+                current = getSymbolsKeyboard();
             }
+            // the on-screen Hangul keys are 2-beolsik whatever the hard keyboard uses
+            setHangulLayout(current == mHangulKeyboard ? KeyJamoTable.LAYOUT_2BEOLSIK
+                    : Cons.getSharedPreference(this).getInt("hangul_layout", KeyJamoTable.LAYOUT_2BEOLSIK));
             mInputView.setKeyboard(current);
-            if (current == mSymbolsKeyboard) {
+            if (current == mSymbolsKeyboard || current == mHangulKeyboard) {
                 current.setShifted(false);
             }
+            // cycling keys would pop a preview for every tap
+            mInputView.setPreviewEnabled(current != mSejongKeyboard);
         } else {
             handleCharacter(primaryCode, keyCodes);
         }
     }
 
+    /** The engine on-screen keys go to, for the latency figures. */
+    private int getKeyEngine() {
+        Keyboard current = mInputView != null ? mInputView.getKeyboard() : null;
+        if (current != null && current == mSejongKeyboard) {
+            return LatencyRecorder.SEJONG;
+        }
+        if (isHangulMode || (current != null
+                && (current == mHangulKeyboard || current == mHangulShiftedKeyboard))) {
+            return LatencyRecorder.HANGUL;
+        }
+        return LatencyRecorder.LATIN;
+    }
+
     public void onText(CharSequence text) {
         InputConnection ic = getCurrentInputConnection();
         if (ic == null) return;
@@ -775,19 +1137,12 @@ public class SoftKeyboard extends InputMethodService
     }
     
     private void handleBackspace() {
-        final int length = mComposing.length();
-        if (length > 1) {
-            mComposing.delete(length - 1, length);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
+        InputEngine engine = composingEngine(currentEngine());
+        handleDelete(engine);
+        if (engine == mLatinEngine) {
             updateCandidates();
-        } else if (length > 0) {
-            mComposing.setLength(0);
-            getCurrentInputConnection().commitText("", 0);
-            updateCandidates();
-        } else {
-            keyDownUp(KeyEvent.KEYCODE_DEL);
+            updateShiftKeyState(getCurrentInputEditorInfo());
         }
-        updateShiftKeyState(getCurrentInputEditorInfo());
     }
 
     private void handleShift() {
@@ -798,11 +1153,23 @@ public class SoftKeyboard extends InputMethodService
         Keyboard currentKeyboard = mInputView.getKeyboard();
         if (mQwertyKeyboard == currentKeyboard) {
             // Alphabet keyboard
-            checkToggleCapsLock();
+            if (mModifiers.release(ModifierStates.SHIFT, getKeyTime(), false)
+                    == ModifierStates.EVENT_DOUBLE_TAP) {
+                mCapsLock = !mCapsLock;
+            }
+            updateModifierIndicator();
             mInputView.setShifted(mCapsLock || !mInputView.isShifted());
+        } else if (currentKeyboard == mHangulKeyboard) {
+            mHangulKeyboard.setShifted(true);
+            mInputView.setKeyboard(getHangulShiftedKeyboard());
+            mHangulShiftedKeyboard.setShifted(true);
+        } else if (currentKeyboard == mHangulShiftedKeyboard) {
+            mHangulShiftedKeyboard.setShifted(false);
+            mInputView.setKeyboard(mHangulKeyboard);
+            mHangulKeyboard.setShifted(false);
         } else if (currentKeyboard == mSymbolsKeyboard) {
             mSymbolsKeyboard.setShifted(true);
-            mInputView.setKeyboard(mSymbolsShiftedKeyboard);
+            mInputView.setKeyboard(getSymbolsShiftedKeyboard());
             mSymbolsShiftedKeyboard.setShifted(true);
         } else if (currentKeyboard == mSymbolsShiftedKeyboard) {
             mSymbolsShiftedKeyboard.setShifted(false);
@@ -813,20 +1180,41 @@ public class SoftKeyboard extends InputMethodService
     
     private void handleCharacter(int primaryCode, int[] keyCodes) {
         Log.v("kbd", "handleCharacter");
+        Keyboard current = null;
         if (isInputViewShown()) {
             if (mInputView.isShifted()) {
                 primaryCode = Character.toUpperCase(primaryCode);
             }
+            current = mInputView.getKeyboard();
         }
-        if (isAlphabet(primaryCode) && mPredictionOn) {
-            mComposing.append((char) primaryCode);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
-            updateShiftKeyState(getCurrentInputEditorInfo());
-            updateCandidates();
-        } else {
-            getCurrentInputConnection().commitText(
-                    String.valueOf((char) primaryCode), 1);
+        if (current == mHangulShiftedKeyboard) {
+            // shift on the Hangul keyboard is for one jamo
+            mHangulShiftedKeyboard.setShifted(false);
+            mInputView.setKeyboard(mHangulKeyboard);
+            mHangulKeyboard.setShifted(false);
         }
+        InputEngine engine = currentEngine();
+        int key = engine == mJamoEngine
+                ? KeyJamoTable.toJamo(mHangulLayout, primaryCode) : primaryCode;
+        long time = getKeyTime();
+        if (key != KeyJamoTable.NOT_HANGUL && engine.onKey(key, time, mEdits)) {
+            if (engine == mSejongEngine) {
+                mHandler.removeCallbacks(mSejongCycleTimeout);
+                mHandler.postAtTime(mSejongCycleTimeout,
+                        time + mSejongEngine.getAutomata().getCycleTimeout());
+            }
+            applyEdits();
+            if (engine == mLatinEngine) {
+                updateShiftKeyState(getCurrentInputEditorInfo());
+                updateCandidates();
+            }
+            return;
+        }
+        // a key the engine doesn't take ends the word and goes in as it is
+        composingEngine(engine).finish(mEdits);
+        resetEngines();
+        mEdits.commit((char) primaryCode);
+        applyEdits();
     }
 
     private void handleClose() {
@@ -835,67 +1223,33 @@ public class SoftKeyboard extends InputMethodService
         mInputView.closing();
     }
 
-    private void checkToggleCapsLock() {
-        long now = System.currentTimeMillis();
-        if (mLastShiftTime + 800 > now) {
-            mCapsLock = !mCapsLock;
-            mLastShiftTime = 0;
-    		Log.e("kbd", "mToggleShift1 " + mToggleShift);
-
-            if(mToggleShift == -1) mToggleShift = 0;
-            else if(mToggleShift == 0) mToggleShift = 1;
-    		else if(mToggleShift == 1) mToggleShift = 2;
-    		else if(mToggleShift == 2) mToggleShift = 0;
-    		Log.e("kbd", "mToggleShift1 " + mToggleShift);
-            	
-        } else {
-    		Log.e("kbd", "mToggleShift2 " + mToggleShift);
-            mLastShiftTime = now;
-            
-            if(mToggleShift == -1) mToggleShift = 0;
-            else if(mToggleShift == 0) mToggleShift = 1;
-    		else if(mToggleShift == 1) mToggleShift = 0;
-    		else if(mToggleShift == 2) mToggleShift = 0;
-    		Log.e("kbd", "mToggleShift2 " + mToggleShift);
-        }
-        if(Cons.getSharedPreference(this).getBoolean("keyboard_toast", false)) {
-			switch(mToggleShift) {
-			case 0: Toast.makeText(this, isHangulMode ? "ѱ" : "", Toast.LENGTH_SHORT).show();break;
-			case 1: Toast.makeText(this, "Ʈ", Toast.LENGTH_SHORT).show();break;
-			case 2: Toast.makeText(this, "Ʈ ", Toast.LENGTH_SHORT).show();break;
-			}
+    /** When the on-screen key being handled was touched, in uptime. */
+    private long getKeyTime() {
+        if (mInputView instanceof LatinKeyboardView) {
+            // time the key was touched, not handled
+            return ((LatinKeyboardView) mInputView).getLastDownTime();
         }
+        return SystemClock.uptimeMillis();
     }
-    
-    private void checkToggleAlt() {
-        long now = System.currentTimeMillis();
-        if (mLastAltTime + 800 > now) {
-            mLastAltTime = 0;
-
-            if(mToggleAlt == -1) mToggleAlt = 0;
-            else if(mToggleAlt == 0) mToggleAlt = 1;
-    		else if(mToggleAlt == 1) mToggleAlt = 2;
-    		else if(mToggleAlt == 2) mToggleAlt = 0;
-    		Log.e("kbd", "mToggleAlt1 " + mToggleAlt);
-            	
-        } else {
-    		Log.e("kbd", "mToggleAlt2 " + mToggleAlt);
-    		mLastAltTime = now;
-            
-            if(mToggleAlt == -1) mToggleAlt = 0;
-            else if(mToggleAlt == 0 && mLastKeyDown == KeyEvent.KEYCODE_ALT_LEFT) mToggleAlt = 1;
-    		else if(mToggleAlt == 1) mToggleAlt = 0;
-    		else if(mToggleAlt == 2) mToggleAlt = 0;
-    		Log.e("kbd", "mToggleAlt2 " + mToggleAlt);
-        }
 
-        if(Cons.getSharedPreference(this).getBoolean("keyboard_toast", false)) {
-			switch(mToggleAlt) {
-				case 0: Toast.makeText(this, isHangulMode ? "ѱ" : "", Toast.LENGTH_SHORT).show();break;
-				case 1: Toast.makeText(this, "ȣ", Toast.LENGTH_SHORT).show();break;
-				case 2: Toast.makeText(this, "ȣ ", Toast.LENGTH_SHORT).show();break;
-			}
+    /**
+     * Shows the one-shot or locked modifier on the keyboard view, if the
+     * setting is on; Alt wins over Shift.  The labels are constants and the
+     * view only redraws its corner when one changes, so this is cheap
+     * enough to call after every key.  The input mode is the status icon.
+     */
+    private void updateModifierIndicator() {
+        if (!(mInputView instanceof LatinKeyboardView)) {
+            return;
         }
+        String label = null;
+        if (mShowModifierIndicator) {
+            label = ALT_INDICATOR_LABELS[mModifiers.get(ModifierStates.ALT) + 1];
+            if (label == null) {
+                label = SHIFT_INDICATOR_LABELS[mModifiers.get(ModifierStates.SHIFT) + 1];
+            }
+        }
+        ((LatinKeyboardView) mInputView).setIndicator(label);
     }
     
     private String getWordSeparators() {
@@ -954,698 +1308,301 @@ public class SoftKeyboard extends InputMethodService
     
 
 
-    private static char HCURSOR_NONE = 0;
-    private static char HCURSOR_NEW = 1;
-    private static char HCURSOR_ADD = 2;
-    private static char HCURSOR_UPDATE = 3;
-    private static char HCURSOR_APPEND = 4;
-    private static char HCURSOR_UPDATE_LAST = 5;
-    private static char HCURSOR_DELETE_LAST = 6;
-    private static char HCURSOR_DELETE = 7;
-    
-    private int mHangulShiftState = 0;
-    private int mHangulState = 0;
-    private static int mHangulKeyStack[] = {0,0,0,0,0,0}; // ,,,,,
-    private static int mHangulJamoStack[] = {0,0,0};
-    final static int H_STATE_0 = 0;
-    final static int H_STATE_1 = 1;
-    final static int H_STATE_2 = 2;
-    final static int H_STATE_3 = 3;
-    final static int H_STATE_4 = 4;
-    final static int H_STATE_5 = 5;
-    final static int H_STATE_6 = 6;
-    final static char[] h_chosung_idx =  
-    {0,1, 9,2,12,18,3, 4,5, 0, 6,7, 9,16,17,18,6, 7, 8, 9,9,10,11,12,13,14,15,16,17,18};
-/*
-    {0, 1, 9, 2,12,18, 3,4, 5, 0, 6, 7, 9,16,17, 18,6, 7, 8, 9, 9,10,11, 12, 13,14,15,16,17,18};
-//   ,,,,,,,,,,,,,,, ,,,,,,,, , ,,, ,,
-//   ,,   ,      ,,,                     ,,,   ,,, , ,,, ,,  
-*/    
-    final static char[] h_jongsung_idx = 
-    {0, 1, 2, 3,4,5, 6, 7, 0,8, 9,10,11,12,13,14,15,16,17,0 ,18,19,20,21,22,0 ,23,24,25,26,27};
-/*
-    {0, 1, 2, 3, 4, 5, 6, 7, 0,8, 9,10,11, 12,13, 14,15,16, 17,0,18, 19,20,21,22, 0 ,23,24,25,26,27};
-//   x, ,,,,,,,,,,,, ,, ,,, ,,, ,, o,, ,, ,,,,
-    //  x                                                                                    
+    /** One of the KeyJamoTable.LAYOUT_* values, selects mJamoEngine. */
+    private int mHangulLayout = KeyJamoTable.LAYOUT_2BEOLSIK;
+    /** Hardware key -> jamo for the keyboard last typed on. */
+    private KeyJamoTable mKeyJamoTable;
+    /** What the engine of the key being handled wants done to the editor. */
+    private final EditOps mEdits = new EditOps();
+    private final LatinEngine mLatinEngine = new LatinEngine();
+    /** 2-beolsik or 390, by mHangulLayout. */
+    private HangulEngine mHangulEngine = new HangulEngine(new HangulAutomata());
+    /** Only in the romaja layout. */
+    private RomajaEngine mRomajaEngine;
+    /** Hard keys and the on-screen Hangul keys: mHangulEngine or mRomajaEngine. */
+    private InputEngine mJamoEngine = mHangulEngine;
+    private final SejongEngine mSejongEngine = new SejongEngine();
+    private Runnable mSejongCycleTimeout = new Runnable() {
+        public void run() {
+            mSejongEngine.getAutomata().endCycle();
+        }
+    };
 
-    //  ,,,  ,,,  ,,,,,,,,,,,,,,
-*/
-    
-    final static int[] e2h_map = 
-    {16,47,25,22,6, 8,29,38,32,34,30,50,48,43,31,35,17,0, 3,20,36,28,23,27,42,26,
-     16,47,25,22,7, 8,29,38,32,34,30,50,48,43,33,37,18,1, 3,21,36,28,24,27,42,26};
-  /*
-//   , ,, ,,,,, ,, ,,,, ,, ,,,,,, ,,, ,
-    {16,47,25, 22,6, 8,29,38, 32,34, 30,50,48,43,31,35, 17,0, 3, 20,36,28, 23,27,42,26,
-//   , ,, ,,,,, ,, ,,,, ,, ,,,,,, ,,, 
-     16,47,25, 22,7, 8,29,38, 32,34, 30,50,48,43,33,37, 18,1, 3, 21,36,28, 24,27,42,26}; 
-   */ 
-    
-    private boolean handleHangul(int primaryCode, int[] keyCodes) {
-
-        int hangulKeyIdx = -1;
-        int newHangulChar;
-        int cho_idx,jung_idx,jong_idx;
-        int hangulChar = 0;
-/*        
-        if (mHangulCursorMoved == 1) {
-            clearHangul();
-            Log.i("Hangul", "clear Hangul at handleHangul by mHangulCursorMoved");
-            mHangulCursorMoved = 0;
-        }
-*/        
-        // Log.i("Hangul", "PrimaryCode[" + Integer.toString(primaryCode)+"]"); 
-
-        Log.i("kbd", "primaryCode " + primaryCode);
-        if (primaryCode >= 0x61 && primaryCode <= 0x7A) {
-                Log.i("kbd", "handleHangul - hancode");
-
-            if (mHangulShiftState == 0) {
-                hangulKeyIdx = e2h_map[primaryCode - 0x61];
+    /**
+     * Switches the engine for hard keys and the on-screen Hangul keys to
+     * one of the KeyJamoTable.LAYOUT_* values.
+     */
+    private void setHangulLayout(int layout) {
+        if (layout != mHangulLayout) {
+            endEditing();
+            mHangulLayout = layout;
+            mHangulEngine = new HangulEngine(layout == KeyJamoTable.LAYOUT_390
+                    ? new SebeolsikAutomata() : new HangulAutomata());
+            if (layout == KeyJamoTable.LAYOUT_ROMAJA) {
+                if (mRomajaEngine == null) {
+                    mRomajaEngine = new RomajaEngine();
+                }
+                mJamoEngine = mRomajaEngine;
             }
             else {
-                hangulKeyIdx = e2h_map[primaryCode - 0x61 + 26];   
-//                Keyboard currentKeyboard = mInputView.getKeyboard();
-//                mHangulShiftedKeyboard.setShifted(false);
-//                mInputView.setKeyboard(mHangulKeyboard);
-//                mHangulKeyboard.setShifted(false);
-                mHangulShiftState = 0;                              
+                mJamoEngine = mHangulEngine;
             }
-            hangulChar = 1;
+            mKeyJamoTable = null;
         }
-        else if (primaryCode >= 0x41 && primaryCode <= 0x5A) {
-            hangulKeyIdx = e2h_map[primaryCode - 0x41 + 26];   
-            hangulChar = 1;
+        mHangulEngine.setRules(Cons.getSharedPreference(this).getInt("hangul_rules", HangulAutomata.RULES_STANDARD));
+    }
+
+    /** The engine on-screen keys go to. */
+    private InputEngine currentEngine() {
+        Keyboard current = mInputView != null ? mInputView.getKeyboard() : null;
+        if (current != null && current == mSejongKeyboard) {
+            return mSejongEngine;
         }
-        /*
-        else  if (primaryCode >= 0x3131 && primaryCode <= 0x3163) {
-            hangulKeyIdx = primaryCode - 0x3131;
-            hangulChar = 1;
+        if (isHangulMode || (current != null
+                && (current == mHangulKeyboard || current == mHangulShiftedKeyboard))) {
+            return mJamoEngine;
         }
-        */
-        else {
-            hangulChar = 0;
+        return mLatinEngine;
+    }
+
+    /**
+     * The engine that has text composing, or fallback if none has.  Only
+     * one can: switching keyboards or modes ends editing.
+     */
+    private InputEngine composingEngine(InputEngine fallback) {
+        if (!mSejongEngine.isEmpty()) {
+            return mSejongEngine;
         }
-        
-        
-        if (hangulChar == 1) {
-            
-            switch(mHangulState) {
-    
-            case H_STATE_0: // Hangul Clear State
-                Log.i("kbd", "HAN_STATE 0");
-                // Log.i("SoftKey", "HAN_STATE 0");
-                if (hangulKeyIdx < 30) { // if 
-                    newHangulChar = 0x3131 + hangulKeyIdx;
-                    hangulSendKey(newHangulChar, HCURSOR_NEW);
-                    mHangulKeyStack[0] = hangulKeyIdx; 
-                    mHangulJamoStack[0] = hangulKeyIdx;
-                    mHangulState = H_STATE_1; // goto ʼ
-                }
-                else { // if 
-                    newHangulChar = 0x314F + (hangulKeyIdx - 30);
-                    hangulSendKey(newHangulChar, HCURSOR_NEW);
-                    mHangulKeyStack[2] = hangulKeyIdx;
-                    mHangulJamoStack[1] = hangulKeyIdx;
-                    mHangulState = H_STATE_3; // goto ߼
-                }
-                break;
-    
-            case H_STATE_1: // ʼ
-                Log.i("kbd", "HAN_STATE 1");
-                if (hangulKeyIdx < 30) { // if 
-                    int newHangulKeyIdx = isHangulKey(0,hangulKeyIdx);
-                    if (newHangulKeyIdx > 0) { // if 
-                        newHangulChar = 0x3131 + newHangulKeyIdx;
-                        mHangulKeyStack[1] = hangulKeyIdx;
-                        mHangulJamoStack[0] = newHangulKeyIdx;
-//                      hangulSendKey(-1);
-                        hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                        mHangulState = H_STATE_2; // goto ʼ()
-                    }
-                    else { // if 
-                        
-                        // cursor error trick start
-                        Log.v("kbd", "start idx " + hangulKeyIdx + " newhangulchar");
-                        newHangulChar = 0x3131 + mHangulJamoStack[0];
-                        hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                        // trick end
-                        
-                        newHangulChar = 0x3131 + hangulKeyIdx;
-                        hangulSendKey(newHangulChar, HCURSOR_ADD);
-                        mHangulKeyStack[0] = hangulKeyIdx;
-                        mHangulJamoStack[0] = hangulKeyIdx;
-                        mHangulState = H_STATE_1; // goto ʼ
-                    }
-                }
-                else { // if 
-                    mHangulKeyStack[2] = hangulKeyIdx;
-                    mHangulJamoStack[1] = hangulKeyIdx;
-//                  hangulSendKey(-1);
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                    mHangulState = H_STATE_4; // goto ʼ,߼
-                }
-                break;
-    
-            case H_STATE_2: // ʼ()
-                Log.i("kbd", "HAN_STATE 2");
-                if (hangulKeyIdx < 30) { // if 
-                    
-                    // cursor error trick start
-                    newHangulChar = 0x3131 + mHangulJamoStack[0];
-                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                    // trick end
-                    
-                    
-                    mHangulKeyStack[0] = hangulKeyIdx;
-                    mHangulJamoStack[0] = hangulKeyIdx;
-                    mHangulJamoStack[1] = 0;
-                    newHangulChar = 0x3131 + hangulKeyIdx;
-                    hangulSendKey(newHangulChar, HCURSOR_ADD);
-                    mHangulState = H_STATE_1; // goto ʼ
-                }
-                else { // if 
-                    newHangulChar = 0x3131 + mHangulKeyStack[0];
-                    mHangulKeyStack[0] = mHangulKeyStack[1];
-                    mHangulJamoStack[0] = mHangulKeyStack[0];
-                    mHangulKeyStack[1] = 0;
-//                  hangulSendKey(-1);
-                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-    
-                    mHangulKeyStack[2] = hangulKeyIdx;
-                    mHangulJamoStack[1] = mHangulKeyStack[2];
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = 0;
-    
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar, HCURSOR_ADD);
-                    mHangulState = H_STATE_4; // goto ʼ,߼
-                }
-                break;
-                
-            case H_STATE_3: // ߼(ܸ,)
-                Log.i("kbd", "HAN_STATE 3");
-                if (hangulKeyIdx < 30) { // 
-                    
-                    // cursor error trick start
-                    newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
-                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                    // trick end
-                    
-                    newHangulChar = 0x3131 + hangulKeyIdx;
-                    hangulSendKey(newHangulChar, HCURSOR_ADD);
-                    mHangulKeyStack[0] = hangulKeyIdx;
-                    mHangulJamoStack[0] = hangulKeyIdx;
-                    mHangulJamoStack[1] = 0;
-                    mHangulState = H_STATE_1; // goto ʼ
-                }
-                else { // 
-                    if (mHangulKeyStack[3] == 0) {                      
-                        int newHangulKeyIdx = isHangulKey(2,hangulKeyIdx);
-                        if (newHangulKeyIdx > 0) { // 
-    //                      hangulSendKey(-1);
-                            newHangulChar = 0x314F + (newHangulKeyIdx - 30);
-                            hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                            mHangulKeyStack[3] = hangulKeyIdx;
-                            mHangulJamoStack[1] = newHangulKeyIdx;
-                        }
-                        else { // 
-                            
-                            // cursor error trick start
-                            newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
-                            hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                            // trick end
-                            
-                            newHangulChar = 0x314F + (hangulKeyIdx - 30);
-                            hangulSendKey(newHangulChar,HCURSOR_ADD);
-                            mHangulKeyStack[2] = hangulKeyIdx;
-                            mHangulJamoStack[1] = hangulKeyIdx;
-                        }
-                    }
-                    else {
-                        
-                        // cursor error trick start
-                        newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
-                        hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                        // trick end
-                        
-                        newHangulChar = 0x314F + (hangulKeyIdx - 30);
-                        hangulSendKey(newHangulChar,HCURSOR_ADD);
-                        mHangulKeyStack[2] = hangulKeyIdx;
-                        mHangulJamoStack[1] = hangulKeyIdx;                 
-                        mHangulKeyStack[3] = 0;
-                    }
-                    mHangulState = H_STATE_3;
-                }
-                break;
-            case H_STATE_4: // ʼ,߼(ܸ,)
-                Log.i("kbd", "HAN_STATE 4");
-                if (hangulKeyIdx < 30) { // if 
-                    mHangulKeyStack[4] = hangulKeyIdx;
-                    mHangulJamoStack[2] = hangulKeyIdx;
-//                  hangulSendKey(-1);
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                    Log.i("kbd", "jong_idx " + jong_idx);
-                    if (jong_idx == 0) { // if  is not valid ex,  + 
-                        mHangulKeyStack[0] = hangulKeyIdx;
-                        mHangulKeyStack[1] = 0;
-                        mHangulKeyStack[2] = 0;
-                        mHangulKeyStack[3] = 0;
-                        mHangulKeyStack[4] = 0;
-                        mHangulJamoStack[0] = hangulKeyIdx;
-                        mHangulJamoStack[1] = 0;
-                        mHangulJamoStack[2] = 0;
-                        newHangulChar = 0x3131 + hangulKeyIdx;
-                        hangulSendKey(newHangulChar,HCURSOR_ADD);    
-                        Log.i("kbd", "jong_idx HCURSOR_ADD " + mComposing.length());                   
-                        mHangulState = H_STATE_1; // goto ʼ
-                    }
-                    else {
-                        mHangulState = H_STATE_5; // goto ʼ,߼,
-                    }
-                }
-                else { // if 
-                    if (mHangulKeyStack[3] == 0) {
-                        int newHangulKeyIdx = isHangulKey(2,hangulKeyIdx);
-                        if (newHangulKeyIdx > 0) { // if 
-    //                      hangulSendKey(-1);
-    //                      mHangulKeyStack[2] = newHangulKeyIdx;
-                            mHangulKeyStack[3] = hangulKeyIdx;
-                            mHangulJamoStack[1] = newHangulKeyIdx;
-                            cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                            jung_idx = mHangulJamoStack[1] - 30;
-                            jong_idx = 0;
-                            newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                            hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                            mHangulState = H_STATE_4; // goto ʼ,߼
-                        }
-                        else { // if invalid 
-                            
-                            // cursor error trick start
-                            cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                            jung_idx = mHangulJamoStack[1] - 30;
-                            jong_idx = 0;       
-                            newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                            hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                            // trick end
-                            
-                            newHangulChar = 0x314F + (hangulKeyIdx - 30);
-                            hangulSendKey(newHangulChar,HCURSOR_ADD);
-                            mHangulKeyStack[0] = 0;
-                            mHangulKeyStack[1] = 0;
-                            mHangulJamoStack[0] = 0;
-                            mHangulKeyStack[2] = hangulKeyIdx;
-                            mHangulJamoStack[1] = hangulKeyIdx;
-                            mHangulState = H_STATE_3; // goto ߼
-                        }
-                    }
-                    else {
-                        
-                        // cursor error trick start
-                        cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                        jung_idx = mHangulJamoStack[1] - 30;
-                        jong_idx = 0;       
-                        newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                        hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                        // trick end
-                        
-                        
-                        newHangulChar = 0x314F + (hangulKeyIdx - 30);
-                        hangulSendKey(newHangulChar,HCURSOR_ADD);
-                        mHangulKeyStack[0] = 0;
-                        mHangulKeyStack[1] = 0;
-                        mHangulJamoStack[0] = 0;
-                        mHangulKeyStack[2] = hangulKeyIdx;
-                        mHangulJamoStack[1] = hangulKeyIdx;
-                        mHangulKeyStack[3] = 0;
-                        mHangulState = H_STATE_3; // goto ߼
-                        
-                    }
-                }
-                break;
-            case H_STATE_5: // ʼ,߼,
-                // Log.i("SoftKey", "HAN_STATE 5");
-                if (hangulKeyIdx < 30) { // if 
-                    int newHangulKeyIdx = isHangulKey(4,hangulKeyIdx);
-                    if (newHangulKeyIdx > 0) { // if  == 
-//                      hangulSendKey(-1);
-                        mHangulKeyStack[5] = hangulKeyIdx;
-                        mHangulJamoStack[2] = newHangulKeyIdx;
-    
-                        cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                        jung_idx = mHangulJamoStack[1] - 30;
-                        jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-                        newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                        hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                        mHangulState = H_STATE_6; // goto  ʼ,߼,()
-                    }
-                    else { // if  != 
-                        
-                        // cursor error trick start
-                        cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                        jung_idx = mHangulJamoStack[1] - 30;
-                        jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-                        newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                        hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                        // trick end
-                        
-                        
-                        mHangulKeyStack[0] = hangulKeyIdx;
-                        mHangulKeyStack[1] = 0;
-                        mHangulKeyStack[2] = 0;
-                        mHangulKeyStack[3] = 0;
-                        mHangulKeyStack[4] = 0;
-                        mHangulJamoStack[0] = hangulKeyIdx;
-                        mHangulJamoStack[1] = 0;
-                        mHangulJamoStack[2] = 0;
-                        newHangulChar = 0x3131 + hangulKeyIdx;
-                        hangulSendKey(newHangulChar,HCURSOR_ADD);
-                        mHangulState = H_STATE_1; // goto ʼ
-                    }
-                }
-                else { // if 
-//                  hangulSendKey(-1);
-    
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = 0;
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-    
-                    mHangulKeyStack[0] = mHangulKeyStack[4];
-                    mHangulKeyStack[1] = 0;
-                    mHangulKeyStack[2] = hangulKeyIdx;
-                    mHangulKeyStack[3] = 0;
-                    mHangulKeyStack[4] = 0;
-                    mHangulJamoStack[0] = mHangulKeyStack[0];
-                    mHangulJamoStack[1] = mHangulKeyStack[2];
-                    mHangulJamoStack[2] = 0;
-    
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = 0;
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar, HCURSOR_ADD);
-    
-                    // Log.i("SoftKey", "--- Goto HAN_STATE 4");
-                    mHangulState = H_STATE_4; // goto ʼ,߼
-                }
-                break;
-            case H_STATE_6: // ʼ,߼,()
-                // Log.i("SoftKey", "HAN_STATE 6");
-                if (hangulKeyIdx < 30) { // if 
-                    
-                    // cursor error trick start
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                    // trick end
-                    
-                    
-                    mHangulKeyStack[0] = hangulKeyIdx;                
-                    mHangulKeyStack[1] = 0;
-                    mHangulKeyStack[2] = 0;
-                    mHangulKeyStack[3] = 0;
-                    mHangulKeyStack[4] = 0;
-                    mHangulJamoStack[0] = hangulKeyIdx;
-                    mHangulJamoStack[1] = 0;
-                    mHangulJamoStack[2] = 0;
-    
-                    newHangulChar = 0x3131 + hangulKeyIdx;
-                    hangulSendKey(newHangulChar,HCURSOR_ADD);
-    
-                    mHangulState = H_STATE_1; // goto ʼ
-                }
-                else { // if 
-//                  hangulSendKey(-1);
-                    mHangulJamoStack[2] = mHangulKeyStack[4];
-    
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-    
-                    mHangulKeyStack[0] = mHangulKeyStack[5];
-                    mHangulKeyStack[1] = 0;
-                    mHangulKeyStack[2] = hangulKeyIdx;
-                    mHangulKeyStack[3] = 0;
-                    mHangulKeyStack[4] = 0;
-                    mHangulKeyStack[5] = 0;
-                    mHangulJamoStack[0] = mHangulKeyStack[0];
-                    mHangulJamoStack[1] = mHangulKeyStack[2];
-                    mHangulJamoStack[2] = 0;
-    
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = 0;
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar,HCURSOR_ADD);
-    
-                    mHangulState = H_STATE_4; // goto ʼ,߼
-                }
-                break;
-            }
-            return true;
+        if (!mJamoEngine.isEmpty()) {
+            return mJamoEngine;
         }
-        else {
-             Log.i("Hangul", "handleHangul - No hancode");
-            clearHangul();
-//            sendKey(primaryCode);
+        if (!mLatinEngine.isEmpty()) {
+            return mLatinEngine;
+        }
+        return fallback;
+    }
+
+    private void resetEngines() {
+        mLatinEngine.reset();
+        mHangulEngine.reset();
+        if (mRomajaEngine != null) {
+            mRomajaEngine.reset();
+        }
+        mHandler.removeCallbacks(mSejongCycleTimeout);
+        mSejongEngine.reset();
+    }
+
+    /** A jamo from the hard keyboard, see KeyJamoTable. */
+    private void handleJamo(int jamo, long eventTime) {
+        if (!mJamoEngine.onKey(jamo, eventTime, mEdits)) {
+            endEditing();
+            return;
+        }
+        applyEdits();
+    }
+
+    /**
+     * Backspace for engine: takes a key off its composing text, or picks
+     * the character before the cursor up again and takes one key off that,
+     * so finished syllables can be re-edited; otherwise a plain delete.
+     */
+    private void handleDelete(InputEngine engine) {
+        if (!engine.delete(mEdits) && !(engine.canResume() && resumeDelete(engine))) {
+            mEdits.key(KeyEvent.KEYCODE_DEL);
+        }
+        applyEdits();
+    }
+
+    private boolean resumeDelete(InputEngine engine) {
+        // the editor has to be up to date before it is read
+        flushComposing();
+        InputConnection ic = getCurrentInputConnection();
+        if (ic == null || mComposing.length() > 0) {
+            return false;
+        }
+        CharSequence before = ic.getTextBeforeCursor(1, 0);
+        if (before == null || before.length() == 0
+                || !TextUtils.isEmpty(ic.getSelectedText(0))
+                || !engine.resume(before.charAt(0))) {
             return false;
         }
+        mEdits.delete(1);
+        engine.delete(mEdits);
+        return true;
+    }
 
+    /** Shift+Del: the whole syllable, composing or not. */
+    private void handleDeleteSyllable(InputEngine engine) {
+        if (!engine.deleteSyllable(mEdits)) {
+            mEdits.key(KeyEvent.KEYCODE_DEL);
+        }
+        applyEdits();
     }
-    private void hangulSendKey(int newHangulChar, int hCursor) {
 
-        if (hCursor == HCURSOR_NEW) {
-             Log.i("Hangul", "HCURSOR_NEW");
-            
-            mComposing.append((char)newHangulChar);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
-            mHCursorState = HCURSOR_NEW;
+    /**
+     * Sends mEdits to the editor.  A lone composing update goes through
+     * updateComposingText() so that coalescing still holds it back; the
+     * rest goes out as one batch, after any composing update still pending
+     * is dropped (the batch replaces the composing text) or sent (it
+     * builds on it).
+     */
+    private void applyEdits() {
+        if (mEdits.isEmpty()) {
+            return;
         }
-        else if (hCursor == HCURSOR_ADD) {
-            mHCursorState = HCURSOR_ADD;
-             Log.i("Hangul", "HCURSOR_ADD");
-            if (mComposing.length() > 0) {
-                mComposing.setLength(0);
-                getCurrentInputConnection().finishComposingText();         
-            }           
-            
-            mComposing.append((char)newHangulChar);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
+        if (mEdits.takeComposing(mComposing)) {
+            updateComposingText();
+            return;
         }
-        else if (hCursor == HCURSOR_UPDATE) {
-             Log.i("Hangul", "HCURSOR_UPDATE");
-            mComposing.setCharAt(0, (char)newHangulChar);
-            getCurrentInputConnection().setComposingText(mComposing, 1);
-            mHCursorState = HCURSOR_UPDATE;
+        if (mEdits.replacesComposing()) {
+            takeComposingUpdate();
         }
-        else if (hCursor == HCURSOR_APPEND) {
-             Log.i("Hangul", "HCURSOR_APPEND");         
-            mComposing.append((char)newHangulChar);
+        else {
+            flushComposing();
+        }
+        mEdits.apply(getCurrentInputConnection(), mComposing);
+    }
+
+    /**
+     * Sends mComposing as the composing text, or with coalescing on marks it
+     * dirty and lets the next frame send it.
+     */
+    private void updateComposingText() {
+        long now = SystemClock.uptimeMillis();
+        if (mComposingRequests++ == 0) {
+            mComposingFirstTime = now;
+        }
+        mComposingLastTime = now;
+        if (!mCoalesceComposing) {
+            mComposingSent++;
             getCurrentInputConnection().setComposingText(mComposing, 1);
-            mHCursorState = HCURSOR_APPEND;
+            return;
         }
-        else if (hCursor == HCURSOR_NONE) {
-            if (newHangulChar == -1) {
-                Log.i("Hangul", "HCURSOR_NONE [DEL -1]");
-                keyDownUp(KeyEvent.KEYCODE_DEL);
-                clearHangul();              
-            }
-            else if (newHangulChar == -2) {
-                int hangulKeyIdx;
-                int cho_idx,jung_idx,jong_idx;
+        if (!mComposingDirty) {
+            mComposingDirty = true;
+            mComposingDirtyTime = now;
+            mHandler.postDelayed(mFlushComposing, COMPOSING_FRAME_DELAY);
+        }
+    }
 
-                 Log.i("Hangul", "HCURSOR_NONE [DEL -2] " +mHangulState);
-                
-                switch(mHangulState) {
-                case H_STATE_0:
-                    keyDownUp(KeyEvent.KEYCODE_DEL);
-                    break;
-                case H_STATE_1: // ʼ
-//                  keyDownUp(KeyEvent.KEYCODE_DEL);
-                    mComposing.setLength(0);
-                    getCurrentInputConnection().commitText("", 0);
-                    clearHangul();
-                    mHangulState = H_STATE_0;
-                    Log.v("kbd", "pos 1");
-                    break;
-                case H_STATE_2: // ʼ()
-                    newHangulChar = 0x3131 + mHangulKeyStack[0];
-                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                    mHangulKeyStack[1] = 0;
-                    mHangulJamoStack[0] = mHangulKeyStack[0];
-                    mHangulState = H_STATE_1; // goto ʼ        
-                    break;
-                case H_STATE_3: // ߼(ܸ,)
-                    if (mHangulKeyStack[3] == 0) {
-//                      keyDownUp(KeyEvent.KEYCODE_DEL);
-                        mComposing.setLength(0);
-                        getCurrentInputConnection().commitText("", 0);
-                        clearHangul();  
-                        mHangulState = H_STATE_0;
-                        Log.v("kbd", "pos 2");
-                    }
-                    else {
-                        mHangulKeyStack[3] = 0;
-                        newHangulChar = 0x314F + (mHangulKeyStack[2] - 30);
-                        hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                        mHangulJamoStack[1] = mHangulKeyStack[2];
-                        mHangulState = H_STATE_3; // goto ߼                                                
-                    }
-                    break;
-                case H_STATE_4: // ʼ,߼(ܸ,)
-                    if (mHangulKeyStack[3] == 0) {
-                        mHangulKeyStack[2] = 0;
-                        mHangulJamoStack[1] = 0;
-                        newHangulChar = 0x3131 + mHangulJamoStack[0];
-                        hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                        mHangulState = H_STATE_1; // goto ʼ                        
-                    }
-                    else {
-                        mHangulJamoStack[1]= mHangulKeyStack[2];
-                        mHangulKeyStack[3] = 0;
-                        cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                        jung_idx = mHangulJamoStack[1] - 30;
-                        jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
-                        newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                        hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                    }
-                    break;
-                case H_STATE_5: // ʼ,߼,
-                    mHangulJamoStack[2] = 0;
-                    mHangulKeyStack[4] = 0;
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
-                    mHangulState = H_STATE_4;
-                    break;
-                case H_STATE_6:     
-                    mHangulKeyStack[5] = 0;
-                    mHangulJamoStack[2] = mHangulKeyStack[4];
-                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
-                    jung_idx = mHangulJamoStack[1] - 30;
-                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];;
-                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
-                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
-                    mHangulState = H_STATE_5;
-                    break;
-                default:
-                    onKey(Keyboard.KEYCODE_DELETE, null);
-                    break;
-                }
+    /**
+     * Sends a pending composing update now.  Call before anything that
+     * commits, moves the cursor or depends on the editor's text.
+     */
+    private void flushComposing() {
+        if (takeComposingUpdate()) {
+            InputConnection ic = getCurrentInputConnection();
+            if (ic != null) {
+                ic.setComposingText(mComposing, 1);
             }
-            else if (newHangulChar == -3) {
-                 Log.i("Hangul", "HCURSOR_NONE [DEL -3]");              
-                final int length = mComposing.length();
-                if (length > 1) {
-                    mComposing.delete(length - 1, length);              
-                }
+        }
+    }
+
+    /**
+     * Clears a pending composing update without sending it, for callers
+     * that replace the composing text themselves.  Returns whether one was
+     * pending.
+     */
+    private boolean takeComposingUpdate() {
+        if (!mComposingDirty) {
+            return false;
+        }
+        mComposingDirty = false;
+        mHandler.removeCallbacks(mFlushComposing);
+        long lag = SystemClock.uptimeMillis() - mComposingDirtyTime;
+        mComposingLagTotal += lag;
+        if (lag > mComposingLagMax) {
+            mComposingLagMax = lag;
+        }
+        mComposingSent++;
+        return true;
+    }
+
+    /**
+     * Feeds hard keyboard letters to the mode detector.  Anything other
+     * than a plain letter, a space or a modifier breaks the word.
+     */
+    private void trackModeKey(int keyCode, KeyEvent event) {
+        if (keyCode >= KeyEvent.KEYCODE_A && keyCode <= KeyEvent.KEYCODE_Z
+                && (event.getMetaState() & KeyEvent.META_ALT_ON) == 0 && !mModifiers.isActive(ModifierStates.ALT)) {
+            if (event.getRepeatCount() == 0) {
+                mModeDetector.addKey(keyCode - KeyEvent.KEYCODE_A);
             }
-            
-        }       
+        }
+        else if (keyCode != KeyEvent.KEYCODE_SPACE
+                && keyCode != KeyEvent.KEYCODE_SHIFT_LEFT
+                && keyCode != KeyEvent.KEYCODE_SHIFT_RIGHT
+                && keyCode != KeyEvent.KEYCODE_ALT_LEFT
+                && keyCode != KeyEvent.KEYCODE_ALT_RIGHT) {
+            mModeDetector.reset();
+        }
     }
-// Hangul Code Start
-    
-    private int isHangulKey(int stack_pos, int new_key) {
-        /*    
-        MAP(0,20,1); // , 
-        MAP(3,23,4); // ,
-        MAP(3,29,5); // ,
-        MAP(8,0,9); // ,
-        MAP(8,16,10); // ,
-        MAP(8,17,11); // ,
-        MAP(8,20,12); // ,
-        MAP(8,27,13); // ,
-        MAP(8,28,14); // ,
-        MAP(8,29,15); // ,
-        MAP(17,20,19); // ,           
-    */          
-        if (stack_pos != 2) {
-            switch (mHangulKeyStack[stack_pos]) {
-            case 0:
-                if (new_key == 20) return 2;
-                break;
-            case 3:
-                if (new_key == 23) return 4;
-                else if(new_key == 29) return 5;
-                break;
-            case 8:
-                if (new_key == 0)return 9;
-                else if (new_key == 16) return 10;
-                else if (new_key == 17) return 11;
-                else if (new_key == 20) return 12;
-                else if (new_key == 27) return 13;
-                else if (new_key == 28) return 14;
-                else if (new_key == 29) return 15;
-                break;
-           case 17:
-                if (new_key == 20) return 19;
-                break;
-           }
+
+    /**
+     * At the end of a word, re-types it in the other mode if the detector
+     * is sure it was typed in the wrong one.
+     */
+    private void correctInputMode() {
+        if (mModeDetector == null) {
+            return;
         }
-        else {
-            /*           
-            38, 30, 39 //   
-            38, 31, 40 //   
-            38, 50, 41 //  
-            43, 34, 44 //   
-            43, 35, 45 //   
-            43, 50, 46 //   
-            48, 50, 49 //   
-*/          
-           switch (mHangulKeyStack[stack_pos]) {
-           case 38:
-               if (new_key == 30) return 39;
-               else if (new_key == 31) return 40;
-               else if (new_key == 50) return 41;
-               break;
-           case 43:
-               if (new_key == 34) return 44;
-               else if (new_key == 35) return 45;
-               else if (new_key == 50) return 46;
-               break;
-           case 48:
-               if (new_key == 50) return 49;
-               break;
-           }
-       }
-       return 0;
-    }   
-    private static int mHCursorState = HCURSOR_NONE;
-    private int previousHangulCurPos = -1;
-    
-    private void clearHangul() {    
-        mHCursorState = HCURSOR_NONE;
-        mHangulState = 0;
-
-        Log.v("kbd", "clearHangul");
-        previousHangulCurPos = -1;
-        mHangulKeyStack[0] = 0; 
-        mHangulKeyStack[1] = 0;
-        mHangulKeyStack[2] = 0;
-        mHangulKeyStack[3] = 0;
-        mHangulKeyStack[4] = 0;
-        mHangulKeyStack[5] = 0;
-        mHangulJamoStack[0] = 0;
-        mHangulJamoStack[1] = 0;
-        mHangulJamoStack[2] = 0;
-        return;
+        int verdict = mModeDetector.endWord();
+        if ((verdict == InputModeDetector.HANGUL && !isHangulMode)
+                || (verdict == InputModeDetector.LATIN && isHangulMode)) {
+            reconvert();
+        }
+    }
+
+    /** How far back Alt+Space looks for the last word. */
+    static final int RECONVERT_MAX_WORD = 64;
+
+    /**
+     * Alt+Space: re-types the selection, or the word before the cursor, in
+     * the other mode.  Hangul turns back into the keys that typed it, Latin
+     * letters are read as 2-beolsik keys.  The text is replaced in one batch
+     * edit and the keyboard is left in the mode the text was converted to.
+     * Returns false if there was nothing to convert.
+     */
+    private boolean reconvert() {
+        InputConnection ic = getCurrentInputConnection();
+        if (ic == null) {
+            return false;
+        }
+        CharSequence text = ic.getSelectedText(0);
+        boolean selected = !TextUtils.isEmpty(text);
+        if (!selected) {
+            text = ic.getTextBeforeCursor(RECONVERT_MAX_WORD, 0);
+            if (text == null) {
+                return false;
+            }
+            int start = text.length();
+            while (start > 0 && isWordChar(text.charAt(start - 1))) {
+                start--;
+            }
+            text = text.subSequence(start, text.length());
+            if (text.length() == 0) {
+                return false;
+            }
+        }
+        boolean toHangul = !HangulTransliterator.containsHangul(text);
+        String converted = toHangul ? HangulTransliterator.toHangul(text)
+                : HangulTransliterator.toKeys(text);
+        ic.beginBatchEdit();
+        if (!selected) {
+            ic.deleteSurroundingText(text.length(), 0);
+        }
+        ic.commitText(converted, 1);
+        ic.endBatchEdit();
+        if (isHangulMode != toHangul) {
+            isHangulMode = toHangul;
+            updateStatusIcon();
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return HangulAutomata.toJamo(c, false) >= 0
+                || HangulSyllables.decompose(c) != 0;
     }
 
     private void updateStatusIcon()
@@ -0,0 +1,72 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class DataFileTest extends TestCase {
+
+    private File mDir;
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = File.createTempFile("datafile", "");
+        mDir.delete();
+        mDir.mkdir();
+        mFile = new File(mDir, "data");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+        super.tearDown();
+    }
+
+    private static DataFile.Content bytes(final int... values) {
+        return new DataFile.Content() {
+            public void writeTo(DataOutputStream out) throws IOException {
+                for (int i = 0; i < values.length; i++) {
+                    out.writeByte(values[i]);
+                }
+            }
+        };
+    }
+
+    public void testWriteAndRead() {
+        assertNull(DataFile.read(mFile));
+        assertTrue(DataFile.write(mFile, bytes(1, 2, 3), false));
+        assertEquals(3, DataFile.read(mFile).length);
+        assertTrue(DataFile.write(mFile, bytes(4), true));
+        byte[] data = DataFile.read(mFile);
+        assertEquals(1, data.length);
+        assertEquals(4, data[0]);
+        assertEquals(1, mDir.list().length);
+    }
+
+    public void testFailedWriteKeepsOldFile() {
+        assertTrue(DataFile.write(mFile, bytes(1), false));
+        assertFalse(DataFile.write(mFile, new DataFile.Content() {
+            public void writeTo(DataOutputStream out) throws IOException {
+                throw new IOException("full");
+            }
+        }, false));
+        assertEquals(1, DataFile.read(mFile)[0]);
+        assertEquals(1, mDir.list().length);
+    }
+
+    /** A crash between the two renames leaves only the backup. */
+    public void testReadFallsBackToBackup() {
+        assertTrue(DataFile.write(mFile, bytes(7), false));
+        assertTrue(mFile.renameTo(new File(mFile.getPath() + ".bak")));
+        assertEquals(7, DataFile.read(mFile)[0]);
+        assertTrue(DataFile.write(mFile, bytes(8), false));
+        assertEquals(8, DataFile.read(mFile)[0]);
+    }
+}
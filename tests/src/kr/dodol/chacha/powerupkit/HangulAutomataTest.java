@@ -0,0 +1,166 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class HangulAutomataTest extends TestCase {
+
+    /** Types 2-beolsik keys; returns the action of the last one. */
+    private static int type(HangulAutomata automata, String keys) {
+        int action = HangulAutomata.ACTION_NONE;
+        for (int i = 0; i < keys.length(); i++) {
+            action = automata.process(HangulAutomata.toJamo(keys.charAt(i), false));
+        }
+        return action;
+    }
+
+    private static String type(String keys) {
+        HangulThroughput.AutomataEditor editor = new HangulThroughput.AutomataEditor();
+        for (int i = 0; i < keys.length(); i++) {
+            editor.key(keys.charAt(i));
+        }
+        return editor.getText();
+    }
+
+    public void testWords() {
+        // annyeonghaseyo
+        assertEquals("\uc548\ub155\ud558\uc138\uc694", type("dkssudgktpdy"));
+        // ilgda: the double final is split when a vowel follows
+        assertEquals("\uc77d\ub2e4", type("dlfrek"));
+        assertEquals("\uc77c\uac70", type("dlfrj"));
+        // shifted keys give the tense consonants, the rest as unshifted
+        assertEquals("\ube60\ub978", type("QkfmS"));
+    }
+
+    public void testActions() {
+        HangulAutomata automata = new HangulAutomata();
+        assertEquals(HangulAutomata.ACTION_START, type(automata, "r"));
+        assertEquals('\u3131', automata.getComposing());
+        assertEquals(HangulAutomata.ACTION_UPDATE, type(automata, "k"));
+        assertEquals('\uac00', automata.getComposing());
+        assertEquals(HangulAutomata.ACTION_UPDATE, type(automata, "r"));
+        assertEquals('\uac01', automata.getComposing());
+        // the final moves on to the next syllable
+        assertEquals(HangulAutomata.ACTION_COMMIT, type(automata, "k"));
+        assertEquals('\uac00', automata.getCommitted());
+        assertEquals('\uac00', automata.getComposing());
+        // a vowel that doesn't join starts a syllable of its own
+        assertEquals(HangulAutomata.ACTION_COMMIT, type(automata, "l"));
+        assertEquals('\uac00', automata.getCommitted());
+        assertEquals('\u3163', automata.getComposing());
+    }
+
+    public void testDelete() {
+        HangulAutomata automata = new HangulAutomata();
+        // wan, then key by key back
+        type(automata, "dhks");
+        assertEquals('\uc644', automata.getComposing());
+        char[] expected = {'\uc640', '\uc624', '\u3147'};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(HangulAutomata.ACTION_UPDATE, automata.delete());
+            assertEquals(expected[i], automata.getComposing());
+        }
+        assertEquals(HangulAutomata.ACTION_CLEAR, automata.delete());
+        assertTrue(automata.isEmpty());
+        assertEquals(HangulAutomata.ACTION_NONE, automata.delete());
+    }
+
+    public void testDeleteDoubleFinal() {
+        HangulAutomata automata = new HangulAutomata();
+        type(automata, "dlfr");
+        assertEquals('\uc77d', automata.getComposing());
+        assertEquals(HangulAutomata.ACTION_UPDATE, automata.delete());
+        assertEquals('\uc77c', automata.getComposing());
+        // and it can be typed again
+        assertEquals(HangulAutomata.ACTION_UPDATE, type(automata, "r"));
+        assertEquals('\uc77d', automata.getComposing());
+    }
+
+    public void testDeleteAfterCommit() {
+        HangulAutomata automata = new HangulAutomata();
+        // ga + g: only the new syllable can be taken back
+        type(automata, "rkrk");
+        assertEquals(HangulAutomata.ACTION_UPDATE, automata.delete());
+        assertEquals('\u3131', automata.getComposing());
+        assertEquals(HangulAutomata.ACTION_CLEAR, automata.delete());
+        assertEquals(HangulAutomata.ACTION_NONE, automata.delete());
+    }
+
+    public void testDeleteSyllable() {
+        HangulAutomata automata = new HangulAutomata();
+        assertEquals(HangulAutomata.ACTION_NONE, automata.deleteSyllable());
+        type(automata, "dlfr");
+        assertEquals(HangulAutomata.ACTION_CLEAR, automata.deleteSyllable());
+        assertTrue(automata.isEmpty());
+        assertEquals(HangulAutomata.ACTION_START, type(automata, "r"));
+    }
+
+    public void testResumeSyllables() {
+        HangulAutomata automata = new HangulAutomata();
+        for (int i = 0; i < HangulSyllables.SYLLABLE_COUNT; i++) {
+            char c = (char) (HangulSyllables.SYLLABLE_BASE + i);
+            assertTrue(automata.resume(c));
+            assertEquals(c, automata.getComposing());
+            // every key but the first comes off as an update
+            int keys = HangulSyllables.keyCount(HangulSyllables.decompose(c));
+            for (int k = 1; k < keys; k++) {
+                assertEquals(HangulAutomata.ACTION_UPDATE, automata.delete());
+            }
+            assertEquals(HangulAutomata.ACTION_CLEAR, automata.delete());
+        }
+    }
+
+    public void testResumeJamo() {
+        HangulAutomata automata = new HangulAutomata();
+        for (int i = 0; i < HangulSyllables.JAMO_COUNT; i++) {
+            char c = (char) (HangulSyllables.JAMO_BASE + i);
+            assertTrue(automata.resume(c));
+            assertEquals(c, automata.getComposing());
+        }
+        assertFalse(automata.resume('a'));
+        assertFalse(automata.resume('\u3164'));
+    }
+
+    public void testResumeThenType() {
+        HangulAutomata automata = new HangulAutomata();
+        // il, then g joins the final
+        assertTrue(automata.resume('\uc77c'));
+        assertEquals(HangulAutomata.ACTION_UPDATE, type(automata, "r"));
+        assertEquals('\uc77d', automata.getComposing());
+    }
+
+    /** Random 2-beolsik typing with backspaces gives the old switch's text. */
+    public void testMatchesLegacySwitch() {
+        String keys = "abcdefghijklmnopqrstuvwxyzQWERTOP";
+        Random random = new Random(42);
+        LegacyHangulSwitch legacy = new LegacyHangulSwitch();
+        HangulThroughput.AutomataEditor editor = new HangulThroughput.AutomataEditor();
+        for (int run = 0; run < 20000; run++) {
+            legacy.clear();
+            editor.clear();
+            StringBuilder typed = new StringBuilder();
+            int length = 1 + random.nextInt(20);
+            for (int i = 0; i < length; i++) {
+                int roll = random.nextInt(10);
+                if (roll == 0) {
+                    legacy.delete();
+                    editor.delete();
+                    typed.append('<');
+                }
+                else {
+                    char key = keys.charAt(random.nextInt(keys.length()));
+                    if (roll == 1) {
+                        legacy.setShift(true);
+                        editor.setShift(true);
+                        typed.append('^');
+                    }
+                    legacy.key(key);
+                    editor.key(key);
+                    typed.append(key);
+                }
+                assertEquals(typed.toString(), legacy.getText(), editor.getText());
+            }
+        }
+    }
+}
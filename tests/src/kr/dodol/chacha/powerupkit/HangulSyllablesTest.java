@@ -0,0 +1,103 @@
+package kr.dodol.chacha.powerupkit;
+
+import junit.framework.TestCase;
+
+public class HangulSyllablesTest extends TestCase {
+
+    /** Unicode initial index for jamo 0..29, -1 where there is none. */
+    private static int choIndex(int jamo) {
+        return HangulSyllables.CHO_INDEX[jamo];
+    }
+
+    public void testCompose() {
+        int count = 0;
+        for (int cho = 0; cho < 30; cho++) {
+            for (int jung = 30; jung < 51; jung++) {
+                for (int jong = -1; jong < 30; jong++) {
+                    char c = HangulSyllables.compose(cho, jung, jong);
+                    boolean valid = choIndex(cho) >= 0
+                            && (jong < 0 || HangulSyllables.isFinal(jong));
+                    if (!valid) {
+                        assertEquals(0, c);
+                        continue;
+                    }
+                    int expected = 0xAC00 + (choIndex(cho) * 21 + jung - 30) * 28
+                            + (jong < 0 ? 0 : HangulSyllables.JONG_INDEX[jong]);
+                    assertEquals(expected, c);
+                    count++;
+                }
+            }
+        }
+        assertEquals(HangulSyllables.SYLLABLE_COUNT, count);
+    }
+
+    public void testComposeExamples() {
+        // han: hieut, a, nieun
+        assertEquals('\ud55c', HangulSyllables.compose(29, 30, 3));
+        // geul: giyeok, eu, rieul
+        assertEquals('\uae00', HangulSyllables.compose(0, 48, 8));
+        // ssangssiot can end a syllable, ssangdigeut can't
+        assertEquals('\uc788', HangulSyllables.compose(22, 50, 21));
+        assertEquals(0, HangulSyllables.compose(22, 50, 7));
+    }
+
+    /** decompose gives keys that compose back to the syllable. */
+    public void testDecompose() {
+        for (int i = 0; i < HangulSyllables.SYLLABLE_COUNT; i++) {
+            char c = (char) (HangulSyllables.SYLLABLE_BASE + i);
+            int keys = HangulSyllables.decompose(c);
+            int count = HangulSyllables.keyCount(keys);
+            assertTrue(count >= 2 && count <= 5);
+            HangulAutomata automata = new HangulAutomata();
+            for (int k = 0; k < count; k++) {
+                int key = HangulSyllables.keyAt(keys, k);
+                assertTrue(key >= 0 && key < HangulSyllables.JAMO_COUNT);
+                automata.process(key);
+            }
+            assertEquals(c, automata.getComposing());
+        }
+    }
+
+    public void testDecomposeExamples() {
+        // dalk: digeut, a, rieul + giyeok
+        int keys = HangulSyllables.decompose('\ub2ed');
+        assertEquals(4, HangulSyllables.keyCount(keys));
+        assertEquals(6, HangulSyllables.keyAt(keys, 0));
+        assertEquals(30, HangulSyllables.keyAt(keys, 1));
+        assertEquals(8, HangulSyllables.keyAt(keys, 2));
+        assertEquals(0, HangulSyllables.keyAt(keys, 3));
+        assertEquals(-1, HangulSyllables.keyAt(keys, 4));
+        // gwalg: five keys, the most a syllable takes
+        assertEquals(5, HangulSyllables.keyCount(HangulSyllables.decompose('\uad05')));
+    }
+
+    public void testDecomposeJamo() {
+        for (int jamo = 0; jamo < HangulSyllables.JAMO_COUNT; jamo++) {
+            int keys = HangulSyllables.decompose((char) (HangulSyllables.JAMO_BASE + jamo));
+            int count = HangulSyllables.keyCount(keys);
+            if (count == 1) {
+                assertEquals(jamo, HangulSyllables.keyAt(keys, 0));
+            }
+            else {
+                // the split jamo: two keys that are jamo of their own
+                assertEquals(2, count);
+                assertTrue(HangulSyllables.keyAt(keys, 0) != jamo);
+                assertTrue(HangulSyllables.keyAt(keys, 1) != jamo);
+            }
+        }
+        assertEquals(0, HangulSyllables.decompose('a'));
+        assertEquals(0, HangulSyllables.decompose('\u3164'));
+        assertEquals(0, HangulSyllables.decompose('\ud7a4'));
+        assertEquals(0, HangulSyllables.keyCount(0));
+    }
+
+    public void testIsFinal() {
+        // ssangdigeut, ssangbieup and ssangjieut never end a syllable
+        assertFalse(HangulSyllables.isFinal(7));
+        assertFalse(HangulSyllables.isFinal(18));
+        assertFalse(HangulSyllables.isFinal(24));
+        assertTrue(HangulSyllables.isFinal(0));
+        assertTrue(HangulSyllables.isFinal(9));
+        assertFalse(HangulSyllables.isFinal(30));
+    }
+}
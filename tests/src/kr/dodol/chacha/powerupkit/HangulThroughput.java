@@ -0,0 +1,147 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.util.Random;
+
+/**
+ * Keys per second through the 2-beolsik path, old switch against
+ * HangulAutomata.  Neither side touches Android classes, so this runs on a
+ * desktop JVM against the app's compiled classes:
+ *
+ * <pre>
+ * javac -d /tmp/ht -cp bin/classes \
+ *     tests/src/kr/dodol/chacha/powerupkit/LegacyHangulSwitch.java \
+ *     tests/src/kr/dodol/chacha/powerupkit/HangulThroughput.java
+ * java -cp /tmp/ht:bin/classes kr.dodol.chacha.powerupkit.HangulThroughput
+ * </pre>
+ *
+ * Both sides edit the same kind of in-memory buffers, so the numbers
+ * compare the automata and not the editor.  The first rounds are JIT
+ * warm-up; read the last ones.
+ */
+public class HangulThroughput {
+    static final int KEYS = 1 << 16;
+    static final int REPEAT = 40;
+    static final int ROUNDS = 8;
+
+    /**
+     * HangulAutomata behind the same buffers as LegacyHangulSwitch, applying
+     * actions the way HangulEngine does.  Backspace with nothing
+     * composing deletes a character, as the old switch did; picking the
+     * syllable up again is tested on the engine directly.
+     */
+    static class AutomataEditor {
+        final HangulAutomata mAutomata = new HangulAutomata();
+        private final StringBuilder mCommitted = new StringBuilder();
+        private final StringBuilder mComposing = new StringBuilder();
+        private boolean mShifted;
+
+        public void setShift(boolean shifted) {
+            mShifted = shifted;
+        }
+
+        public boolean key(int primaryCode) {
+            int jamo = HangulAutomata.toJamo(primaryCode, mShifted);
+            if (primaryCode >= 'a' && primaryCode <= 'z') {
+                mShifted = false;
+            }
+            if (jamo < 0) {
+                reset();
+                return false;
+            }
+            apply(mAutomata.process(jamo));
+            return true;
+        }
+
+        public void delete() {
+            int action = mAutomata.delete();
+            if (action != HangulAutomata.ACTION_NONE) {
+                apply(action);
+            }
+            else if (mCommitted.length() > 0) {
+                mCommitted.setLength(mCommitted.length() - 1);
+            }
+        }
+
+        public void reset() {
+            mAutomata.reset();
+            mCommitted.append(mComposing);
+            mComposing.setLength(0);
+        }
+
+        public void clear() {
+            mAutomata.reset();
+            mCommitted.setLength(0);
+            mComposing.setLength(0);
+        }
+
+        public String getText() {
+            return mCommitted.toString() + mComposing;
+        }
+
+        private void apply(int action) {
+            switch (action) {
+            case HangulAutomata.ACTION_START:
+                mComposing.append(mAutomata.getComposing());
+                break;
+            case HangulAutomata.ACTION_UPDATE:
+                mComposing.setCharAt(0, mAutomata.getComposing());
+                break;
+            case HangulAutomata.ACTION_COMMIT:
+                mComposing.setLength(0);
+                mCommitted.append(mAutomata.getCommitted());
+                mComposing.append(mAutomata.getComposing());
+                break;
+            case HangulAutomata.ACTION_CLEAR:
+                mComposing.setLength(0);
+                mAutomata.reset();
+                break;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        char[] keys = new char[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = (char) ('a' + random.nextInt(26));
+        }
+        LegacyHangulSwitch legacy = new LegacyHangulSwitch();
+        AutomataEditor editor = new AutomataEditor();
+        long total = (long) KEYS * REPEAT;
+        for (int round = 0; round < ROUNDS; round++) {
+            long t0 = System.nanoTime();
+            for (int r = 0; r < REPEAT; r++) {
+                legacy.clear();
+                for (int i = 0; i < KEYS; i++) {
+                    legacy.key(keys[i]);
+                }
+            }
+            long t1 = System.nanoTime();
+            for (int r = 0; r < REPEAT; r++) {
+                editor.clear();
+                for (int i = 0; i < KEYS; i++) {
+                    editor.key(keys[i]);
+                }
+            }
+            long t2 = System.nanoTime();
+            HangulAutomata automata = editor.mAutomata;
+            int sink = 0;
+            for (int r = 0; r < REPEAT; r++) {
+                automata.reset();
+                for (int i = 0; i < KEYS; i++) {
+                    sink += automata.process(HangulAutomata.toJamo(keys[i], false));
+                }
+            }
+            long t3 = System.nanoTime();
+            System.out.println("round " + round
+                    + ": old " + rate(total, t1 - t0)
+                    + ", new " + rate(total, t2 - t1)
+                    + ", engine only " + rate(total, t3 - t2)
+                    + " Mkeys/s" + (sink == 42 ? " " : ""));
+        }
+    }
+
+    private static String rate(long keys, long nanos) {
+        return String.valueOf(Math.round(keys * 10000.0 / nanos) / 10.0);
+    }
+}
@@ -0,0 +1,70 @@
+package kr.dodol.chacha.powerupkit;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+
+/**
+ * Checks that text reaching the editor through the counter is reported to
+ * its CommitListener, and through it to the abbreviation matcher.
+ */
+public class InputConnectionCounterTest extends AndroidTestCase {
+
+    private static final String GIYEOK_SIOT = "\u3131\u3145";
+    private static final String GIYEOK_SIOT_CLUSTER = "\u3133";
+
+    private InputConnectionCounter mCounter;
+    private AbbreviationMatcher mMatcher;
+    private final StringBuilder mCommitted = new StringBuilder();
+    private int mState;
+    private int mMatch;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMatcher = new AbbreviationMatcher(new String[] { GIYEOK_SIOT },
+                new String[] { "\uac10\uc0ac" }, " \n");
+        mState = mMatcher.start();
+        mMatch = -1;
+        mCommitted.setLength(0);
+        mCounter = new InputConnectionCounter();
+        mCounter.wrap(new BaseInputConnection(new View(getContext()), false));
+        mCounter.setCommitListener(new InputConnectionCounter.CommitListener() {
+            @Override
+            public void onCommitted(CharSequence text) {
+                mCommitted.append(text);
+                for (int i = 0; i < text.length(); i++) {
+                    mState = mMatcher.next(mState, text.charAt(i));
+                    if (mMatcher.getMatch(mState) >= 0) {
+                        mMatch = mMatcher.getMatch(mState);
+                    }
+                }
+            }
+
+            @Override
+            public void onEdited() {
+                mState = mMatcher.start();
+            }
+        });
+    }
+
+    public void testFinishComposingCommitsComposingText() {
+        mCounter.setComposingText("\u3131", 1);
+        mCounter.setComposingText(GIYEOK_SIOT_CLUSTER, 1);
+        mCounter.finishComposingText();
+        assertEquals(GIYEOK_SIOT_CLUSTER, mCommitted.toString());
+    }
+
+    public void testFinishComposingExpands() {
+        // a hard key ends the syllable with finishComposingText, then sends the space
+        mCounter.setComposingText(GIYEOK_SIOT_CLUSTER, 1);
+        mCounter.finishComposingText();
+        mCounter.commitText(" ", 1);
+        assertEquals(0, mMatch);
+    }
+
+    public void testFinishWithoutComposing() {
+        mCounter.finishComposingText();
+        assertEquals("", mCommitted.toString());
+    }
+}
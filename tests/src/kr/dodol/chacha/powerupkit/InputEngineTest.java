@@ -0,0 +1,208 @@
+package kr.dodol.chacha.powerupkit;
+
+import android.test.AndroidTestCase;
+import android.view.KeyEvent;
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+
+/**
+ * Runs keys through the engines and checks what EditOps sends to the
+ * editor, batch edits included.
+ */
+public class InputEngineTest extends AndroidTestCase {
+
+    /** Writes down the calls SoftKeyboard's edits make. */
+    private static class RecordingConnection extends BaseInputConnection {
+        final StringBuilder mLog = new StringBuilder();
+
+        RecordingConnection(View view) {
+            super(view, true);
+        }
+
+        @Override
+        public boolean commitText(CharSequence text, int newCursorPosition) {
+            mLog.append("commit(").append(text).append(")");
+            return true;
+        }
+
+        @Override
+        public boolean setComposingText(CharSequence text, int newCursorPosition) {
+            mLog.append("compose(").append(text).append(")");
+            return true;
+        }
+
+        @Override
+        public boolean finishComposingText() {
+            mLog.append("finish");
+            return true;
+        }
+
+        @Override
+        public boolean deleteSurroundingText(int before, int after) {
+            mLog.append("delete(").append(before).append(")");
+            return true;
+        }
+
+        @Override
+        public boolean sendKeyEvent(KeyEvent event) {
+            if (event.getAction() == KeyEvent.ACTION_DOWN) {
+                mLog.append("key(").append(event.getKeyCode()).append(")");
+            }
+            return true;
+        }
+
+        @Override
+        public boolean beginBatchEdit() {
+            mLog.append("{");
+            return true;
+        }
+
+        @Override
+        public boolean endBatchEdit() {
+            mLog.append("}");
+            return true;
+        }
+    }
+
+    private RecordingConnection mConnection;
+    private final EditOps mOps = new EditOps();
+    private final StringBuilder mComposing = new StringBuilder();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mConnection = new RecordingConnection(new View(getContext()));
+    }
+
+    /** Applies what was recorded and returns the calls it made. */
+    private String apply() {
+        mConnection.mLog.setLength(0);
+        mOps.apply(mConnection, mComposing);
+        return mConnection.mLog.toString();
+    }
+
+    private void type2(HangulEngine engine, char key) {
+        assertTrue(engine.onKey(HangulAutomata.toJamo(key, false), 0, mOps));
+    }
+
+    public void testHangul() {
+        HangulEngine engine = new HangulEngine(new HangulAutomata());
+        type2(engine, 'r');
+        assertEquals("compose(\u3131)", apply());
+        type2(engine, 'k');
+        type2(engine, 's');
+        assertEquals("{compose(\uac00)compose(\uac04)}", apply());
+        // the final moves on to the next syllable in one batch
+        type2(engine, 'k');
+        assertEquals("{commit(\uac00)compose(\ub098)}", apply());
+        engine.separate(' ', mOps);
+        assertEquals("{finishcommit( )}", apply());
+        assertTrue(engine.isEmpty());
+        engine.separate('1', mOps);
+        assertEquals("key(" + KeyEvent.KEYCODE_1 + ")", apply());
+        assertEquals(0, mComposing.length());
+    }
+
+    public void testHangulDelete() {
+        HangulEngine engine = new HangulEngine(new HangulAutomata());
+        assertFalse(engine.delete(mOps));
+        type2(engine, 'r');
+        type2(engine, 'k');
+        apply();
+        assertTrue(engine.delete(mOps));
+        assertEquals("compose(\u3131)", apply());
+        assertEquals("\u3131", mComposing.toString());
+        assertTrue(engine.delete(mOps));
+        assertEquals("commit()", apply());
+        assertTrue(engine.isEmpty());
+
+        // picking the syllable before the cursor up again
+        assertTrue(engine.canResume());
+        assertTrue(engine.resume('\uac04'));
+        mOps.delete(1);
+        assertTrue(engine.delete(mOps));
+        assertEquals("{delete(1)compose(\uac00)}", apply());
+        assertTrue(engine.deleteSyllable(mOps));
+        assertEquals("commit()", apply());
+        assertFalse(engine.deleteSyllable(mOps));
+        assertTrue(mOps.isEmpty());
+    }
+
+    public void test390Symbol() {
+        HangulEngine engine = new HangulEngine(new SebeolsikAutomata());
+        for (int c = 0x21; c < 0x7f; c++) {
+            int key = SebeolsikAutomata.toKey(c);
+            if (key != SebeolsikAutomata.NOT_HANGUL && SebeolsikAutomata.isSymbol(key)) {
+                assertTrue(engine.onKey(key, 0, mOps));
+                assertEquals("commit(" + SebeolsikAutomata.getSymbol(key) + ")", apply());
+                return;
+            }
+        }
+        fail("no symbol in the 390 layout");
+    }
+
+    public void testRomajaFinish() {
+        RomajaEngine engine = new RomajaEngine();
+        assertTrue(engine.onKey('h', 0, mOps));
+        assertTrue(engine.onKey('a', 0, mOps));
+        assertTrue(engine.onKey('n', 0, mOps));
+        apply();
+        assertFalse(engine.onKey('1', 0, mOps));
+        // the pending n becomes a final
+        engine.finish(mOps);
+        assertEquals("commit(\ud55c)", apply());
+        assertTrue(engine.isEmpty());
+        assertFalse(engine.canResume());
+    }
+
+    public void testSejongSeparateAfterFinal() {
+        SejongEngine engine = new SejongEngine();
+        // kkwaeng, as in SejongAutomataTest
+        String keys = "AAAKLJKJH";
+        for (int i = 0; i < keys.length(); i++) {
+            assertTrue(engine.onKey(keys.charAt(i), i * 10, mOps));
+        }
+        assertFalse(engine.onKey(' ', 100, mOps));
+        mOps.clear();
+        assertTrue(engine.getAutomata().hasFinal());
+        // space only closes the syllable
+        engine.separate(' ', mOps);
+        assertEquals("finish", apply());
+        engine.separate(' ', mOps);
+        assertEquals("commit( )", apply());
+    }
+
+    public void testLatinPrediction() {
+        LatinEngine engine = new LatinEngine();
+        assertFalse(engine.onKey('a', 0, mOps));
+        engine.setPrediction(true);
+        assertTrue(engine.onKey('a', 0, mOps));
+        assertTrue(engine.onKey('b', 0, mOps));
+        assertFalse(engine.onKey('.', 0, mOps));
+        assertEquals("{compose(a)compose(ab)}", apply());
+        assertTrue(engine.delete(mOps));
+        assertEquals("compose(a)", apply());
+        engine.separate('.', mOps);
+        assertEquals("{commit(a)commit(.)}", apply());
+        assertFalse(engine.delete(mOps));
+    }
+
+    public void testTakeComposing() {
+        mOps.compose("ab");
+        assertTrue(mOps.takeComposing(mComposing));
+        assertEquals("ab", mComposing.toString());
+        assertTrue(mOps.isEmpty());
+
+        mOps.commit('a');
+        mOps.compose('b');
+        assertTrue(mOps.replacesComposing());
+        assertFalse(mOps.takeComposing(mComposing));
+        mOps.clear();
+        mOps.finish();
+        assertFalse(mOps.replacesComposing());
+        mOps.clear();
+        mOps.key(KeyEvent.KEYCODE_DEL);
+        assertFalse(mOps.replacesComposing());
+        mOps.clear();
+    }
+}
@@ -0,0 +1,85 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.util.List;
+import java.util.Random;
+
+import android.inputmethodservice.Keyboard;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Times key lookup on qwerty.xml: the linear isInside() scan against the
+ * grid, and the nearest centers for correction.  Results go to the log
+ * under "kbd"; run it with
+ *
+ * <pre>
+ * adb shell am instrument -w -e class kr.dodol.chacha.powerupkit.KeyGridIndexBenchmark \
+ *     kr.dodol.chacha.powerupkit.tests/android.test.InstrumentationTestRunner
+ * </pre>
+ */
+public class KeyGridIndexBenchmark extends AndroidTestCase {
+
+    static final int TOUCHES = 1 << 14;
+    static final int REPEAT = 10;
+    static final int ROUNDS = 5;
+
+    public void testLookup() {
+        LatinKeyboard keyboard = new LatinKeyboard(getContext(), R.xml.qwerty);
+        List<Keyboard.Key> list = keyboard.getKeys();
+        Keyboard.Key[] keys = list.toArray(new Keyboard.Key[list.size()]);
+        int width = keyboard.getMinWidth();
+        int height = keyboard.getHeight();
+        long start = System.nanoTime();
+        KeyGridIndex index = new KeyGridIndex(list, width, height, keys[0].width * 14 / 10);
+        long build = System.nanoTime() - start;
+
+        Random random = new Random(1);
+        int[] xs = new int[TOUCHES];
+        int[] ys = new int[TOUCHES];
+        for (int i = 0; i < TOUCHES; i++) {
+            xs[i] = random.nextInt(width);
+            ys[i] = random.nextInt(height);
+        }
+        int[] nearest = new int[3];
+        int[] distances = new int[3];
+        long total = (long) TOUCHES * REPEAT;
+        Log.i("kbd", keys.length + " keys, " + width + "x" + height
+                + ", index built in " + build / 1000 + " us");
+        for (int round = 0; round < ROUNDS; round++) {
+            int linearSum = 0;
+            int gridSum = 0;
+            int nearestSum = 0;
+            long t0 = System.nanoTime();
+            for (int r = 0; r < REPEAT; r++) {
+                for (int i = 0; i < TOUCHES; i++) {
+                    int found = -1;
+                    for (int k = 0; k < keys.length; k++) {
+                        if (keys[k].isInside(xs[i], ys[i])) {
+                            found = k;
+                        }
+                    }
+                    linearSum += found;
+                }
+            }
+            long t1 = System.nanoTime();
+            for (int r = 0; r < REPEAT; r++) {
+                for (int i = 0; i < TOUCHES; i++) {
+                    gridSum += index.getKeyAt(xs[i], ys[i]);
+                }
+            }
+            long t2 = System.nanoTime();
+            for (int r = 0; r < REPEAT; r++) {
+                for (int i = 0; i < TOUCHES; i++) {
+                    nearestSum += index.getNearestCenters(xs[i], ys[i], nearest, distances);
+                }
+            }
+            long t3 = System.nanoTime();
+            assertEquals(linearSum, gridSum);
+            assertTrue(nearestSum > 0);
+            Log.i("kbd", "round " + round
+                    + ": linear " + (t1 - t0) / total
+                    + " ns, grid " + (t2 - t1) / total
+                    + " ns, nearest 3 " + (t3 - t2) / total + " ns per touch");
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.util.List;
+
+import android.inputmethodservice.Keyboard;
+import android.test.AndroidTestCase;
+
+/**
+ * Checks the grid against the linear scan KeyboardView did before it, at
+ * the corners and edges of every key of qwerty.xml, on both sides of each
+ * edge.
+ */
+public class KeyGridIndexTest extends AndroidTestCase {
+
+    private Keyboard.Key[] mKeys;
+    private int mWidth;
+    private int mHeight;
+    private int mProximity;
+    private KeyGridIndex mIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        LatinKeyboard keyboard = new LatinKeyboard(getContext(), R.xml.qwerty);
+        List<Keyboard.Key> keys = keyboard.getKeys();
+        mKeys = keys.toArray(new Keyboard.Key[keys.size()]);
+        mWidth = keyboard.getMinWidth();
+        mHeight = keyboard.getHeight();
+        // as LatinKeyboard.getGridIndex(); q has the default key width
+        mProximity = mKeys[0].width * 14 / 10;
+        mIndex = new KeyGridIndex(keys, mWidth, mHeight, mProximity);
+    }
+
+    /** The last key the touch is inside, as KeyboardView picked it. */
+    private int linearKeyAt(int x, int y) {
+        int found = -1;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i].isInside(x, y)) {
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    private void check(int x, int y) {
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+            return;
+        }
+        String at = "(" + x + ", " + y + ")";
+        assertEquals(at, linearKeyAt(x, y), mIndex.getKeyAt(x, y));
+        int[] nearest = mIndex.getNearestKeys(x, y);
+        int threshold = mProximity * mProximity;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i].isInside(x, y) || mKeys[i].squaredDistanceFrom(x, y) < threshold) {
+                assertTrue(at + " misses key " + i, contains(nearest, i));
+            }
+        }
+    }
+
+    private static boolean contains(int[] keys, int key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testEdgesAndCorners() {
+        for (int i = 0; i < mKeys.length; i++) {
+            Keyboard.Key key = mKeys[i];
+            int offset = KeyGridIndex.getHitOffset(key);
+            int[] xs = { key.x, key.x + key.width / 2, key.x + key.width };
+            int[] ys = { key.y + offset, key.y + key.height / 2 + offset,
+                    key.y + key.height + offset };
+            for (int xi = 0; xi < xs.length; xi++) {
+                for (int yi = 0; yi < ys.length; yi++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        for (int dy = -1; dy <= 1; dy++) {
+                            check(xs[xi] + dx, ys[yi] + dy);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testCloseKeyIsLowered() {
+        for (int i = 0; i < mKeys.length; i++) {
+            Keyboard.Key key = mKeys[i];
+            if (key.codes[0] != Keyboard.KEYCODE_CANCEL) {
+                continue;
+            }
+            int x = key.x + key.width / 2;
+            int offset = KeyGridIndex.getHitOffset(key);
+            assertTrue(offset > 0);
+            assertTrue(i != mIndex.getKeyAt(x, key.y + offset - 1));
+            assertEquals(i, mIndex.getKeyAt(x, key.y + offset));
+            return;
+        }
+        fail("no close key in qwerty.xml");
+    }
+
+    public void testNearestCenters() {
+        int[] keys = new int[3];
+        int[] distances = new int[3];
+        for (int i = 0; i < mKeys.length; i++) {
+            Keyboard.Key key = mKeys[i];
+            int x = key.x + key.width / 2;
+            int y = key.y + key.height / 2 + KeyGridIndex.getHitOffset(key);
+            int found = mIndex.getNearestCenters(x, y, keys, distances);
+            assertTrue(found > 0);
+            assertEquals(i, keys[0]);
+            assertEquals(0, distances[0]);
+            for (int j = 1; j < found; j++) {
+                assertTrue(distances[j - 1] <= distances[j]);
+            }
+        }
+    }
+}
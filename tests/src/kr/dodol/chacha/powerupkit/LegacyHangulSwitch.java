@@ -0,0 +1,592 @@
+package kr.dodol.chacha.powerupkit;
+
+/**
+ * The 2-beolsik switch that handleHangul/hangulSendKey ran in SoftKeyboard
+ * before HangulAutomata replaced it, kept as the baseline for
+ * {@link HangulThroughput} and {@link HangulAutomataTest}. The states,
+ * tables and key stacks are the shipped ones; the input connection is
+ * replaced by two buffers (committed text and the composing text) so it
+ * runs on a desktop JVM.
+ */
+public class LegacyHangulSwitch {
+    private static final int HCURSOR_NEW = 1;
+    private static final int HCURSOR_ADD = 2;
+    private static final int HCURSOR_UPDATE = 3;
+    private static final int HCURSOR_APPEND = 4;
+
+    final static int H_STATE_0 = 0;
+    final static int H_STATE_1 = 1;
+    final static int H_STATE_2 = 2;
+    final static int H_STATE_3 = 3;
+    final static int H_STATE_4 = 4;
+    final static int H_STATE_5 = 5;
+    final static int H_STATE_6 = 6;
+
+    // jamo index -> initial index (0 where it can't be an initial)
+    final static char[] h_chosung_idx =
+    {0,1, 9,2,12,18,3, 4,5, 0, 6,7, 9,16,17,18,6, 7, 8, 9,9,10,11,12,13,14,15,16,17,18};
+    // jamo index + 1 -> final index (0 where it can't be a final)
+    final static char[] h_jongsung_idx =
+    {0, 1, 2, 3,4,5, 6, 7, 0,8, 9,10,11,12,13,14,15,16,17,0 ,18,19,20,21,22,0 ,23,24,25,26,27};
+    // 'a'..'z' then 'A'..'Z' -> jamo index
+    final static int[] e2h_map =
+    {16,47,25,22,6, 8,29,38,32,34,30,50,48,43,31,35,17,0, 3,20,36,28,23,27,42,26,
+     16,47,25,22,7, 8,29,38,32,34,30,50,48,43,33,37,18,1, 3,21,36,28,24,27,42,26};
+
+    private int mHangulShiftState = 0;
+    private int mHangulState = 0;
+    private int mHangulKeyStack[] = {0,0,0,0,0,0}; // initial x2, vowel x2, final x2
+    private int mHangulJamoStack[] = {0,0,0};
+
+    private final StringBuilder mCommitted = new StringBuilder();
+    private final StringBuilder mComposing = new StringBuilder();
+
+    /** Shifts the next lower-case key, as the shift key did. */
+    public void setShift(boolean shifted) {
+        mHangulShiftState = shifted ? 1 : 0;
+    }
+
+    /** Drops the automaton state, leaving the text as it is. */
+    public void reset() {
+        clearHangul();
+        mCommitted.append(mComposing);
+        mComposing.setLength(0);
+    }
+
+    /** Empties both buffers and the automaton. */
+    public void clear() {
+        clearHangul();
+        mCommitted.setLength(0);
+        mComposing.setLength(0);
+    }
+
+    /** The committed text followed by the composing text. */
+    public String getText() {
+        return mCommitted.toString() + mComposing;
+    }
+
+    private void deleteBefore() {
+        final int length = mCommitted.length();
+        if (length > 0) {
+            mCommitted.setLength(length - 1);
+        }
+    }
+
+    /** Feeds one key code; returns false if it isn't a Hangul key. */
+    public boolean key(int primaryCode) {
+
+        int hangulKeyIdx = -1;
+        int newHangulChar;
+        int cho_idx,jung_idx,jong_idx;
+        int hangulChar = 0;
+
+        if (primaryCode >= 0x61 && primaryCode <= 0x7A) {
+
+            if (mHangulShiftState == 0) {
+                hangulKeyIdx = e2h_map[primaryCode - 0x61];
+            }
+            else {
+                hangulKeyIdx = e2h_map[primaryCode - 0x61 + 26];
+                mHangulShiftState = 0;
+            }
+            hangulChar = 1;
+        }
+        else if (primaryCode >= 0x41 && primaryCode <= 0x5A) {
+            hangulKeyIdx = e2h_map[primaryCode - 0x41 + 26];
+            hangulChar = 1;
+        }
+
+        else {
+            hangulChar = 0;
+        }
+
+        if (hangulChar == 1) {
+
+            switch(mHangulState) {
+
+            case H_STATE_0: // nothing composed
+                if (hangulKeyIdx < 30) { // consonant
+                    newHangulChar = 0x3131 + hangulKeyIdx;
+                    hangulSendKey(newHangulChar, HCURSOR_NEW);
+                    mHangulKeyStack[0] = hangulKeyIdx;
+                    mHangulJamoStack[0] = hangulKeyIdx;
+                    mHangulState = H_STATE_1; // goto initial
+                }
+                else { // vowel
+                    newHangulChar = 0x314F + (hangulKeyIdx - 30);
+                    hangulSendKey(newHangulChar, HCURSOR_NEW);
+                    mHangulKeyStack[2] = hangulKeyIdx;
+                    mHangulJamoStack[1] = hangulKeyIdx;
+                    mHangulState = H_STATE_3; // goto vowel
+                }
+                break;
+
+            case H_STATE_1: // initial
+                if (hangulKeyIdx < 30) { // consonant
+                    int newHangulKeyIdx = isHangulKey(0,hangulKeyIdx);
+                    if (newHangulKeyIdx > 0) { // joins
+                        newHangulChar = 0x3131 + newHangulKeyIdx;
+                        mHangulKeyStack[1] = hangulKeyIdx;
+                        mHangulJamoStack[0] = newHangulKeyIdx;
+                        hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+                        mHangulState = H_STATE_2; // goto double initial
+                    }
+                    else { // consonant
+
+                        newHangulChar = 0x3131 + mHangulJamoStack[0];
+                        hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+
+                        newHangulChar = 0x3131 + hangulKeyIdx;
+                        hangulSendKey(newHangulChar, HCURSOR_ADD);
+                        mHangulKeyStack[0] = hangulKeyIdx;
+                        mHangulJamoStack[0] = hangulKeyIdx;
+                        mHangulState = H_STATE_1; // goto initial
+                    }
+                }
+                else { // vowel
+                    mHangulKeyStack[2] = hangulKeyIdx;
+                    mHangulJamoStack[1] = hangulKeyIdx;
+                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                    jung_idx = mHangulJamoStack[1] - 30;
+                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
+                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+                    mHangulState = H_STATE_4; // goto initial, vowel
+                }
+                break;
+
+            case H_STATE_2: // double initial
+                if (hangulKeyIdx < 30) { // consonant
+
+                    newHangulChar = 0x3131 + mHangulJamoStack[0];
+                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+
+                    mHangulKeyStack[0] = hangulKeyIdx;
+                    mHangulJamoStack[0] = hangulKeyIdx;
+                    mHangulJamoStack[1] = 0;
+                    newHangulChar = 0x3131 + hangulKeyIdx;
+                    hangulSendKey(newHangulChar, HCURSOR_ADD);
+                    mHangulState = H_STATE_1; // goto initial
+                }
+                else { // vowel
+                    newHangulChar = 0x3131 + mHangulKeyStack[0];
+                    mHangulKeyStack[0] = mHangulKeyStack[1];
+                    mHangulJamoStack[0] = mHangulKeyStack[0];
+                    mHangulKeyStack[1] = 0;
+                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+
+                    mHangulKeyStack[2] = hangulKeyIdx;
+                    mHangulJamoStack[1] = mHangulKeyStack[2];
+                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                    jung_idx = mHangulJamoStack[1] - 30;
+                    jong_idx = 0;
+
+                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                    hangulSendKey(newHangulChar, HCURSOR_ADD);
+                    mHangulState = H_STATE_4; // goto initial, vowel
+                }
+                break;
+
+            case H_STATE_3: // vowel
+                if (hangulKeyIdx < 30) { // consonant
+
+                    newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
+                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+
+                    newHangulChar = 0x3131 + hangulKeyIdx;
+                    hangulSendKey(newHangulChar, HCURSOR_ADD);
+                    mHangulKeyStack[0] = hangulKeyIdx;
+                    mHangulJamoStack[0] = hangulKeyIdx;
+                    mHangulJamoStack[1] = 0;
+                    // Not in the shipped switch: without it a stale second
+                    // vowel leaks into the next syllable.
+                    mHangulKeyStack[3] = 0;
+                    mHangulState = H_STATE_1; // goto initial
+                }
+                else { // vowel
+                    if (mHangulKeyStack[3] == 0) {
+                        int newHangulKeyIdx = isHangulKey(2,hangulKeyIdx);
+                        if (newHangulKeyIdx > 0) { // joins
+                            newHangulChar = 0x314F + (newHangulKeyIdx - 30);
+                            hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+                            mHangulKeyStack[3] = hangulKeyIdx;
+                            mHangulJamoStack[1] = newHangulKeyIdx;
+                        }
+                        else { // vowel
+
+                            newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
+                            hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+
+                            newHangulChar = 0x314F + (hangulKeyIdx - 30);
+                            hangulSendKey(newHangulChar,HCURSOR_ADD);
+                            mHangulKeyStack[2] = hangulKeyIdx;
+                            mHangulJamoStack[1] = hangulKeyIdx;
+                        }
+                    }
+                    else {
+
+                        newHangulChar = 0x314F + (mHangulJamoStack[1] - 30);
+                        hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+
+                        newHangulChar = 0x314F + (hangulKeyIdx - 30);
+                        hangulSendKey(newHangulChar,HCURSOR_ADD);
+                        mHangulKeyStack[2] = hangulKeyIdx;
+                        mHangulJamoStack[1] = hangulKeyIdx;
+                        mHangulKeyStack[3] = 0;
+                    }
+                    mHangulState = H_STATE_3;
+                }
+                break;
+            case H_STATE_4: // initial, vowel
+                if (hangulKeyIdx < 30) { // consonant
+                    mHangulKeyStack[4] = hangulKeyIdx;
+                    mHangulJamoStack[2] = hangulKeyIdx;
+                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                    jung_idx = mHangulJamoStack[1] - 30;
+                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];
+                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+                    if (jong_idx == 0) { // can't be a final
+                        mHangulKeyStack[0] = hangulKeyIdx;
+                        mHangulKeyStack[1] = 0;
+                        mHangulKeyStack[2] = 0;
+                        mHangulKeyStack[3] = 0;
+                        mHangulKeyStack[4] = 0;
+                        mHangulJamoStack[0] = hangulKeyIdx;
+                        mHangulJamoStack[1] = 0;
+                        mHangulJamoStack[2] = 0;
+                        newHangulChar = 0x3131 + hangulKeyIdx;
+                        hangulSendKey(newHangulChar,HCURSOR_ADD);
+                        mHangulState = H_STATE_1; // goto initial
+                    }
+                    else {
+                        mHangulState = H_STATE_5; // goto initial, vowel, final
+                    }
+                }
+                else { // vowel
+                    if (mHangulKeyStack[3] == 0) {
+                        int newHangulKeyIdx = isHangulKey(2,hangulKeyIdx);
+                        if (newHangulKeyIdx > 0) { // joins
+                            mHangulKeyStack[3] = hangulKeyIdx;
+                            mHangulJamoStack[1] = newHangulKeyIdx;
+                            cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                            jung_idx = mHangulJamoStack[1] - 30;
+                            jong_idx = 0;
+                            newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                            hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+                            mHangulState = H_STATE_4; // goto initial, vowel
+                        }
+                        else { // doesn't join
+
+                            cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                            jung_idx = mHangulJamoStack[1] - 30;
+                            jong_idx = 0;
+                            newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                            hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+
+                            newHangulChar = 0x314F + (hangulKeyIdx - 30);
+                            hangulSendKey(newHangulChar,HCURSOR_ADD);
+                            mHangulKeyStack[0] = 0;
+                            mHangulKeyStack[1] = 0;
+                            mHangulJamoStack[0] = 0;
+                            mHangulKeyStack[2] = hangulKeyIdx;
+                            mHangulJamoStack[1] = hangulKeyIdx;
+                            mHangulState = H_STATE_3; // goto vowel
+                        }
+                    }
+                    else {
+
+                        cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                        jung_idx = mHangulJamoStack[1] - 30;
+                        jong_idx = 0;
+                        newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                        hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+
+                        newHangulChar = 0x314F + (hangulKeyIdx - 30);
+                        hangulSendKey(newHangulChar,HCURSOR_ADD);
+                        mHangulKeyStack[0] = 0;
+                        mHangulKeyStack[1] = 0;
+                        mHangulJamoStack[0] = 0;
+                        mHangulKeyStack[2] = hangulKeyIdx;
+                        mHangulJamoStack[1] = hangulKeyIdx;
+                        mHangulKeyStack[3] = 0;
+                        mHangulState = H_STATE_3; // goto vowel
+
+                    }
+                }
+                break;
+            case H_STATE_5: // initial, vowel, final
+                if (hangulKeyIdx < 30) { // consonant
+                    int newHangulKeyIdx = isHangulKey(4,hangulKeyIdx);
+                    if (newHangulKeyIdx > 0) { // joins the final
+                        mHangulKeyStack[5] = hangulKeyIdx;
+                        mHangulJamoStack[2] = newHangulKeyIdx;
+
+                        cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                        jung_idx = mHangulJamoStack[1] - 30;
+                        jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];
+                        newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                        hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+                        mHangulState = H_STATE_6; // goto initial, vowel, double final
+                    }
+                    else { // doesn't join the final
+
+                        cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                        jung_idx = mHangulJamoStack[1] - 30;
+                        jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];
+                        newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                        hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+
+                        mHangulKeyStack[0] = hangulKeyIdx;
+                        mHangulKeyStack[1] = 0;
+                        mHangulKeyStack[2] = 0;
+                        mHangulKeyStack[3] = 0;
+                        mHangulKeyStack[4] = 0;
+                        mHangulJamoStack[0] = hangulKeyIdx;
+                        mHangulJamoStack[1] = 0;
+                        mHangulJamoStack[2] = 0;
+                        newHangulChar = 0x3131 + hangulKeyIdx;
+                        hangulSendKey(newHangulChar,HCURSOR_ADD);
+                        mHangulState = H_STATE_1; // goto initial
+                    }
+                }
+                else { // vowel
+
+                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                    jung_idx = mHangulJamoStack[1] - 30;
+                    jong_idx = 0;
+                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+
+                    mHangulKeyStack[0] = mHangulKeyStack[4];
+                    mHangulKeyStack[1] = 0;
+                    mHangulKeyStack[2] = hangulKeyIdx;
+                    mHangulKeyStack[3] = 0;
+                    mHangulKeyStack[4] = 0;
+                    mHangulJamoStack[0] = mHangulKeyStack[0];
+                    mHangulJamoStack[1] = mHangulKeyStack[2];
+                    mHangulJamoStack[2] = 0;
+
+                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                    jung_idx = mHangulJamoStack[1] - 30;
+                    jong_idx = 0;
+                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                    hangulSendKey(newHangulChar, HCURSOR_ADD);
+
+                    mHangulState = H_STATE_4; // goto initial, vowel
+                }
+                break;
+            case H_STATE_6: // initial, vowel, double final
+                if (hangulKeyIdx < 30) { // consonant
+
+                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                    jung_idx = mHangulJamoStack[1] - 30;
+                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];
+                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                    hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+
+                    mHangulKeyStack[0] = hangulKeyIdx;
+                    mHangulKeyStack[1] = 0;
+                    mHangulKeyStack[2] = 0;
+                    mHangulKeyStack[3] = 0;
+                    mHangulKeyStack[4] = 0;
+                    mHangulJamoStack[0] = hangulKeyIdx;
+                    mHangulJamoStack[1] = 0;
+                    mHangulJamoStack[2] = 0;
+
+                    newHangulChar = 0x3131 + hangulKeyIdx;
+                    hangulSendKey(newHangulChar,HCURSOR_ADD);
+
+                    mHangulState = H_STATE_1; // goto initial
+                }
+                else { // vowel
+                    mHangulJamoStack[2] = mHangulKeyStack[4];
+
+                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                    jung_idx = mHangulJamoStack[1] - 30;
+                    jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];
+                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                    hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+
+                    mHangulKeyStack[0] = mHangulKeyStack[5];
+                    mHangulKeyStack[1] = 0;
+                    mHangulKeyStack[2] = hangulKeyIdx;
+                    mHangulKeyStack[3] = 0;
+                    mHangulKeyStack[4] = 0;
+                    mHangulKeyStack[5] = 0;
+                    mHangulJamoStack[0] = mHangulKeyStack[0];
+                    mHangulJamoStack[1] = mHangulKeyStack[2];
+                    mHangulJamoStack[2] = 0;
+
+                    cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                    jung_idx = mHangulJamoStack[1] - 30;
+                    jong_idx = 0;
+                    newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                    hangulSendKey(newHangulChar,HCURSOR_ADD);
+
+                    mHangulState = H_STATE_4; // goto initial, vowel
+                }
+                break;
+            }
+            return true;
+        }
+        else {
+            clearHangul();
+            return false;
+        }
+    }
+
+    private void hangulSendKey(int newHangulChar, int hCursor) {
+        if (hCursor == HCURSOR_NEW) {
+            mComposing.append((char)newHangulChar);
+        }
+        else if (hCursor == HCURSOR_ADD) {
+            if (mComposing.length() > 0) {
+                mCommitted.append(mComposing);
+                mComposing.setLength(0);
+            }
+            mComposing.append((char)newHangulChar);
+        }
+        else if (hCursor == HCURSOR_UPDATE) {
+            mComposing.setCharAt(0, (char)newHangulChar);
+        }
+        else if (hCursor == HCURSOR_APPEND) {
+            mComposing.append((char)newHangulChar);
+        }
+    }
+
+    /** The old -2 path of hangulSendKey: undoes one key of the syllable. */
+    public void delete() {
+        int newHangulChar;
+        int cho_idx,jung_idx,jong_idx;
+
+        switch(mHangulState) {
+        case H_STATE_0:
+            deleteBefore();
+            break;
+        case H_STATE_1: // initial
+            mComposing.setLength(0);
+            clearHangul();
+            mHangulState = H_STATE_0;
+            break;
+        case H_STATE_2: // double initial
+            newHangulChar = 0x3131 + mHangulKeyStack[0];
+            hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+            mHangulKeyStack[1] = 0;
+            mHangulJamoStack[0] = mHangulKeyStack[0];
+            mHangulState = H_STATE_1; // goto initial
+            break;
+        case H_STATE_3: // vowel
+            if (mHangulKeyStack[3] == 0) {
+                mComposing.setLength(0);
+                clearHangul();
+                mHangulState = H_STATE_0;
+            }
+            else {
+                mHangulKeyStack[3] = 0;
+                newHangulChar = 0x314F + (mHangulKeyStack[2] - 30);
+                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+                mHangulJamoStack[1] = mHangulKeyStack[2];
+                mHangulState = H_STATE_3; // goto vowel
+            }
+            break;
+        case H_STATE_4: // initial, vowel
+            if (mHangulKeyStack[3] == 0) {
+                mHangulKeyStack[2] = 0;
+                mHangulJamoStack[1] = 0;
+                newHangulChar = 0x3131 + mHangulJamoStack[0];
+                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+                mHangulState = H_STATE_1; // goto initial
+            }
+            else {
+                mHangulJamoStack[1]= mHangulKeyStack[2];
+                mHangulKeyStack[3] = 0;
+                cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+                jung_idx = mHangulJamoStack[1] - 30;
+                jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
+                newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+                hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+            }
+            break;
+        case H_STATE_5: // initial, vowel, final
+            mHangulJamoStack[2] = 0;
+            mHangulKeyStack[4] = 0;
+            cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+            jung_idx = mHangulJamoStack[1] - 30;
+            jong_idx = h_jongsung_idx[mHangulJamoStack[2]];
+            newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+            hangulSendKey(newHangulChar, HCURSOR_UPDATE);
+            mHangulState = H_STATE_4;
+            break;
+        case H_STATE_6:
+            mHangulKeyStack[5] = 0;
+            mHangulJamoStack[2] = mHangulKeyStack[4];
+            cho_idx = h_chosung_idx[mHangulJamoStack[0]];
+            jung_idx = mHangulJamoStack[1] - 30;
+            jong_idx = h_jongsung_idx[mHangulJamoStack[2]+1];
+            newHangulChar = 0xAC00 + ((cho_idx * 21 * 28) + (jung_idx * 28) + jong_idx);
+            hangulSendKey(newHangulChar,HCURSOR_UPDATE);
+            mHangulState = H_STATE_5;
+            break;
+        default:
+            break;
+        }
+    }
+
+    private int isHangulKey(int stack_pos, int new_key) {
+        if (stack_pos != 2) {
+            switch (mHangulKeyStack[stack_pos]) {
+            case 0:
+                if (new_key == 20) return 2;
+                break;
+            case 3:
+                if (new_key == 23) return 4;
+                else if(new_key == 29) return 5;
+                break;
+            case 8:
+                if (new_key == 0)return 9;
+                else if (new_key == 16) return 10;
+                else if (new_key == 17) return 11;
+                else if (new_key == 20) return 12;
+                else if (new_key == 27) return 13;
+                else if (new_key == 28) return 14;
+                else if (new_key == 29) return 15;
+                break;
+           case 17:
+                if (new_key == 20) return 19;
+                break;
+           }
+        }
+        else {
+           switch (mHangulKeyStack[stack_pos]) {
+           case 38:
+               if (new_key == 30) return 39;
+               else if (new_key == 31) return 40;
+               else if (new_key == 50) return 41;
+               break;
+           case 43:
+               if (new_key == 34) return 44;
+               else if (new_key == 35) return 45;
+               else if (new_key == 50) return 46;
+               break;
+           case 48:
+               if (new_key == 50) return 49;
+               break;
+           }
+       }
+       return 0;
+    }
+
+    private void clearHangul() {
+        mHangulState = 0;
+        mHangulKeyStack[0] = 0;
+        mHangulKeyStack[1] = 0;
+        mHangulKeyStack[2] = 0;
+        mHangulKeyStack[3] = 0;
+        mHangulKeyStack[4] = 0;
+        mHangulKeyStack[5] = 0;
+        mHangulJamoStack[0] = 0;
+        mHangulJamoStack[1] = 0;
+        mHangulJamoStack[2] = 0;
+    }
+}
@@ -0,0 +1,192 @@
+package kr.dodol.chacha.powerupkit;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Random;
+
+/**
+ * Builds res/raw/mode_model.bin, the table InputModeDetector scores words
+ * with.  The corpora are described in tests/mode_model/README.txt.  Only
+ * HangulTransliterator and InputModeDetector's scoring are used, so this
+ * runs on a desktop JVM against the app's compiled classes:
+ *
+ * <pre>
+ * javac -d /tmp/mm -cp bin/classes tests/src/kr/dodol/chacha/powerupkit/ModeModelBuilder.java
+ * java -cp /tmp/mm:bin/classes kr.dodol.chacha.powerupkit.ModeModelBuilder \
+ *     tests/mode_model/ko.txt en.txt res/raw/mode_model.bin [en_test.txt]
+ * </pre>
+ *
+ * Korean text is turned into the 2-beolsik keys that type it and counted
+ * as key trigrams, the same way as English letters; every fifth Korean
+ * line is held out.  With an English test text the held-out accuracy is
+ * printed as well.
+ */
+public class ModeModelBuilder {
+
+    static final int N = InputModeDetector.SYMBOLS;
+    /** Korean is short next to the English text, each trigram counts this much. */
+    static final double KOREAN_WEIGHT = 20;
+    /** Random syllables, so that rare but valid key sequences aren't unseen. */
+    static final int PRIOR_WORDS = 40000;
+    static final double PRIOR_FINAL = 0.35;
+    /** Quantization: 1/8 nat steps. */
+    static final double SCALE = 8;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: ModeModelBuilder korean.txt english.txt out.bin [english_test.txt]");
+            System.exit(1);
+        }
+        String[] lines = read(args[0]).split("\n");
+        StringBuilder train = new StringBuilder();
+        StringBuilder test = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            (i % 5 == 0 ? test : train).append(lines[i]).append(' ');
+        }
+        double[] korean = new double[N * N * N];
+        count(HangulTransliterator.toKeys(train), KOREAN_WEIGHT, korean);
+        count(HangulTransliterator.toKeys(randomSyllables(new Random(3))), 1, korean);
+        double[] english = new double[N * N * N];
+        count(read(args[1]), 1, english);
+
+        byte[] model = quantize(korean, english);
+        OutputStream out = new FileOutputStream(args[2]);
+        try {
+            out.write(model);
+        }
+        finally {
+            out.close();
+        }
+        if (args.length > 3) {
+            InputModeDetector detector = new InputModeDetector(model);
+            System.out.println("korean held out: " + rate(detector,
+                    HangulTransliterator.toKeys(test), InputModeDetector.HANGUL));
+            System.out.println("english test: " + rate(detector,
+                    read(args[3]), InputModeDetector.LATIN));
+        }
+    }
+
+    /**
+     * Adds the letter trigrams of every word in text to counts, index
+     * (two before * N + one before) * N + letter, with BOUNDARY around
+     * words.  Case is folded and anything but a-z splits words.
+     */
+    static void count(CharSequence text, double weight, double[] counts) {
+        int prev2 = InputModeDetector.BOUNDARY;
+        int prev1 = InputModeDetector.BOUNDARY;
+        for (int i = 0; i <= text.length(); i++) {
+            int letter = i < text.length() ? letter(text.charAt(i)) : -1;
+            if (letter < 0) {
+                if (prev1 != InputModeDetector.BOUNDARY) {
+                    counts[(prev2 * N + prev1) * N + InputModeDetector.BOUNDARY] += weight;
+                }
+                prev2 = prev1 = InputModeDetector.BOUNDARY;
+                continue;
+            }
+            counts[(prev2 * N + prev1) * N + letter] += weight;
+            prev2 = prev1;
+            prev1 = letter;
+        }
+    }
+
+    /**
+     * Quantized log(P_korean / P_english) per trigram, each side add-half
+     * smoothed over its two-key context.
+     */
+    static byte[] quantize(double[] korean, double[] english) {
+        byte[] model = new byte[N * N * N];
+        for (int context = 0; context < N * N; context++) {
+            double koreanTotal = 0;
+            double englishTotal = 0;
+            for (int s = 0; s < N; s++) {
+                koreanTotal += korean[context * N + s];
+                englishTotal += english[context * N + s];
+            }
+            for (int s = 0; s < N; s++) {
+                int i = context * N + s;
+                double pk = (korean[i] + 0.5) / (koreanTotal + 0.5 * N);
+                double pe = (english[i] + 0.5) / (englishTotal + 0.5 * N);
+                long v = Math.round(SCALE * Math.log(pk / pe));
+                model[i] = (byte) Math.max(-127, Math.min(127, v));
+            }
+        }
+        return model;
+    }
+
+    /** Words of one to four syllables, any initial and medial. */
+    static String randomSyllables(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < PRIOR_WORDS; w++) {
+            int syllables = 1 + random.nextInt(4);
+            for (int s = 0; s < syllables; s++) {
+                int jong = random.nextDouble() < PRIOR_FINAL ? 1 + random.nextInt(27) : 0;
+                text.append((char) (HangulSyllables.SYLLABLE_BASE
+                        + (random.nextInt(19) * 21 + random.nextInt(21)) * 28 + jong));
+            }
+            text.append(' ');
+        }
+        return text.toString();
+    }
+
+    /**
+     * How the words of MIN_KEYS or more are judged: as expected, the other
+     * way (a wrong correction), and out of how many.
+     */
+    static String rate(InputModeDetector detector, CharSequence text, int expected) {
+        int words = 0;
+        int right = 0;
+        int wrong = 0;
+        int length = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            int letter = i < text.length() ? letter(text.charAt(i)) : -1;
+            if (letter >= 0) {
+                detector.addKey(letter);
+                length++;
+                continue;
+            }
+            if (length > 0) {
+                int verdict = detector.endWord();
+                if (length >= InputModeDetector.MIN_KEYS) {
+                    words++;
+                    if (verdict == expected) {
+                        right++;
+                    }
+                    else if (verdict != InputModeDetector.UNSURE) {
+                        wrong++;
+                    }
+                }
+                length = 0;
+            }
+        }
+        return right + " right, " + wrong + " wrong of " + words + " words";
+    }
+
+    private static int letter(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        return -1;
+    }
+
+    private static String read(String path) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(path), "UTF-8");
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int n; (n = in.read(buffer)) > 0;) {
+                text.append(buffer, 0, n);
+            }
+            return text.toString();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
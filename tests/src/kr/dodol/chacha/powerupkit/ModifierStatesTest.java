@@ -0,0 +1,68 @@
+package kr.dodol.chacha.powerupkit;
+
+import junit.framework.TestCase;
+
+public class ModifierStatesTest extends TestCase {
+
+    private final ModifierStates mModifiers = new ModifierStates();
+
+    private void lock(int modifier) {
+        mModifiers.release(modifier, 1000, false);
+        mModifiers.release(modifier, 1100, false);
+        assertEquals(ModifierStates.LOCKED, mModifiers.get(modifier));
+    }
+
+    public void testTapAndDoubleTap() {
+        assertEquals(ModifierStates.EVENT_TAP, mModifiers.release(ModifierStates.SHIFT, 1000, false));
+        assertEquals(ModifierStates.ONE_SHOT, mModifiers.get(ModifierStates.SHIFT));
+        assertEquals(ModifierStates.EVENT_DOUBLE_TAP, mModifiers.release(ModifierStates.SHIFT, 1100, false));
+        assertEquals(ModifierStates.LOCKED, mModifiers.get(ModifierStates.SHIFT));
+        // a tap after the timeout turns it off
+        mModifiers.release(ModifierStates.SHIFT, 1100 + ModifierStates.DOUBLE_TAP_TIMEOUT, false);
+        assertEquals(ModifierStates.OFF, mModifiers.get(ModifierStates.SHIFT));
+    }
+
+    /** Shift+Space takes one step off shift, as mToggleShift-- did. */
+    public void testShiftSpaceSteps() {
+        lock(ModifierStates.SHIFT);
+        mModifiers.apply(ModifierStates.SHIFT, ModifierStates.EVENT_HOLD_USE);
+        assertEquals(ModifierStates.ONE_SHOT, mModifiers.get(ModifierStates.SHIFT));
+        mModifiers.apply(ModifierStates.SHIFT, ModifierStates.EVENT_HOLD_USE);
+        assertEquals(ModifierStates.OFF, mModifiers.get(ModifierStates.SHIFT));
+        mModifiers.apply(ModifierStates.SHIFT, ModifierStates.EVENT_HOLD_USE);
+        assertEquals(ModifierStates.USED, mModifiers.get(ModifierStates.SHIFT));
+        mModifiers.apply(ModifierStates.SHIFT, ModifierStates.EVENT_HOLD_USE);
+        assertEquals(ModifierStates.USED, mModifiers.get(ModifierStates.SHIFT));
+    }
+
+    /** Alt+Del always leaves alt used, whatever it was. */
+    public void testAltHoldUse() {
+        for (int state = ModifierStates.USED; state <= ModifierStates.LOCKED; state++) {
+            assertEquals(ModifierStates.USED,
+                    ModifierStates.TRANSITIONS[ModifierStates.ALT][ModifierStates.EVENT_HOLD_USE][state + 1]);
+            assertEquals(ModifierStates.USED,
+                    ModifierStates.TRANSITIONS[ModifierStates.FN][ModifierStates.EVENT_HOLD_USE][state + 1]);
+        }
+        lock(ModifierStates.ALT);
+        mModifiers.apply(ModifierStates.ALT, ModifierStates.EVENT_HOLD_USE);
+        assertFalse(mModifiers.isActive(ModifierStates.ALT));
+        // the release of alt after it only clears it
+        mModifiers.release(ModifierStates.ALT, 5000, true);
+        assertEquals(ModifierStates.OFF, mModifiers.get(ModifierStates.ALT));
+    }
+
+    public void testOneShotIsSpent() {
+        mModifiers.release(ModifierStates.ALT, 1000, false);
+        assertTrue(mModifiers.isActive(ModifierStates.ALT));
+        mModifiers.apply(ModifierStates.ALT, ModifierStates.EVENT_USE);
+        assertFalse(mModifiers.isActive(ModifierStates.ALT));
+    }
+
+    public void testIndicatorLabels() {
+        // nothing is shown for a used or released modifier
+        assertNull(SoftKeyboard.SHIFT_INDICATOR_LABELS[ModifierStates.USED + 1]);
+        assertNull(SoftKeyboard.SHIFT_INDICATOR_LABELS[ModifierStates.OFF + 1]);
+        assertNull(SoftKeyboard.ALT_INDICATOR_LABELS[ModifierStates.USED + 1]);
+        assertNull(SoftKeyboard.ALT_INDICATOR_LABELS[ModifierStates.OFF + 1]);
+    }
+}
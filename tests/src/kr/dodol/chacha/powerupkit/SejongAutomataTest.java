@@ -0,0 +1,50 @@
+package kr.dodol.chacha.powerupkit;
+
+import junit.framework.TestCase;
+
+public class SejongAutomataTest extends TestCase {
+
+    /** kk (three presses), wae (five strokes), ieung: nine keys, more than HISTORY. */
+    private static final String KKWAENG_KEYS = "AAAKLJKJH";
+    private static final String KKWAENG = "\uaf79";
+
+    /** Types the keys 10 ms apart; returns the composing text after each. */
+    private static String[] type(SejongAutomata sejong, String keys) {
+        String[] composing = new String[keys.length() + 1];
+        composing[0] = "";
+        for (int i = 0; i < keys.length(); i++) {
+            sejong.process(keys.charAt(i), i * 10);
+            composing[i + 1] = sejong.getComposing().toString();
+        }
+        return composing;
+    }
+
+    public void testLongSyllable() {
+        SejongAutomata sejong = new SejongAutomata();
+        String[] composing = type(sejong, KKWAENG_KEYS);
+        assertEquals(KKWAENG, composing[KKWAENG_KEYS.length()]);
+        assertTrue(KKWAENG_KEYS.length() > SejongAutomata.HISTORY);
+    }
+
+    public void testDeleteLongSyllable() {
+        SejongAutomata sejong = new SejongAutomata();
+        String[] composing = type(sejong, KKWAENG_KEYS);
+        for (int i = KKWAENG_KEYS.length() - 1; i > 0; i--) {
+            assertEquals(HangulAutomata.ACTION_UPDATE, sejong.delete());
+            assertEquals(composing[i], sejong.getComposing().toString());
+        }
+        assertEquals(HangulAutomata.ACTION_CLEAR, sejong.delete());
+        assertTrue(sejong.isEmpty());
+        assertEquals(HangulAutomata.ACTION_NONE, sejong.delete());
+    }
+
+    public void testCycleTimeout() {
+        SejongAutomata sejong = new SejongAutomata();
+        sejong.process('A', 0);
+        // too late to cycle to kieuk: a second giyeok
+        assertEquals(HangulAutomata.ACTION_COMMIT,
+                sejong.process('A', SejongAutomata.DEFAULT_CYCLE_TIMEOUT + 1));
+        assertEquals("\u3131", sejong.getCommitted().toString());
+        assertEquals("\u3131", sejong.getComposing().toString());
+    }
+}
@@ -0,0 +1,118 @@
+package kr.dodol.chacha.powerupkit;
+
+import junit.framework.TestCase;
+
+/**
+ * Feeds an engine's output to a model of the editor and checks that the
+ * selection updates it reports back never end the syllable being typed.
+ */
+public class SelectionUpdateTest extends TestCase {
+
+    /** Text before the composing span and the span itself, as the editor has them. */
+    private int mCommitted;
+    private CharSequence mComposing = "";
+    /** Whether some update moved the cursor back. */
+    private boolean mMovedBack;
+    private long mTime;
+
+    @Override
+    protected void setUp() {
+        mCommitted = 0;
+        mComposing = "";
+        mMovedBack = false;
+    }
+
+    /** Applies an engine action the way composeApply does and checks the update. */
+    private void apply(int action, CharSequence committed, CharSequence composing) {
+        int oldCursor = mCommitted + mComposing.length();
+        switch (action) {
+        case HangulAutomata.ACTION_COMMIT:
+            mCommitted += committed.length();
+            // fall through
+        case HangulAutomata.ACTION_START:
+        case HangulAutomata.ACTION_UPDATE:
+            mComposing = composing.toString();
+            break;
+        case HangulAutomata.ACTION_CLEAR:
+            mComposing = "";
+            break;
+        default:
+            return;
+        }
+        int cursor = mCommitted + mComposing.length();
+        if (cursor < oldCursor) {
+            mMovedBack = true;
+        }
+        if (mComposing.length() == 0) {
+            // nothing left to end
+            return;
+        }
+        assertFalse("ended at \"" + mComposing + "\"", SoftKeyboard.shouldEndEditing(
+                mComposing.length(), cursor, cursor, mCommitted, cursor));
+    }
+
+    private void type(RomajaAutomata romaja, String letters) {
+        for (int i = 0; i < letters.length(); i++) {
+            apply(romaja.process(letters.charAt(i)), romaja.getCommitted(), romaja.getComposing());
+        }
+    }
+
+    private void delete(RomajaAutomata romaja) {
+        apply(romaja.delete(), romaja.getCommitted(), romaja.getComposing());
+    }
+
+    public void testRomajaWord() {
+        type(new RomajaAutomata(), "annyeonghaseyo");
+    }
+
+    public void testRomajaShrinkingComposing() {
+        RomajaAutomata romaja = new RomajaAutomata();
+        // "hae" is the syllable and pending letters; "y" resolves them into one
+        type(romaja, "haey");
+        assertTrue(mMovedBack);
+    }
+
+    public void testRomajaBackspace() {
+        RomajaAutomata romaja = new RomajaAutomata();
+        type(romaja, "hangu");
+        for (int i = 0; i < 5; i++) {
+            delete(romaja);
+        }
+        assertTrue(mMovedBack);
+    }
+
+    /** Presses Sejong keys 10 ms apart, within the cycle timeout. */
+    private void press(SejongAutomata sejong, String keys) {
+        for (int i = 0; i < keys.length(); i++) {
+            mTime += 10;
+            apply(sejong.process(keys.charAt(i), mTime), sejong.getCommitted(), sejong.getComposing());
+        }
+    }
+
+    private void delete(SejongAutomata sejong) {
+        apply(sejong.delete(), sejong.getCommitted(), sejong.getComposing());
+    }
+
+    public void testSejongVowelStrokes() {
+        // initial, dot, i: the dot shown after the initial becomes part of one syllable
+        press(new SejongAutomata(), "AKJ");
+        assertTrue(mMovedBack);
+    }
+
+    public void testSejongBackspace() {
+        SejongAutomata sejong = new SejongAutomata();
+        press(sejong, "AK");
+        delete(sejong);
+        assertTrue(mMovedBack);
+        press(sejong, "JAKJ");
+    }
+
+    public void testCursorMovedAway() {
+        assertTrue(SoftKeyboard.shouldEndEditing(1, 0, 0, 3, 4));
+        assertTrue(SoftKeyboard.shouldEndEditing(1, 2, 4, 3, 4));
+    }
+
+    public void testFieldCleared() {
+        assertTrue(SoftKeyboard.shouldEndEditing(0, 0, 0, -1, -1));
+    }
+}